@@ -1,13 +1,34 @@
 package com.mycompany.antifraud;
 
+import com.mycompany.common.apm.LatencyEndpoint;
+import com.mycompany.common.apm.LatencyRecordingInterceptor;
+import com.mycompany.common.apm.RouteLatencyMonitor;
+import com.mycompany.common.threads.VirtualThreadsConfiguration;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+// components of the `common` module, outside of the scanned packages
+@Import({VirtualThreadsConfiguration.class, RouteLatencyMonitor.class, LatencyEndpoint.class, LatencyRecordingInterceptor.class})
 public class AntiFraudApplication {
 
     public static void main(String[] args) {
         SpringApplication.run(AntiFraudApplication.class, args);
     }
 
+    /**
+     * Training run of the AppCDS archive (see the `fast-startup` maven profile): exit as soon as the application is
+     * ready so that the JVM dumps the classes loaded during the startup.
+     */
+    @Bean
+    @ConditionalOnProperty("startup.trainingRun")
+    ApplicationListener<ApplicationReadyEvent> startupTrainingRunExit() {
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+
 }
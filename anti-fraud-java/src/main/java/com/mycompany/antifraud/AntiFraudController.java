@@ -1,6 +1,8 @@
 package com.mycompany.antifraud;
 
 import co.elastic.apm.api.ElasticApm;
+import com.mycompany.common.apm.SpanLabels;
+import com.mycompany.common.logging.SamplingTurboFilter;
 import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,21 +15,20 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.sql.DataSource;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.DecimalFormat;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @ManagedResource
 @RestController()
 public class AntiFraudController {
 
     final static Random RANDOM = new Random();
-    final static BigDecimal FIVE_PERCENT = new BigDecimal(5).divide(new BigDecimal(100));
+    // DecimalFormat is not thread safe, one per formatting thread rather than one per call
+    final static ThreadLocal<DecimalFormat> PRICE_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("000"));
 
     final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -44,10 +45,8 @@ public class AntiFraudController {
     int priceUpperBoundaryDollarsOnSmallShoppingCart = 10;
     int priceUpperBoundaryDollarsOnMediumShoppingCarts = 100;
 
-    final AtomicInteger fraudDetectionsCounter = new AtomicInteger();
-    final AtomicInteger fraudDetectionsPriceInDollarsCounter = new AtomicInteger();
-    final AtomicInteger fraudChecksCounter = new AtomicInteger();
-    final AtomicInteger fraudChecksPriceInDollarsCounter = new AtomicInteger();
+    AntiFraudStatistics antiFraudStatistics;
+    FraudCheckAuditWriter fraudCheckAuditWriter;
 
     @RequestMapping(path = "fraud/checkOrder", method = {RequestMethod.GET, RequestMethod.POST})
     public String checkOrder(
@@ -55,13 +54,18 @@ public class AntiFraudController {
             @RequestParam String shippingCountry,
             @RequestParam String customerIpAddress) {
 
+        long checkStartNanos = System.nanoTime();
+        int fraudScore;
+        boolean rejected;
+        long deltaPercents = -1;
         String priceRange = getPriceRange(orderPrice);
         ElasticApm.currentSpan().setName("checkOrder");
 
-        ElasticApm.currentSpan().setLabel("orderPrice", orderPrice);
-        ElasticApm.currentSpan().setLabel("priceRange", priceRange);
-        ElasticApm.currentSpan().setLabel("customerIpAddress", customerIpAddress);
-        ElasticApm.currentSpan().setLabel("shippingCountry", shippingCountry);
+        SpanLabels labels = SpanLabels.current();
+        labels.label("orderPrice", orderPrice)
+                .label("priceRange", priceRange)
+                .label("customerIpAddress", customerIpAddress)
+                .label("shippingCountry", shippingCountry);
 
         try {
             int durationOffsetInMillis;
@@ -77,30 +81,29 @@ public class AntiFraudController {
                 durationOffsetInMillis = averageDurationMillisOnLargeShoppingCart;
             }
 
-            int randomDurationInMillis = Math.max(5, new BigDecimal(durationOffsetInMillis).multiply(FIVE_PERCENT).intValue());
+            // 5% of the average duration, integer arithmetic rather than BigDecimals on each check
+            int randomDurationInMillis = Math.max(5, durationOffsetInMillis * 5 / 100);
             int checkOrderDurationMillis = durationOffsetInMillis + RANDOM.nextInt(randomDurationInMillis);
             // positive means fraud
-            int fraudScore = fraudPercentage - RANDOM.nextInt(100);
-            ElasticApm.currentSpan().setLabel("fraudScore", fraudScore);
+            fraudScore = fraudPercentage - RANDOM.nextInt(100);
+            labels.label("fraudScore", fraudScore);
 
-            boolean rejected = fraudScore > 0;
+            rejected = fraudScore > 0;
 
 
             try (Connection cnn = dataSource.getConnection()) {
                 try (Statement stmt = cnn.createStatement()) {
 
-                    BigDecimal checkoutDurationInSeconds = new BigDecimal(checkOrderDurationMillis).divide(new BigDecimal(1000));;
                     long nanosBefore = System.nanoTime();
-                    String checkoutDurationInSecondsAsString = checkoutDurationInSeconds.toPlainString();
                     stmt.execute("select pg_sleep(0.05)");
                     Thread.sleep(checkOrderDurationMillis);
                     long actualSleepInNanos = System.nanoTime() - nanosBefore;
                     long actualSleepInMillis = TimeUnit.MILLISECONDS.convert(actualSleepInNanos, TimeUnit.NANOSECONDS);
 
-                    long deltaPercents = Math.abs(actualSleepInMillis - checkOrderDurationMillis) * 100 / checkOrderDurationMillis;
-                    logger.info("checkOrder(totalPrice: {}, shippingCountry: {}, customerIpAddress: {}): fraudScore: {}, rejected: {}, " +
+                    deltaPercents = Math.abs(actualSleepInMillis - checkOrderDurationMillis) * 100 / checkOrderDurationMillis;
+                    logger.info(rejected ? null : SamplingTurboFilter.SAMPLED, "checkOrder(totalPrice: {}, shippingCountry: {}, customerIpAddress: {}): fraudScore: {}, rejected: {}, " +
                                     "expectedSleep: {}ms, actualSleep: {}ms, delta:{}%",
-                            new DecimalFormat("000").format(orderPrice), shippingCountry, customerIpAddress, fraudScore, rejected,
+                            LazyToString.of(() -> PRICE_FORMAT.get().format(orderPrice)), shippingCountry, customerIpAddress, fraudScore, rejected,
                             checkOrderDurationMillis, actualSleepInMillis, deltaPercents);
 
                 }
@@ -118,19 +121,23 @@ public class AntiFraudController {
                     "antifraud_order_check_shipping_country", shippingCountry).
                     increment();
 
+            // only the completed decisions are recorded and audited, a failed check is not an accepted order
+            long checkDurationNanos = System.nanoTime() - checkStartNanos;
+            this.antiFraudStatistics.recordCheck(priceRange, orderPrice, rejected, checkDurationNanos, deltaPercents);
+            this.fraudCheckAuditWriter.submit(new FraudCheckAuditRecord(
+                    System.currentTimeMillis(), Math.round(orderPrice * 100), priceRange, shippingCountry, customerIpAddress,
+                    fraudScore, rejected, (int) TimeUnit.NANOSECONDS.toMillis(checkDurationNanos)));
+
             String result;
             if (rejected) {
                 result = "KO";
-                this.fraudDetectionsCounter.incrementAndGet();
-                this.fraudDetectionsPriceInDollarsCounter.addAndGet((int) Math.floor(orderPrice));
             } else {
                 result = "OK";
             }
 
             return result;
         } finally {
-            this.fraudChecksPriceInDollarsCounter.addAndGet((int) Math.ceil(orderPrice));
-            this.fraudChecksCounter.incrementAndGet();
+            labels.flush();
         }
     }
 
@@ -225,27 +232,37 @@ public class AntiFraudController {
     }
 
     @ManagedAttribute
-    public int getFraudDetectionsCount() {
-        return fraudDetectionsCounter.get();
+    public long getFraudDetectionsCount() {
+        return antiFraudStatistics.getFraudDetectionsCount();
     }
 
     @ManagedAttribute
-    public AtomicInteger getFraudDetectionsPriceSumInDollars() {
-        return fraudDetectionsPriceInDollarsCounter;
+    public long getFraudDetectionsPriceSumInDollars() {
+        return antiFraudStatistics.getFraudDetectionsPriceSumInCents() / 100;
     }
 
     @ManagedAttribute
-    public int getFraudChecksCount() {
-        return fraudChecksCounter.get();
+    public long getFraudChecksCount() {
+        return antiFraudStatistics.getFraudChecksCount();
     }
 
     @ManagedAttribute
-    public AtomicInteger getFraudChecksPriceSumInDollars() {
-        return fraudChecksPriceInDollarsCounter;
+    public long getFraudChecksPriceSumInDollars() {
+        return antiFraudStatistics.getFraudChecksPriceSumInCents() / 100;
     }
 
     @Autowired
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
+
+    @Autowired
+    public void setAntiFraudStatistics(AntiFraudStatistics antiFraudStatistics) {
+        this.antiFraudStatistics = antiFraudStatistics;
+    }
+
+    @Autowired
+    public void setFraudCheckAuditWriter(FraudCheckAuditWriter fraudCheckAuditWriter) {
+        this.fraudCheckAuditWriter = fraudCheckAuditWriter;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,352 @@
+package com.mycompany.antifraud;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Statistics of the fraud checks.
+ * <p>
+ * Totals are {@link LongAdder}s so that request threads don't contend on a single cache line, prices are summed in
+ * cents to avoid truncation. Check latencies and sleep accuracy are recorded per price range in HdrHistogram
+ * {@link Recorder}s (wait-free on the recording side). The percentiles cover the last
+ * {@code antiFraud.statistics.windowSeconds}, not the whole uptime: the interval histograms of the recorders are
+ * moved into a ring of {@link #SLOT_COUNT} slots when a {@link Snapshot} is taken, the slots older than the window are
+ * dropped, so the window is up to one slot longer. Snapshots are cached for {@link #SNAPSHOT_MAX_AGE_NANOS} so that
+ * JMX and Prometheus can poll every percentile every second without redoing the work for each gauge.
+ */
+@ManagedResource
+@Component
+@Lazy(false)
+public class AntiFraudStatistics {
+
+    public static final String[] PRICE_RANGES = {"small", "medium", "large"};
+
+    static final long SNAPSHOT_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final int SLOT_COUNT = 6;
+
+    static final long LATENCY_HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    static final long SLEEP_DELTA_HIGHEST_TRACKABLE_PERCENTS = 10_000;
+
+    final LongAdder fraudChecksCounter = new LongAdder();
+    final LongAdder fraudChecksPriceInCentsCounter = new LongAdder();
+    final LongAdder fraudDetectionsCounter = new LongAdder();
+    final LongAdder fraudDetectionsPriceInCentsCounter = new LongAdder();
+
+    final Map<String, PriceRangeStatistics> statisticsByPriceRange;
+
+    public AntiFraudStatistics(@Value("${antiFraud.statistics.windowSeconds:60}") int windowSeconds) {
+        this(windowSeconds, Metrics.globalRegistry);
+    }
+
+    AntiFraudStatistics(int windowSeconds, MeterRegistry registry) {
+        if (windowSeconds < SLOT_COUNT) {
+            throw new IllegalArgumentException("antiFraud.statistics.windowSeconds must be at least " + SLOT_COUNT + ", got " + windowSeconds);
+        }
+        long slotNanos = TimeUnit.SECONDS.toNanos(windowSeconds) / SLOT_COUNT;
+        Map<String, PriceRangeStatistics> statisticsByPriceRange = new LinkedHashMap<>();
+        for (String priceRange : PRICE_RANGES) {
+            statisticsByPriceRange.put(priceRange, new PriceRangeStatistics(slotNanos, System.nanoTime()));
+        }
+        this.statisticsByPriceRange = Collections.unmodifiableMap(statisticsByPriceRange);
+        bindTo(registry);
+    }
+
+    /**
+     * @param priceRange          one of {@link #PRICE_RANGES}
+     * @param checkDurationNanos  wall clock duration of the fraud check
+     * @param sleepDeltaPercents  deviation of the actual sleep from the expected sleep, negative if unknown
+     */
+    public void recordCheck(String priceRange, double orderPrice, boolean rejected, long checkDurationNanos, long sleepDeltaPercents) {
+        long orderPriceInCents = Math.round(orderPrice * 100);
+        fraudChecksCounter.increment();
+        fraudChecksPriceInCentsCounter.add(orderPriceInCents);
+        if (rejected) {
+            fraudDetectionsCounter.increment();
+            fraudDetectionsPriceInCentsCounter.add(orderPriceInCents);
+        }
+        PriceRangeStatistics statistics = statisticsByPriceRange.get(priceRange);
+        if (statistics != null) {
+            statistics.record(checkDurationNanos, sleepDeltaPercents);
+        }
+    }
+
+    public Snapshot snapshot(String priceRange) {
+        return priceRangeStatistics(priceRange).snapshot();
+    }
+
+    PriceRangeStatistics priceRangeStatistics(String priceRange) {
+        PriceRangeStatistics statistics = statisticsByPriceRange.get(priceRange);
+        if (statistics == null) {
+            throw new IllegalArgumentException("Unknown price range '" + priceRange + "', expected one of small, medium, large");
+        }
+        return statistics;
+    }
+
+    void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("antifraud_checks", fraudChecksCounter, LongAdder::doubleValue).register(registry);
+        FunctionCounter.builder("antifraud_checks_price_cents", fraudChecksPriceInCentsCounter, LongAdder::doubleValue).register(registry);
+        FunctionCounter.builder("antifraud_detections", fraudDetectionsCounter, LongAdder::doubleValue).register(registry);
+        FunctionCounter.builder("antifraud_detections_price_cents", fraudDetectionsPriceInCentsCounter, LongAdder::doubleValue).register(registry);
+
+        for (Map.Entry<String, PriceRangeStatistics> entry : statisticsByPriceRange.entrySet()) {
+            String priceRange = entry.getKey();
+            PriceRangeStatistics statistics = entry.getValue();
+            registerQuantileGauge(registry, "antifraud_check_duration_millis", priceRange, "0.5", statistics, Snapshot::getLatencyP50Millis);
+            registerQuantileGauge(registry, "antifraud_check_duration_millis", priceRange, "0.9", statistics, Snapshot::getLatencyP90Millis);
+            registerQuantileGauge(registry, "antifraud_check_duration_millis", priceRange, "0.99", statistics, Snapshot::getLatencyP99Millis);
+            registerQuantileGauge(registry, "antifraud_check_duration_millis", priceRange, "0.999", statistics, Snapshot::getLatencyP999Millis);
+            registerQuantileGauge(registry, "antifraud_check_sleep_delta_percents", priceRange, "0.5", statistics, Snapshot::getSleepDeltaP50Percents);
+            registerQuantileGauge(registry, "antifraud_check_sleep_delta_percents", priceRange, "0.9", statistics, Snapshot::getSleepDeltaP90Percents);
+            registerQuantileGauge(registry, "antifraud_check_sleep_delta_percents", priceRange, "0.99", statistics, Snapshot::getSleepDeltaP99Percents);
+            registerQuantileGauge(registry, "antifraud_check_sleep_delta_percents", priceRange, "0.999", statistics, Snapshot::getSleepDeltaP999Percents);
+            Gauge.builder("antifraud_check_duration_millis_max", statistics, s -> s.snapshot().getLatencyMaxMillis())
+                    .tags("price_range", priceRange)
+                    .register(registry);
+        }
+    }
+
+    private static void registerQuantileGauge(MeterRegistry registry, String name, String priceRange, String quantile,
+                                              PriceRangeStatistics statistics, ToDoubleFunction<Snapshot> value) {
+        Gauge.builder(name, statistics, s -> value.applyAsDouble(s.snapshot()))
+                .tags("price_range", priceRange, "quantile", quantile)
+                .register(registry);
+    }
+
+    @ManagedAttribute
+    public long getFraudChecksCount() {
+        return fraudChecksCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getFraudChecksPriceSumInCents() {
+        return fraudChecksPriceInCentsCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getFraudDetectionsCount() {
+        return fraudDetectionsCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getFraudDetectionsPriceSumInCents() {
+        return fraudDetectionsPriceInCentsCounter.sum();
+    }
+
+    @ManagedOperation(description = "Check duration in milliseconds over the window at the given percentile (e.g. 99.9) for the price range small, medium or large")
+    public double getCheckDurationPercentileMillis(String priceRange, double percentile) {
+        return priceRangeStatistics(priceRange).getLatencyPercentileMillis(percentile);
+    }
+
+    @ManagedOperation(description = "Sleep accuracy delta in percents over the window at the given percentile (e.g. 99.9) for the price range small, medium or large")
+    public double getSleepDeltaPercentile(String priceRange, double percentile) {
+        return priceRangeStatistics(priceRange).getSleepDeltaPercentile(percentile);
+    }
+
+    @ManagedOperation(description = "Human readable summary of the check durations and sleep accuracy over the window per price range")
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (String priceRange : PRICE_RANGES) {
+            summary.append(priceRange).append(": ").append(snapshot(priceRange)).append('\n');
+        }
+        return summary.toString();
+    }
+
+    static class PriceRangeStatistics {
+        final Recorder latencyRecorder = new Recorder(LATENCY_HIGHEST_TRACKABLE_MICROS, 2);
+        final Recorder sleepDeltaRecorder = new Recorder(SLEEP_DELTA_HIGHEST_TRACKABLE_PERCENTS, 2);
+
+        final long slotNanos;
+        final long startNanos;
+        /**
+         * Slots of the window, indexed by {@code slot % SLOT_COUNT}, null until a value is recorded in the slot
+         */
+        final Histogram[] latencySlots = new Histogram[SLOT_COUNT];
+        final Histogram[] sleepDeltaSlots = new Histogram[SLOT_COUNT];
+        final long[] slots = new long[SLOT_COUNT];
+
+        final Histogram windowLatency = new Histogram(LATENCY_HIGHEST_TRACKABLE_MICROS, 2);
+        final Histogram windowSleepDelta = new Histogram(SLEEP_DELTA_HIGHEST_TRACKABLE_PERCENTS, 2);
+
+        Histogram latencyInterval;
+        Histogram sleepDeltaInterval;
+
+        volatile Snapshot snapshot;
+
+        PriceRangeStatistics(long slotNanos, long startNanos) {
+            this.slotNanos = slotNanos;
+            this.startNanos = startNanos;
+            // expired, the first call takes a snapshot
+            this.snapshot = new Snapshot(windowLatency, windowSleepDelta, startNanos - SNAPSHOT_MAX_AGE_NANOS);
+        }
+
+        void record(long checkDurationNanos, long sleepDeltaPercents) {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(checkDurationNanos), LATENCY_HIGHEST_TRACKABLE_MICROS);
+            latencyRecorder.recordValue(Math.max(0, micros));
+            if (sleepDeltaPercents >= 0) {
+                sleepDeltaRecorder.recordValue(Math.min(sleepDeltaPercents, SLEEP_DELTA_HIGHEST_TRACKABLE_PERCENTS));
+            }
+        }
+
+        Snapshot snapshot() {
+            return snapshot(System.nanoTime());
+        }
+
+        Snapshot snapshot(long nowNanos) {
+            Snapshot snapshot = this.snapshot;
+            if (nowNanos - snapshot.timestampNanos < SNAPSHOT_MAX_AGE_NANOS) {
+                return snapshot;
+            }
+            synchronized (this) {
+                snapshot = this.snapshot;
+                if (nowNanos - snapshot.timestampNanos < SNAPSHOT_MAX_AGE_NANOS) {
+                    return snapshot;
+                }
+                updateWindow(nowNanos);
+                snapshot = new Snapshot(windowLatency, windowSleepDelta, nowNanos);
+                this.snapshot = snapshot;
+                return snapshot;
+            }
+        }
+
+        synchronized double getLatencyPercentileMillis(double percentile) {
+            updateWindow(System.nanoTime());
+            return windowLatency.getValueAtPercentile(percentile) / 1000d;
+        }
+
+        synchronized double getSleepDeltaPercentile(double percentile) {
+            updateWindow(System.nanoTime());
+            return windowSleepDelta.getValueAtPercentile(percentile);
+        }
+
+        /**
+         * The values recorded since the previous update go to the current slot, then the slots of the window are merged
+         */
+        private void updateWindow(long nowNanos) {
+            long slot = Math.max(0, nowNanos - startNanos) / slotNanos;
+            int idx = (int) (slot % SLOT_COUNT);
+            if (slots[idx] != slot && latencySlots[idx] != null) {
+                // the oldest slot leaves the window, its histograms are recycled
+                latencySlots[idx].reset();
+                sleepDeltaSlots[idx].reset();
+            }
+            slots[idx] = slot;
+            latencyInterval = latencyRecorder.getIntervalHistogram(latencyInterval);
+            sleepDeltaInterval = sleepDeltaRecorder.getIntervalHistogram(sleepDeltaInterval);
+            if (latencySlots[idx] == null) {
+                latencySlots[idx] = new Histogram(LATENCY_HIGHEST_TRACKABLE_MICROS, 2);
+                sleepDeltaSlots[idx] = new Histogram(SLEEP_DELTA_HIGHEST_TRACKABLE_PERCENTS, 2);
+            }
+            latencySlots[idx].add(latencyInterval);
+            sleepDeltaSlots[idx].add(sleepDeltaInterval);
+
+            windowLatency.reset();
+            windowSleepDelta.reset();
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                if (latencySlots[i] != null && slot - slots[i] < SLOT_COUNT) {
+                    windowLatency.add(latencySlots[i]);
+                    windowSleepDelta.add(sleepDeltaSlots[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Immutable view of the histograms of a price range over the window, the standard percentiles are computed once
+     * when the snapshot is taken.
+     */
+    public static class Snapshot {
+        final long count;
+        final double latencyP50Millis;
+        final double latencyP90Millis;
+        final double latencyP99Millis;
+        final double latencyP999Millis;
+        final double latencyMaxMillis;
+        final double sleepDeltaP50Percents;
+        final double sleepDeltaP90Percents;
+        final double sleepDeltaP99Percents;
+        final double sleepDeltaP999Percents;
+        final long timestampNanos;
+
+        Snapshot(Histogram latencyMicros, Histogram sleepDeltaPercents, long timestampNanos) {
+            this.count = latencyMicros.getTotalCount();
+            this.latencyP50Millis = latencyMicros.getValueAtPercentile(50) / 1000d;
+            this.latencyP90Millis = latencyMicros.getValueAtPercentile(90) / 1000d;
+            this.latencyP99Millis = latencyMicros.getValueAtPercentile(99) / 1000d;
+            this.latencyP999Millis = latencyMicros.getValueAtPercentile(99.9) / 1000d;
+            this.latencyMaxMillis = latencyMicros.getMaxValue() / 1000d;
+            this.sleepDeltaP50Percents = sleepDeltaPercents.getValueAtPercentile(50);
+            this.sleepDeltaP90Percents = sleepDeltaPercents.getValueAtPercentile(90);
+            this.sleepDeltaP99Percents = sleepDeltaPercents.getValueAtPercentile(99);
+            this.sleepDeltaP999Percents = sleepDeltaPercents.getValueAtPercentile(99.9);
+            this.timestampNanos = timestampNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getLatencyP50Millis() {
+            return latencyP50Millis;
+        }
+
+        public double getLatencyP90Millis() {
+            return latencyP90Millis;
+        }
+
+        public double getLatencyP99Millis() {
+            return latencyP99Millis;
+        }
+
+        public double getLatencyP999Millis() {
+            return latencyP999Millis;
+        }
+
+        public double getLatencyMaxMillis() {
+            return latencyMaxMillis;
+        }
+
+        public double getSleepDeltaP50Percents() {
+            return sleepDeltaP50Percents;
+        }
+
+        public double getSleepDeltaP90Percents() {
+            return sleepDeltaP90Percents;
+        }
+
+        public double getSleepDeltaP99Percents() {
+            return sleepDeltaP99Percents;
+        }
+
+        public double getSleepDeltaP999Percents() {
+            return sleepDeltaP999Percents;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count +
+                    ", p50=" + latencyP50Millis + "ms" +
+                    ", p90=" + latencyP90Millis + "ms" +
+                    ", p99=" + latencyP99Millis + "ms" +
+                    ", p99.9=" + latencyP999Millis + "ms" +
+                    ", max=" + latencyMaxMillis + "ms" +
+                    ", sleepDelta.p99=" + sleepDeltaP99Percents + "%";
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.mycompany.antifraud;
+
+import org.springframework.core.style.ToStringCreator;
+
+/**
+ * Immutable record of a fraud decision, persisted in the {@code fraud_checks} table by the {@link FraudCheckAuditWriter}.
+ * <p>
+ * The shipping country and the IP address are sent by the clients: they are truncated to the size of their column, a
+ * single oversized value would fail the insert of the whole batch.
+ */
+public class FraudCheckAuditRecord {
+
+    static final int MAX_SHIPPING_COUNTRY_LENGTH = 8;
+    static final int MAX_CUSTOMER_IP_ADDRESS_LENGTH = 64;
+
+    final long checkedAtEpochMillis;
+    final long enqueuedAtNanos;
+    final long orderPriceInCents;
+    final String priceRange;
+    final String shippingCountry;
+    final String customerIpAddress;
+    final int fraudScore;
+    final boolean rejected;
+    final int durationMillis;
+
+    public FraudCheckAuditRecord(long checkedAtEpochMillis, long orderPriceInCents, String priceRange, String shippingCountry,
+                                 String customerIpAddress, int fraudScore, boolean rejected, int durationMillis) {
+        this.checkedAtEpochMillis = checkedAtEpochMillis;
+        this.enqueuedAtNanos = System.nanoTime();
+        this.orderPriceInCents = orderPriceInCents;
+        this.priceRange = priceRange;
+        this.shippingCountry = truncate(shippingCountry, MAX_SHIPPING_COUNTRY_LENGTH);
+        this.customerIpAddress = truncate(customerIpAddress, MAX_CUSTOMER_IP_ADDRESS_LENGTH);
+        this.fraudScore = fraudScore;
+        this.rejected = rejected;
+        this.durationMillis = durationMillis;
+    }
+
+    static String truncate(String value, int maxLength) {
+        return value == null || value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("checkedAt", checkedAtEpochMillis)
+                .append("orderPriceInCents", orderPriceInCents)
+                .append("priceRange", priceRange)
+                .append("shippingCountry", shippingCountry)
+                .append("customerIpAddress", customerIpAddress)
+                .append("fraudScore", fraudScore)
+                .append("rejected", rejected)
+                .append("durationMillis", durationMillis)
+                .toString();
+    }
+}
@@ -0,0 +1,229 @@
+package com.mycompany.antifraud;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persists the fraud decisions in the {@code fraud_checks} table (see {@code schema.sql}).
+ * <p>
+ * Request threads only {@link BlockingQueue#offer(Object) offer} the record to a bounded queue and never wait on the
+ * database: when the queue is full, the record is dropped and counted. A single writer thread drains the queue and
+ * inserts the records with prepared statement JDBC batches, a batch is flushed when it reaches {@code batchSize}
+ * records or when {@code flushIntervalMillis} elapsed since its first record.
+ */
+@ManagedResource
+@Component
+@Lazy(false)
+public class FraudCheckAuditWriter implements SmartLifecycle {
+
+    static final String INSERT_SQL = "insert into fraud_checks " +
+            "(checked_at, order_price_cents, price_range, shipping_country, customer_ip_address, fraud_score, rejected, duration_millis) " +
+            "values (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final DataSource dataSource;
+    final BlockingQueue<FraudCheckAuditRecord> queue;
+    final boolean enabled;
+    final int batchSize;
+    final long flushIntervalMillis;
+
+    final LongAdder enqueuedCounter = new LongAdder();
+    final LongAdder droppedCounter = new LongAdder();
+    final LongAdder writtenCounter = new LongAdder();
+    final LongAdder failedCounter = new LongAdder();
+    final LongAdder batchesCounter = new LongAdder();
+
+    /**
+     * Lag of the last flushed batch: time between the enqueueing of its oldest record and its commit.
+     */
+    volatile long lastFlushLagMillis;
+
+    volatile boolean running;
+    Thread writerThread;
+
+    public FraudCheckAuditWriter(DataSource dataSource,
+                                 @Value("${antiFraud.audit.enabled:true}") boolean enabled,
+                                 @Value("${antiFraud.audit.queueCapacity:10000}") int queueCapacity,
+                                 @Value("${antiFraud.audit.batchSize:500}") int batchSize,
+                                 @Value("${antiFraud.audit.flushIntervalMillis:1000}") long flushIntervalMillis) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        FunctionCounter.builder("antifraud_audit_enqueued", enqueuedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_audit_dropped", droppedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_audit_written", writtenCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_audit_failed", failedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_audit_batches", batchesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("antifraud_audit_queue_depth", queue, BlockingQueue::size).register(Metrics.globalRegistry);
+        Gauge.builder("antifraud_audit_lag_millis", this, FraudCheckAuditWriter::getLagMillis).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Never blocks.
+     *
+     * @return {@code false} if the record has been dropped because the queue is full or the writer is not running
+     */
+    public boolean submit(FraudCheckAuditRecord record) {
+        if (!enabled) {
+            return false;
+        }
+        if (running && queue.offer(record)) {
+            enqueuedCounter.increment();
+            return true;
+        } else {
+            droppedCounter.increment();
+            return false;
+        }
+    }
+
+    void writeLoop() {
+        List<FraudCheckAuditRecord> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                FraudCheckAuditRecord first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long flushDeadlineNanos = first.enqueuedAtNanos + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remainingNanos = flushDeadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0 || !running) {
+                        break;
+                    }
+                    FraudCheckAuditRecord next = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void flush(List<FraudCheckAuditRecord> batch) {
+        try (Connection cnn = dataSource.getConnection()) {
+            cnn.setAutoCommit(false);
+            try (PreparedStatement stmt = cnn.prepareStatement(INSERT_SQL)) {
+                for (FraudCheckAuditRecord record : batch) {
+                    stmt.setTimestamp(1, new Timestamp(record.checkedAtEpochMillis));
+                    stmt.setLong(2, record.orderPriceInCents);
+                    stmt.setString(3, record.priceRange);
+                    stmt.setString(4, record.shippingCountry);
+                    stmt.setString(5, record.customerIpAddress);
+                    stmt.setInt(6, record.fraudScore);
+                    stmt.setBoolean(7, record.rejected);
+                    stmt.setInt(8, record.durationMillis);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                cnn.commit();
+            } catch (SQLException e) {
+                cnn.rollback();
+                throw e;
+            }
+            writtenCounter.add(batch.size());
+            batchesCounter.increment();
+            lastFlushLagMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).enqueuedAtNanos);
+        } catch (SQLException | RuntimeException e) {
+            failedCounter.add(batch.size());
+            logger.warn("Failure to write {} fraud check audit records: {}", batch.size(), e.toString());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "fraud-check-audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        // let the writer drain the queue before the datasource is closed
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the age of the oldest record waiting in the queue or, if the queue is empty, the lag of the last flush
+     */
+    @ManagedAttribute
+    public long getLagMillis() {
+        FraudCheckAuditRecord oldest = queue.peek();
+        if (oldest == null) {
+            return lastFlushLagMillis;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.enqueuedAtNanos);
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @ManagedAttribute
+    public long getDroppedCount() {
+        return droppedCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getWrittenCount() {
+        return writtenCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailedCount() {
+        return failedCounter.sum();
+    }
+}
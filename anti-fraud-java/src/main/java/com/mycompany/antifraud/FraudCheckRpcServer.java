@@ -0,0 +1,240 @@
+package com.mycompany.antifraud;
+
+import co.elastic.apm.api.ElasticApm;
+import co.elastic.apm.api.Scope;
+import co.elastic.apm.api.Transaction;
+import com.mycompany.common.apm.RouteLatencyMonitor;
+import com.mycompany.common.rpc.FraudCheckMessages;
+import com.mycompany.common.threads.VirtualThreadsConfiguration;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binary fraud check RPC, an alternative to the {@code fraud/checkOrder} HTTP endpoint, see {@link FraudCheckMessages}.
+ * <p>
+ * The frontends keep a few persistent connections open and pipeline their checks: the event loop threads only decode
+ * the requests and hand them over to the check threads, each response is written as soon as its check completes,
+ * whatever the order of the requests, and the flushes are coalesced. The checks run the same code as the HTTP
+ * endpoint. When all the {@code antiFraud.rpc.maxThreads} check threads are busy and {@code antiFraud.rpc.queueCapacity}
+ * checks are waiting, the new checks are answered {@link FraudCheckMessages#ERROR} at once.
+ * <p>
+ * The RPC has no authentication: it is disabled by default and listens on {@code antiFraud.rpc.host}, the loopback
+ * interface unless the frontends run on other hosts of a trusted network.
+ */
+@ManagedResource
+@Component
+@Lazy(false)
+public class FraudCheckRpcServer implements SmartLifecycle {
+
+    static final String CHECK_ORDER_ROUTE = "FraudCheckRpcServer.checkOrder";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final AntiFraudController antiFraudController;
+    final RouteLatencyMonitor routeLatencyMonitor;
+    final boolean enabled;
+    final String host;
+    final int port;
+    final int ioThreads;
+    final int maxThreads;
+    final int queueCapacity;
+    final boolean virtualThreads;
+
+    final LongAdder requestsCounter = new LongAdder();
+    final LongAdder saturatedCounter = new LongAdder();
+    final LongAdder errorsCounter = new LongAdder();
+    final AtomicInteger openConnections = new AtomicInteger();
+
+    EventLoopGroup bossGroup;
+    EventLoopGroup workerGroup;
+    ExecutorService checkExecutor;
+    Channel serverChannel;
+
+    public FraudCheckRpcServer(AntiFraudController antiFraudController, RouteLatencyMonitor routeLatencyMonitor,
+                               @Value("${antiFraud.rpc.enabled:false}") boolean enabled,
+                               @Value("${antiFraud.rpc.host:localhost}") String host,
+                               @Value("${antiFraud.rpc.port:8091}") int port,
+                               @Value("${antiFraud.rpc.ioThreads:1}") int ioThreads,
+                               @Value("${antiFraud.rpc.maxThreads:200}") int maxThreads,
+                               @Value("${antiFraud.rpc.queueCapacity:1000}") int queueCapacity,
+                               @Value("${threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.antiFraudController = antiFraudController;
+        this.routeLatencyMonitor = routeLatencyMonitor;
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+        this.ioThreads = ioThreads;
+        this.maxThreads = maxThreads;
+        this.queueCapacity = queueCapacity;
+        this.virtualThreads = virtualThreads;
+
+        FunctionCounter.builder("antifraud_rpc_server_requests", requestsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_rpc_server_saturated", saturatedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_rpc_server_errors", errorsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("antifraud_rpc_server_connections", openConnections, AtomicInteger::get).register(Metrics.globalRegistry);
+    }
+
+    void check(Channel channel, FraudCheckMessages.CheckOrderRequest request) {
+        long startNanos = System.nanoTime();
+        byte result;
+        Transaction transaction = ElasticApm.startTransaction();
+        try (Scope scope = transaction.activate()) {
+            transaction.setName("FraudCheckRpcServer#checkOrder");
+            String decision = antiFraudController.checkOrder(request.orderPriceInCents / 100.0, request.shippingCountry, request.customerIpAddress);
+            result = "OK".equals(decision) ? FraudCheckMessages.ACCEPTED : FraudCheckMessages.REJECTED;
+        } catch (RuntimeException e) {
+            transaction.captureException(e);
+            errorsCounter.increment();
+            logger.warn("Failure of the fraud check {}", request.requestId, e);
+            result = FraudCheckMessages.ERROR;
+        } finally {
+            transaction.end();
+        }
+        routeLatencyMonitor.record(CHECK_ORDER_ROUTE, System.nanoTime() - startNanos);
+        respond(channel, request.requestId, result);
+    }
+
+    static void respond(Channel channel, long requestId, byte result) {
+        ByteBuf frame = channel.alloc().buffer(FraudCheckMessages.RESPONSE_FRAME_LENGTH);
+        FraudCheckMessages.writeCheckOrderResponse(frame, requestId, result);
+        channel.writeAndFlush(frame);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!enabled || serverChannel != null) {
+            return;
+        }
+        checkExecutor = virtualThreads
+                ? VirtualThreadsConfiguration.newVirtualThreadPerTaskExecutor("rpc-virtual-")
+                : new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new DefaultThreadFactory("fraud-check-rpc-exec", true));
+        if (checkExecutor instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) checkExecutor).allowCoreThreadTimeOut(true);
+        }
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("fraud-check-rpc-boss", true));
+        workerGroup = new NioEventLoopGroup(ioThreads, new DefaultThreadFactory("fraud-check-rpc-io", true));
+        serverChannel = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        channel.pipeline().addLast(
+                                new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true),
+                                new LengthFieldBasedFrameDecoder(FraudCheckMessages.MAX_FRAME_LENGTH, 0, FraudCheckMessages.LENGTH_FIELD_LENGTH, 0, FraudCheckMessages.LENGTH_FIELD_LENGTH),
+                                new RequestHandler());
+                    }
+                })
+                .bind(host, port)
+                .syncUninterruptibly()
+                .channel();
+        logger.info("Fraud check RPC server listening on {}", serverChannel.localAddress());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (serverChannel == null) {
+            return;
+        }
+        serverChannel.close().syncUninterruptibly();
+        serverChannel = null;
+        bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        checkExecutor.shutdownNow();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    @ManagedAttribute
+    public int getOpenConnectionCount() {
+        return openConnections.get();
+    }
+
+    @ManagedAttribute
+    public long getRequestCount() {
+        return requestsCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getSaturatedCount() {
+        return saturatedCounter.sum();
+    }
+
+    class RequestHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            FraudCheckMessages.CheckOrderRequest request;
+            try {
+                request = FraudCheckMessages.readCheckOrderRequest(frame);
+            } catch (RuntimeException e) {
+                // the connection is out of sync
+                logger.warn("Invalid fraud check request from {}, closing the connection: {}", ctx.channel().remoteAddress(), e.toString());
+                ctx.close();
+                return;
+            }
+            requestsCounter.increment();
+            Channel channel = ctx.channel();
+            try {
+                checkExecutor.execute(() -> check(channel, request));
+            } catch (RejectedExecutionException e) {
+                saturatedCounter.increment();
+                respond(channel, request.requestId, FraudCheckMessages.ERROR);
+            }
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            openConnections.incrementAndGet();
+            super.channelActive(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            openConnections.decrementAndGet();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Failure of the fraud check RPC connection {}: {}", ctx.channel().remoteAddress(), cause.toString());
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mycompany.antifraud;
+
+import com.mycompany.common.logging.RingBufferAsyncAppender;
+
+import java.util.function.Supplier;
+
+/**
+ * Log argument rendered only when the message is formatted: not at all when the event is filtered out, by the worker
+ * thread of the {@link RingBufferAsyncAppender} otherwise.
+ * <pre>
+ * logger.info("price: {}", LazyToString.of(() -> format(price)));
+ * </pre>
+ */
+public final class LazyToString {
+
+    final Supplier<?> supplier;
+
+    LazyToString(Supplier<?> supplier) {
+        this.supplier = supplier;
+    }
+
+    public static LazyToString of(Supplier<?> supplier) {
+        return new LazyToString(supplier);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(supplier.get());
+    }
+}
@@ -0,0 +1,13 @@
+-- Audit trail of the fraud decisions, see FraudCheckAuditWriter
+CREATE TABLE IF NOT EXISTS fraud_checks (
+    id                  BIGSERIAL PRIMARY KEY,
+    checked_at          TIMESTAMP WITH TIME ZONE NOT NULL,
+    order_price_cents   BIGINT NOT NULL,
+    price_range         VARCHAR(16) NOT NULL,
+    shipping_country    VARCHAR(8),
+    customer_ip_address VARCHAR(64),
+    fraud_score         INTEGER NOT NULL,
+    rejected            BOOLEAN NOT NULL,
+    duration_millis     INTEGER NOT NULL
+);
+CREATE INDEX IF NOT EXISTS fraud_checks_checked_at_idx ON fraud_checks (checked_at);
@@ -0,0 +1,90 @@
+package com.mycompany.antifraud;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AntiFraudStatisticsTest {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    AntiFraudStatistics statistics = new AntiFraudStatistics(60, registry);
+
+    @Test
+    public void totals_are_summed_in_cents() {
+        statistics.recordCheck("small", 19.99, false, millis(10), 0);
+        statistics.recordCheck("large", 1_000.01, true, millis(10), 0);
+        statistics.recordCheck("unknown", 0.01, false, millis(10), 0);
+
+        assertThat(statistics.getFraudChecksCount()).isEqualTo(3);
+        assertThat(statistics.getFraudChecksPriceSumInCents()).isEqualTo(1_999 + 100_001 + 1);
+        assertThat(statistics.getFraudDetectionsCount()).isEqualTo(1);
+        assertThat(statistics.getFraudDetectionsPriceSumInCents()).isEqualTo(100_001);
+        assertThat(registry.get("antifraud_checks_price_cents").functionCounter().count()).isEqualTo(102_001);
+    }
+
+    @Test
+    public void durations_are_recorded_per_price_range() {
+        for (int i = 0; i < 100; i++) {
+            statistics.recordCheck("small", 10, false, millis(5), 2);
+            statistics.recordCheck("large", 5_000, false, millis(500), 10);
+        }
+
+        AntiFraudStatistics.Snapshot small = statistics.snapshot("small");
+        AntiFraudStatistics.Snapshot large = statistics.snapshot("large");
+
+        assertThat(small.getCount()).isEqualTo(100);
+        assertThat(small.getLatencyP99Millis()).isBetween(4.9, 5.1);
+        assertThat(small.getSleepDeltaP99Percents()).isEqualTo(2);
+        assertThat(large.getCount()).isEqualTo(100);
+        assertThat(large.getLatencyP50Millis()).isBetween(495.0, 505.0);
+        assertThat(statistics.snapshot("medium").getCount()).isZero();
+        assertThat(registry.get("antifraud_check_duration_millis").tags("price_range", "large", "quantile", "0.99").gauge().value())
+                .isBetween(495.0, 505.0);
+        assertThat(statistics.getCheckDurationPercentileMillis("small", 99.9)).isBetween(4.9, 5.1);
+        assertThatThrownBy(() -> statistics.snapshot("huge")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void snapshot_is_cached_for_its_max_age() {
+        AntiFraudStatistics.PriceRangeStatistics small = statistics.priceRangeStatistics("small");
+        long nowNanos = System.nanoTime() + AntiFraudStatistics.SNAPSHOT_MAX_AGE_NANOS;
+        statistics.recordCheck("small", 10, false, millis(5), 0);
+        AntiFraudStatistics.Snapshot snapshot = small.snapshot(nowNanos);
+        assertThat(snapshot.getCount()).isEqualTo(1);
+
+        statistics.recordCheck("small", 10, false, millis(5), 0);
+        assertThat(small.snapshot(nowNanos + AntiFraudStatistics.SNAPSHOT_MAX_AGE_NANOS / 2)).isSameAs(snapshot);
+
+        assertThat(small.snapshot(nowNanos + AntiFraudStatistics.SNAPSHOT_MAX_AGE_NANOS).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void checks_older_than_the_window_are_dropped() {
+        AntiFraudStatistics.PriceRangeStatistics small = statistics.priceRangeStatistics("small");
+        long nowNanos = System.nanoTime() + AntiFraudStatistics.SNAPSHOT_MAX_AGE_NANOS;
+        statistics.recordCheck("small", 10, false, millis(500), 0);
+        assertThat(small.snapshot(nowNanos).getLatencyMaxMillis()).isGreaterThan(490);
+
+        long slotNanos = TimeUnit.SECONDS.toNanos(60) / AntiFraudStatistics.SLOT_COUNT;
+        nowNanos += 3 * slotNanos;
+        statistics.recordCheck("small", 10, false, millis(5), 0);
+        assertThat(small.snapshot(nowNanos).getCount()).isEqualTo(2);
+
+        // the first check leaves the window, the second one is still in it
+        nowNanos += (AntiFraudStatistics.SLOT_COUNT - 1) * slotNanos;
+        AntiFraudStatistics.Snapshot snapshot = small.snapshot(nowNanos);
+        assertThat(snapshot.getCount()).isEqualTo(1);
+        assertThat(snapshot.getLatencyMaxMillis()).isLessThan(6);
+
+        nowNanos += AntiFraudStatistics.SLOT_COUNT * slotNanos;
+        assertThat(small.snapshot(nowNanos).getCount()).isZero();
+    }
+
+    static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,121 @@
+package com.mycompany.antifraud;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FraudCheckAuditWriterTest {
+
+    DataSource dataSource = mock(DataSource.class);
+    Connection connection = mock(Connection.class);
+    PreparedStatement statement = mock(PreparedStatement.class);
+    List<String> insertedAddresses = new CopyOnWriteArrayList<>();
+    FraudCheckAuditWriter writer;
+
+    @BeforeEach
+    public void database() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(FraudCheckAuditWriter.INSERT_SQL)).thenReturn(statement);
+        doAnswer(invocation -> insertedAddresses.add(invocation.getArgument(1))).when(statement).setString(eq(5), anyString());
+    }
+
+    @AfterEach
+    public void stop() {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void records_are_dropped_when_the_queue_is_full() {
+        writer = new FraudCheckAuditWriter(dataSource, true, 2, 500, 1000);
+        // running without writer thread, nothing drains the queue
+        writer.running = true;
+
+        assertThat(writer.submit(record("10.0.0.1"))).isTrue();
+        assertThat(writer.submit(record("10.0.0.2"))).isTrue();
+        assertThat(writer.submit(record("10.0.0.3"))).isFalse();
+
+        assertThat(writer.getQueueDepth()).isEqualTo(2);
+        assertThat(writer.getDroppedCount()).isEqualTo(1);
+        writer.running = false;
+    }
+
+    @Test
+    public void records_are_dropped_when_the_writer_is_not_running() {
+        writer = new FraudCheckAuditWriter(dataSource, true, 2, 500, 1000);
+
+        assertThat(writer.submit(record("10.0.0.1"))).isFalse();
+        assertThat(writer.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_batch_is_rolled_back_and_counted() throws SQLException {
+        when(statement.executeBatch()).thenThrow(new SQLException("value too long for type character varying(64)"));
+        writer = new FraudCheckAuditWriter(dataSource, true, 10, 500, 1000);
+
+        writer.flush(Arrays.asList(record("10.0.0.1"), record("10.0.0.2")));
+
+        verify(connection).rollback();
+        verify(connection).close();
+        assertThat(writer.getFailedCount()).isEqualTo(2);
+        assertThat(writer.getWrittenCount()).isZero();
+    }
+
+    @Test
+    public void queued_records_are_written_on_stop() throws SQLException {
+        when(statement.executeBatch()).thenReturn(new int[0]);
+        writer = new FraudCheckAuditWriter(dataSource, true, 10, 500, 200);
+        writer.start();
+        for (int i = 1; i <= 5; i++) {
+            assertThat(writer.submit(record("10.0.0." + i))).isTrue();
+        }
+
+        writer.stop();
+
+        assertThat(writer.isRunning()).isFalse();
+        assertThat(writer.getWrittenCount()).isEqualTo(5);
+        assertThat(writer.getQueueDepth()).isZero();
+        assertThat(insertedAddresses).containsExactly("10.0.0.1", "10.0.0.2", "10.0.0.3", "10.0.0.4", "10.0.0.5");
+        assertThat(writer.submit(record("10.0.0.6"))).isFalse();
+    }
+
+    @Test
+    public void oversized_client_values_are_truncated_before_queueing() throws SQLException {
+        when(statement.executeBatch()).thenReturn(new int[0]);
+        writer = new FraudCheckAuditWriter(dataSource, true, 10, 500, 1000);
+        String address = new String(new char[100]).replace('\0', 'a');
+        FraudCheckAuditRecord record = new FraudCheckAuditRecord(System.currentTimeMillis(), 100, "small", "FRANCE-METROPOLITAINE",
+                address, 0, false, 50);
+
+        assertThat(record.shippingCountry).isEqualTo("FRANCE-M");
+        assertThat(record.customerIpAddress).hasSize(FraudCheckAuditRecord.MAX_CUSTOMER_IP_ADDRESS_LENGTH);
+
+        writer.flush(Arrays.asList(record, record("10.0.0.1")));
+        verify(statement).setString(4, "FRANCE-M");
+        verify(statement, times(2)).setInt(eq(8), anyInt());
+        assertThat(writer.getWrittenCount()).isEqualTo(2);
+    }
+
+    static FraudCheckAuditRecord record(String customerIpAddress) {
+        return new FraudCheckAuditRecord(System.currentTimeMillis(), 12_000, "large", "FR", customerIpAddress, -10, false, 1000);
+    }
+}
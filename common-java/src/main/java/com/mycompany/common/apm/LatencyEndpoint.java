@@ -0,0 +1,36 @@
+package com.mycompany.common.apm;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/latency}: p50, p90, p99 and p99.9 of each route over the last 10s, 1m and 5m with the SLO breaches,
+ * {@code /actuator/latency/{route}} for a single route (e.g. {@code OrderController.create}).
+ */
+@Component
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    final RouteLatencyMonitor routeLatencyMonitor;
+
+    public LatencyEndpoint(RouteLatencyMonitor routeLatencyMonitor) {
+        this.routeLatencyMonitor = routeLatencyMonitor;
+    }
+
+    @ReadOperation
+    public Map<String, RouteLatency> latencies() {
+        return routeLatencyMonitor.getLatencies();
+    }
+
+    /**
+     * @return {@code null}, 404, if nothing was recorded for the route
+     */
+    @ReadOperation
+    public RouteLatency latency(@Selector String route) {
+        return routeLatencyMonitor.getLatency(route);
+    }
+}
@@ -0,0 +1,58 @@
+package com.mycompany.common.apm;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the duration of the requests handled by a controller method in the {@link RouteLatencyMonitor}, the route
+ * is {@code <controller class simple name>.<method name>} (e.g. {@code OrderController.create} or
+ * {@code AntiFraudController.checkOrder}).
+ */
+@Component
+public class LatencyRecordingInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    static final String START_NANOS_ATTRIBUTE = LatencyRecordingInterceptor.class.getName() + ".startNanos";
+
+    final RouteLatencyMonitor routeLatencyMonitor;
+    // route names are built once per handler method
+    final ConcurrentHashMap<HandlerMethod, String> routeByHandlerMethod = new ConcurrentHashMap<>();
+
+    public LatencyRecordingInterceptor(RouteLatencyMonitor routeLatencyMonitor) {
+        this.routeLatencyMonitor = routeLatencyMonitor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            request.setAttribute(START_NANOS_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object startNanos = request.getAttribute(START_NANOS_ATTRIBUTE);
+        if (startNanos == null || !(handler instanceof HandlerMethod)) {
+            return;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        String route = routeByHandlerMethod.get(handlerMethod);
+        if (route == null) {
+            route = routeByHandlerMethod.computeIfAbsent(handlerMethod,
+                    method -> method.getBeanType().getSimpleName() + "." + method.getMethod().getName());
+        }
+        routeLatencyMonitor.record(route, System.nanoTime() - (Long) startNanos);
+    }
+}
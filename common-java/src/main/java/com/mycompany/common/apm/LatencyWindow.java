@@ -0,0 +1,26 @@
+package com.mycompany.common.apm;
+
+/**
+ * Sliding windows of the {@link RouteLatencyMonitor}.
+ */
+public enum LatencyWindow {
+    TEN_SECONDS("10s", 10),
+    ONE_MINUTE("1m", 60),
+    FIVE_MINUTES("5m", 300);
+
+    final String label;
+    final int seconds;
+
+    LatencyWindow(String label, int seconds) {
+        this.label = label;
+        this.seconds = seconds;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getSeconds() {
+        return seconds;
+    }
+}
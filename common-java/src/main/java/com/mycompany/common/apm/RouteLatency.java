@@ -0,0 +1,127 @@
+package com.mycompany.common.apm;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable latency of a route over each {@link LatencyWindow}, see {@link RouteLatencyMonitor}.
+ */
+public class RouteLatency {
+
+    final long sloP99Millis;
+    final WindowLatency[] windows;
+
+    RouteLatency(long sloP99Millis, WindowLatency[] windows) {
+        this.sloP99Millis = sloP99Millis;
+        this.windows = windows;
+    }
+
+    static RouteLatency empty(long sloP99Millis) {
+        WindowLatency[] windows = new WindowLatency[LatencyWindow.values().length];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = WindowLatency.EMPTY;
+        }
+        return new RouteLatency(sloP99Millis, windows);
+    }
+
+    public WindowLatency getWindow(LatencyWindow window) {
+        return windows[window.ordinal()];
+    }
+
+    public long getSloP99Millis() {
+        return sloP99Millis;
+    }
+
+    /**
+     * @return latencies by window label: {@code 10s}, {@code 1m} and {@code 5m}
+     */
+    public Map<String, WindowLatency> getWindows() {
+        Map<String, WindowLatency> windowsByLabel = new LinkedHashMap<>();
+        for (LatencyWindow window : LatencyWindow.values()) {
+            windowsByLabel.put(window.label, windows[window.ordinal()]);
+        }
+        return windowsByLabel;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("sloP99=").append(sloP99Millis).append("ms");
+        for (LatencyWindow window : LatencyWindow.values()) {
+            result.append(", ").append(window.label).append(": [").append(windows[window.ordinal()]).append(']');
+        }
+        return result.toString();
+    }
+
+    public static class WindowLatency {
+        static final WindowLatency EMPTY = new WindowLatency(0, 0, 0, 0, 0, 0, false);
+
+        final long count;
+        final double p50Millis;
+        final double p90Millis;
+        final double p99Millis;
+        final double p999Millis;
+        final double maxMillis;
+        final boolean sloBreached;
+
+        WindowLatency(Histogram micros, long sloP99Millis) {
+            this(micros.getTotalCount(),
+                    micros.getValueAtPercentile(50) / 1000d,
+                    micros.getValueAtPercentile(90) / 1000d,
+                    micros.getValueAtPercentile(99) / 1000d,
+                    micros.getValueAtPercentile(99.9) / 1000d,
+                    micros.getMaxValue() / 1000d,
+                    micros.getTotalCount() > 0 && micros.getValueAtPercentile(99) / 1000d > sloP99Millis);
+        }
+
+        WindowLatency(long count, double p50Millis, double p90Millis, double p99Millis, double p999Millis, double maxMillis, boolean sloBreached) {
+            this.count = count;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.p999Millis = p999Millis;
+            this.maxMillis = maxMillis;
+            this.sloBreached = sloBreached;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getP999Millis() {
+            return p999Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        public boolean isSloBreached() {
+            return sloBreached;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count +
+                    ", p50=" + p50Millis + "ms" +
+                    ", p90=" + p90Millis + "ms" +
+                    ", p99=" + p99Millis + "ms" +
+                    ", p99.9=" + p999Millis + "ms" +
+                    ", max=" + maxMillis + "ms" +
+                    (sloBreached ? ", SLO breached" : "");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.mycompany.common.apm;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.PackedHistogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of each route (controller method) over the sliding {@link LatencyWindow}s, to take decisions in process
+ * (load shedding...) and for the {@code /actuator/latency} endpoint.
+ * <p>
+ * Request threads record in an HdrHistogram {@link Recorder} per route, wait-free. Every
+ * {@code latency.slotSeconds}, a rotation thread moves the interval histogram of each route into a ring of slots
+ * covering the largest window, then merges the slots from the newest to the oldest and publishes the percentiles of
+ * each window in an immutable {@link RouteLatency}: reading the latency of a route is a map lookup and a volatile read.
+ * The windows lag by at most one slot. Histograms are packed, idle routes and quiet slots use little memory.
+ * <p>
+ * A window breaches its SLO when its p99 exceeds {@code latency.slo.p99Millis} (e.g.
+ * {@code OrderController.create:800,ProductController.getProducts:100}), {@code latency.slo.defaultP99Millis} for the
+ * other routes.
+ */
+@ManagedResource
+@Component
+public class RouteLatencyMonitor implements SmartLifecycle {
+
+    static final int SIGNIFICANT_DIGITS = 2;
+
+    final int slotSeconds;
+    final long defaultSloP99Millis;
+    final Map<String, Long> sloP99MillisByRoute = new HashMap<>();
+    final ConcurrentHashMap<String, RouteWindows> routes = new ConcurrentHashMap<>();
+
+    ScheduledExecutorService rotator;
+
+    public RouteLatencyMonitor(@Value("${latency.slotSeconds:5}") int slotSeconds,
+                               @Value("${latency.slo.defaultP99Millis:500}") long defaultSloP99Millis,
+                               @Value("${latency.slo.p99Millis:}") String sloP99Millis) {
+        for (LatencyWindow window : LatencyWindow.values()) {
+            if (slotSeconds <= 0 || window.seconds % slotSeconds != 0) {
+                throw new IllegalArgumentException("latency.slotSeconds must divide " + window.seconds + ", got " + slotSeconds);
+            }
+        }
+        this.slotSeconds = slotSeconds;
+        this.defaultSloP99Millis = defaultSloP99Millis;
+        for (String entry : sloP99Millis.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] routeAndSlo = entry.split(":");
+            if (routeAndSlo.length != 2) {
+                throw new IllegalArgumentException("Invalid latency SLO '" + entry + "', expected <route>:<p99 millis>");
+            }
+            this.sloP99MillisByRoute.put(routeAndSlo[0].trim(), Long.parseLong(routeAndSlo[1].trim()));
+        }
+    }
+
+    public void record(String route, long durationNanos) {
+        RouteWindows windows = routes.get(route);
+        if (windows == null) {
+            windows = routes.computeIfAbsent(route, this::newRouteWindows);
+        }
+        windows.recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(durationNanos)));
+    }
+
+    RouteWindows newRouteWindows(String route) {
+        long sloP99Millis = sloP99MillisByRoute.getOrDefault(route, defaultSloP99Millis);
+        return new RouteWindows(route, sloP99Millis, LatencyWindow.FIVE_MINUTES.seconds / slotSeconds);
+    }
+
+    /**
+     * @return {@code null} if nothing was recorded for the route
+     */
+    public RouteLatency getLatency(String route) {
+        RouteWindows windows = routes.get(route);
+        return windows == null ? null : windows.latency;
+    }
+
+    /**
+     * @return {@code false} if nothing was recorded for the route in the window
+     */
+    public boolean isSloBreached(String route, LatencyWindow window) {
+        RouteLatency latency = getLatency(route);
+        return latency != null && latency.getWindow(window).isSloBreached();
+    }
+
+    /**
+     * @return latencies sorted by route
+     */
+    public Map<String, RouteLatency> getLatencies() {
+        Map<String, RouteLatency> latencies = new TreeMap<>();
+        for (RouteWindows windows : routes.values()) {
+            latencies.put(windows.route, windows.latency);
+        }
+        return latencies;
+    }
+
+    void rotate() {
+        for (RouteWindows windows : routes.values()) {
+            windows.rotate(slotSeconds);
+        }
+    }
+
+    @ManagedOperation(description = "Latency percentiles and SLO breaches of each route over the last 10s, 1m and 5m")
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, RouteLatency> entry : getLatencies().entrySet()) {
+            summary.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return summary.toString();
+    }
+
+    @ManagedAttribute
+    public int getRouteCount() {
+        return routes.size();
+    }
+
+    @Override
+    public synchronized void start() {
+        if (rotator != null) {
+            return;
+        }
+        rotator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "route-latency-rotator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rotator.scheduleAtFixedRate(this::rotate, slotSeconds, slotSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (rotator == null) {
+            return;
+        }
+        rotator.shutdownNow();
+        rotator = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return rotator != null;
+    }
+
+    /**
+     * Histograms of a route, only the rotation thread touches the slots.
+     */
+    static class RouteWindows {
+        final String route;
+        final long sloP99Millis;
+        final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS, true);
+        // ring of interval histograms, newest at currentSlot
+        final Histogram[] slots;
+        final Histogram merged = new PackedHistogram(SIGNIFICANT_DIGITS);
+        int currentSlot = -1;
+
+        volatile RouteLatency latency;
+
+        RouteWindows(String route, long sloP99Millis, int slotCount) {
+            this.route = route;
+            this.sloP99Millis = sloP99Millis;
+            this.slots = new Histogram[slotCount];
+            this.latency = RouteLatency.empty(sloP99Millis);
+        }
+
+        void rotate(int slotSeconds) {
+            currentSlot = (currentSlot + 1) % slots.length;
+            // the oldest slot leaves the windows, its histogram is recycled
+            slots[currentSlot] = recorder.getIntervalHistogram(slots[currentSlot]);
+
+            merged.reset();
+            LatencyWindow[] windows = LatencyWindow.values();
+            RouteLatency.WindowLatency[] windowLatencies = new RouteLatency.WindowLatency[windows.length];
+            int windowIdx = 0;
+            for (int i = 0; i < slots.length && windowIdx < windows.length; i++) {
+                Histogram slot = slots[Math.floorMod(currentSlot - i, slots.length)];
+                if (slot != null) {
+                    merged.add(slot);
+                }
+                if ((i + 1) * slotSeconds == windows[windowIdx].seconds) {
+                    windowLatencies[windowIdx] = new RouteLatency.WindowLatency(merged, sloP99Millis);
+                    windowIdx++;
+                }
+            }
+            this.latency = new RouteLatency(sloP99Millis, windowLatencies);
+        }
+    }
+}
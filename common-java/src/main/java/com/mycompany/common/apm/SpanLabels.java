@@ -0,0 +1,140 @@
+package com.mycompany.common.apm;
+
+import co.elastic.apm.api.ElasticApm;
+import co.elastic.apm.api.Span;
+
+import java.util.Arrays;
+
+/**
+ * Labels of the current span, written to Elastic APM in a single {@link #flush()}.
+ * <p>
+ * The sampling decision is checked once, when the labels are created: labels of an unsampled span, or without the
+ * agent, are ignored by the shared {@link #UNSAMPLED} instance, without allocation nor boxing. Labels that are
+ * expensive to compute should be guarded by {@link #isSampled()}.
+ * <pre>
+ * SpanLabels labels = SpanLabels.current();
+ * try {
+ *     labels.label("orderPrice", orderPrice);
+ *     if (labels.isSampled()) {
+ *         labels.label("orderPriceRange", getPriceRange(orderPrice));
+ *     }
+ *     ...
+ * } finally {
+ *     labels.flush();
+ * }
+ * </pre>
+ * Not thread safe, a request thread owns its labels.
+ */
+public final class SpanLabels {
+
+    public static final SpanLabels UNSAMPLED = new SpanLabels(null);
+
+    // the create order path sets up to 6 labels
+    static final int INITIAL_CAPACITY = 6;
+
+    static final byte STRING = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+
+    final Span span;
+    String[] keys;
+    byte[] types;
+    String[] strings;
+    // long values, raw bits of the double values, 1 or 0 for the booleans
+    long[] numbers;
+    int size;
+
+    SpanLabels(Span span) {
+        this.span = span;
+        if (span != null) {
+            this.keys = new String[INITIAL_CAPACITY];
+            this.types = new byte[INITIAL_CAPACITY];
+            this.strings = new String[INITIAL_CAPACITY];
+            this.numbers = new long[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * @return the labels of {@link ElasticApm#currentSpan()}
+     */
+    public static SpanLabels current() {
+        return of(ElasticApm.currentSpan());
+    }
+
+    public static SpanLabels of(Span span) {
+        return span != null && span.isSampled() ? new SpanLabels(span) : UNSAMPLED;
+    }
+
+    public boolean isSampled() {
+        return span != null;
+    }
+
+    public SpanLabels label(String key, String value) {
+        if (span != null) {
+            add(key, STRING).strings[size++] = value;
+        }
+        return this;
+    }
+
+    public SpanLabels label(String key, long value) {
+        if (span != null) {
+            add(key, LONG).numbers[size++] = value;
+        }
+        return this;
+    }
+
+    public SpanLabels label(String key, double value) {
+        if (span != null) {
+            add(key, DOUBLE).numbers[size++] = Double.doubleToRawLongBits(value);
+        }
+        return this;
+    }
+
+    public SpanLabels label(String key, boolean value) {
+        if (span != null) {
+            add(key, BOOLEAN).numbers[size++] = value ? 1 : 0;
+        }
+        return this;
+    }
+
+    SpanLabels add(String key, byte type) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            types = Arrays.copyOf(types, capacity);
+            strings = Arrays.copyOf(strings, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+        }
+        keys[size] = key;
+        types[size] = type;
+        return this;
+    }
+
+    /**
+     * Writes the pending labels to the span, the labels can be reused afterwards.
+     */
+    public void flush() {
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case STRING:
+                    span.setLabel(keys[i], strings[i]);
+                    strings[i] = null;
+                    break;
+                case LONG:
+                    span.setLabel(keys[i], numbers[i]);
+                    break;
+                case DOUBLE:
+                    span.setLabel(keys[i], Double.longBitsToDouble(numbers[i]));
+                    break;
+                default:
+                    span.setLabel(keys[i], numbers[i] != 0);
+            }
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,270 @@
+package com.mycompany.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous appender on a lock-free bounded ring buffer: the application threads only claim a slot with a
+ * compare-and-set, a single worker thread encodes and writes the events to the attached appenders (ECS file, console).
+ * Unlike logback's {@code AsyncAppender} and its {@code ArrayBlockingQueue}, logging threads never contend on a lock.
+ * <p>
+ * Overflow policy when the buffer is full, {@code overflowPolicy}:
+ * <ul>
+ *     <li>{@link OverflowPolicy#DISCARD} (default): the event is dropped and counted, unless its level is at least
+ *     {@code neverDiscardLevel} ({@code WARN} by default)</li>
+ *     <li>{@link OverflowPolicy#BLOCK}: the logging thread waits for a free slot</li>
+ * </ul>
+ * By default, the message is formatted by the worker thread, the {@code toString()} of the arguments is then off the
+ * request path: the arguments must not be modified once logged, or {@code formatOnCallerThread} must be enabled.
+ * <p>
+ * Metrics: {@code logback_async_discarded_events} and {@code logback_async_queue_depth}, tagged with the appender name.
+ * <pre>
+ * &lt;appender name="ASYNC" class="com.mycompany.common.logging.RingBufferAsyncAppender"&gt;
+ *     &lt;capacity&gt;8192&lt;/capacity&gt;
+ *     &lt;appender-ref ref="LOG_FILE" /&gt;
+ * &lt;/appender&gt;
+ * </pre>
+ */
+public class RingBufferAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+    public enum OverflowPolicy {
+        DISCARD,
+        BLOCK
+    }
+
+    static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long FULL_BUFFER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    final LongAdder discardedCounter = new LongAdder();
+
+    int capacity = 8192;
+    OverflowPolicy overflowPolicy = OverflowPolicy.DISCARD;
+    Level neverDiscardLevel = Level.WARN;
+    long maxFlushTimeMillis = 1000;
+    boolean formatOnCallerThread;
+
+    AtomicReferenceArray<ILoggingEvent> buffer;
+    int mask;
+    // next sequence to claim by the producers, next sequence to consume by the worker
+    final AtomicLong tail = new AtomicLong();
+    volatile long head;
+
+    final List<Meter> meters = new ArrayList<>();
+
+    volatile boolean workerParked;
+    Thread worker;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (appenders.iteratorForAppenders().hasNext() == false) {
+            addError("No appender attached to the appender [" + name + "]");
+            return;
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+
+        // logback may be reconfigured, the meters of the previous instance are removed on stop
+        meters.add(FunctionCounter.builder("logback_async_discarded_events", discardedCounter, LongAdder::doubleValue)
+                .tag("appender", String.valueOf(name))
+                .register(Metrics.globalRegistry));
+        meters.add(Gauge.builder("logback_async_queue_depth", this, RingBufferAsyncAppender::getQueueDepth)
+                .tag("appender", String.valueOf(name))
+                .register(Metrics.globalRegistry));
+
+        worker = new Thread(this::drainLoop, "logback-ring-buffer-" + name);
+        worker.setDaemon(true);
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (formatOnCallerThread) {
+            event.prepareForDeferredProcessing();
+        } else {
+            // the thread name and the MDC (trace.id...) belong to the calling thread, the message is formatted later
+            event.getThreadName();
+            event.getMDCPropertyMap();
+        }
+        boolean block = overflowPolicy == OverflowPolicy.BLOCK || event.getLevel().isGreaterOrEqual(neverDiscardLevel);
+        while (!offer(event)) {
+            if (!block || !isStarted()) {
+                discardedCounter.increment();
+                return;
+            }
+            LockSupport.parkNanos(FULL_BUFFER_PARK_NANOS);
+        }
+        if (workerParked) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Multi producers: claim a sequence with a compare-and-set, then publish the event in its slot.
+     */
+    boolean offer(ILoggingEvent event) {
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head >= buffer.length()) {
+                return false;
+            }
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                buffer.lazySet((int) sequence & mask, event);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Single consumer: a claimed slot may not be published yet, it is then retried on the next poll.
+     */
+    ILoggingEvent poll() {
+        long sequence = head;
+        int idx = (int) sequence & mask;
+        ILoggingEvent event = buffer.get(idx);
+        if (event == null) {
+            return null;
+        }
+        // free the slot before releasing it to the producers
+        buffer.lazySet(idx, null);
+        head = sequence + 1;
+        return event;
+    }
+
+    void drainLoop() {
+        while (isStarted()) {
+            ILoggingEvent event = poll();
+            if (event != null) {
+                appendToAppenders(event);
+                continue;
+            }
+            workerParked = true;
+            if (head == tail.get()) {
+                LockSupport.parkNanos(this, MAX_IDLE_PARK_NANOS);
+            }
+            workerParked = false;
+        }
+        // flush the remaining events on stop
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxFlushTimeMillis);
+        while (head != tail.get() && System.nanoTime() < deadlineNanos) {
+            ILoggingEvent event = poll();
+            if (event == null) {
+                Thread.yield(); // claimed but not yet published
+            } else {
+                appendToAppenders(event);
+            }
+        }
+    }
+
+    void appendToAppenders(ILoggingEvent event) {
+        try {
+            appenders.appendLoopOnAppenders(event);
+        } catch (RuntimeException e) {
+            addError("Failure to append the event", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        LockSupport.unpark(worker);
+        try {
+            worker.join(maxFlushTimeMillis + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        meters.forEach(Metrics.globalRegistry::remove);
+        meters.clear();
+        if (head != tail.get()) {
+            addWarn((tail.get() - head) + " events not flushed by the appender [" + name + "]");
+        }
+    }
+
+    public long getQueueDepth() {
+        return tail.get() - head;
+    }
+
+    public long getDiscardedCount() {
+        return discardedCounter.sum();
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public void setNeverDiscardLevel(Level neverDiscardLevel) {
+        this.neverDiscardLevel = neverDiscardLevel;
+    }
+
+    public void setMaxFlushTimeMillis(long maxFlushTimeMillis) {
+        this.maxFlushTimeMillis = maxFlushTimeMillis;
+    }
+
+    public void setFormatOnCallerThread(boolean formatOnCallerThread) {
+        this.formatOnCallerThread = formatOnCallerThread;
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
@@ -0,0 +1,115 @@
+package com.mycompany.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps 1 out of N of the events marked {@link #SAMPLED}, typically the logs of the success path, before the event is
+ * created and its message formatted. Events without the marker, failures, are never sampled.
+ * <p>
+ * The rate is resolved per logger from {@code sampleRates}, {@code <logger name or prefix>=<N>} separated by commas, the
+ * longest matching prefix wins, and cached per logger. {@code defaultSampleRate} applies to the other loggers, {@code 1}
+ * keeps all the events.
+ * <pre>
+ * &lt;turboFilter class="com.mycompany.common.logging.SamplingTurboFilter"&gt;
+ *     &lt;sampleRates&gt;com.mycompany.ecommerce.controller.OrderController=10&lt;/sampleRates&gt;
+ * &lt;/turboFilter&gt;
+ * </pre>
+ * Metric: {@code logback_sampled_out_events}.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    public static final Marker SAMPLED = MarkerFactory.getMarker("SAMPLED");
+
+    final LongAdder sampledOutCounter = new LongAdder();
+    final Map<String, Integer> sampleRatesByPrefix = new TreeMap<>();
+    final ConcurrentHashMap<String, Integer> sampleRateByLogger = new ConcurrentHashMap<>();
+
+    int defaultSampleRate = 1;
+    FunctionCounter meter;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || !isStarted() || !marker.contains(SAMPLED)) {
+            return FilterReply.NEUTRAL;
+        }
+        int sampleRate = sampleRateByLogger.computeIfAbsent(logger.getName(), this::resolveSampleRate);
+        if (sampleRate <= 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            return FilterReply.NEUTRAL;
+        }
+        sampledOutCounter.increment();
+        return FilterReply.DENY;
+    }
+
+    int resolveSampleRate(String loggerName) {
+        int sampleRate = defaultSampleRate;
+        int matchLength = -1;
+        for (Map.Entry<String, Integer> entry : sampleRatesByPrefix.entrySet()) {
+            String prefix = entry.getKey();
+            boolean matches = loggerName.equals(prefix) || loggerName.startsWith(prefix + ".");
+            if (matches && prefix.length() > matchLength) {
+                sampleRate = entry.getValue();
+                matchLength = prefix.length();
+            }
+        }
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+        meter = FunctionCounter.builder("logback_sampled_out_events", sampledOutCounter, LongAdder::doubleValue)
+                .register(Metrics.globalRegistry);
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (meter != null) {
+            Metrics.globalRegistry.remove(meter);
+        }
+    }
+
+    /**
+     * @param sampleRates {@code com.mycompany.ecommerce.controller=10,com.mycompany.antifraud=5}
+     */
+    public void setSampleRates(String sampleRates) {
+        sampleRatesByPrefix.clear();
+        sampleRateByLogger.clear();
+        for (String entry : sampleRates.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            String[] loggerAndRate = entry.split("=");
+            try {
+                if (loggerAndRate.length != 2) {
+                    throw new NumberFormatException();
+                }
+                sampleRatesByPrefix.put(loggerAndRate[0].trim(), Integer.parseInt(loggerAndRate[1].trim()));
+            } catch (NumberFormatException e) {
+                addError("Invalid sample rate '" + entry + "', expected <logger>=<N>");
+            }
+        }
+    }
+
+    public void setDefaultSampleRate(int defaultSampleRate) {
+        this.defaultSampleRate = defaultSampleRate;
+        sampleRateByLogger.clear();
+    }
+
+    public long getSampledOutCount() {
+        return sampledOutCounter.sum();
+    }
+}
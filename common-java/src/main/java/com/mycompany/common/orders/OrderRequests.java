@@ -0,0 +1,45 @@
+package com.mycompany.common.orders;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reading of the order requests shared by the blocking and the reactive frontends, so that both answer the same
+ * request with the same response and place the order for the same customer.
+ */
+public final class OrderRequests {
+
+    public static final String CUSTOMER_ID_HEADER = "x-customer-id";
+    /**
+     * All the orders sent without customer are placed, and rate limited, as this single customer
+     */
+    public static final String ANONYMOUS_CUSTOMER_ID = "anonymous";
+
+    private OrderRequests() {
+    }
+
+    /**
+     * @param customerIdHeader value of the {@code x-customer-id} header, {@code null} if absent
+     * @return the customer sent in the header, {@link #ANONYMOUS_CUSTOMER_ID} otherwise
+     */
+    public static String customerId(String customerIdHeader) {
+        return customerIdHeader == null || customerIdHeader.isEmpty() ? ANONYMOUS_CUSTOMER_ID : customerIdHeader;
+    }
+
+    /**
+     * Checked before pricing or reserving anything, a negative quantity would credit the customer
+     *
+     * @throws ResponseStatusException {@code 400 Bad Request} if the quantity of a line is missing or not positive
+     */
+    public static <T> void validateQuantities(List<T> lines, Function<T, Integer> quantity) {
+        for (T line : lines) {
+            Integer lineQuantity = quantity.apply(line);
+            if (lineQuantity == null || lineQuantity <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity must be positive, got " + lineQuantity);
+            }
+        }
+    }
+}
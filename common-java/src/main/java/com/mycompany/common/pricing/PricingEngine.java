@@ -0,0 +1,188 @@
+package com.mycompany.common.pricing;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.style.ToStringCreator;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Prices an order on {@code long} cents: line totals, volume discounts, tax of the shipping country and order total.
+ * <p>
+ * Rates are expressed in basis points (1/100th of a percent) and percentages of amounts are rounded half-even, so the
+ * results are exact and reproducible. An evaluation writes into an {@link OrderPricing} provided by the caller and
+ * allocates nothing: it can be reused from one order to the next.
+ * <p>
+ * Configuration: {@code pricing.taxRatesInBasisPoints=FR:2000,GB:2000}, {@code pricing.defaultTaxRateInBasisPoints},
+ * {@code pricing.volumeDiscount.minQuantity} and {@code pricing.volumeDiscount.rateInBasisPoints}.
+ * <p>
+ * Shared by the blocking and the reactive frontends, which price the orders the same way.
+ */
+@Component
+public class PricingEngine {
+
+    static final long BASIS_POINTS_PER_UNIT = 10_000;
+
+    // tax rates, linear lookup without boxing, there are a handful of shipping countries
+    final String[] taxCountryCodes;
+    final int[] taxRatesInBasisPoints;
+    final int defaultTaxRateInBasisPoints;
+    final int volumeDiscountMinQuantity;
+    final int volumeDiscountRateInBasisPoints;
+
+    public PricingEngine(@Value("${pricing.taxRatesInBasisPoints:}") String taxRatesInBasisPoints,
+                         @Value("${pricing.defaultTaxRateInBasisPoints:0}") int defaultTaxRateInBasisPoints,
+                         @Value("${pricing.volumeDiscount.minQuantity:10}") int volumeDiscountMinQuantity,
+                         @Value("${pricing.volumeDiscount.rateInBasisPoints:0}") int volumeDiscountRateInBasisPoints) {
+        String[] entries = taxRatesInBasisPoints.trim().isEmpty() ? new String[0] : taxRatesInBasisPoints.split(",");
+        this.taxCountryCodes = new String[entries.length];
+        this.taxRatesInBasisPoints = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].split(":");
+            if (entry.length != 2) {
+                throw new IllegalArgumentException("Invalid tax rate '" + entries[i] + "', expected <country code>:<basis points>");
+            }
+            this.taxCountryCodes[i] = entry[0].trim();
+            this.taxRatesInBasisPoints[i] = Integer.parseInt(entry[1].trim());
+        }
+        this.defaultTaxRateInBasisPoints = defaultTaxRateInBasisPoints;
+        this.volumeDiscountMinQuantity = volumeDiscountMinQuantity;
+        this.volumeDiscountRateInBasisPoints = volumeDiscountRateInBasisPoints;
+    }
+
+    /**
+     * @param unitPricesInCents see {@link #toCents(double)}
+     * @param lineCount         number of lines of the arrays to price
+     * @param result            overwritten, returned for convenience
+     * @throws ArithmeticException if an amount overflows
+     */
+    public OrderPricing price(long[] unitPricesInCents, int[] quantities, int lineCount, String shippingCountryCode, OrderPricing result) {
+        result.ensureCapacity(lineCount);
+        result.lineCount = lineCount;
+        long subtotal = 0;
+        long discount = 0;
+        for (int i = 0; i < lineCount; i++) {
+            long lineTotal = Math.multiplyExact(unitPricesInCents[i], quantities[i]);
+            long lineDiscount = quantities[i] >= volumeDiscountMinQuantity ? percentageHalfEven(lineTotal, volumeDiscountRateInBasisPoints) : 0;
+            result.lineTotalsInCents[i] = lineTotal;
+            result.lineDiscountsInCents[i] = lineDiscount;
+            subtotal = Math.addExact(subtotal, lineTotal);
+            discount += lineDiscount;
+        }
+        int taxRate = taxRateInBasisPoints(shippingCountryCode);
+        long tax = percentageHalfEven(subtotal - discount, taxRate);
+
+        result.subtotalInCents = subtotal;
+        result.discountInCents = discount;
+        result.taxRateInBasisPoints = taxRate;
+        result.taxInCents = tax;
+        result.totalInCents = Math.addExact(subtotal - discount, tax);
+        return result;
+    }
+
+    int taxRateInBasisPoints(String countryCode) {
+        for (int i = 0; i < taxCountryCodes.length; i++) {
+            if (taxCountryCodes[i].equals(countryCode)) {
+                return taxRatesInBasisPoints[i];
+            }
+        }
+        return defaultTaxRateInBasisPoints;
+    }
+
+    /**
+     * Prices are stored as {@code double} dollars with at most 2 decimals, {@code 4.35 * 100} is
+     * {@code 434.99999999999994}: round to the nearest cent.
+     */
+    public static long toCents(double price) {
+        return Math.round(price * 100);
+    }
+
+    /**
+     * @return {@code amount * rate / 10000}, rounded half-even
+     */
+    static long percentageHalfEven(long amount, int rateInBasisPoints) {
+        return divideHalfEven(Math.multiplyExact(amount, rateInBasisPoints), BASIS_POINTS_PER_UNIT);
+    }
+
+    /**
+     * Banker's rounding of {@code dividend / divisor} for a positive divisor, as
+     * {@link java.math.RoundingMode#HALF_EVEN} without {@link java.math.BigDecimal}.
+     */
+    static long divideHalfEven(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+        long twiceRemainder = Math.abs(remainder) * 2;
+        long sign = dividend < 0 ? -1 : 1;
+        if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+            return quotient + sign;
+        }
+        return quotient;
+    }
+
+    /**
+     * Mutable result of {@link #price(long[], int[], int, String, OrderPricing)}, reusable.
+     */
+    public static class OrderPricing {
+        long[] lineTotalsInCents = new long[8];
+        long[] lineDiscountsInCents = new long[8];
+        int lineCount;
+        long subtotalInCents;
+        long discountInCents;
+        int taxRateInBasisPoints;
+        long taxInCents;
+        long totalInCents;
+
+        void ensureCapacity(int lineCount) {
+            if (lineTotalsInCents.length < lineCount) {
+                lineTotalsInCents = Arrays.copyOf(lineTotalsInCents, lineCount);
+                lineDiscountsInCents = Arrays.copyOf(lineDiscountsInCents, lineCount);
+            }
+        }
+
+        public long getLineTotalInCents(int line) {
+            return lineTotalsInCents[line];
+        }
+
+        public long getLineDiscountInCents(int line) {
+            return lineDiscountsInCents[line];
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        public long getSubtotalInCents() {
+            return subtotalInCents;
+        }
+
+        public long getDiscountInCents() {
+            return discountInCents;
+        }
+
+        public int getTaxRateInBasisPoints() {
+            return taxRateInBasisPoints;
+        }
+
+        public long getTaxInCents() {
+            return taxInCents;
+        }
+
+        public long getTotalInCents() {
+            return totalInCents;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringCreator(this)
+                    .append("subtotalInCents", subtotalInCents)
+                    .append("discountInCents", discountInCents)
+                    .append("taxRateInBasisPoints", taxRateInBasisPoints)
+                    .append("taxInCents", taxInCents)
+                    .append("totalInCents", totalInCents)
+                    .toString();
+        }
+    }
+}
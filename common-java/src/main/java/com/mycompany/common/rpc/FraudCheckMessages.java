@@ -0,0 +1,150 @@
+package com.mycompany.common.rpc;
+
+import com.google.common.net.InetAddresses;
+import io.netty.buffer.ByteBuf;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Fixed layout binary messages of the fraud check RPC, written and read by the frontend client and the anti-fraud
+ * server. All the numbers are big-endian, each frame is prefixed by its length in bytes, excluding the prefix:
+ * <pre>
+ * request:  int length | byte type = 1 | long request id | long order price in cents | 2 ASCII bytes shipping country
+ *           | byte address length (4 or 16) | customer IPv4 or IPv6 address
+ * response: int length | byte type = 2 | long request id | byte result (ACCEPTED, REJECTED or ERROR)
+ * </pre>
+ * The request id correlates a response with its request, the responses of a connection come back in any order.
+ */
+public final class FraudCheckMessages {
+
+    public static final byte ACCEPTED = 0;
+    public static final byte REJECTED = 1;
+    /**
+     * The anti-fraud service could not check the order
+     */
+    public static final byte ERROR = 2;
+
+    public static final byte CHECK_ORDER_REQUEST = 1;
+    public static final byte CHECK_ORDER_RESPONSE = 2;
+
+    public static final int LENGTH_FIELD_LENGTH = 4;
+    public static final int MAX_FRAME_LENGTH = 64;
+    public static final int RESPONSE_FRAME_LENGTH = LENGTH_FIELD_LENGTH + 1 + 8 + 1;
+    /**
+     * Type, request id, order price, shipping country and address length: the bytes preceding the address
+     */
+    static final int CHECK_ORDER_REQUEST_HEADER_LENGTH = 1 + 8 + 8 + 2 + 1;
+
+    /**
+     * The country codes are decoded once, indexed by their 2 ASCII bytes
+     */
+    static final String[] COUNTRY_CODES = new String[128 * 128];
+
+    private FraudCheckMessages() {
+    }
+
+    /**
+     * @return {@code true} if the country can be sent over the RPC, a 2 letters ISO 3166 code
+     */
+    public static boolean isCountryCode(String shippingCountry) {
+        return shippingCountry != null && shippingCountry.length() == 2
+                && shippingCountry.charAt(0) < 128 && shippingCountry.charAt(1) < 128;
+    }
+
+    /**
+     * Never resolves a host name
+     *
+     * @return the 4 or 16 bytes of an IPv4 or IPv6 literal, {@code null} if the address is not a literal
+     */
+    public static byte[] ipAddressBytes(String ipAddress) {
+        if (ipAddress == null || !InetAddresses.isInetAddress(ipAddress)) {
+            return null;
+        }
+        return InetAddresses.forString(ipAddress).getAddress();
+    }
+
+    public static void writeCheckOrderRequest(ByteBuf frame, long requestId, long orderPriceInCents, String shippingCountry, byte[] customerIpAddress) {
+        frame.writeInt(checkOrderRequestFrameLength(customerIpAddress) - LENGTH_FIELD_LENGTH);
+        frame.writeByte(CHECK_ORDER_REQUEST);
+        frame.writeLong(requestId);
+        frame.writeLong(orderPriceInCents);
+        frame.writeByte(shippingCountry.charAt(0));
+        frame.writeByte(shippingCountry.charAt(1));
+        frame.writeByte(customerIpAddress.length);
+        frame.writeBytes(customerIpAddress);
+    }
+
+    public static int checkOrderRequestFrameLength(byte[] customerIpAddress) {
+        return LENGTH_FIELD_LENGTH + CHECK_ORDER_REQUEST_HEADER_LENGTH + customerIpAddress.length;
+    }
+
+    /**
+     * @param frame a request frame, without its length prefix
+     * @return the decoded request, the frame is fully read
+     * @throws IllegalArgumentException if the frame is not a valid check order request
+     */
+    public static CheckOrderRequest readCheckOrderRequest(ByteBuf frame) {
+        if (frame.readableBytes() < CHECK_ORDER_REQUEST_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Truncated check order request of " + frame.readableBytes() + " bytes");
+        }
+        byte type = frame.readByte();
+        if (type != CHECK_ORDER_REQUEST) {
+            throw new IllegalArgumentException("Unexpected message type " + type);
+        }
+        long requestId = frame.readLong();
+        long orderPriceInCents = frame.readLong();
+        String shippingCountry = countryCode(frame.readByte(), frame.readByte());
+        int ipAddressLength = frame.readByte();
+        // checked before allocating, the rest of the frame must be the address
+        if (ipAddressLength != 4 && ipAddressLength != 16) {
+            throw new IllegalArgumentException("Invalid IP address length " + ipAddressLength);
+        }
+        if (frame.readableBytes() != ipAddressLength) {
+            throw new IllegalArgumentException("Expected an IP address of " + ipAddressLength + " bytes, " + frame.readableBytes() + " bytes left in the frame");
+        }
+        byte[] ipAddress = new byte[ipAddressLength];
+        frame.readBytes(ipAddress);
+        try {
+            // no name resolution for an address
+            return new CheckOrderRequest(requestId, orderPriceInCents, shippingCountry, InetAddresses.toAddrString(InetAddress.getByAddress(ipAddress)));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Invalid IP address of " + ipAddress.length + " bytes", e);
+        }
+    }
+
+    static String countryCode(byte first, byte second) {
+        if (first < 0 || second < 0) {
+            throw new IllegalArgumentException("Non ASCII country code");
+        }
+        int idx = first * 128 + second;
+        String countryCode = COUNTRY_CODES[idx];
+        if (countryCode == null) {
+            // racy but idempotent
+            countryCode = new String(new char[]{(char) first, (char) second});
+            COUNTRY_CODES[idx] = countryCode;
+        }
+        return countryCode;
+    }
+
+    public static void writeCheckOrderResponse(ByteBuf frame, long requestId, byte result) {
+        frame.writeInt(RESPONSE_FRAME_LENGTH - LENGTH_FIELD_LENGTH);
+        frame.writeByte(CHECK_ORDER_RESPONSE);
+        frame.writeLong(requestId);
+        frame.writeByte(result);
+    }
+
+    public static class CheckOrderRequest {
+        public final long requestId;
+        public final long orderPriceInCents;
+        public final String shippingCountry;
+        public final String customerIpAddress;
+
+        public CheckOrderRequest(long requestId, long orderPriceInCents, String shippingCountry, String customerIpAddress) {
+            this.requestId = requestId;
+            this.orderPriceInCents = orderPriceInCents;
+            this.shippingCountry = shippingCountry;
+            this.customerIpAddress = customerIpAddress;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.mycompany.common.threads;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads execution mode of the frontend and of the anti-fraud service, see their {@code virtual-threads}
+ * Spring profile and {@code run-frontend-virtual-threads.sh} / {@code run-anti-fraud-virtual-threads.sh}.
+ * <p>
+ * Tomcat requests, and so their blocking calls (JDBC, anti-fraud calls of the frontend, sleeps of the fraud checks),
+ * and the {@code @Async} and MVC async tasks run each on a new virtual thread instead of a pooled platform thread. Requires a JDK 21+ at
+ * runtime, the virtual threads API is looked up by reflection so that the application still builds for Java 8.
+ * <p>
+ * A virtual thread that blocks while holding a monitor ({@code synchronized}) pins its carrier thread, pinning is
+ * recorded by the JFR event {@code jdk.VirtualThreadPinned}, see {@code PinnedThreadsReport} in the monitor.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("threads.virtual.enabled")
+public class VirtualThreadsConfiguration {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService virtualThreadsRequestExecutor() {
+        ExecutorService executor = newVirtualThreadPerTaskExecutor("http-virtual-");
+        logger.info("Tomcat requests and async tasks run on virtual threads (Java {})", System.getProperty("java.version"));
+        return executor;
+    }
+
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer(ExecutorService virtualThreadsRequestExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadsRequestExecutor);
+    }
+
+    /**
+     * Replaces the {@code ThreadPoolTaskExecutor} of Spring Boot for {@code @Async} and the MVC async requests.
+     */
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(newVirtualThreadPerTaskExecutor("task-virtual-"));
+    }
+
+    /**
+     * {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())}
+     *
+     * @throws IllegalStateException if the JVM does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new IllegalStateException("threads.virtual.enabled requires a JDK 21+, current JDK is " + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failure to create the virtual threads executor", e);
+        }
+    }
+}
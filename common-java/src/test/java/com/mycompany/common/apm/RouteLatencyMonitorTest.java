@@ -0,0 +1,53 @@
+package com.mycompany.common.apm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class RouteLatencyMonitorTest {
+
+    RouteLatencyMonitor routeLatencyMonitor = new RouteLatencyMonitor(5, 500, "OrderController.create:50");
+
+    @Test
+    public void windows_slide_with_the_rotations() {
+        for (int i = 1; i <= 100; i++) {
+            routeLatencyMonitor.record("ProductController.getProduct", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        routeLatencyMonitor.rotate();
+
+        RouteLatency latency = routeLatencyMonitor.getLatency("ProductController.getProduct");
+        assertThat(latency.getWindow(LatencyWindow.TEN_SECONDS).getCount()).isEqualTo(100);
+        assertThat(latency.getWindow(LatencyWindow.TEN_SECONDS).getP50Millis()).isCloseTo(50, within(1d));
+        assertThat(latency.getWindow(LatencyWindow.TEN_SECONDS).getP99Millis()).isCloseTo(99, within(1d));
+        assertThat(latency.getWindow(LatencyWindow.FIVE_MINUTES).getCount()).isEqualTo(100);
+
+        // 10s later, the values have left the 10s window only
+        routeLatencyMonitor.rotate();
+        routeLatencyMonitor.rotate();
+        latency = routeLatencyMonitor.getLatency("ProductController.getProduct");
+        assertThat(latency.getWindow(LatencyWindow.TEN_SECONDS).getCount()).isZero();
+        assertThat(latency.getWindow(LatencyWindow.ONE_MINUTE).getCount()).isEqualTo(100);
+
+        for (int i = 0; i < 60; i++) {
+            routeLatencyMonitor.rotate();
+        }
+        latency = routeLatencyMonitor.getLatency("ProductController.getProduct");
+        assertThat(latency.getWindow(LatencyWindow.FIVE_MINUTES).getCount()).isZero();
+    }
+
+    @Test
+    public void slo_breaches_are_flagged_per_route() {
+        for (int i = 0; i < 100; i++) {
+            routeLatencyMonitor.record("OrderController.create", TimeUnit.MILLISECONDS.toNanos(100));
+            routeLatencyMonitor.record("ProductController.getProduct", TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        routeLatencyMonitor.rotate();
+
+        assertThat(routeLatencyMonitor.isSloBreached("OrderController.create", LatencyWindow.TEN_SECONDS)).isTrue();
+        assertThat(routeLatencyMonitor.isSloBreached("ProductController.getProduct", LatencyWindow.TEN_SECONDS)).isFalse();
+        assertThat(routeLatencyMonitor.isSloBreached("CartController.get", LatencyWindow.TEN_SECONDS)).isFalse();
+    }
+}
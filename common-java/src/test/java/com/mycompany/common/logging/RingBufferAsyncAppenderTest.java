@@ -0,0 +1,104 @@
+package com.mycompany.common.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RingBufferAsyncAppenderTest {
+
+    LoggerContext loggerContext = new LoggerContext();
+    Logger logger = loggerContext.getLogger("test");
+    CountDownLatch writeAllowed = new CountDownLatch(1);
+    List<String> messages = new CopyOnWriteArrayList<>();
+    RingBufferAsyncAppender appender = new RingBufferAsyncAppender();
+
+    void startAppender(int capacity) {
+        AppenderBase<ILoggingEvent> slowAppender = new AppenderBase<ILoggingEvent>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                try {
+                    writeAllowed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                messages.add(event.getFormattedMessage());
+            }
+        };
+        slowAppender.setContext(loggerContext);
+        slowAppender.start();
+        appender.setContext(loggerContext);
+        appender.setName("test");
+        appender.setCapacity(capacity);
+        appender.addAppender(slowAppender);
+        appender.start();
+    }
+
+    @AfterEach
+    public void stopAppender() {
+        writeAllowed.countDown();
+        appender.stop();
+    }
+
+    @Test
+    public void events_are_appended_in_order() {
+        writeAllowed.countDown();
+        appender.setOverflowPolicy(RingBufferAsyncAppender.OverflowPolicy.BLOCK);
+        startAppender(4);
+        for (int i = 0; i < 100; i++) {
+            appender.doAppend(event(Level.INFO, "message " + i));
+        }
+        appender.stop();
+
+        assertThat(messages).hasSize(100);
+        assertThat(messages.get(0)).isEqualTo("message 0");
+        assertThat(messages.get(99)).isEqualTo("message 99");
+        assertThat(appender.getDiscardedCount()).isZero();
+    }
+
+    @Test
+    public void info_events_are_discarded_when_the_buffer_is_full() {
+        startAppender(4);
+        for (int i = 0; i < 10; i++) {
+            appender.doAppend(event(Level.INFO, "message " + i));
+        }
+        // the worker holds at most one event, the buffer the next 4
+        assertThat(appender.getDiscardedCount()).isBetween(5L, 6L);
+
+        writeAllowed.countDown();
+        appender.stop();
+        assertThat(messages).hasSize(10 - (int) appender.getDiscardedCount());
+    }
+
+    @Test
+    public void warn_events_wait_for_a_free_slot() throws InterruptedException {
+        startAppender(2);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                appender.doAppend(event(Level.WARN, "warning " + i));
+            }
+        });
+        producer.start();
+        writeAllowed.countDown();
+        producer.join(5000);
+        appender.stop();
+
+        assertThat(appender.getDiscardedCount()).isZero();
+        assertThat(messages.stream().filter(message -> message.startsWith("warning")).collect(Collectors.toList())).hasSize(10);
+    }
+
+    LoggingEvent event(Level level, String message) {
+        return new LoggingEvent(Logger.class.getName(), logger, level, message, null, null);
+    }
+}
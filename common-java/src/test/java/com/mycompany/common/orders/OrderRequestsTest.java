@@ -0,0 +1,32 @@
+package com.mycompany.common.orders;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OrderRequestsTest {
+
+    @Test
+    public void missing_or_non_positive_quantities_are_bad_requests() {
+        for (Integer quantity : Arrays.asList(null, 0, -5)) {
+            assertThatThrownBy(() -> OrderRequests.validateQuantities(Arrays.asList(2, quantity), Function.identity()))
+                    .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+        OrderRequests.validateQuantities(Arrays.asList(1, 2), Function.identity());
+        OrderRequests.validateQuantities(Collections.<Integer>emptyList(), Function.identity());
+    }
+
+    @Test
+    public void customer_id_is_read_from_the_header() {
+        assertThat(OrderRequests.customerId("customer-42")).isEqualTo("customer-42");
+        assertThat(OrderRequests.customerId(null)).isEqualTo(OrderRequests.ANONYMOUS_CUSTOMER_ID);
+        assertThat(OrderRequests.customerId("")).isEqualTo(OrderRequests.ANONYMOUS_CUSTOMER_ID);
+    }
+}
@@ -0,0 +1,36 @@
+package com.mycompany.common.pricing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PricingEngineTest {
+
+    PricingEngine pricingEngine = new PricingEngine("FR:2000, GB:2000,US:725", 0, 10, 500);
+
+    @Test
+    public void givenHalfCents_whenDivideHalfEven_thenRoundToEven() {
+        assertThat(PricingEngine.divideHalfEven(25, 10)).isEqualTo(2);
+        assertThat(PricingEngine.divideHalfEven(35, 10)).isEqualTo(4);
+        assertThat(PricingEngine.divideHalfEven(36, 10)).isEqualTo(4);
+        assertThat(PricingEngine.divideHalfEven(-25, 10)).isEqualTo(-2);
+        assertThat(PricingEngine.divideHalfEven(-35, 10)).isEqualTo(-4);
+        assertThat(PricingEngine.toCents(4.35)).isEqualTo(435);
+    }
+
+    @Test
+    public void givenOrder_whenPrice_thenDiscountAndTaxAreApplied() {
+        PricingEngine.OrderPricing pricing = pricingEngine.price(new long[]{30000, 435}, new int[]{1, 10}, 2, "US", new PricingEngine.OrderPricing());
+
+        assertThat(pricing.getSubtotalInCents()).isEqualTo(34350);
+        // 5% of 4350 = 217.5 rounded to the even 218
+        assertThat(pricing.getLineDiscountInCents(1)).isEqualTo(218);
+        // 7.25% of 34132 = 2474.57
+        assertThat(pricing.getTaxInCents()).isEqualTo(2475);
+        assertThat(pricing.getTotalInCents()).isEqualTo(34350 - 218 + 2475);
+
+        pricingEngine.price(new long[]{30000}, new int[]{1}, 1, "XX", pricing);
+        assertThat(pricing.getLineCount()).isEqualTo(1);
+        assertThat(pricing.getTotalInCents()).isEqualTo(30000);
+    }
+}
@@ -0,0 +1,118 @@
+package com.mycompany.common.rpc;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FraudCheckMessagesTest {
+
+    @Test
+    public void only_literal_addresses_and_country_codes_are_encoded() {
+        assertThat(FraudCheckMessages.ipAddressBytes("192.168.0.1")).containsExactly(192, 168, 0, 1);
+        assertThat(FraudCheckMessages.ipAddressBytes("0:0:0:0:0:0:0:1")).hasSize(16);
+        assertThat(FraudCheckMessages.ipAddressBytes("localhost")).isNull();
+        assertThat(FraudCheckMessages.ipAddressBytes(null)).isNull();
+        assertThat(FraudCheckMessages.isCountryCode("GB")).isTrue();
+        assertThat(FraudCheckMessages.isCountryCode("GBR")).isFalse();
+        assertThat(FraudCheckMessages.isCountryCode(null)).isFalse();
+    }
+
+    @Test
+    public void written_request_is_read_back() {
+        ByteBuf frame = requestFrame("10.0.0.1");
+        assertThat(frame.readableBytes()).isEqualTo(FraudCheckMessages.checkOrderRequestFrameLength(new byte[4]));
+        assertThat(frame.readInt()).isEqualTo(frame.readableBytes());
+
+        FraudCheckMessages.CheckOrderRequest request = FraudCheckMessages.readCheckOrderRequest(frame);
+
+        assertThat(request.requestId).isEqualTo(42);
+        assertThat(request.orderPriceInCents).isEqualTo(12_345);
+        assertThat(request.shippingCountry).isEqualTo("FR");
+        assertThat(request.customerIpAddress).isEqualTo("10.0.0.1");
+        assertThat(frame.isReadable()).isFalse();
+    }
+
+    @Test
+    public void ipv6_address_is_read_back_in_its_canonical_form() {
+        ByteBuf frame = requestFrame("0:0:0:0:0:0:0:1");
+        frame.skipBytes(FraudCheckMessages.LENGTH_FIELD_LENGTH);
+
+        assertThat(FraudCheckMessages.readCheckOrderRequest(frame).customerIpAddress).isEqualTo("::1");
+    }
+
+    @Test
+    public void written_response_has_the_declared_length() {
+        ByteBuf frame = Unpooled.buffer();
+        FraudCheckMessages.writeCheckOrderResponse(frame, 42, FraudCheckMessages.REJECTED);
+
+        assertThat(frame.readableBytes()).isEqualTo(FraudCheckMessages.RESPONSE_FRAME_LENGTH);
+        assertThat(frame.readInt()).isEqualTo(frame.readableBytes());
+        assertThat(frame.readByte()).isEqualTo(FraudCheckMessages.CHECK_ORDER_RESPONSE);
+        assertThat(frame.readLong()).isEqualTo(42);
+        assertThat(frame.readByte()).isEqualTo(FraudCheckMessages.REJECTED);
+    }
+
+    @Test
+    public void unexpected_message_type_is_rejected() {
+        ByteBuf frame = requestFrame("10.0.0.1");
+        frame.skipBytes(FraudCheckMessages.LENGTH_FIELD_LENGTH);
+        frame.setByte(frame.readerIndex(), FraudCheckMessages.CHECK_ORDER_RESPONSE);
+
+        assertThatThrownBy(() -> FraudCheckMessages.readCheckOrderRequest(frame)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void truncated_request_is_rejected() {
+        ByteBuf frame = requestFrame("10.0.0.1");
+        frame.skipBytes(FraudCheckMessages.LENGTH_FIELD_LENGTH);
+
+        assertThatThrownBy(() -> FraudCheckMessages.readCheckOrderRequest(frame.slice(frame.readerIndex(), 10)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FraudCheckMessages.readCheckOrderRequest(frame.slice(frame.readerIndex(), frame.readableBytes() - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void invalid_address_length_is_rejected_before_allocating() {
+        for (int length : new int[]{-1, 0, 5, 127}) {
+            ByteBuf frame = Unpooled.buffer()
+                    .writeByte(FraudCheckMessages.CHECK_ORDER_REQUEST)
+                    .writeLong(42)
+                    .writeLong(12_345)
+                    .writeByte('F')
+                    .writeByte('R')
+                    .writeByte(length)
+                    .writeZero(4);
+
+            assertThatThrownBy(() -> FraudCheckMessages.readCheckOrderRequest(frame))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("length " + length);
+        }
+    }
+
+    @Test
+    public void trailing_bytes_are_rejected() {
+        ByteBuf frame = requestFrame("10.0.0.1").writeByte(0);
+        frame.skipBytes(FraudCheckMessages.LENGTH_FIELD_LENGTH);
+
+        assertThatThrownBy(() -> FraudCheckMessages.readCheckOrderRequest(frame)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void non_ascii_country_code_is_rejected() {
+        ByteBuf frame = requestFrame("10.0.0.1");
+        frame.skipBytes(FraudCheckMessages.LENGTH_FIELD_LENGTH);
+        frame.setByte(frame.readerIndex() + 1 + 8 + 8, 0xC3);
+
+        assertThatThrownBy(() -> FraudCheckMessages.readCheckOrderRequest(frame)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static ByteBuf requestFrame(String customerIpAddress) {
+        ByteBuf frame = Unpooled.buffer();
+        FraudCheckMessages.writeCheckOrderRequest(frame, 42, 12_345, "FR", FraudCheckMessages.ipAddressBytes(customerIpAddress));
+        return frame;
+    }
+}
@@ -0,0 +1,39 @@
+package com.mycompany.common.threads;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VirtualThreadsConfigurationTest {
+
+    static boolean virtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    @Test
+    public void givenJvm_whenNewVirtualThreadPerTaskExecutor_thenVirtualThreadsOrExplicitFailure() throws Exception {
+        if (!virtualThreadsSupported()) {
+            assertThatThrownBy(() -> VirtualThreadsConfiguration.newVirtualThreadPerTaskExecutor("test-"))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("JDK 21+");
+            return;
+        }
+        ExecutorService executor = VirtualThreadsConfiguration.newVirtualThreadPerTaskExecutor("test-");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            assertThat(thread.getName()).isEqualTo("test-0");
+            assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
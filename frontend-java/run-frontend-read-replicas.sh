@@ -0,0 +1,46 @@
+#!/usr/bin/env bash
+set -x
+
+export ELASTIC_AGENT_VERSION=1.23.0
+
+##########################################################################################
+# PARENT DIRECTORY
+# code copied from Tomcat's `catalina.sh`
+##########################################################################################
+# resolve links - $0 may be a softlink
+PRG="$0"
+
+while [ -h "$PRG" ]; do
+  ls=`ls -ld "$PRG"`
+  link=`expr "$ls" : '.*-> \(.*\)$'`
+  if expr "$link" : '/.*' > /dev/null; then
+    PRG="$link"
+  else
+    PRG=`dirname "$PRG"`/"$link"
+  fi
+done
+
+# Get standard environment variables
+PRGDIR=`dirname "$PRG"`
+
+##########################################################################################
+# DOWNLOAD ELASTIC_AGENT AGENT
+##########################################################################################
+mkdir -p $PRGDIR/target/agent
+cp  $PRGDIR/etc/elastic-agent/elasticapm.properties $PRGDIR/target/agent
+$PRGDIR/../mvnw dependency:copy \
+      -Dartifact=co.elastic.apm:elastic-apm-agent:$ELASTIC_AGENT_VERSION \
+      -DoutputDirectory=$PRGDIR/target/agent/
+
+##########################################################################################
+# READ REPLICAS: read only transactions on the replica(s) of datasource.replica.urls
+# by default the primary stands in for the replica, to observe the lag (datasource_replica_lag_millis) and the
+# fallback to the primary, start a streaming replica of the primary on port 5433 and run with
+#   -Ddatasource.replica.urls=jdbc:postgresql://localhost:5433/test
+##########################################################################################
+$PRGDIR/../mvnw -f $PRGDIR/../common-java/pom.xml -DskipTests install
+$PRGDIR/../mvnw -DskipTests package
+
+java -javaagent:target/agent/elastic-apm-agent-$ELASTIC_AGENT_VERSION.jar \
+     -Dspring.profiles.active=read-replicas \
+     -jar target/frontend-1.0-SNAPSHOT.jar
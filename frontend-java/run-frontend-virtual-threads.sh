@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+set -x
+
+export ELASTIC_AGENT_VERSION=1.23.0
+
+##########################################################################################
+# PARENT DIRECTORY
+# code copied from Tomcat's `catalina.sh`
+##########################################################################################
+# resolve links - $0 may be a softlink
+PRG="$0"
+
+while [ -h "$PRG" ]; do
+  ls=`ls -ld "$PRG"`
+  link=`expr "$ls" : '.*-> \(.*\)$'`
+  if expr "$link" : '/.*' > /dev/null; then
+    PRG="$link"
+  else
+    PRG=`dirname "$PRG"`/"$link"
+  fi
+done
+
+# Get standard environment variables
+PRGDIR=`dirname "$PRG"`
+
+##########################################################################################
+# DOWNLOAD ELASTIC_AGENT AGENT
+##########################################################################################
+mkdir -p $PRGDIR/target/agent
+cp  $PRGDIR/etc/elastic-agent/elasticapm.properties $PRGDIR/target/agent
+$PRGDIR/../mvnw dependency:copy \
+      -Dartifact=co.elastic.apm:elastic-apm-agent:$ELASTIC_AGENT_VERSION \
+      -DoutputDirectory=$PRGDIR/target/agent/
+
+##########################################################################################
+# VIRTUAL THREADS: Tomcat requests and async tasks on virtual threads
+# requires a JDK 21+, the carrier thread pinnings are recorded in target/virtual-threads.jfr
+# (see PinnedThreadsReport in monitor-java)
+# the ByteBuddy version of Hibernate only supports the JDK 21 class files in experimental mode
+##########################################################################################
+$PRGDIR/../mvnw -f $PRGDIR/../common-java/pom.xml -DskipTests install
+$PRGDIR/../mvnw -DskipTests package
+
+java -javaagent:target/agent/elastic-apm-agent-$ELASTIC_AGENT_VERSION.jar \
+     -Dspring.profiles.active=virtual-threads \
+     -Dnet.bytebuddy.experimental=true \
+     -XX:StartFlightRecording:filename=target/virtual-threads.jfr,jdk.VirtualThreadPinned#threshold=1ms \
+     -jar target/frontend-1.0-SNAPSHOT.jar
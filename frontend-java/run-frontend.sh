@@ -32,6 +32,7 @@ $PRGDIR/../mvnw dependency:copy \
       -Dartifact=co.elastic.apm:elastic-apm-agent:$ELASTIC_AGENT_VERSION \
       -DoutputDirectory=$PRGDIR/target/agent/
 
+$PRGDIR/../mvnw -f $PRGDIR/../common-java/pom.xml -DskipTests install
 $PRGDIR/../mvnw -DskipTests package
 
 java -javaagent:target/agent/elastic-apm-agent-$ELASTIC_AGENT_VERSION.jar \
@@ -2,23 +2,46 @@ package com.mycompany.ecommerce;
 
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.datatype.hibernate5.Hibernate5Module;
+import com.mycompany.common.apm.LatencyEndpoint;
+import com.mycompany.common.apm.LatencyRecordingInterceptor;
+import com.mycompany.common.apm.RouteLatencyMonitor;
+import com.mycompany.common.pricing.PricingEngine;
+import com.mycompany.common.threads.VirtualThreadsConfiguration;
 import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.ProductImportService;
 import com.mycompany.ecommerce.service.ProductService;
+import com.mycompany.ecommerce.web.ReactorNettyClientHttpRequestFactory;
 import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.web.client.RestTemplate;
+import reactor.netty.http.HttpProtocol;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 
 @SpringBootApplication
+// components of the `common` module, outside of the scanned packages
+@Import({PricingEngine.class, VirtualThreadsConfiguration.class, RouteLatencyMonitor.class, LatencyEndpoint.class, LatencyRecordingInterceptor.class})
 public class EcommerceApplication {
 
+    static final Duration ANTI_FRAUD_READ_TIMEOUT = Duration.of(1200, ChronoUnit.MILLIS);
+
     public static void main(String[] args) {
         SpringApplication.run(EcommerceApplication.class, args);
     }
@@ -26,20 +49,73 @@ public class EcommerceApplication {
     @Bean
     CommandLineRunner runner(ProductService productService) {
         return args -> {
-            productService.save(new Product(1L, "TV Set", 300.00, "http://placehold.it/200x100"));
-            productService.save(new Product(2L, "Game Console", 200.00, "http://placehold.it/200x100"));
-            productService.save(new Product(3L, "Sofa", 100.00, "http://placehold.it/200x100"));
-            productService.save(new Product(4L, "Icecream", 5.00, "http://placehold.it/200x100"));
-            productService.save(new Product(5L, "Beer", 3.00, "http://placehold.it/200x100"));
-            productService.save(new Product(6L, "Phone", 500.00, "http://placehold.it/200x100"));
-            productService.save(new Product(7L, "Watch", 30.00, "http://placehold.it/200x100"));
-            productService.save(new Product(8L, "USB Cable", 4.00, "http://placehold.it/200x100"));
+            productService.saveAll(Arrays.asList(
+                    new Product(1L, "TV Set", 300.00, "http://placehold.it/200x100"),
+                    new Product(2L, "Game Console", 200.00, "http://placehold.it/200x100"),
+                    new Product(3L, "Sofa", 100.00, "http://placehold.it/200x100"),
+                    new Product(4L, "Icecream", 5.00, "http://placehold.it/200x100"),
+                    new Product(5L, "Beer", 3.00, "http://placehold.it/200x100"),
+                    new Product(6L, "Phone", 500.00, "http://placehold.it/200x100"),
+                    new Product(7L, "Watch", 30.00, "http://placehold.it/200x100"),
+                    new Product(8L, "USB Cable", 4.00, "http://placehold.it/200x100")));
+        };
+    }
+
+    /**
+     * Bulk import of products from the command line:
+     * {@code java -jar frontend.jar --spring.main.web-application-type=none --import-products=products.csv[.gz]}
+     */
+    @Bean
+    ApplicationRunner productImportRunner(ProductImportService productImportService) {
+        return args -> {
+            if (!args.containsOption("import-products")) {
+                return;
+            }
+            for (String fileName : args.getOptionValues("import-products")) {
+                String format = fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - ".gz".length()) : fileName;
+                try (InputStream in = fileName.endsWith(".gz") ?
+                        new GZIPInputStream(new FileInputStream(fileName), 64 * 1024) :
+                        new FileInputStream(fileName)) {
+                    ProductImportService.Format importFormat = ProductImportService.Format.of(format);
+                    if (importFormat == null) {
+                        throw new IllegalArgumentException("Unsupported file format " + fileName + ", expected .csv, .ndjson or .jsonl");
+                    }
+                    productImportService.importProducts(in, importFormat);
+                }
+            }
         };
     }
 
+    /**
+     * Training run of the AppCDS archive (see the `fast-startup` maven profile): exit as soon as the application is
+     * ready so that the JVM dumps the classes loaded during the startup.
+     */
+    @Bean
+    @ConditionalOnProperty("startup.trainingRun")
+    ApplicationListener<ApplicationReadyEvent> startupTrainingRunExit() {
+        return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+
+    /**
+     * HTTP/1.1 with {@code HttpURLConnection} by default, see {@code antiFraudService.protocol}
+     */
+    @Bean
+    public RestTemplate getRestTemplate(ObjectProvider<ReactorNettyClientHttpRequestFactory> h2cRequestFactory) {
+        ReactorNettyClientHttpRequestFactory requestFactory = h2cRequestFactory.getIfAvailable();
+        if (requestFactory != null) {
+            return new RestTemplateBuilder().requestFactory(() -> requestFactory).build();
+        }
+        return new RestTemplateBuilder().setReadTimeout(ANTI_FRAUD_READ_TIMEOUT).build();
+    }
+
+    /**
+     * HTTP/2 cleartext: the concurrent calls to the anti-fraud service are multiplexed over
+     * {@code antiFraudService.maxConnections} connections
+     */
     @Bean
-    public RestTemplate getRestTemplate() {
-        return new RestTemplateBuilder().setReadTimeout(Duration.of(1200, ChronoUnit.MILLIS)).build();
+    @ConditionalOnProperty(name = "antiFraudService.protocol", havingValue = "H2C")
+    ReactorNettyClientHttpRequestFactory h2cRequestFactory(@Value("${antiFraudService.maxConnections:2}") int maxConnections) {
+        return new ReactorNettyClientHttpRequestFactory("anti-fraud", HttpProtocol.H2C, maxConnections, ANTI_FRAUD_READ_TIMEOUT);
     }
 
     @Bean
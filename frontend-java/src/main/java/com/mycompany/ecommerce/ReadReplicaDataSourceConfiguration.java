@@ -0,0 +1,77 @@
+package com.mycompany.ecommerce;
+
+import com.mycompany.ecommerce.datasource.ReadReplicaRoutingDataSource;
+import com.mycompany.ecommerce.datasource.ReplicaLagMonitor;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read replicas, see the {@code read-replicas} Spring profile and {@code run-frontend-read-replicas.sh}.
+ * <p>
+ * The {@code @Transactional(readOnly = true)} service methods run on one of the replicas of
+ * {@code datasource.replica.urls} whose lag is below {@code datasource.replica.maxLagMillis}, everything else,
+ * including the statements executed outside of a transaction, runs on the primary {@code spring.datasource.url}.
+ * <p>
+ * Each replica has its own Hikari pool of {@code datasource.replica.maximumPoolSize} connections named
+ * {@code replica-<index>}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("datasource.replica.urls")
+public class ReadReplicaDataSourceConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    ReplicaLagMonitor replicaLagMonitor(DataSourceProperties properties,
+                                        @Value("${datasource.replica.urls}") String[] urls,
+                                        @Value("${datasource.replica.username:}") String username,
+                                        @Value("${datasource.replica.password:}") String password,
+                                        @Value("${datasource.replica.maximumPoolSize:10}") int maximumPoolSize,
+                                        @Value("${datasource.replica.maxLagMillis:1000}") long maxLagMillis,
+                                        @Value("${datasource.replica.lagCheckIntervalMillis:1000}") long lagCheckIntervalMillis) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(urls[i].trim());
+            replica.setUsername(username.isEmpty() ? properties.determineUsername() : username);
+            replica.setPassword(password.isEmpty() ? properties.determinePassword() : password);
+            replica.setMaximumPoolSize(maximumPoolSize);
+            replica.setReadOnly(true);
+            // unlike the primary pool, not bound by the DataSourcePoolMetadata of Spring Boot
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaLagMonitor(replicas, maxLagMillis, lagCheckIntervalMillis);
+    }
+
+    /**
+     * The route is resolved on the first statement of the transaction, once its read only flag is known.
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(HikariDataSource primaryDataSource, ReplicaLagMonitor replicaLagMonitor) {
+        ReadReplicaRoutingDataSource routingDataSource = new ReadReplicaRoutingDataSource(primaryDataSource, replicaLagMonitor.getDataSources(), replicaLagMonitor);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
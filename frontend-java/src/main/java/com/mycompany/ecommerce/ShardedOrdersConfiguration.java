@@ -0,0 +1,91 @@
+package com.mycompany.ecommerce;
+
+import com.mycompany.ecommerce.sharding.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Order shards, see the {@code sharded-orders} Spring profile and {@code OrderShards}.
+ * <p>
+ * The home shard is {@code spring.datasource}, each URL of {@code sharding.urls} is a shard with its own Hikari pool of
+ * {@code sharding.maximumPoolSize} connections named {@code shard-<index>}. Not combined with the read replicas.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("sharding.urls")
+public class ShardedOrdersConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource homeShardDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("shard-0");
+        return dataSource;
+    }
+
+    @Bean
+    OrderShardPools orderShardPools(DataSourceProperties properties,
+                                    @Value("${sharding.urls}") String[] urls,
+                                    @Value("${sharding.username:}") String username,
+                                    @Value("${sharding.password:}") String password,
+                                    @Value("${sharding.maximumPoolSize:10}") int maximumPoolSize) {
+        List<HikariDataSource> pools = new ArrayList<>(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName("shard-" + (i + 1));
+            pool.setJdbcUrl(urls[i].trim());
+            pool.setUsername(username.isEmpty() ? properties.determineUsername() : username);
+            pool.setPassword(password.isEmpty() ? properties.determinePassword() : password);
+            pool.setMaximumPoolSize(maximumPoolSize);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+            pools.add(pool);
+        }
+        return new OrderShardPools(pools);
+    }
+
+    /**
+     * The shard is resolved on the first statement of the transaction, see {@code ShardContext}
+     */
+    @Bean
+    @Primary
+    DataSource dataSource(HikariDataSource homeShardDataSource, OrderShardPools orderShardPools) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(homeShardDataSource);
+        shards.addAll(orderShardPools.pools);
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(shards);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Pools of the shards {@code 1..n}, closed with the context
+     */
+    static class OrderShardPools implements Closeable {
+        final List<HikariDataSource> pools;
+
+        OrderShardPools(List<HikariDataSource> pools) {
+            this.pools = pools;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (HikariDataSource pool : pools) {
+                pool.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mycompany.ecommerce;
+
+import com.mycompany.ecommerce.web.StaticAssetHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+/**
+ * Serves the Angular assets of {@code classpath:/static/} with the {@link StaticAssetHandler} rather than with the
+ * default Spring Boot resource handler, see {@code spring.web.resources.add-mappings=false}.
+ * <p>
+ * When the application runs from a jar, the assets are extracted to {@code static.directory} (a temporary directory by
+ * default) on startup so that they are files that Tomcat can {@code sendfile}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class StaticAssetsConfiguration {
+
+    static final String STATIC_LOCATION = "static/";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Bean
+    StaticAssetHandler staticAssetHandler(@Value("${static.directory:}") String directory,
+                                          @Value("${static.sendfileMinSizeInBytes:49152}") long sendfileMinSizeInBytes) {
+        return new StaticAssetHandler(location(directory), sendfileMinSizeInBytes);
+    }
+
+    /**
+     * After the controllers, as the default Spring Boot resource handler
+     */
+    @Bean
+    SimpleUrlHandlerMapping staticAssetHandlerMapping(StaticAssetHandler staticAssetHandler) {
+        return new SimpleUrlHandlerMapping(Collections.singletonMap("/**", staticAssetHandler), Ordered.LOWEST_PRECEDENCE - 1);
+    }
+
+    Resource location(String directory) {
+        Resource classpathLocation = new ClassPathResource(STATIC_LOCATION);
+        if (!classpathLocation.exists() || classpathLocation.isFile()) {
+            return classpathLocation;
+        }
+        try {
+            Path targetDirectory = directory.isEmpty() ? Files.createTempDirectory("frontend-static") : Paths.get(directory);
+            int extractedCount = extract(classpathLocation, targetDirectory);
+            logger.info("Extracted {} static assets to {}", extractedCount, targetDirectory);
+            return new FileSystemResource(targetDirectory.toString() + "/");
+        } catch (IOException e) {
+            logger.warn("Failure to extract the static assets to '{}', serve them from the classpath: {}", directory, e.toString());
+            return classpathLocation;
+        }
+    }
+
+    static int extract(Resource classpathLocation, Path targetDirectory) throws IOException {
+        String locationUrl = classpathLocation.getURL().toString();
+        int extractedCount = 0;
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath:/" + STATIC_LOCATION + "**")) {
+            String url = resource.getURL().toString();
+            if (!resource.isReadable() || url.endsWith("/") || !url.startsWith(locationUrl)) {
+                continue;
+            }
+            Path target = targetDirectory.resolve(url.substring(locationUrl.length())).normalize();
+            if (!target.startsWith(targetDirectory)) {
+                continue;
+            }
+            Files.createDirectories(target.getParent());
+            try (InputStream in = resource.getInputStream()) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // same Last-Modified whatever the instance
+            Files.setLastModifiedTime(target, FileTime.fromMillis(resource.lastModified()));
+            extractedCount++;
+        }
+        return extractedCount;
+    }
+}
@@ -0,0 +1,315 @@
+package com.mycompany.ecommerce.archive;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderProduct;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.repository.ProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cold tier of the orders: one {@link OrderSegment} file per archived month in {@code orders.archive.directory}, see
+ * {@code OrderPartitionServiceImpl}.
+ * <p>
+ * The headers of the segments are loaded at startup to skip the segments that cannot contain an order. The segments
+ * are archived by a single frontend instance, the directory must be shared by all the instances (e.g. NFS): the
+ * directory is scanned again for new or replaced segments by the lookups of a customer history and by the order
+ * lookups that miss, at most once every {@code orders.archive.rescanIntervalMillis}. The decoded segments are cached,
+ * {@code orders.archive.cachedSegments} at most, historical lookups are rare and mostly hit the recent months.
+ * <p>
+ * The archived orders are detached {@link Order} entities, read only.
+ */
+@ManagedResource
+@Component
+public class OrderArchive {
+
+    static final String SEGMENT_FILE_PREFIX = "orders-";
+    static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final Path directory;
+    final ProductRepository productRepository;
+    final NavigableMap<YearMonth, OrderSegment.Header> headers = new ConcurrentSkipListMap<>();
+    final Cache<YearMonth, OrderSegment> segments;
+    final long rescanIntervalMillis;
+    /**
+     * Last modification time of the segment files whose header is loaded, guarded by {@code this}
+     */
+    final Map<Path, FileTime> lastModifiedTimes = new HashMap<>();
+    volatile long lastScanMillis;
+
+    public OrderArchive(@Value("${orders.archive.directory}") String directory,
+                        @Value("${orders.archive.cachedSegments:4}") long cachedSegments,
+                        @Value("${orders.archive.rescanIntervalMillis:5000}") long rescanIntervalMillis,
+                        ProductRepository productRepository) throws IOException {
+        this.directory = Paths.get(directory);
+        this.rescanIntervalMillis = rescanIntervalMillis;
+        this.productRepository = productRepository;
+        this.segments = CacheBuilder.newBuilder().maximumSize(cachedSegments).recordStats().build();
+        GuavaCacheMetrics.monitor(Metrics.globalRegistry, this.segments, "orderArchiveSegments");
+        Gauge.builder("orders_archived_segments", headers, Map::size).register(Metrics.globalRegistry);
+        loadHeaders();
+    }
+
+    void loadHeaders() throws IOException {
+        scanHeaders();
+        logger.info("Loaded {} archived order segments from {}", headers.size(), directory.toAbsolutePath());
+    }
+
+    /**
+     * Loads the headers of the segments added or replaced since the last scan, by this instance or by another one, and
+     * forgets the deleted segments
+     */
+    synchronized void scanHeaders() throws IOException {
+        lastScanMillis = System.currentTimeMillis();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Set<YearMonth> months = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    FileTime lastModifiedTime = Files.getLastModifiedTime(file);
+                    OrderSegment.Header header;
+                    if (lastModifiedTime.equals(lastModifiedTimes.get(file))) {
+                        header = headers.get(monthOf(file));
+                    } else {
+                        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                            header = OrderSegment.Header.readFrom(new DataInputStream(in));
+                        }
+                        lastModifiedTimes.put(file, lastModifiedTime);
+                        segments.invalidate(header.getMonth());
+                        headers.put(header.getMonth(), header);
+                    }
+                    if (header != null) {
+                        months.add(header.getMonth());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Ignore the invalid order segment {}: {}", file, e.toString());
+                }
+            }
+        }
+        for (YearMonth month : headers.keySet()) {
+            if (!months.contains(month)) {
+                headers.remove(month);
+                segments.invalidate(month);
+                lastModifiedTimes.remove(segmentFile(month));
+            }
+        }
+    }
+
+    /**
+     * The failures are logged, the lookups go on with the headers already loaded
+     */
+    boolean rescanHeadersIfStale() {
+        if (System.currentTimeMillis() - lastScanMillis < rescanIntervalMillis) {
+            return false;
+        }
+        try {
+            scanHeaders();
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Failure to scan the order segments of {}: {}", directory.toAbsolutePath(), e.toString());
+            return false;
+        }
+    }
+
+    static YearMonth monthOf(Path file) {
+        String fileName = file.getFileName().toString();
+        return YearMonth.parse(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+    }
+
+    /**
+     * Writes the segment to a temporary file, fsyncs it and renames it atomically: a segment file is either complete or
+     * absent. Replaces the segment of the same month, if any.
+     */
+    public void store(OrderSegment segment) throws IOException {
+        Files.createDirectories(directory);
+        Path file = segmentFile(segment.getMonth());
+        Path tmpFile = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            segment.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            lastModifiedTimes.put(file, Files.getLastModifiedTime(file));
+            segments.invalidate(segment.getMonth());
+            headers.put(segment.getMonth(), new OrderSegment.Header(segment.getMonth(), segment.size(), segment.getLineCount(),
+                    segment.size() == 0 ? 0 : segment.getId(0), segment.size() == 0 ? 0 : segment.getId(segment.size() - 1)));
+        }
+        logger.info("Archived {} orders of {} in {} ({} bytes)", segment.size(), segment.getMonth(), file, Files.size(file));
+    }
+
+    public boolean isArchived(YearMonth month) {
+        return headers.containsKey(month);
+    }
+
+    /**
+     * The archive is scanned again when the order is not found, the order may have been archived by another instance
+     */
+    public Optional<Order> findOrder(long id) {
+        Optional<Order> order = findLoadedOrder(id);
+        if (!order.isPresent() && rescanHeadersIfStale()) {
+            order = findLoadedOrder(id);
+        }
+        return order;
+    }
+
+    Optional<Order> findLoadedOrder(long id) {
+        for (OrderSegment.Header header : headers.descendingMap().values()) {
+            if (header.mayContain(id)) {
+                OrderSegment segment = getSegment(header.getMonth());
+                int idx = segment.indexOf(id);
+                if (idx != -1) {
+                    List<Order> orders = toOrders(segment, new int[]{idx});
+                    return Optional.of(orders.get(0));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param beforeDateCreated {@code null} for the most recent archived orders
+     * @param limit             maximum number of orders
+     * @return the orders of the customer before {@code (beforeDateCreated, beforeId)}, most recent first
+     */
+    public List<Order> findCustomerOrders(String customerId, LocalDate beforeDateCreated, long beforeId, int limit) {
+        rescanHeadersIfStale();
+        List<Order> orders = new ArrayList<>();
+        NavigableMap<YearMonth, OrderSegment.Header> candidates = beforeDateCreated == null
+                ? headers.descendingMap()
+                : headers.headMap(YearMonth.from(beforeDateCreated), true).descendingMap();
+        for (OrderSegment.Header header : candidates.values()) {
+            if (orders.size() >= limit) {
+                break;
+            }
+            OrderSegment segment = getSegment(header.getMonth());
+            List<Integer> indexes = segment.indexesOfCustomer(customerId, beforeDateCreated, beforeId);
+            int count = Math.min(indexes.size(), limit - orders.size());
+            int[] page = new int[count];
+            for (int i = 0; i < count; i++) {
+                page[i] = indexes.get(i);
+            }
+            orders.addAll(toOrders(segment, page));
+        }
+        return orders;
+    }
+
+    OrderSegment getSegment(YearMonth month) {
+        try {
+            return segments.get(month, () -> {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(segmentFile(month)), 64 * 1024)) {
+                    return OrderSegment.readFrom(in);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException("Failure to read the order segment of " + month,
+                    e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause()));
+        }
+    }
+
+    List<Order> toOrders(OrderSegment segment, int[] indexes) {
+        Set<Long> productIds = new HashSet<>();
+        for (int idx : indexes) {
+            for (int line = segment.getFirstLine(idx); line < segment.getEndLine(idx); line++) {
+                productIds.add(segment.getProductId(line));
+            }
+        }
+        Map<Long, Product> productsById = new HashMap<>();
+        if (!productIds.isEmpty()) {
+            for (Product product : productRepository.findAllById(productIds)) {
+                productsById.put(product.getId(), product);
+            }
+        }
+        List<Order> orders = new ArrayList<>(indexes.length);
+        for (int idx : indexes) {
+            Order order = new Order();
+            order.setId(segment.getId(idx));
+            order.setDateCreated(segment.getDateCreated(idx));
+            order.setStatus(segment.getStatus(idx));
+            order.setStatusChangedAt(segment.getStatusChangedAt(idx));
+            order.setCustomerId(segment.getCustomerId(idx));
+            order.setDiscountInCents(segment.getDiscountInCents(idx));
+            order.setTaxInCents(segment.getTaxInCents(idx));
+            order.setTotalPriceInCents(segment.getTotalPriceInCents(idx));
+            order.setShippingCountry(segment.getShippingCountry(idx));
+            order.setCustomerIpAddress(segment.getCustomerIpAddress(idx));
+            List<OrderProduct> orderProducts = new ArrayList<>(segment.getEndLine(idx) - segment.getFirstLine(idx));
+            for (int line = segment.getFirstLine(idx); line < segment.getEndLine(idx); line++) {
+                Product product = productsById.get(segment.getProductId(line));
+                if (product != null) {
+                    orderProducts.add(new OrderProduct(order, product, segment.getQuantity(line)));
+                }
+            }
+            order.setOrderProducts(orderProducts);
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    Path segmentFile(YearMonth month) {
+        return directory.resolve(SEGMENT_FILE_PREFIX + month + SEGMENT_FILE_SUFFIX);
+    }
+
+    @ManagedAttribute
+    public int getSegmentCount() {
+        return headers.size();
+    }
+
+    @ManagedAttribute
+    public long getArchivedOrderCount() {
+        long count = 0;
+        for (OrderSegment.Header header : headers.values()) {
+            count += header.getOrderCount();
+        }
+        return count;
+    }
+
+    @ManagedAttribute
+    public String getDirectory() {
+        return directory.toAbsolutePath().toString();
+    }
+}
@@ -0,0 +1,535 @@
+package com.mycompany.ecommerce.archive;
+
+import org.springframework.core.style.ToStringCreator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Orders of one month, and their lines, stored column by column.
+ * <p>
+ * File layout: an uncompressed header (magic, version, month, counts, id range) that is read without decoding the
+ * segment, then the gzipped columns. Ids are delta encoded, dates and timestamps are relative to the start of the
+ * month, the repetitive strings (status, customer, country, IP address) are dictionary encoded and all the integers
+ * are variable length: a segment is a fraction of the size of the rows in Postgres.
+ * <p>
+ * Immutable once built, the orders are sorted by id.
+ */
+public class OrderSegment {
+
+    static final int MAGIC = 0x4F524453; // "ORDS"
+    static final byte VERSION = 1;
+    static final long NULL = Long.MIN_VALUE;
+
+    final YearMonth month;
+    final long[] ids;
+    final int[] epochDays;
+    final Dictionary statuses;
+    final long[] statusChangedAtMillis;
+    final Dictionary customerIds;
+    final long[] discountsInCents;
+    final long[] taxesInCents;
+    final long[] totalPricesInCents;
+    final Dictionary shippingCountries;
+    final Dictionary customerIpAddresses;
+    /**
+     * Lines of the order {@code i} are {@code lineOffsets[i]} (inclusive) to {@code lineOffsets[i + 1]} (exclusive)
+     */
+    final int[] lineOffsets;
+    final long[] productIds;
+    final int[] quantities;
+
+    OrderSegment(YearMonth month, long[] ids, int[] epochDays, Dictionary statuses, long[] statusChangedAtMillis,
+                 Dictionary customerIds, long[] discountsInCents, long[] taxesInCents, long[] totalPricesInCents,
+                 Dictionary shippingCountries, Dictionary customerIpAddresses, int[] lineOffsets, long[] productIds, int[] quantities) {
+        this.month = month;
+        this.ids = ids;
+        this.epochDays = epochDays;
+        this.statuses = statuses;
+        this.statusChangedAtMillis = statusChangedAtMillis;
+        this.customerIds = customerIds;
+        this.discountsInCents = discountsInCents;
+        this.taxesInCents = taxesInCents;
+        this.totalPricesInCents = totalPricesInCents;
+        this.shippingCountries = shippingCountries;
+        this.customerIpAddresses = customerIpAddresses;
+        this.lineOffsets = lineOffsets;
+        this.productIds = productIds;
+        this.quantities = quantities;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int getLineCount() {
+        return productIds.length;
+    }
+
+    /**
+     * @return the index of the order, {@code -1} if the segment does not contain it
+     */
+    public int indexOf(long id) {
+        int idx = Arrays.binarySearch(ids, id);
+        return idx < 0 ? -1 : idx;
+    }
+
+    /**
+     * @return the indexes of the orders of the customer that are before the given {@code (dateCreated, id)},
+     * most recent first, as the keyset paging of {@code OrderRepository}
+     */
+    public List<Integer> indexesOfCustomer(String customerId, LocalDate beforeDateCreated, long beforeId) {
+        List<Integer> indexes = new ArrayList<>();
+        int code = customerIds.codeOf(customerId);
+        if (code == -1) {
+            return indexes;
+        }
+        long beforeEpochDay = beforeDateCreated == null ? Long.MAX_VALUE : beforeDateCreated.toEpochDay();
+        for (int i = 0; i < ids.length; i++) {
+            if (customerIds.codes[i] == code
+                    && (epochDays[i] < beforeEpochDay || (epochDays[i] == beforeEpochDay && ids[i] < beforeId))) {
+                indexes.add(i);
+            }
+        }
+        indexes.sort((i, j) -> epochDays[i] != epochDays[j] ? Integer.compare(epochDays[j], epochDays[i]) : Long.compare(ids[j], ids[i]));
+        return indexes;
+    }
+
+    public long getId(int idx) {
+        return ids[idx];
+    }
+
+    public LocalDate getDateCreated(int idx) {
+        return LocalDate.ofEpochDay(epochDays[idx]);
+    }
+
+    public String getStatus(int idx) {
+        return statuses.get(idx);
+    }
+
+    public Instant getStatusChangedAt(int idx) {
+        return statusChangedAtMillis[idx] == NULL ? null : Instant.ofEpochMilli(statusChangedAtMillis[idx]);
+    }
+
+    public String getCustomerId(int idx) {
+        return customerIds.get(idx);
+    }
+
+    public Long getDiscountInCents(int idx) {
+        return discountsInCents[idx] == NULL ? null : discountsInCents[idx];
+    }
+
+    public Long getTaxInCents(int idx) {
+        return taxesInCents[idx] == NULL ? null : taxesInCents[idx];
+    }
+
+    public Long getTotalPriceInCents(int idx) {
+        return totalPricesInCents[idx] == NULL ? null : totalPricesInCents[idx];
+    }
+
+    public String getShippingCountry(int idx) {
+        return shippingCountries.get(idx);
+    }
+
+    public String getCustomerIpAddress(int idx) {
+        return customerIpAddresses.get(idx);
+    }
+
+    public int getFirstLine(int idx) {
+        return lineOffsets[idx];
+    }
+
+    public int getEndLine(int idx) {
+        return lineOffsets[idx + 1];
+    }
+
+    public long getProductId(int line) {
+        return productIds[line];
+    }
+
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream header = new DataOutputStream(outputStream);
+        new Header(month, ids.length, productIds.length,
+                ids.length == 0 ? 0 : ids[0], ids.length == 0 ? 0 : ids[ids.length - 1]).writeTo(header);
+        header.flush();
+
+        GZIPOutputStream gzip = new GZIPOutputStream(outputStream, 64 * 1024);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip, 64 * 1024));
+        long monthStartEpochDay = month.atDay(1).toEpochDay();
+        long monthStartMillis = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+        long previousId = ids.length == 0 ? 0 : ids[0];
+        for (long id : ids) {
+            writeVarLong(out, id - previousId);
+            previousId = id;
+        }
+        for (int epochDay : epochDays) {
+            writeVarLong(out, zigZag(epochDay - monthStartEpochDay));
+        }
+        statuses.writeTo(out);
+        writeNullableColumn(out, statusChangedAtMillis, monthStartMillis);
+        customerIds.writeTo(out);
+        writeNullableColumn(out, discountsInCents, 0);
+        writeNullableColumn(out, taxesInCents, 0);
+        writeNullableColumn(out, totalPricesInCents, 0);
+        shippingCountries.writeTo(out);
+        customerIpAddresses.writeTo(out);
+        for (int i = 0; i < ids.length; i++) {
+            writeVarLong(out, lineOffsets[i + 1] - lineOffsets[i]);
+        }
+        long previousProductId = 0;
+        for (long productId : productIds) {
+            writeVarLong(out, zigZag(productId - previousProductId));
+            previousProductId = productId;
+        }
+        for (int quantity : quantities) {
+            writeVarLong(out, quantity);
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    public static OrderSegment readFrom(InputStream inputStream) throws IOException {
+        Header header = Header.readFrom(new DataInputStream(inputStream));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream, 64 * 1024), 64 * 1024));
+        int count = header.orderCount;
+        long monthStartEpochDay = header.month.atDay(1).toEpochDay();
+        long monthStartMillis = header.month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+        long[] ids = new long[count];
+        long previousId = header.minId;
+        for (int i = 0; i < count; i++) {
+            ids[i] = previousId + readVarLong(in);
+            previousId = ids[i];
+        }
+        int[] epochDays = new int[count];
+        for (int i = 0; i < count; i++) {
+            epochDays[i] = (int) (monthStartEpochDay + unZigZag(readVarLong(in)));
+        }
+        Dictionary statuses = Dictionary.readFrom(in, count);
+        long[] statusChangedAtMillis = readNullableColumn(in, count, monthStartMillis);
+        Dictionary customerIds = Dictionary.readFrom(in, count);
+        long[] discountsInCents = readNullableColumn(in, count, 0);
+        long[] taxesInCents = readNullableColumn(in, count, 0);
+        long[] totalPricesInCents = readNullableColumn(in, count, 0);
+        Dictionary shippingCountries = Dictionary.readFrom(in, count);
+        Dictionary customerIpAddresses = Dictionary.readFrom(in, count);
+        int[] lineOffsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            lineOffsets[i + 1] = lineOffsets[i] + (int) readVarLong(in);
+        }
+        long[] productIds = new long[header.lineCount];
+        long previousProductId = 0;
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = previousProductId + unZigZag(readVarLong(in));
+            previousProductId = productIds[i];
+        }
+        int[] quantities = new int[header.lineCount];
+        for (int i = 0; i < quantities.length; i++) {
+            quantities[i] = (int) readVarLong(in);
+        }
+        return new OrderSegment(header.month, ids, epochDays, statuses, statusChangedAtMillis, customerIds,
+                discountsInCents, taxesInCents, totalPricesInCents, shippingCountries, customerIpAddresses,
+                lineOffsets, productIds, quantities);
+    }
+
+    /**
+     * {@code 0} for {@code null}, {@code zigZag(value - base) + 1} otherwise
+     */
+    static void writeNullableColumn(DataOutputStream out, long[] values, long base) throws IOException {
+        for (long value : values) {
+            writeVarLong(out, value == NULL ? 0 : zigZag(value - base) + 1);
+        }
+    }
+
+    static long[] readNullableColumn(DataInputStream in, int count, long base) throws IOException {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            long encoded = readVarLong(in);
+            values[i] = encoded == 0 ? NULL : base + unZigZag(encoded - 1);
+        }
+        return values;
+    }
+
+    /**
+     * Unsigned LEB128, 7 bits per byte
+     */
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("month", month)
+                .append("orders", ids.length)
+                .append("lines", productIds.length)
+                .toString();
+    }
+
+    /**
+     * Uncompressed prefix of a segment file
+     */
+    public static class Header {
+        final YearMonth month;
+        final int orderCount;
+        final int lineCount;
+        final long minId;
+        final long maxId;
+
+        Header(YearMonth month, int orderCount, int lineCount, long minId, long maxId) {
+            this.month = month;
+            this.orderCount = orderCount;
+            this.lineCount = lineCount;
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(month.getYear());
+            out.writeByte(month.getMonthValue());
+            out.writeInt(orderCount);
+            out.writeInt(lineCount);
+            out.writeLong(minId);
+            out.writeLong(maxId);
+        }
+
+        public static Header readFrom(DataInputStream in) throws IOException {
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not an order segment");
+                }
+                byte version = in.readByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported order segment version " + version);
+                }
+                YearMonth month = YearMonth.of(in.readInt(), in.readByte());
+                return new Header(month, in.readInt(), in.readInt(), in.readLong(), in.readLong());
+            } catch (EOFException e) {
+                throw new IOException("Truncated order segment", e);
+            }
+        }
+
+        public YearMonth getMonth() {
+            return month;
+        }
+
+        public int getOrderCount() {
+            return orderCount;
+        }
+
+        public long getMinId() {
+            return minId;
+        }
+
+        public long getMaxId() {
+            return maxId;
+        }
+
+        public boolean mayContain(long id) {
+            return orderCount > 0 && id >= minId && id <= maxId;
+        }
+    }
+
+    /**
+     * Dictionary encoded column of nullable strings, code {@code 0} is {@code null}
+     */
+    static class Dictionary {
+        final String[] values;
+        final int[] codes;
+
+        Dictionary(String[] values, int[] codes) {
+            this.values = values;
+            this.codes = codes;
+        }
+
+        String get(int idx) {
+            return values[codes[idx]];
+        }
+
+        int codeOf(String value) {
+            for (int code = 1; code < values.length; code++) {
+                if (values[code].equals(value)) {
+                    return code;
+                }
+            }
+            return -1;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            writeVarLong(out, values.length - 1);
+            for (int code = 1; code < values.length; code++) {
+                out.writeUTF(values[code]);
+            }
+            for (int code : codes) {
+                writeVarLong(out, code);
+            }
+        }
+
+        static Dictionary readFrom(DataInputStream in, int count) throws IOException {
+            String[] values = new String[(int) readVarLong(in) + 1];
+            for (int code = 1; code < values.length; code++) {
+                values[code] = in.readUTF();
+            }
+            int[] codes = new int[count];
+            for (int i = 0; i < count; i++) {
+                codes[i] = (int) readVarLong(in);
+            }
+            return new Dictionary(values, codes);
+        }
+    }
+
+    /**
+     * Appends the orders in ascending id order, each followed by its lines.
+     */
+    public static class Builder {
+        final YearMonth month;
+        final List<Long> ids = new ArrayList<>();
+        final List<Integer> epochDays = new ArrayList<>();
+        final DictionaryBuilder statuses = new DictionaryBuilder();
+        final List<Long> statusChangedAtMillis = new ArrayList<>();
+        final DictionaryBuilder customerIds = new DictionaryBuilder();
+        final List<Long> discountsInCents = new ArrayList<>();
+        final List<Long> taxesInCents = new ArrayList<>();
+        final List<Long> totalPricesInCents = new ArrayList<>();
+        final DictionaryBuilder shippingCountries = new DictionaryBuilder();
+        final DictionaryBuilder customerIpAddresses = new DictionaryBuilder();
+        final List<Integer> lineOffsets = new ArrayList<>();
+        final List<Long> productIds = new ArrayList<>();
+        final List<Integer> quantities = new ArrayList<>();
+
+        public Builder(YearMonth month) {
+            this.month = month;
+            lineOffsets.add(0);
+        }
+
+        public Builder addOrder(long id, LocalDate dateCreated, String status, Instant statusChangedAt, String customerId,
+                                Long discountInCents, Long taxInCents, Long totalPriceInCents,
+                                String shippingCountry, String customerIpAddress) {
+            if (!ids.isEmpty() && id <= ids.get(ids.size() - 1)) {
+                throw new IllegalArgumentException("Orders must be added in ascending id order, got " + id + " after " + ids.get(ids.size() - 1));
+            }
+            ids.add(id);
+            epochDays.add((int) dateCreated.toEpochDay());
+            statuses.add(status);
+            statusChangedAtMillis.add(statusChangedAt == null ? NULL : statusChangedAt.toEpochMilli());
+            customerIds.add(customerId);
+            discountsInCents.add(discountInCents == null ? NULL : discountInCents);
+            taxesInCents.add(taxInCents == null ? NULL : taxInCents);
+            totalPricesInCents.add(totalPriceInCents == null ? NULL : totalPriceInCents);
+            shippingCountries.add(shippingCountry);
+            customerIpAddresses.add(customerIpAddress);
+            lineOffsets.add(productIds.size());
+            return this;
+        }
+
+        /**
+         * Adds a line to the last added order
+         */
+        public Builder addLine(long productId, int quantity) {
+            if (ids.isEmpty()) {
+                throw new IllegalStateException("No order to add the line to");
+            }
+            productIds.add(productId);
+            quantities.add(quantity);
+            lineOffsets.set(lineOffsets.size() - 1, productIds.size());
+            return this;
+        }
+
+        public int size() {
+            return ids.size();
+        }
+
+        public OrderSegment build() {
+            return new OrderSegment(month, ids.stream().mapToLong(Long::longValue).toArray(),
+                    epochDays.stream().mapToInt(Integer::intValue).toArray(),
+                    statuses.build(), statusChangedAtMillis.stream().mapToLong(Long::longValue).toArray(),
+                    customerIds.build(), discountsInCents.stream().mapToLong(Long::longValue).toArray(),
+                    taxesInCents.stream().mapToLong(Long::longValue).toArray(),
+                    totalPricesInCents.stream().mapToLong(Long::longValue).toArray(),
+                    shippingCountries.build(), customerIpAddresses.build(),
+                    lineOffsets.stream().mapToInt(Integer::intValue).toArray(),
+                    productIds.stream().mapToLong(Long::longValue).toArray(),
+                    quantities.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    static class DictionaryBuilder {
+        final Map<String, Integer> codesByValue = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+        final List<Integer> codes = new ArrayList<>();
+
+        DictionaryBuilder() {
+            values.add(null);
+        }
+
+        void add(String value) {
+            if (value == null) {
+                codes.add(0);
+                return;
+            }
+            Integer code = codesByValue.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codesByValue.put(value, code);
+            }
+            codes.add(code);
+        }
+
+        Dictionary build() {
+            return new Dictionary(values.toArray(new String[0]), codes.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+}
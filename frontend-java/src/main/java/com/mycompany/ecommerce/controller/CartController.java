@@ -0,0 +1,136 @@
+package com.mycompany.ecommerce.controller;
+
+import co.elastic.apm.api.ElasticApm;
+import com.mycompany.ecommerce.dto.CartDto;
+import com.mycompany.ecommerce.dto.OrderProductDto;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.CartStore;
+import com.mycompany.ecommerce.service.ProductService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/carts")
+public class CartController {
+
+    private CartStore cartStore;
+    private ProductService productService;
+    private OrderController orderController;
+
+    public CartController(CartStore cartStore, ProductService productService, OrderController orderController) {
+        this.cartStore = cartStore;
+        this.productService = productService;
+        this.orderController = orderController;
+    }
+
+    @PostMapping
+    public ResponseEntity<CartDto> create() {
+        ElasticApm.currentSpan().setName("createCart");
+        CartDto cart = cartStore.create();
+        String uri = ServletUriComponentsBuilder
+                .fromCurrentServletMapping()
+                .path("/api/carts/{id}")
+                .buildAndExpand(cart.getId())
+                .toString();
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Location", uri);
+        return new ResponseEntity<>(cart, headers, HttpStatus.CREATED);
+    }
+
+    @GetMapping("/{id}")
+    public @NotNull CartDto get(@PathVariable String id) {
+        ElasticApm.currentSpan().setName("cart");
+        return cartStore.get(id);
+    }
+
+    /**
+     * Sets the quantity of a product in the cart, a zero quantity removes the product
+     */
+    @PutMapping("/{id}/products/{productId}")
+    public @NotNull CartDto setQuantity(@PathVariable String id, @PathVariable long productId, @RequestParam int quantity) {
+        ElasticApm.currentSpan().setName("setCartQuantity");
+        if (quantity < 0 || quantity > cartStore.getMaxQuantityPerLine()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Quantity must be between 0 and " + cartStore.getMaxQuantityPerLine());
+        }
+        if (quantity > 0) {
+            // 404 if the product does not exist
+            productService.getProduct(productId);
+        }
+        return setCartQuantity(id, productId, quantity);
+    }
+
+    @DeleteMapping("/{id}/products/{productId}")
+    public @NotNull CartDto removeProduct(@PathVariable String id, @PathVariable long productId) {
+        ElasticApm.currentSpan().setName("removeCartProduct");
+        return setCartQuantity(id, productId, 0);
+    }
+
+    CartDto setCartQuantity(String id, long productId, int quantity) {
+        try {
+            return cartStore.setQuantity(id, productId, quantity);
+        } catch (IllegalArgumentException e) {
+            // product id out of the range of the cart lines
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void delete(@PathVariable String id) {
+        ElasticApm.currentSpan().setName("deleteCart");
+        cartStore.delete(id);
+    }
+
+    /**
+     * Turns the cart into an order, the cart is removed unless the order fails. The cart is removed and its lines are
+     * copied at once, a concurrent change of the cart is rejected rather than lost. The products are priced from the
+     * catalog by {@link OrderController#placeOrder}, a product deleted since it was added fails the order.
+     */
+    @PostMapping("/{id}/checkout")
+    public ResponseEntity<Order> checkout(@PathVariable String id, HttpServletRequest request) {
+        ElasticApm.currentSpan().setName("checkoutCart");
+        CartDto cart = cartStore.checkout(id);
+        if (cart.getLines().isEmpty()) {
+            cartStore.restore(cart);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart '" + id + "' is empty");
+        }
+        ResponseEntity<Order> response;
+        try {
+            List<OrderProductDto> orderProducts = new ArrayList<>(cart.getLines().size());
+            for (CartDto.CartLineDto line : cart.getLines()) {
+                OrderProductDto orderProduct = new OrderProductDto();
+                Product product = new Product();
+                product.setId(line.getProductId());
+                orderProduct.setProduct(product);
+                orderProduct.setQuantity(line.getQuantity());
+                orderProducts.add(orderProduct);
+            }
+            response = orderController.placeOrder(orderProducts, request);
+        } catch (RuntimeException e) {
+            cartStore.restore(cart);
+            throw e;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            cartStore.restore(cart);
+        }
+        return response;
+    }
+}
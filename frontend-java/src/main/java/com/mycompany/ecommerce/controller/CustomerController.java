@@ -0,0 +1,41 @@
+package com.mycompany.ecommerce.controller;
+
+import co.elastic.apm.api.ElasticApm;
+import com.mycompany.ecommerce.dto.CustomerOrdersPage;
+import com.mycompany.ecommerce.service.OrderService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.validation.constraints.NotNull;
+
+@RestController
+@RequestMapping("/api/customers")
+public class CustomerController {
+
+    private OrderService orderService;
+
+    public CustomerController(OrderService orderService) {
+        this.orderService = orderService;
+    }
+
+    /**
+     * Order history of the customer, most recent first, paginated with the {@code nextCursor} of the previous page
+     */
+    @GetMapping("/{id}/orders")
+    public @NotNull CustomerOrdersPage getOrders(@PathVariable String id,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "20") int limit) {
+        ElasticApm.currentSpan().setName("customerOrders");
+        ElasticApm.currentSpan().setLabel("customerId", id);
+        try {
+            return orderService.getCustomerOrders(id, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
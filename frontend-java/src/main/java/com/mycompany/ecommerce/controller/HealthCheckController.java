@@ -1,5 +1,7 @@
 package com.mycompany.ecommerce.controller;
 
+import com.mycompany.ecommerce.dto.HealthSnapshot;
+import com.mycompany.ecommerce.service.HealthProbeService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jmx.export.annotation.ManagedAttribute;
@@ -7,24 +9,53 @@ import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Returns the cached health of the {@link HealthProbeService}, without probing: {@code up}, {@code degraded} or
+ * {@code down} (503) with the failing probes.
+ * <p>
+ * {@code successRatioInPercentage}, settable through JMX, injects faults: the health check fails randomly with the
+ * given ratio whatever the actual health.
+ */
 @ManagedResource
 @RestController
 public class HealthCheckController {
-    private final static Random RANDOM = new Random();
     /**
      * from zero to 100%
      */
     private int successRatioInPercentage = 95;
 
+    private HealthProbeService healthProbeService;
+
+    public HealthCheckController(HealthProbeService healthProbeService) {
+        this.healthProbeService = healthProbeService;
+    }
+
     @RequestMapping("/health-check")
     public ResponseEntity<String> healthCheck(){
-        if(this.successRatioInPercentage - RANDOM.nextInt(100) >= 0) {
-            return ResponseEntity.ok().body("up");
-        } else {
+        if (this.successRatioInPercentage - ThreadLocalRandom.current().nextInt(100) < 0) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("down");
         }
+        HealthSnapshot health = healthProbeService.getHealth();
+        switch (health.getStatus()) {
+            case UP:
+                return ResponseEntity.ok().body("up");
+            case DEGRADED:
+                return ResponseEntity.ok().body("degraded: " + failingProbes(health));
+            default:
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("down: " + failingProbes(health));
+        }
+    }
+
+    static String failingProbes(HealthSnapshot health) {
+        StringBuilder result = new StringBuilder();
+        for (HealthSnapshot.ProbeResult probe : health.getProbes()) {
+            if (!probe.isUp()) {
+                result.append(result.length() == 0 ? "" : ", ").append(probe.getName());
+            }
+        }
+        return result.toString();
     }
 
     @ManagedAttribute
@@ -1,33 +1,48 @@
 package com.mycompany.ecommerce.controller;
 
 import co.elastic.apm.api.ElasticApm;
+import com.mycompany.common.apm.SpanLabels;
+import com.mycompany.common.logging.SamplingTurboFilter;
+import com.mycompany.common.orders.OrderRequests;
+import com.mycompany.common.pricing.PricingEngine;
 import com.mycompany.ecommerce.dto.OrderProductDto;
+import com.mycompany.ecommerce.exception.AntiFraudException;
+import com.mycompany.ecommerce.exception.RateLimitExceededException;
 import com.mycompany.ecommerce.exception.ResourceNotFoundException;
 import com.mycompany.ecommerce.model.Order;
 import com.mycompany.ecommerce.model.OrderProduct;
 import com.mycompany.ecommerce.model.OrderStatus;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.AntiFraudClient;
+import com.mycompany.ecommerce.service.DeferredFraudCheckService;
+import com.mycompany.ecommerce.service.OrderMetrics;
 import com.mycompany.ecommerce.service.OrderProductService;
+import com.mycompany.ecommerce.service.OrderRateLimiter;
 import com.mycompany.ecommerce.service.OrderService;
 import com.mycompany.ecommerce.service.ProductService;
-import io.micrometer.core.instrument.DistributionSummary;
-import io.micrometer.core.instrument.Metrics;
+import com.mycompany.ecommerce.service.StockReservationService;
+import com.mycompany.ecommerce.sharding.OrderShards;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.style.ToStringCreator;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RestController
@@ -35,19 +50,36 @@ import java.util.stream.Collectors;
 public class OrderController {
 
     final static Random RANDOM = new Random();
+    final static String RESPOND_ASYNC = "respond-async";
 
     final Logger logger = LoggerFactory.getLogger(getClass());
 
     ProductService productService;
     OrderService orderService;
     OrderProductService orderProductService;
-    RestTemplate restTemplate;
-    String antiFraudServiceBaseUrl;
-
-    public OrderController(ProductService productService, OrderService orderService, OrderProductService orderProductService) {
+    StockReservationService stockReservationService;
+    PricingEngine pricingEngine;
+    AntiFraudClient antiFraudClient;
+    DeferredFraudCheckService deferredFraudCheckService;
+    OrderMetrics orderMetrics;
+    OrderShards orderShards;
+    OrderRateLimiter orderRateLimiter;
+    long statusEventsTimeoutMillis;
+
+    public OrderController(ProductService productService, OrderService orderService, OrderProductService orderProductService,
+                           StockReservationService stockReservationService, PricingEngine pricingEngine,
+                           AntiFraudClient antiFraudClient, DeferredFraudCheckService deferredFraudCheckService,
+                           OrderMetrics orderMetrics, OrderShards orderShards, OrderRateLimiter orderRateLimiter) {
         this.productService = productService;
         this.orderService = orderService;
         this.orderProductService = orderProductService;
+        this.stockReservationService = stockReservationService;
+        this.pricingEngine = pricingEngine;
+        this.antiFraudClient = antiFraudClient;
+        this.deferredFraudCheckService = deferredFraudCheckService;
+        this.orderMetrics = orderMetrics;
+        this.orderShards = orderShards;
+        this.orderRateLimiter = orderRateLimiter;
     }
 
     @GetMapping
@@ -56,103 +88,262 @@ public class OrderController {
         return this.orderService.getAllOrders();
     }
 
+    /**
+     * Polling of the status of an order placed with a deferred fraud check
+     */
+    @GetMapping("/{id}")
+    public @NotNull Order get(@PathVariable long id) {
+        ElasticApm.currentSpan().setName("order");
+        return this.orderService.getOrder(id);
+    }
+
+    /**
+     * Push of the status of an order placed with a deferred fraud check: a {@code status} event with the current
+     * status then, if the order is {@link OrderStatus#PENDING}, a {@code status} event with the final status.
+     */
+    @GetMapping(path = "/{id}/status-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter statusEvents(@PathVariable long id) throws IOException {
+        ElasticApm.currentSpan().setName("orderStatusEvents");
+        SseEmitter emitter = new SseEmitter(statusEventsTimeoutMillis);
+        AtomicBoolean completed = new AtomicBoolean();
+        Consumer<OrderStatus> listener = status -> {
+            if (completed.compareAndSet(false, true)) {
+                try {
+                    emitter.send(SseEmitter.event().name("status").data(status.name()));
+                    emitter.complete();
+                } catch (IOException e) {
+                    emitter.completeWithError(e);
+                }
+            }
+        };
+        // listen before reading the status to not miss a concurrent decision
+        deferredFraudCheckService.addStatusListener(id, listener);
+        emitter.onCompletion(() -> deferredFraudCheckService.removeStatusListener(id, listener));
+        emitter.onTimeout(() -> deferredFraudCheckService.removeStatusListener(id, listener));
+
+        OrderStatus status;
+        try {
+            status = OrderStatus.valueOf(orderService.getOrder(id).getStatus());
+        } catch (RuntimeException e) {
+            deferredFraudCheckService.removeStatusListener(id, listener);
+            throw e;
+        }
+        if (status == OrderStatus.PENDING) {
+            emitter.send(SseEmitter.event().name("status").data(status.name()));
+        } else {
+            listener.accept(status);
+        }
+        return emitter;
+    }
+
 
     @PostMapping
     public ResponseEntity<Order> create(@RequestBody OrderForm form, HttpServletRequest request) {
         ElasticApm.currentSpan().setName("createOrder");
         List<OrderProductDto> formDtos = form.getProductOrders();
         validateProductsExistence(formDtos);
+        return placeOrder(formDtos, request);
+    }
 
-        String customerId = "customer-" + RANDOM.nextInt(100); // TODO better demo
-        ElasticApm.currentSpan().setLabel("customerId", customerId);
-
-        double orderPrice = formDtos.stream().mapToDouble(po -> po.getQuantity() * po.getProduct().getPrice()).sum();
-        ElasticApm.currentSpan().setLabel("orderPrice", orderPrice);
-        String priceRange = getPriceRange(orderPrice);
-        ElasticApm.currentSpan().setLabel("orderPriceRange", priceRange);
-
+    /**
+     * Reserves the stock of the products, checks the order with the anti-fraud service and persists it. The stock is
+     * released if the order fails. The products must already have been validated.
+     * <p>
+     * With the {@code Prefer: respond-async} request header, the order is persisted {@link OrderStatus#PENDING} and
+     * the response is {@code 202 Accepted}, the fraud check is deferred, see {@link DeferredFraudCheckService}.
+     *
+     * @throws RateLimitExceededException if the customer or the IP address placed too many orders, before any work
+     * @throws ResponseStatusException    {@code 400 Bad Request} if a quantity is missing or not positive, before
+     *                                    pricing and reserving the stock
+     */
+    public ResponseEntity<Order> placeOrder(List<OrderProductDto> formDtos, HttpServletRequest request) {
+        String customerId = getCustomerId(request);
+        orderRateLimiter.acquire(customerId, request.getRemoteAddr());
+        validateQuantities(formDtos);
+
+        int lineCount = formDtos.size();
+        Product[] products = new Product[lineCount];
+        long[] productIds = new long[lineCount];
+        int[] quantities = new int[lineCount];
+        long[] unitPricesInCents = new long[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            // price with the catalog price rather than with the price sent by the client
+            products[i] = productService.getProduct(formDtos.get(i).getProduct().getId());
+            productIds[i] = products[i].getId();
+            quantities[i] = formDtos.get(i).getQuantity();
+            unitPricesInCents[i] = PricingEngine.toCents(products[i].getPrice());
+        }
         String shippingCountryCode = getCountryCode(request.getRemoteAddr());
-        ElasticApm.currentSpan().setLabel("shippingCountry", shippingCountryCode);
-        ResponseEntity<String> antiFraudResult;
+        PricingEngine.OrderPricing pricing = pricingEngine.price(unitPricesInCents, quantities, lineCount, shippingCountryCode, new PricingEngine.OrderPricing());
+
+        SpanLabels labels = SpanLabels.current();
+        if (!stockReservationService.reserve(productIds, quantities)) {
+            labels.label("orderCreationFailureCause", "out-of-stock").flush();
+            logger.info("Failure createOrder({}): out of stock", formDtos);
+            HttpHeaders httpHeaders = new HttpHeaders();
+            httpHeaders.add("x-orderCreationFailureCause", "out-of-stock");
+            return new ResponseEntity<>(httpHeaders, HttpStatus.CONFLICT);
+        }
+        ResponseEntity<Order> response = null;
         try {
-            antiFraudResult = restTemplate.getForEntity(
-                    this.antiFraudServiceBaseUrl + "fraud/checkOrder?orderPrice={q}&customerIpAddress={q}&shippingCountry={q}",
-                    String.class,
-                    orderPrice, request.getRemoteAddr(), shippingCountryCode);
-
-        } catch (RestClientException e) {
-            String exceptionShortDescription = e.getClass().getName();
-            ElasticApm.currentSpan().setLabel("antiFraud.exception", exceptionShortDescription);
-            ElasticApm.currentSpan().captureException(e);
-            if (e.getCause() != null) { // capture SockerTimeoutException...
-                ElasticApm.currentSpan().setLabel("antiFraud.exception.cause", e.getCause().getClass().getName());
-                exceptionShortDescription += " / " + e.getCause().getClass().getName();
+            if (isRespondAsync(request)) {
+                response = savePendingOrder(formDtos, customerId, products, quantities, pricing, shippingCountryCode, request, labels);
+            } else {
+                response = checkAndSaveOrder(formDtos, customerId, products, quantities, pricing, shippingCountryCode, request, labels);
+            }
+            return response;
+        } finally {
+            labels.flush();
+            if (response == null || !response.getStatusCode().is2xxSuccessful()) {
+                stockReservationService.release(productIds, quantities);
             }
-            HttpHeaders httpHeaders = new HttpHeaders();
-            httpHeaders.add("x-orderCreationFailureCause", "auti-fraud_" + exceptionShortDescription);
-            logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", form, orderPrice, exceptionShortDescription);
-            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
-        if (antiFraudResult.getStatusCode() != HttpStatus.OK) {
-            String exceptionShortDescription = "status-" + antiFraudResult.getStatusCode();
-            ElasticApm.currentSpan().setLabel("antiFraud.exception", exceptionShortDescription);
-            HttpHeaders httpHeaders = new HttpHeaders();
-            httpHeaders.add("x-orderCreationFailureCause", "auti-fraud_" + exceptionShortDescription);
-            logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", form, orderPrice, exceptionShortDescription);
+    }
+
+    ResponseEntity<Order> checkAndSaveOrder(List<OrderProductDto> formDtos, String customerId, Product[] products, int[] quantities,
+                                            PricingEngine.OrderPricing pricing, String shippingCountryCode,
+                                            HttpServletRequest request, SpanLabels labels) {
+
+        double orderPrice = pricing.getTotalInCents() / 100.0;
+        labels.label("customerId", customerId)
+                .label("orderPrice", orderPrice)
+                .label("shippingCountry", shippingCountryCode);
+        if (labels.isSampled()) {
+            labels.label("orderPriceRange", getPriceRange(orderPrice));
+        }
+
+        boolean accepted;
+        try {
+            accepted = antiFraudClient.checkOrder(orderPrice, request.getRemoteAddr(), shippingCountryCode);
+        } catch (AntiFraudException e) {
+            labels.label("antiFraud.exception", e.getShortDescription());
+            if (e.getCause() != null) {
+                // errors are captured even when the transaction is not sampled
+                ElasticApm.currentSpan().captureException(e.getCause());
+                if (e.getCause().getCause() != null && labels.isSampled()) { // capture SocketTimeoutException...
+                    labels.label("antiFraud.exception.cause", e.getCause().getCause().getClass().getName());
+                }
+            }
+            logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", formDtos, orderPrice, e.getShortDescription());
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
-        if (!"OK".equals(antiFraudResult.getBody())) {
-            String exceptionShortDescription = "response-" + antiFraudResult.getBody();
-            ElasticApm.currentSpan().setLabel("antiFraud.exception", exceptionShortDescription);
-            HttpHeaders httpHeaders = new HttpHeaders();
-            httpHeaders.add("x-orderCreationFailureCause", "auti-fraud_" + exceptionShortDescription);
-            logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", form, orderPrice, exceptionShortDescription);
+        if (!accepted) {
+            String exceptionShortDescription = "response-KO";
+            labels.label("antiFraud.exception", exceptionShortDescription);
+            logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", formDtos, orderPrice, exceptionShortDescription);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
 
         Order order = new Order();
         order.setStatus(OrderStatus.PAID.name());
-        order = this.orderService.create(order);
+        order.setCustomerId(customerId);
+        order.setDiscountInCents(pricing.getDiscountInCents());
+        order.setTaxInCents(pricing.getTaxInCents());
+        order.setTotalPriceInCents(pricing.getTotalInCents());
+        order = saveOrder(order, products, quantities);
 
-        List<OrderProduct> orderProducts = new ArrayList<>();
-        for (OrderProductDto dto : formDtos) {
-            orderProducts.add(orderProductService.create(new OrderProduct(order, productService.getProduct(dto
-                    .getProduct()
-                    .getId()), dto.getQuantity())));
-        }
+        orderMetrics.recordPaidOrder(orderPrice, shippingCountryCode);
 
-        order.setOrderProducts(orderProducts);
+        logger.info(SamplingTurboFilter.SAMPLED, "SUCCESS createOrder({}): price: {}, id:{}", formDtos, orderPrice, order.getId());
 
-        this.orderService.update(order);
+        String uri = ServletUriComponentsBuilder
+                .fromCurrentServletMapping()
+                .path("/orders/{id}")
+                .buildAndExpand(order.getId())
+                .toString();
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Location", uri);
+
+        return new ResponseEntity<>(order, headers, HttpStatus.CREATED);
 
-        DistributionSummary.builder("order")
-                .publishPercentileHistogram()
-                .publishPercentiles(0.75, 0.95)
-                .register(Metrics.globalRegistry)
-                .record(orderPrice);
+    }
+
+    ResponseEntity<Order> savePendingOrder(List<OrderProductDto> formDtos, String customerId, Product[] products, int[] quantities,
+                                           PricingEngine.OrderPricing pricing, String shippingCountryCode,
+                                           HttpServletRequest request, SpanLabels labels) {
+        double orderPrice = pricing.getTotalInCents() / 100.0;
+        labels.label("customerId", customerId)
+                .label("orderPrice", orderPrice)
+                .label("shippingCountry", shippingCountryCode)
+                .label("deferredFraudCheck", true);
+        if (labels.isSampled()) {
+            labels.label("orderPriceRange", getPriceRange(orderPrice));
+        }
 
-        Metrics.counter("order_value_counter").increment(orderPrice);
-        Metrics.counter("order_count_counter").increment();
+        Order order = new Order();
+        order.setStatus(OrderStatus.PENDING.name());
+        order.setCustomerId(customerId);
+        order.setDiscountInCents(pricing.getDiscountInCents());
+        order.setTaxInCents(pricing.getTaxInCents());
+        order.setTotalPriceInCents(pricing.getTotalInCents());
+        order.setShippingCountry(shippingCountryCode);
+        order.setCustomerIpAddress(request.getRemoteAddr());
+        order = saveOrder(order, products, quantities);
 
-        DistributionSummary.builder("order_per_country")
-                .tags("shipping_country", shippingCountryCode)
-                .publishPercentileHistogram()
-                .publishPercentiles(0.75, 0.95)
-                .register(Metrics.globalRegistry)
-                .record(orderPrice);
+        deferredFraudCheckService.submit(order.getId());
 
-        logger.info("SUCCESS createOrder({}): price: {}, id:{}", form, orderPrice, order.getId());
+        logger.info(SamplingTurboFilter.SAMPLED, "PENDING createOrder({}): price: {}, id:{}", formDtos, orderPrice, order.getId());
 
         String uri = ServletUriComponentsBuilder
                 .fromCurrentServletMapping()
-                .path("/orders/{id}")
+                .path("/api/orders/{id}")
                 .buildAndExpand(order.getId())
                 .toString();
         HttpHeaders headers = new HttpHeaders();
         headers.add("Location", uri);
+        headers.add("Preference-Applied", RESPOND_ASYNC);
 
-        return new ResponseEntity<>(order, headers, HttpStatus.CREATED);
+        return new ResponseEntity<>(order, headers, HttpStatus.ACCEPTED);
+    }
 
+    /**
+     * The customer is not moved to another shard while the order and its lines are written, see
+     * {@link OrderShards#customerLock(String, boolean)}.
+     */
+    Order saveOrder(Order order, Product[] products, int[] quantities) {
+        Lock customerLock = orderShards.customerLock(order.getCustomerId(), false);
+        customerLock.lock();
+        try {
+            order = this.orderService.create(order);
+
+            List<OrderProduct> orderProducts = new ArrayList<>();
+            for (int i = 0; i < products.length; i++) {
+                orderProducts.add(orderProductService.create(new OrderProduct(order, products[i], quantities[i])));
+            }
+
+            order.setOrderProducts(orderProducts);
+
+            this.orderService.update(order);
+            return order;
+        } finally {
+            customerLock.unlock();
+        }
+    }
+
+    /**
+     * Resolved as the reactive frontend does, see {@link OrderRequests#customerId(String)}
+     */
+    static String getCustomerId(HttpServletRequest request) {
+        return OrderRequests.customerId(request.getHeader(OrderRequests.CUSTOMER_ID_HEADER));
+    }
+
+    static boolean isRespondAsync(HttpServletRequest request) {
+        Enumeration<String> preferences = request.getHeaders("Prefer");
+        while (preferences != null && preferences.hasMoreElements()) {
+            for (String preference : preferences.nextElement().split(",")) {
+                if (RESPOND_ASYNC.equalsIgnoreCase(preference.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A negative quantity would add stock on reservation and lower the price of the order
+     */
+    static void validateQuantities(List<OrderProductDto> orderProducts) {
+        OrderRequests.validateQuantities(orderProducts, OrderProductDto::getQuantity);
     }
 
     private void validateProductsExistence(List<OrderProductDto> orderProducts) {
@@ -173,14 +364,9 @@ public class OrderController {
         return countries[RANDOM.nextInt(countries.length)];
     }
 
-    @Autowired
-    public void setRestTemplate(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
-
-    @Value("${antiFraudService.baseUrl}")
-    public void setAntiFraudServiceBaseUrl(String antiFraudServiceBaseUrl) {
-        this.antiFraudServiceBaseUrl = antiFraudServiceBaseUrl;
+    @Value("${orders.deferredFraudCheck.statusEventsTimeoutMillis:30000}")
+    public void setStatusEventsTimeoutMillis(long statusEventsTimeoutMillis) {
+        this.statusEventsTimeoutMillis = statusEventsTimeoutMillis;
     }
 
     public String getPriceRange(double price) {
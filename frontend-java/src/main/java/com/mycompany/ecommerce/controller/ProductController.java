@@ -1,29 +1,76 @@
 package com.mycompany.ecommerce.controller;
 
 import co.elastic.apm.api.ElasticApm;
+import com.mycompany.ecommerce.dto.ProductImportResult;
 import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.ProductImportService;
 import com.mycompany.ecommerce.service.ProductService;
+import com.mycompany.ecommerce.service.StockReservationService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/products")
 public class ProductController {
 
     private ProductService productService;
+    private ProductImportService productImportService;
+    private StockReservationService stockReservationService;
 
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService, ProductImportService productImportService, StockReservationService stockReservationService) {
         this.productService = productService;
+        this.productImportService = productImportService;
+        this.stockReservationService = stockReservationService;
     }
 
+    /**
+     * All the products or, as soon as a price range, a sort or a page is requested, a page of the products of the
+     * price range sorted by ascending price
+     */
     @GetMapping(value = { "", "/" })
-    public @NotNull Iterable<Product> getProducts() {
+    public @NotNull Iterable<Product> getProducts(
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) Integer offset) {
         ElasticApm.currentSpan().setName("products");
-        return productService.getAllProducts();
+        if (minPrice == null && maxPrice == null && sort == null && limit == null && offset == null) {
+            return productService.getAllProducts();
+        }
+        if (sort != null && !"price".equals(sort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported sort '" + sort + "', expected 'price'");
+        }
+        return productService.getProductsByPrice(minPrice, maxPrice, offset == null ? 0 : offset, limit == null ? 100 : limit);
+    }
+
+    @GetMapping("/search")
+    public @NotNull List<Product> searchProducts(
+            @RequestParam String q,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(defaultValue = "20") int limit) {
+        ElasticApm.currentSpan().setName("searchProducts");
+        return productService.searchProducts(q, minPrice, maxPrice, limit);
+    }
+
+    @GetMapping("/search/suggest")
+    public @NotNull List<String> suggestProductTerms(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+        ElasticApm.currentSpan().setName("suggestProductTerms");
+        return productService.suggestProductTerms(prefix, limit);
     }
 
     @GetMapping("/{id}")
@@ -32,4 +79,39 @@ public class ProductController {
         ElasticApm.currentSpan().addLabel("product.id", id);
         return productService.getProduct(id);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the available quantity, {@code -1} if the stock of the product is not tracked
+     */
+    @GetMapping("/{id}/stock")
+    public long getStock(@PathVariable long id) {
+        ElasticApm.currentSpan().setName("productStock");
+        productService.getProduct(id);
+        return stockReservationService.getAvailableQuantity(id);
+    }
+
+    /**
+     * Adds stock to the product, or removes stock if the delta is negative
+     *
+     * @return the new available quantity
+     */
+    @PostMapping("/{id}/stock")
+    public long restock(@PathVariable long id, @RequestParam long delta) {
+        ElasticApm.currentSpan().setName("restockProduct");
+        productService.getProduct(id);
+        return stockReservationService.restock(id, delta);
+    }
+
+    /**
+     * Bulk import of a CSV ({@code text/csv}) or NDJSON ({@code application/x-ndjson}) stream of products
+     */
+    @PostMapping("/import")
+    public ProductImportResult importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        ElasticApm.currentSpan().setName("importProducts");
+        ProductImportService.Format format = ProductImportService.Format.of(contentType);
+        if (format == null) {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Expected text/csv or application/x-ndjson, got " + contentType);
+        }
+        return productImportService.importProducts(body, format);
+    }
+}
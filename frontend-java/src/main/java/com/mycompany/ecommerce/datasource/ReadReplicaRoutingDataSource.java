@@ -0,0 +1,71 @@
+package com.mycompany.ecommerce.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the connections of the {@code @Transactional(readOnly = true)} transactions to a read replica whose lag is
+ * acceptable, see {@link ReplicaLagMonitor}, and everything else to the primary. When no replica is usable, the read
+ * only transactions fall back to the primary.
+ * <p>
+ * The transaction managers get their connection before the read only flag of the transaction is published: this data
+ * source must be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so that the
+ * route is resolved on the first statement.
+ * <p>
+ * Metric: {@code datasource_routed_connections} tagged {@code target=primary|replica|fallback}.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    final ReplicaLagMonitor replicaLagMonitor;
+    final List<String> replicaNames;
+
+    final LongAdder primaryCounter = new LongAdder();
+    final LongAdder replicaCounter = new LongAdder();
+    final LongAdder fallbackCounter = new LongAdder();
+
+    public ReadReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, ReplicaLagMonitor replicaLagMonitor) {
+        this.replicaLagMonitor = replicaLagMonitor;
+        this.replicaNames = new ArrayList<>(replicas.keySet());
+        Map<Object, Object> targetDataSources = new HashMap<>(replicas);
+        targetDataSources.put(PRIMARY, primary);
+        setTargetDataSources(targetDataSources);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+
+        FunctionCounter.builder("datasource_routed_connections", primaryCounter, LongAdder::doubleValue).tag("target", "primary").register(Metrics.globalRegistry);
+        FunctionCounter.builder("datasource_routed_connections", replicaCounter, LongAdder::doubleValue).tag("target", "replica").register(Metrics.globalRegistry);
+        FunctionCounter.builder("datasource_routed_connections", fallbackCounter, LongAdder::doubleValue).tag("target", "fallback").register(Metrics.globalRegistry);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryCounter.increment();
+            return PRIMARY;
+        }
+        // random first replica rather than a shared round robin counter, request threads don't contend
+        int replicaCount = replicaNames.size();
+        int first = replicaCount > 1 ? ThreadLocalRandom.current().nextInt(replicaCount) : 0;
+        for (int i = 0; i < replicaCount; i++) {
+            String replicaName = replicaNames.get((first + i) % replicaCount);
+            if (replicaLagMonitor.isUsable(replicaName)) {
+                replicaCounter.increment();
+                return replicaName;
+            }
+        }
+        fallbackCounter.increment();
+        return PRIMARY;
+    }
+}
@@ -0,0 +1,197 @@
+package com.mycompany.ecommerce.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the replication lag of each read replica every {@code checkIntervalMillis}: the age of the last replayed
+ * transaction, zero when the replica has replayed all the WAL it received. A replica is usable when its lag is below
+ * {@code maxLagMillis}, it is unusable until its first check and when it cannot be reached.
+ * <p>
+ * A server that is not in recovery (a standalone Postgres standing in for a replica in development) has no lag.
+ * <p>
+ * Metric: {@code datasource_replica_lag_millis} tagged with the replica name, {@code -1} if unreachable.
+ */
+@ManagedResource
+public class ReplicaLagMonitor implements SmartLifecycle, Closeable {
+
+    static final String LAG_SQL = "select pg_is_in_recovery(), " +
+            "case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000, 0) end";
+
+    static final long UNKNOWN_LAG = -1;
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final Map<String, Replica> replicas = new LinkedHashMap<>();
+    final long maxLagMillis;
+    final long checkIntervalMillis;
+
+    ScheduledExecutorService checker;
+
+    public ReplicaLagMonitor(Map<String, DataSource> replicas, long maxLagMillis, long checkIntervalMillis) {
+        for (Map.Entry<String, DataSource> entry : replicas.entrySet()) {
+            Replica replica = new Replica(entry.getKey(), entry.getValue());
+            this.replicas.put(replica.name, replica);
+            Gauge.builder("datasource_replica_lag_millis", replica, r -> r.lagMillis)
+                    .tag("replica", replica.name)
+                    .register(Metrics.globalRegistry);
+        }
+        this.maxLagMillis = maxLagMillis;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    /**
+     * @return the data source of each replica by name, in the configuration order
+     */
+    public Map<String, DataSource> getDataSources() {
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        for (Replica replica : replicas.values()) {
+            dataSources.put(replica.name, replica.dataSource);
+        }
+        return dataSources;
+    }
+
+    public boolean isUsable(String replicaName) {
+        Replica replica = replicas.get(replicaName);
+        return replica != null && replica.usable;
+    }
+
+    /**
+     * @return {@link #UNKNOWN_LAG} if the replica has not been reached yet or is unreachable
+     */
+    public long getLagMillis(String replicaName) {
+        Replica replica = replicas.get(replicaName);
+        return replica == null ? UNKNOWN_LAG : replica.lagMillis;
+    }
+
+    void checkAll() {
+        for (Replica replica : replicas.values()) {
+            check(replica);
+        }
+    }
+
+    void check(Replica replica) {
+        long lagMillis;
+        try (Connection cnn = replica.dataSource.getConnection();
+             Statement stmt = cnn.createStatement()) {
+            stmt.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(checkIntervalMillis)));
+            try (ResultSet rst = stmt.executeQuery(LAG_SQL)) {
+                rst.next();
+                boolean inRecovery = rst.getBoolean(1);
+                lagMillis = inRecovery ? rst.getLong(2) : 0;
+                if (!inRecovery && !replica.standalone) {
+                    logger.warn("Replica {} is not in recovery, considered without lag", replica.name);
+                    replica.standalone = true;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (replica.lagMillis != UNKNOWN_LAG || replica.usable) {
+                logger.warn("Failure to check the lag of replica {}: {}", replica.name, e.toString());
+            }
+            lagMillis = UNKNOWN_LAG;
+        }
+        boolean usable = lagMillis != UNKNOWN_LAG && lagMillis <= maxLagMillis;
+        if (usable != replica.usable) {
+            logger.info("Replica {} {}, lag: {}ms", replica.name, usable ? "usable" : "unusable", lagMillis);
+        }
+        replica.lagMillis = lagMillis;
+        replica.usable = usable;
+    }
+
+    @ManagedOperation(description = "Replication lag in milliseconds of each replica, -1 if unreachable")
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Replica replica : replicas.values()) {
+            summary.append(replica.name).append(": lag=").append(replica.lagMillis).append("ms, usable=").append(replica.usable).append('\n');
+        }
+        return summary.toString();
+    }
+
+    @ManagedAttribute
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    @ManagedAttribute
+    public int getUsableReplicaCount() {
+        int count = 0;
+        for (Replica replica : replicas.values()) {
+            if (replica.usable) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (checker != null) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (checker == null) {
+            return;
+        }
+        checker.shutdownNow();
+        checker = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return checker != null;
+    }
+
+    /**
+     * Closes the connection pools of the replicas
+     */
+    @Override
+    public void close() throws IOException {
+        for (Replica replica : replicas.values()) {
+            if (replica.dataSource instanceof Closeable) {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+    }
+
+    static class Replica {
+        final String name;
+        final DataSource dataSource;
+        volatile long lagMillis = UNKNOWN_LAG;
+        volatile boolean usable;
+        boolean standalone;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.mycompany.ecommerce.dto;
+
+import org.springframework.core.style.ToStringCreator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CartDto {
+
+    private String id;
+    private List<CartLineDto> lines = new ArrayList<>();
+
+    public CartDto() {
+    }
+
+    public CartDto(String id, List<CartLineDto> lines) {
+        this.id = id;
+        this.lines = lines;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<CartLineDto> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<CartLineDto> lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this).append("id", this.id).append("lines", this.lines).toString();
+    }
+
+    public static class CartLineDto {
+
+        private long productId;
+        private int quantity;
+
+        public CartLineDto() {
+        }
+
+        public CartLineDto(long productId, int quantity) {
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+
+        public long getProductId() {
+            return productId;
+        }
+
+        public void setProductId(long productId) {
+            this.productId = productId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringCreator(this).append("productId", this.productId).append("quantity", this.quantity).toString();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.mycompany.ecommerce.dto;
+
+import com.mycompany.ecommerce.model.Order;
+import org.springframework.core.style.ToStringCreator;
+
+import java.util.List;
+
+public class CustomerOrdersPage {
+
+    private List<Order> orders;
+
+    /**
+     * Cursor of the next page, {@code null} on the last page
+     */
+    private String nextCursor;
+
+    public CustomerOrdersPage() {
+    }
+
+    public CustomerOrdersPage(List<Order> orders, String nextCursor) {
+        this.orders = orders;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<Order> orders) {
+        this.orders = orders;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this).append("orders", this.orders.size()).append("nextCursor", this.nextCursor).toString();
+    }
+}
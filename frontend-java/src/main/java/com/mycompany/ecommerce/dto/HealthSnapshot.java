@@ -0,0 +1,106 @@
+package com.mycompany.ecommerce.dto;
+
+import org.springframework.core.style.ToStringCreator;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aggregate of the health probes at a point in time, immutable.
+ */
+public class HealthSnapshot {
+
+    public enum Status {
+        UP,
+        /**
+         * A non critical dependency (anti-fraud...) is unhealthy, the service still handles requests
+         */
+        DEGRADED,
+        DOWN
+    }
+
+    private final Status status;
+    private final List<ProbeResult> probes;
+    private final long timestampMillis;
+
+    public HealthSnapshot(List<ProbeResult> probes, long timestampMillis) {
+        Status status = Status.UP;
+        for (ProbeResult probe : probes) {
+            if (!probe.isUp()) {
+                status = probe.isCritical() ? Status.DOWN : (status == Status.DOWN ? Status.DOWN : Status.DEGRADED);
+            }
+        }
+        this.status = status;
+        this.probes = Collections.unmodifiableList(probes);
+        this.timestampMillis = timestampMillis;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public List<ProbeResult> getProbes() {
+        return probes;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("status", status)
+                .append("probes", probes)
+                .append("timestampMillis", timestampMillis)
+                .toString();
+    }
+
+    public static class ProbeResult {
+        private final String name;
+        private final boolean critical;
+        private final boolean up;
+        private final String detail;
+        private final long durationMillis;
+
+        public ProbeResult(String name, boolean critical, boolean up, String detail, long durationMillis) {
+            this.name = name;
+            this.critical = critical;
+            this.up = up;
+            this.detail = detail;
+            this.durationMillis = durationMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return {@code true} if the service is {@link Status#DOWN} when the probe fails
+         */
+        public boolean isCritical() {
+            return critical;
+        }
+
+        public boolean isUp() {
+            return up;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringCreator(this)
+                    .append("name", name)
+                    .append("up", up)
+                    .append("detail", detail)
+                    .toString();
+        }
+    }
+}
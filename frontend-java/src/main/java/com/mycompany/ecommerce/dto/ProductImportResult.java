@@ -0,0 +1,57 @@
+package com.mycompany.ecommerce.dto;
+
+import org.springframework.core.style.ToStringCreator;
+
+public class ProductImportResult {
+
+    private long importedCount;
+    private long rejectedCount;
+    private long durationMillis;
+
+    public ProductImportResult() {
+    }
+
+    public ProductImportResult(long importedCount, long rejectedCount, long durationMillis) {
+        this.importedCount = importedCount;
+        this.rejectedCount = rejectedCount;
+        this.durationMillis = durationMillis;
+    }
+
+    public long getImportedCount() {
+        return importedCount;
+    }
+
+    public void setImportedCount(long importedCount) {
+        this.importedCount = importedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public void setRejectedCount(long rejectedCount) {
+        this.rejectedCount = rejectedCount;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getProductsPerSecond() {
+        return durationMillis == 0 ? importedCount : importedCount * 1000 / durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("importedCount", importedCount)
+                .append("rejectedCount", rejectedCount)
+                .append("durationMillis", durationMillis)
+                .append("productsPerSecond", getProductsPerSecond())
+                .toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.mycompany.ecommerce.exception;
+
+/**
+ * No decision of the anti-fraud service: the call failed or the response is unexpected.
+ */
+public class AntiFraudException extends RuntimeException {
+
+    private static final long serialVersionUID = -3489024538815541278L;
+
+    private final String shortDescription;
+
+    public AntiFraudException(final String shortDescription, final Throwable cause) {
+        super(shortDescription, cause);
+        this.shortDescription = shortDescription;
+    }
+
+    public AntiFraudException(final String shortDescription) {
+        super(shortDescription);
+        this.shortDescription = shortDescription;
+    }
+
+    /**
+     * Exception class name and cause class name, {@code status-<status>}, {@code response-<body>} or
+     * {@code rpc-<cause>}
+     */
+    public String getShortDescription() {
+        return shortDescription;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mycompany.ecommerce.exception;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -37,6 +38,24 @@ public class ApiExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(CartLimitExceededException.class)
+    public ResponseEntity<ErrorItem> handle(CartLimitExceededException e) {
+        ErrorItem error = new ErrorItem();
+        error.setMessage(e.getMessage());
+
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ErrorItem> handle(RateLimitExceededException e) {
+        ErrorItem error = new ErrorItem();
+        error.setMessage(e.getMessage());
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()));
+
+        return new ResponseEntity<>(error, headers, HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     public static class ErrorItem {
 
         @JsonInclude(JsonInclude.Include.NON_NULL) private String code;
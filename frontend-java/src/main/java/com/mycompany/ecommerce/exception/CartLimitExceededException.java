@@ -0,0 +1,10 @@
+package com.mycompany.ecommerce.exception;
+
+public class CartLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = -3094117205741566419L;
+
+    public CartLimitExceededException(final String message) {
+        super(message);
+    }
+}
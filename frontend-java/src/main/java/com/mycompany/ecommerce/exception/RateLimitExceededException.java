@@ -0,0 +1,17 @@
+package com.mycompany.ecommerce.exception;
+
+public class RateLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 6502943178730531294L;
+
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(final String message, final long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
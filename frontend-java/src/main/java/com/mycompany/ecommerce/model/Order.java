@@ -1,17 +1,22 @@
 package com.mycompany.ecommerce.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 
 import javax.persistence.*;
 import javax.validation.Valid;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // keyset paging of the order history of a customer, see OrderRepository
+        @Index(name = "orders_customer_id_date_created_id_idx", columnList = "customer_id, date_created, id")
+})
 @JsonIdentityInfo(generator=ObjectIdGenerators.PropertyGenerator.class, property="orderProducts")
 public class Order {
 
@@ -23,12 +28,42 @@ public class Order {
 
     private String status;
 
+    /**
+     * Time of the last status change, {@code null} for the orders created before the deferred fraud check
+     */
+    @JsonIgnore
+    private Instant statusChangedAt;
+
+    @Column(name = "customer_id")
+    private String customerId;
+
+    /**
+     * Set by the {@code PricingEngine}, {@code null} for the orders created before it
+     */
+    private Long discountInCents;
+
+    private Long taxInCents;
+
+    private Long totalPriceInCents;
+
+    /**
+     * Inputs of the deferred fraud check, see {@link OrderStatus#PENDING}
+     */
+    @JsonIgnore
+    private String shippingCountry;
+
+    @JsonIgnore
+    private String customerIpAddress;
+
     @OneToMany(mappedBy = "pk.order")
     @Valid
     private List<OrderProduct> orderProducts = new ArrayList<>();
 
     @Transient
     public Double getTotalOrderPrice() {
+        if (totalPriceInCents != null) {
+            return totalPriceInCents / 100.0;
+        }
         double sum = 0D;
         List<OrderProduct> orderProducts = getOrderProducts();
         for (OrderProduct op : orderProducts) {
@@ -62,6 +97,62 @@ public class Order {
         this.status = status;
     }
 
+    public Instant getStatusChangedAt() {
+        return statusChangedAt;
+    }
+
+    public void setStatusChangedAt(Instant statusChangedAt) {
+        this.statusChangedAt = statusChangedAt;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public Long getDiscountInCents() {
+        return discountInCents;
+    }
+
+    public void setDiscountInCents(Long discountInCents) {
+        this.discountInCents = discountInCents;
+    }
+
+    public Long getTaxInCents() {
+        return taxInCents;
+    }
+
+    public void setTaxInCents(Long taxInCents) {
+        this.taxInCents = taxInCents;
+    }
+
+    public Long getTotalPriceInCents() {
+        return totalPriceInCents;
+    }
+
+    public void setTotalPriceInCents(Long totalPriceInCents) {
+        this.totalPriceInCents = totalPriceInCents;
+    }
+
+    public String getShippingCountry() {
+        return shippingCountry;
+    }
+
+    public void setShippingCountry(String shippingCountry) {
+        this.shippingCountry = shippingCountry;
+    }
+
+    public String getCustomerIpAddress() {
+        return customerIpAddress;
+    }
+
+    public void setCustomerIpAddress(String customerIpAddress) {
+        this.customerIpAddress = customerIpAddress;
+    }
+
     public List<OrderProduct> getOrderProducts() {
         return orderProducts;
     }
@@ -0,0 +1,54 @@
+package com.mycompany.ecommerce.model;
+
+import org.springframework.core.style.ToStringCreator;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Stock of a product, products without stock row are not tracked and never run out of stock.
+ * <p>
+ * Written by the asynchronous reconciliation of {@code StockReservationService}, never on the order hot path.
+ */
+@Entity
+public class ProductStock {
+
+    @Id
+    private Long productId;
+
+    @Column(nullable = false)
+    private long quantity;
+
+    public ProductStock() {
+    }
+
+    public ProductStock(Long productId, long quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(long quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this)
+                .append("productId", productId)
+                .append("quantity", quantity)
+                .toString();
+    }
+}
@@ -2,7 +2,17 @@ package com.mycompany.ecommerce.repository;
 
 import com.mycompany.ecommerce.model.OrderProduct;
 import com.mycompany.ecommerce.model.OrderProductPK;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface OrderProductRepository extends CrudRepository<OrderProduct, OrderProductPK> {
+
+    /**
+     * @return {@code [productId, quantity]} of each product of the order, without loading the products
+     */
+    @Query("select op.pk.product.id, op.quantity from OrderProduct op where op.pk.order.id = :orderId")
+    List<Object[]> findProductIdsAndQuantitiesByOrderId(@Param("orderId") long orderId);
 }
@@ -1,7 +1,76 @@
 package com.mycompany.ecommerce.repository;
 
 import com.mycompany.ecommerce.model.Order;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends CrudRepository<Order, Long> {
+
+    /**
+     * The lines are fetched with the order: they are read from the shard of the order, see {@code OrderShards}
+     */
+    @Query("select distinct o from Order o left join fetch o.orderProducts where o.id = :id")
+    Optional<Order> findWithOrderProductsById(@Param("id") long id);
+
+    /**
+     * @param ids must not be empty
+     */
+    @Query("select distinct o from Order o left join fetch o.orderProducts where o.id in :ids")
+    List<Order> findAllWithOrderProductsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Most recent orders first, with their lines
+     */
+    @Query("select distinct o from Order o left join fetch o.orderProducts order by o.dateCreated desc, o.id desc")
+    List<Order> findAllWithOrderProductsOrderByDateCreatedDesc();
+
+    /**
+     * Most recent orders first. Only reads the {@code (customer_id, date_created, id)} index: index only scan.
+     */
+    @Query(value = "select id from orders where customer_id = :customerId " +
+            "order by date_created desc, id desc limit :limit", nativeQuery = true)
+    List<Long> findOrderIdsByCustomerId(@Param("customerId") String customerId, @Param("limit") int limit);
+
+    /**
+     * Next page of {@link #findOrderIdsByCustomerId(String, int)}: keyset paging on the {@code (date_created, id)}
+     * of the last order of the previous page, the cost does not depend on the page number nor on the table size.
+     */
+    @Query(value = "select id from orders where customer_id = :customerId " +
+            "and (date_created, id) < (:dateCreated, :id) " +
+            "order by date_created desc, id desc limit :limit", nativeQuery = true)
+    List<Long> findOrderIdsByCustomerIdBefore(@Param("customerId") String customerId,
+                                              @Param("dateCreated") LocalDate dateCreated,
+                                              @Param("id") long id,
+                                              @Param("limit") int limit);
+
+    /**
+     * Compare and set of the status: the order changes of status only if it is still in the expected status.
+     *
+     * Runs in its own transaction when called on another shard, see {@code OrderServiceImpl#updateStatus}.
+     *
+     * @return {@code 1} if the status has been changed, {@code 0} otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query("update Order o set o.status = :status, o.statusChangedAt = :statusChangedAt " +
+            "where o.id = :id and o.status = :expectedStatus")
+    int updateStatus(@Param("id") long id,
+                     @Param("expectedStatus") String expectedStatus,
+                     @Param("status") String status,
+                     @Param("statusChangedAt") Instant statusChangedAt);
+
+    /**
+     * Uses the partial index {@code orders_pending_idx} of {@code db/frontend-schema.sql} for the {@code PENDING} orders.
+     */
+    @Query(value = "select id from orders where status = :status order by id", nativeQuery = true)
+    List<Long> findOrderIdsByStatus(@Param("status") String status);
 }
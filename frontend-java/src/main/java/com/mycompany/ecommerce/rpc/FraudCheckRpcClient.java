@@ -0,0 +1,287 @@
+package com.mycompany.ecommerce.rpc;
+
+import com.mycompany.common.rpc.FraudCheckMessages;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Client of the binary fraud check RPC of the anti-fraud service, see {@link FraudCheckMessages}.
+ * <p>
+ * The checks are pipelined over {@code connections} persistent connections, used in turn: a request is written
+ * without waiting for the responses of the previous ones and the responses are matched to the waiting callers by
+ * request id. The writes of concurrent callers are coalesced into fewer flushes. A lost connection is reopened every
+ * {@code reconnectDelayMillis}; while no connection is open, {@link #checkOrder} fails fast with a
+ * {@link ConnectException} so that the caller can fall back to HTTP.
+ */
+public class FraudCheckRpcClient implements Closeable {
+
+    /**
+     * The {@link Connection} of a channel, whose pending requests await its responses
+     */
+    static final AttributeKey<Connection> CONNECTION = AttributeKey.valueOf("fraudCheckConnection");
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final String host;
+    final int port;
+    final long timeoutMillis;
+    final long reconnectDelayMillis;
+    final EventLoopGroup eventLoopGroup;
+    final Bootstrap bootstrap;
+    final Connection[] connections;
+    final AtomicLong requestIds = new AtomicLong();
+    final AtomicInteger nextConnection = new AtomicInteger();
+
+    final LongAdder requestsCounter = new LongAdder();
+    final LongAdder timeoutsCounter = new LongAdder();
+    final LongAdder unavailableCounter = new LongAdder();
+    final LongAdder reconnectsCounter = new LongAdder();
+
+    volatile boolean closed;
+
+    public FraudCheckRpcClient(String host, int port, int connections, long timeoutMillis, long reconnectDelayMillis) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+        this.eventLoopGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("fraud-check-rpc", true));
+        this.bootstrap = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(Integer.MAX_VALUE, timeoutMillis));
+        this.connections = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            this.connections[i] = new Connection();
+        }
+
+        FunctionCounter.builder("antifraud_rpc_requests", requestsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_rpc_timeouts", timeoutsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_rpc_unavailable", unavailableCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("antifraud_rpc_reconnects", reconnectsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("antifraud_rpc_connections_open", this, FraudCheckRpcClient::getOpenConnectionCount).register(Metrics.globalRegistry);
+        Gauge.builder("antifraud_rpc_pending_requests", this, FraudCheckRpcClient::getPendingRequestCount).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Opens the connections in the background
+     */
+    public void start() {
+        for (Connection connection : connections) {
+            connect(connection);
+        }
+    }
+
+    /**
+     * @return {@link FraudCheckMessages#ACCEPTED}, {@link FraudCheckMessages#REJECTED} or {@link FraudCheckMessages#ERROR}
+     * @throws ConnectException       if no connection is open, the request is not sent
+     * @throws SocketTimeoutException if there is no response after {@code timeoutMillis}
+     * @throws IOException            if the connection is lost before the response
+     */
+    public byte checkOrder(long orderPriceInCents, String shippingCountry, byte[] customerIpAddress) throws IOException {
+        Channel channel = nextChannel();
+        Connection connection = channel.attr(CONNECTION).get();
+        long requestId = requestIds.incrementAndGet();
+        CompletableFuture<Byte> response = new CompletableFuture<>();
+        connection.pendingRequests.put(requestId, response);
+        requestsCounter.increment();
+
+        ByteBuf frame = channel.alloc().buffer(FraudCheckMessages.checkOrderRequestFrameLength(customerIpAddress));
+        FraudCheckMessages.writeCheckOrderRequest(frame, requestId, orderPriceInCents, shippingCountry, customerIpAddress);
+        channel.writeAndFlush(frame).addListener(future -> {
+            if (!future.isSuccess()) {
+                connection.pendingRequests.remove(requestId);
+                response.completeExceptionally(future.cause());
+            }
+        });
+        try {
+            return response.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            connection.pendingRequests.remove(requestId);
+            timeoutsCounter.increment();
+            throw new SocketTimeoutException("No response to the fraud check " + requestId + " after " + timeoutMillis + "ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Failure of the fraud check " + requestId, cause);
+        } catch (InterruptedException e) {
+            connection.pendingRequests.remove(requestId);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the fraud check " + requestId);
+        }
+    }
+
+    /**
+     * Round robin over the open connections
+     *
+     * @return the channel found active, {@link Connection#channel} may be reset by a disconnection in the meantime
+     */
+    Channel nextChannel() throws ConnectException {
+        int first = nextConnection.getAndIncrement();
+        for (int i = 0; i < connections.length; i++) {
+            Channel channel = connections[Math.floorMod(first + i, connections.length)].channel;
+            if (channel != null && channel.isActive()) {
+                return channel;
+            }
+        }
+        unavailableCounter.increment();
+        throw new ConnectException("No open connection to the fraud check RPC server " + host + ":" + port);
+    }
+
+    void connect(Connection connection) {
+        if (closed) {
+            return;
+        }
+        bootstrap.clone()
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        channel.attr(CONNECTION).set(connection);
+                        channel.pipeline().addLast(
+                                new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true),
+                                new LengthFieldBasedFrameDecoder(FraudCheckMessages.MAX_FRAME_LENGTH, 0, FraudCheckMessages.LENGTH_FIELD_LENGTH, 0, FraudCheckMessages.LENGTH_FIELD_LENGTH),
+                                new ResponseHandler(connection));
+                    }
+                })
+                .connect(host, port)
+                .addListener((ChannelFuture future) -> {
+                    if (future.isSuccess()) {
+                        connection.channel = future.channel();
+                        logger.info("Connected to the fraud check RPC server {}", future.channel().remoteAddress());
+                    } else {
+                        logger.debug("Failure to connect to the fraud check RPC server {}:{}: {}", host, port, future.cause().toString());
+                        reconnect(connection);
+                    }
+                });
+    }
+
+    void reconnect(Connection connection) {
+        if (closed || eventLoopGroup.isShuttingDown()) {
+            return;
+        }
+        reconnectsCounter.increment();
+        eventLoopGroup.schedule(() -> connect(connection), reconnectDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int getOpenConnectionCount() {
+        int count = 0;
+        for (Connection connection : connections) {
+            Channel channel = connection.channel;
+            if (channel != null && channel.isActive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getPendingRequestCount() {
+        int count = 0;
+        for (Connection connection : connections) {
+            count += connection.pendingRequests.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            Channel channel = connection.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        eventLoopGroup.shutdownGracefully(0, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "FraudCheckRpcClient{" + host + ":" + port + ", connections=" + connections.length + "}";
+    }
+
+    /**
+     * A persistent connection and its requests waiting for a response
+     */
+    static class Connection {
+        volatile Channel channel;
+        final ConcurrentHashMap<Long, CompletableFuture<Byte>> pendingRequests = new ConcurrentHashMap<>();
+    }
+
+    class ResponseHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        final Connection connection;
+
+        ResponseHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            byte type = frame.readByte();
+            if (type != FraudCheckMessages.CHECK_ORDER_RESPONSE) {
+                logger.warn("Unexpected message type {} from the fraud check RPC server, closing the connection", type);
+                ctx.close();
+                return;
+            }
+            long requestId = frame.readLong();
+            byte result = frame.readByte();
+            CompletableFuture<Byte> response = connection.pendingRequests.remove(requestId);
+            // null if the caller timed out
+            if (response != null) {
+                response.complete(result);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            connection.channel = null;
+            // the checks may have been processed, they are not sent again
+            for (Long requestId : connection.pendingRequests.keySet()) {
+                CompletableFuture<Byte> response = connection.pendingRequests.remove(requestId);
+                if (response != null) {
+                    response.completeExceptionally(new ClosedChannelException());
+                }
+            }
+            logger.info("Connection to the fraud check RPC server {} lost", ctx.channel().remoteAddress());
+            reconnect(connection);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Failure of the connection to the fraud check RPC server {}: {}", ctx.channel().remoteAddress(), cause.toString());
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.common.apm.RouteLatencyMonitor;
+import com.mycompany.common.rpc.FraudCheckMessages;
+import com.mycompany.ecommerce.exception.AntiFraudException;
+import com.mycompany.ecommerce.rpc.FraudCheckRpcClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+
+/**
+ * Client of the {@code fraud/checkOrder} endpoint of the anti-fraud service.
+ * <p>
+ * With a {@code rpc://<host>:<port>} base url, the checks are sent with the binary {@link FraudCheckRpcClient}. They
+ * fall back to the HTTP endpoint of {@code antiFraudService.fallbackBaseUrl} while no RPC connection is open, or when
+ * the order cannot be encoded (the customer address is not an IP address, the country is not a 2 letters code).
+ */
+@Component
+public class AntiFraudClient implements DisposableBean {
+
+    static final String RPC_SCHEME = "rpc";
+
+    /**
+     * Route of the fraud checks in the {@link RouteLatencyMonitor}
+     */
+    public static final String CHECK_ORDER_ROUTE = "AntiFraudClient.checkOrder";
+
+    static final String ACCEPTED = "OK";
+    static final String REJECTED = "KO";
+
+    private RestTemplate restTemplate;
+    private RouteLatencyMonitor routeLatencyMonitor;
+    private String checkOrderUrlTemplate;
+    private String healthUrl;
+    private FraudCheckRpcClient rpcClient;
+    private final Counter rpcFallbacksCounter = Metrics.counter("antifraud_rpc_fallbacks");
+
+    public AntiFraudClient(RestTemplate restTemplate, RouteLatencyMonitor routeLatencyMonitor,
+                           @Value("${antiFraudService.baseUrl}") String antiFraudServiceBaseUrl,
+                           @Value("${antiFraudService.fallbackBaseUrl:}") String fallbackBaseUrl,
+                           @Value("${antiFraudService.rpc.connections:2}") int rpcConnections,
+                           @Value("${antiFraudService.rpc.timeoutMillis:1200}") long rpcTimeoutMillis,
+                           @Value("${antiFraudService.rpc.reconnectDelayMillis:1000}") long rpcReconnectDelayMillis) {
+        this.restTemplate = restTemplate;
+        this.routeLatencyMonitor = routeLatencyMonitor;
+        String httpBaseUrl = antiFraudServiceBaseUrl;
+        URI baseUri = URI.create(antiFraudServiceBaseUrl);
+        if (RPC_SCHEME.equals(baseUri.getScheme())) {
+            if (baseUri.getHost() == null || baseUri.getPort() == -1) {
+                throw new IllegalArgumentException("Expected rpc://<host>:<port>, got antiFraudService.baseUrl=" + antiFraudServiceBaseUrl);
+            }
+            this.rpcClient = new FraudCheckRpcClient(baseUri.getHost(), baseUri.getPort(), rpcConnections, rpcTimeoutMillis, rpcReconnectDelayMillis);
+            this.rpcClient.start();
+            if (fallbackBaseUrl.isEmpty()) {
+                return;
+            }
+            httpBaseUrl = fallbackBaseUrl;
+        }
+        // with or without trailing slash in the base url
+        this.checkOrderUrlTemplate = UriComponentsBuilder.fromHttpUrl(httpBaseUrl)
+                .path("/fraud/checkOrder")
+                .query("orderPrice={orderPrice}&customerIpAddress={customerIpAddress}&shippingCountry={shippingCountry}")
+                .build()
+                .toUriString();
+        this.healthUrl = UriComponentsBuilder.fromHttpUrl(httpBaseUrl)
+                .path("/actuator/health")
+                .build()
+                .toUriString();
+    }
+
+    /**
+     * @return {@code true} if the order is accepted, {@code false} if it is rejected as a fraud
+     * @throws AntiFraudException if there is no decision
+     */
+    public boolean checkOrder(double orderPrice, String customerIpAddress, String shippingCountry) throws AntiFraudException {
+        if (rpcClient != null) {
+            byte[] ipAddress = FraudCheckMessages.ipAddressBytes(customerIpAddress);
+            if (ipAddress != null && FraudCheckMessages.isCountryCode(shippingCountry)) {
+                long startNanos = System.nanoTime();
+                try {
+                    byte result = rpcClient.checkOrder(Math.round(orderPrice * 100), shippingCountry, ipAddress);
+                    routeLatencyMonitor.record(CHECK_ORDER_ROUTE, System.nanoTime() - startNanos);
+                    if (result == FraudCheckMessages.ACCEPTED) {
+                        return true;
+                    } else if (result == FraudCheckMessages.REJECTED) {
+                        return false;
+                    }
+                    throw new AntiFraudException("rpc-result-" + result);
+                } catch (ConnectException e) {
+                    // not sent, fall back to HTTP
+                } catch (IOException e) {
+                    routeLatencyMonitor.record(CHECK_ORDER_ROUTE, System.nanoTime() - startNanos);
+                    throw new AntiFraudException(e.getClass().getName(), e);
+                }
+            }
+            if (checkOrderUrlTemplate == null) {
+                throw new AntiFraudException("rpc-unavailable");
+            }
+            rpcFallbacksCounter.increment();
+        }
+        ResponseEntity<String> antiFraudResult;
+        long startNanos = System.nanoTime();
+        try {
+            antiFraudResult = restTemplate.getForEntity(checkOrderUrlTemplate, String.class,
+                    orderPrice, customerIpAddress, shippingCountry);
+        } catch (RestClientException e) {
+            routeLatencyMonitor.record(CHECK_ORDER_ROUTE, System.nanoTime() - startNanos);
+            String shortDescription = e.getClass().getName();
+            if (e.getCause() != null) { // capture SocketTimeoutException...
+                shortDescription += " / " + e.getCause().getClass().getName();
+            }
+            throw new AntiFraudException(shortDescription, e);
+        }
+        routeLatencyMonitor.record(CHECK_ORDER_ROUTE, System.nanoTime() - startNanos);
+        if (antiFraudResult.getStatusCode() != HttpStatus.OK) {
+            throw new AntiFraudException("status-" + antiFraudResult.getStatusCode());
+        }
+        if (ACCEPTED.equals(antiFraudResult.getBody())) {
+            return true;
+        } else if (REJECTED.equals(antiFraudResult.getBody())) {
+            return false;
+        }
+        throw new AntiFraudException("response-" + antiFraudResult.getBody());
+    }
+
+    /**
+     * @return {@code true} if an RPC connection is open or if the health endpoint of the anti-fraud service responds 2xx
+     */
+    public boolean ping() {
+        if (rpcClient != null && rpcClient.getOpenConnectionCount() > 0) {
+            return true;
+        }
+        if (healthUrl == null) {
+            return false;
+        }
+        try {
+            return restTemplate.getForEntity(healthUrl, String.class).getStatusCode().is2xxSuccessful();
+        } catch (RestClientException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (rpcClient != null) {
+            rpcClient.close();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.mycompany.ecommerce.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mycompany.ecommerce.dto.CartDto;
+import com.mycompany.ecommerce.exception.CartLimitExceededException;
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side shopping carts.
+ * <p>
+ * Carts are held in a concurrent Guava cache bounded to {@code carts.maxCarts} entries, the least recently used carts
+ * are evicted first, and idle carts expire after {@code carts.ttlMinutes}. As Guava only evicts expired entries while
+ * the cache is accessed, a sweeper thread cleans the cache up every {@code carts.sweepIntervalSeconds}.
+ * <p>
+ * A cart line is a product id and a quantity packed in a single {@code long} and a cart holds at most
+ * {@code carts.maxLinesPerCart} lines: the heap used by a cart is bounded and so is the heap used by the store.
+ */
+@ManagedResource
+@Component
+public class CartStore implements SmartLifecycle {
+
+    static final int QUANTITY_BITS = 20;
+    static final long QUANTITY_MASK = (1L << QUANTITY_BITS) - 1;
+    static final long MAX_PRODUCT_ID = Long.MAX_VALUE >>> QUANTITY_BITS;
+    static final long[] NO_LINES = new long[0];
+
+    final Cache<String, Cart> carts;
+    final int maxLinesPerCart;
+    final int maxQuantityPerLine;
+    final long sweepIntervalSeconds;
+
+    ScheduledExecutorService sweeper;
+
+    public CartStore(@Value("${carts.maxCarts:100000}") long maxCarts,
+                     @Value("${carts.maxLinesPerCart:50}") int maxLinesPerCart,
+                     @Value("${carts.maxQuantityPerLine:100}") int maxQuantityPerLine,
+                     @Value("${carts.ttlMinutes:30}") long ttlMinutes,
+                     @Value("${carts.sweepIntervalSeconds:60}") long sweepIntervalSeconds) {
+        if (maxQuantityPerLine > QUANTITY_MASK) {
+            throw new IllegalArgumentException("carts.maxQuantityPerLine must be lower than " + QUANTITY_MASK);
+        }
+        this.maxLinesPerCart = maxLinesPerCart;
+        this.maxQuantityPerLine = maxQuantityPerLine;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+        this.carts = CacheBuilder.newBuilder()
+                .maximumSize(maxCarts)
+                .expireAfterAccess(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(Metrics.globalRegistry, this.carts, "cartStore");
+    }
+
+    public CartDto create() {
+        Cart cart = new Cart(UUID.randomUUID().toString());
+        carts.put(cart.id, cart);
+        return cart.toDto();
+    }
+
+    /**
+     * @throws ResourceNotFoundException if the cart does not exist or has expired
+     */
+    public CartDto get(String cartId) throws ResourceNotFoundException {
+        return getCart(cartId).toDto();
+    }
+
+    /**
+     * Sets the quantity of a product, a zero quantity removes the product from the cart.
+     *
+     * @throws ResourceNotFoundException   if the cart does not exist or has expired
+     * @throws CartLimitExceededException if the cart already holds {@code carts.maxLinesPerCart} products
+     */
+    public CartDto setQuantity(String cartId, long productId, int quantity) throws ResourceNotFoundException, CartLimitExceededException {
+        if (productId < 1 || productId > MAX_PRODUCT_ID) {
+            throw new IllegalArgumentException("Invalid product id " + productId);
+        }
+        if (quantity < 0 || quantity > maxQuantityPerLine) {
+            throw new IllegalArgumentException("Quantity must be between 0 and " + maxQuantityPerLine + ", got " + quantity);
+        }
+        Cart cart = getCart(cartId);
+        cart.setQuantity(productId, quantity, maxLinesPerCart);
+        return cart.toDto();
+    }
+
+    public void delete(String cartId) {
+        carts.invalidate(cartId);
+    }
+
+    /**
+     * Removes the cart from the store so that it is checked out only once, see {@link #restore(CartDto)}. The returned
+     * lines are final: a concurrent {@link #setQuantity} that got the cart before its removal fails rather than
+     * changing a cart already checked out.
+     *
+     * @throws ResourceNotFoundException if the cart does not exist or has expired
+     */
+    public CartDto checkout(String cartId) throws ResourceNotFoundException {
+        Cart cart = carts.asMap().remove(cartId);
+        if (cart == null) {
+            throw new ResourceNotFoundException("Cart '" + cartId + "' not found");
+        }
+        return cart.checkOut();
+    }
+
+    /**
+     * Puts back a cart whose checkout failed, unless a cart with the same id has been created in the meantime.
+     */
+    public void restore(CartDto cartDto) {
+        Cart cart = new Cart(cartDto.getId());
+        for (CartDto.CartLineDto line : cartDto.getLines()) {
+            cart.setQuantity(line.getProductId(), line.getQuantity(), maxLinesPerCart);
+        }
+        carts.asMap().putIfAbsent(cart.id, cart);
+    }
+
+    Cart getCart(String cartId) {
+        Cart cart = carts.getIfPresent(cartId);
+        if (cart == null) {
+            throw new ResourceNotFoundException("Cart '" + cartId + "' not found");
+        }
+        return cart;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-store-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(carts::cleanUp, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (sweeper == null) {
+            return;
+        }
+        sweeper.shutdownNow();
+        sweeper = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return sweeper != null;
+    }
+
+    @ManagedAttribute
+    public long getCartCount() {
+        return carts.size();
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return carts.stats().evictionCount();
+    }
+
+    public int getMaxQuantityPerLine() {
+        return maxQuantityPerLine;
+    }
+
+    /**
+     * Lines are packed as {@code productId << QUANTITY_BITS | quantity}, in the order the products were added.
+     */
+    static class Cart {
+        final String id;
+        long[] lines = NO_LINES;
+        boolean checkedOut;
+
+        Cart(String id) {
+            this.id = id;
+        }
+
+        synchronized void setQuantity(long productId, int quantity, int maxLines) {
+            if (checkedOut) {
+                throw new ResourceNotFoundException("Cart '" + id + "' not found, checked out");
+            }
+            int idx = indexOf(productId);
+            if (quantity == 0) {
+                if (idx != -1) {
+                    long[] newLines = new long[lines.length - 1];
+                    System.arraycopy(lines, 0, newLines, 0, idx);
+                    System.arraycopy(lines, idx + 1, newLines, idx, lines.length - idx - 1);
+                    lines = newLines;
+                }
+            } else if (idx != -1) {
+                lines[idx] = pack(productId, quantity);
+            } else {
+                if (lines.length >= maxLines) {
+                    throw new CartLimitExceededException("Cart '" + id + "' is limited to " + maxLines + " products");
+                }
+                // exact size, most carts hold a handful of products
+                lines = Arrays.copyOf(lines, lines.length + 1);
+                lines[lines.length - 1] = pack(productId, quantity);
+            }
+        }
+
+        int indexOf(long productId) {
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i] >>> QUANTITY_BITS == productId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        synchronized CartDto checkOut() {
+            checkedOut = true;
+            return toDto();
+        }
+
+        synchronized CartDto toDto() {
+            List<CartDto.CartLineDto> lineDtos = new ArrayList<>(lines.length);
+            for (long line : lines) {
+                lineDtos.add(new CartDto.CartLineDto(line >>> QUANTITY_BITS, (int) (line & QUANTITY_MASK)));
+            }
+            return new CartDto(id, lineDtos);
+        }
+
+        static long pack(long productId, int quantity) {
+            return productId << QUANTITY_BITS | quantity;
+        }
+    }
+}
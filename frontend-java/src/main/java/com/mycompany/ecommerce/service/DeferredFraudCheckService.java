@@ -0,0 +1,25 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.OrderStatus;
+
+import java.util.function.Consumer;
+
+/**
+ * Fraud check of the {@link OrderStatus#PENDING} orders after the response to the client: the order moves to
+ * {@link OrderStatus#PAID} or to {@link OrderStatus#REJECTED}, the stock of a rejected order is released.
+ */
+public interface DeferredFraudCheckService {
+
+    /**
+     * Schedules the fraud check of a persisted {@link OrderStatus#PENDING} order
+     */
+    void submit(long orderId);
+
+    /**
+     * The listener is called once, with the new status, when the order leaves the {@link OrderStatus#PENDING} status.
+     * It is not called if the order has already left the pending status.
+     */
+    void addStatusListener(long orderId, Consumer<OrderStatus> listener);
+
+    void removeStatusListener(long orderId, Consumer<OrderStatus> listener);
+}
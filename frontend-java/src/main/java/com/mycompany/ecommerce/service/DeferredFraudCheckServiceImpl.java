@@ -0,0 +1,263 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.common.logging.SamplingTurboFilter;
+import com.mycompany.ecommerce.exception.AntiFraudException;
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderStatus;
+import com.mycompany.ecommerce.repository.OrderProductRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The checks run on a pool of {@code orders.deferredFraudCheck.threads} threads. A check without decision of the
+ * anti-fraud service (error, timeout) is retried up to {@code orders.deferredFraudCheck.maxAttempts} times with a
+ * linear backoff of {@code orders.deferredFraudCheck.retryDelayMillis}, then the order is rejected.
+ * <p>
+ * The pending orders are persisted: on startup, the checks of the orders still {@link OrderStatus#PENDING} are
+ * submitted again. The status change is a compare and set on the status so an order is decided only once even if it
+ * is checked twice.
+ */
+@ManagedResource
+@Service
+public class DeferredFraudCheckServiceImpl implements DeferredFraudCheckService, SmartLifecycle {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final OrderService orderService;
+    final OrderProductRepository orderProductRepository;
+    final AntiFraudClient antiFraudClient;
+    final StockReservationService stockReservationService;
+    final OrderMetrics orderMetrics;
+    final int threads;
+    final int maxAttempts;
+    final long retryDelayMillis;
+
+    final ConcurrentHashMap<Long, List<Consumer<OrderStatus>>> statusListeners = new ConcurrentHashMap<>();
+
+    final LongAdder paidCounter = new LongAdder();
+    final LongAdder rejectedCounter = new LongAdder();
+    final LongAdder retriesCounter = new LongAdder();
+    final LongAdder recoveredCounter = new LongAdder();
+
+    volatile ScheduledThreadPoolExecutor executor;
+
+    public DeferredFraudCheckServiceImpl(OrderService orderService, OrderProductRepository orderProductRepository,
+                                         AntiFraudClient antiFraudClient, StockReservationService stockReservationService,
+                                         OrderMetrics orderMetrics,
+                                         @Value("${orders.deferredFraudCheck.threads:4}") int threads,
+                                         @Value("${orders.deferredFraudCheck.maxAttempts:5}") int maxAttempts,
+                                         @Value("${orders.deferredFraudCheck.retryDelayMillis:1000}") long retryDelayMillis) {
+        this.orderService = orderService;
+        this.orderProductRepository = orderProductRepository;
+        this.antiFraudClient = antiFraudClient;
+        this.stockReservationService = stockReservationService;
+        this.orderMetrics = orderMetrics;
+        this.threads = threads;
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+
+        FunctionCounter.builder("order_deferred_fraud_check_paid", paidCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("order_deferred_fraud_check_rejected", rejectedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("order_deferred_fraud_check_retries", retriesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("order_deferred_fraud_check_recovered", recoveredCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("order_deferred_fraud_check_queue", this, DeferredFraudCheckServiceImpl::getQueuedCheckCount).register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public void submit(long orderId) {
+        schedule(orderId, 1, 0);
+    }
+
+    void schedule(long orderId, int attempt, long delayMillis) {
+        ScheduledThreadPoolExecutor executor = this.executor;
+        if (executor == null) {
+            // stopped, the order is still pending and will be recovered on the next startup
+            logger.info("Deferred fraud check of order {} postponed to the next startup", orderId);
+            return;
+        }
+        executor.schedule(() -> check(orderId, attempt), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void check(long orderId, int attempt) {
+        Order order;
+        try {
+            order = orderService.getOrder(orderId);
+        } catch (ResourceNotFoundException e) {
+            logger.warn("Deferred fraud check of order {}: order not found", orderId);
+            return;
+        }
+        if (!OrderStatus.PENDING.name().equals(order.getStatus())) {
+            return;
+        }
+        double orderPrice = order.getTotalOrderPrice();
+        boolean accepted;
+        try {
+            accepted = antiFraudClient.checkOrder(orderPrice, order.getCustomerIpAddress(), order.getShippingCountry());
+        } catch (AntiFraudException e) {
+            if (attempt < maxAttempts) {
+                retriesCounter.increment();
+                logger.info("Deferred fraud check of order {}: attempt {} failed, fraud.exception: {}", orderId, attempt, e.getShortDescription());
+                schedule(orderId, attempt + 1, retryDelayMillis * attempt);
+                return;
+            }
+            logger.warn("Deferred fraud check of order {}: rejected after {} attempts, fraud.exception: {}", orderId, attempt, e.getShortDescription());
+            accepted = false;
+        } catch (RuntimeException e) {
+            // unexpected, retry on the next startup rather than losing the check
+            logger.warn("Deferred fraud check of order {} failed, will be retried on the next startup", orderId, e);
+            return;
+        }
+
+        OrderStatus status = accepted ? OrderStatus.PAID : OrderStatus.REJECTED;
+        if (!orderService.updateStatus(orderId, OrderStatus.PENDING, status)) {
+            return; // decided concurrently
+        }
+        if (order.getStatusChangedAt() != null) {
+            orderMetrics.recordTimeInStatus(OrderStatus.PENDING.name(), status.name(), Duration.between(order.getStatusChangedAt(), Instant.now()));
+        }
+        if (accepted) {
+            paidCounter.increment();
+            orderMetrics.recordPaidOrder(orderPrice, order.getShippingCountry());
+        } else {
+            rejectedCounter.increment();
+            releaseStock(orderId);
+        }
+        // only the accepted orders are sampled
+        logger.info(accepted ? SamplingTurboFilter.SAMPLED : null, "Deferred fraud check of order {}: price: {}, status: {}", orderId, orderPrice, status);
+        notifyStatusListeners(orderId, status);
+    }
+
+    void releaseStock(long orderId) {
+        List<Object[]> lines = orderProductRepository.findProductIdsAndQuantitiesByOrderId(orderId);
+        long[] productIds = new long[lines.size()];
+        int[] quantities = new int[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            productIds[i] = ((Number) lines.get(i)[0]).longValue();
+            quantities[i] = ((Number) lines.get(i)[1]).intValue();
+        }
+        stockReservationService.release(productIds, quantities);
+    }
+
+    @Override
+    public void addStatusListener(long orderId, Consumer<OrderStatus> listener) {
+        statusListeners.computeIfAbsent(orderId, id -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void removeStatusListener(long orderId, Consumer<OrderStatus> listener) {
+        statusListeners.computeIfPresent(orderId, (id, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    void notifyStatusListeners(long orderId, OrderStatus status) {
+        List<Consumer<OrderStatus>> listeners = statusListeners.remove(orderId);
+        if (listeners == null) {
+            return;
+        }
+        for (Consumer<OrderStatus> listener : listeners) {
+            try {
+                listener.accept(status);
+            } catch (RuntimeException e) {
+                logger.info("Failure to notify the status {} of order {}: {}", status, orderId, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Started after the {@link StockReservationService}, so that the stock of the recovered rejected orders is
+     * released on a loaded stock, and stopped before it.
+     */
+    @Override
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "deferred-fraud-check-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+
+        List<Long> pendingOrderIds = orderService.getOrderIdsByStatus(OrderStatus.PENDING);
+        for (Long orderId : pendingOrderIds) {
+            submit(orderId);
+        }
+        recoveredCounter.add(pendingOrderIds.size());
+        logger.info("Recovered the deferred fraud check of {} pending orders", pendingOrderIds.size());
+    }
+
+    @Override
+    public void stop() {
+        ScheduledThreadPoolExecutor executor;
+        synchronized (this) {
+            executor = this.executor;
+            if (executor == null) {
+                return;
+            }
+            this.executor = null;
+        }
+        // the orders of the cancelled checks are still pending, they will be recovered on the next startup
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return StockReservationServiceImpl.PHASE + 1;
+    }
+
+    @ManagedAttribute
+    public int getQueuedCheckCount() {
+        ScheduledThreadPoolExecutor executor = this.executor;
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    @ManagedAttribute
+    public long getPaidCount() {
+        return paidCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return rejectedCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getRetryCount() {
+        return retriesCounter.sum();
+    }
+}
@@ -0,0 +1,19 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.dto.HealthSnapshot;
+
+/**
+ * Health of the frontend and of its dependencies, probed in the background.
+ */
+public interface HealthProbeService {
+
+    /**
+     * @return the result of the last probes, without probing: to be called as often as needed
+     */
+    HealthSnapshot getHealth();
+
+    /**
+     * Runs the probes now and caches the result.
+     */
+    HealthSnapshot probe();
+}
@@ -0,0 +1,211 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.common.apm.LatencyWindow;
+import com.mycompany.common.apm.RouteLatency;
+import com.mycompany.common.apm.RouteLatencyMonitor;
+import com.mycompany.ecommerce.dto.HealthSnapshot;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the dependencies every {@code health.probeIntervalMillis} on a background thread and caches the aggregate:
+ * health checks of load balancers and heartbeats read a volatile field and never touch the database.
+ * <p>
+ * Probes:
+ * <ul>
+ *     <li>{@code connectionPool}, critical: down when {@code health.pool.maxSaturationPercent} of the Hikari connections
+ *     are active and threads are waiting for a connection</li>
+ *     <li>{@code database}, critical: Postgres answers {@link Connection#isValid(int)} within
+ *     {@code health.database.timeoutSeconds}. Not probed when the pool has no idle connection, borrowing one would
+ *     wait behind the requests, the pool probe covers that case</li>
+ *     <li>{@code antiFraud}: the anti-fraud service is reachable and the p99 of the fraud checks over the last minute
+ *     meets its SLO, see {@link RouteLatencyMonitor}. Not critical, the orders can be checked later, the service is
+ *     degraded</li>
+ * </ul>
+ * If the probes stop running, the health turns down after {@code health.staleAfterMillis}.
+ */
+@ManagedResource
+@Service
+public class HealthProbeServiceImpl implements HealthProbeService, SmartLifecycle {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final DataSource dataSource;
+    final AntiFraudClient antiFraudClient;
+    final RouteLatencyMonitor routeLatencyMonitor;
+    final long probeIntervalMillis;
+    final long staleAfterMillis;
+    final int databaseTimeoutSeconds;
+    final int poolMaxSaturationPercent;
+
+    volatile HealthSnapshot health = new HealthSnapshot(Collections.emptyList(), System.currentTimeMillis());
+
+    ScheduledExecutorService prober;
+
+    public HealthProbeServiceImpl(DataSource dataSource, AntiFraudClient antiFraudClient, RouteLatencyMonitor routeLatencyMonitor,
+                                  @Value("${health.probeIntervalMillis:5000}") long probeIntervalMillis,
+                                  @Value("${health.staleAfterMillis:30000}") long staleAfterMillis,
+                                  @Value("${health.database.timeoutSeconds:2}") int databaseTimeoutSeconds,
+                                  @Value("${health.pool.maxSaturationPercent:100}") int poolMaxSaturationPercent) {
+        this.dataSource = dataSource;
+        this.antiFraudClient = antiFraudClient;
+        this.routeLatencyMonitor = routeLatencyMonitor;
+        this.probeIntervalMillis = probeIntervalMillis;
+        this.staleAfterMillis = staleAfterMillis;
+        this.databaseTimeoutSeconds = databaseTimeoutSeconds;
+        this.poolMaxSaturationPercent = poolMaxSaturationPercent;
+
+        // 2 up, 1 degraded, 0 down
+        Gauge.builder("health_status", this, s -> 2 - s.getHealth().getStatus().ordinal()).register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public HealthSnapshot getHealth() {
+        HealthSnapshot health = this.health;
+        long ageMillis = System.currentTimeMillis() - health.getTimestampMillis();
+        if (ageMillis > staleAfterMillis) {
+            return new HealthSnapshot(Collections.singletonList(
+                    new HealthSnapshot.ProbeResult("probes", true, false, "last probe " + ageMillis + "ms ago", 0)),
+                    health.getTimestampMillis());
+        }
+        return health;
+    }
+
+    @Override
+    public synchronized HealthSnapshot probe() {
+        List<HealthSnapshot.ProbeResult> probes = new ArrayList<>(3);
+        HikariDataSource hikariDataSource = getHikariDataSource();
+        HikariPoolMXBean pool = hikariDataSource == null ? null : hikariDataSource.getHikariPoolMXBean();
+        int maximumPoolSize = hikariDataSource == null ? 0 : hikariDataSource.getMaximumPoolSize();
+        probes.add(probeConnectionPool(pool, maximumPoolSize));
+        probes.add(probeDatabase(pool, maximumPoolSize));
+        probes.add(probeAntiFraud());
+        HealthSnapshot health = new HealthSnapshot(probes, System.currentTimeMillis());
+        if (health.getStatus() != this.health.getStatus()) {
+            logger.info("Health {}: {}", health.getStatus(), probes);
+        }
+        this.health = health;
+        return health;
+    }
+
+    HealthSnapshot.ProbeResult probeConnectionPool(HikariPoolMXBean pool, int maximumPoolSize) {
+        if (pool == null) {
+            return new HealthSnapshot.ProbeResult("connectionPool", true, true, "not a started Hikari pool", 0);
+        }
+        int active = pool.getActiveConnections();
+        int pending = pool.getThreadsAwaitingConnection();
+        boolean saturated = active * 100 >= maximumPoolSize * poolMaxSaturationPercent && pending > 0;
+        return new HealthSnapshot.ProbeResult("connectionPool", true, !saturated,
+                "active: " + active + "/" + maximumPoolSize + ", pending: " + pending, 0);
+    }
+
+    HealthSnapshot.ProbeResult probeDatabase(HikariPoolMXBean pool, int maximumPoolSize) {
+        if (pool != null && pool.getIdleConnections() == 0 && pool.getTotalConnections() >= maximumPoolSize) {
+            return new HealthSnapshot.ProbeResult("database", true, true, "not probed, no idle connection", 0);
+        }
+        long startNanos = System.nanoTime();
+        boolean valid;
+        String detail;
+        try (Connection cnn = dataSource.getConnection()) {
+            valid = cnn.isValid(databaseTimeoutSeconds);
+            detail = valid ? "valid" : "invalid connection";
+        } catch (SQLException | RuntimeException e) {
+            valid = false;
+            detail = e.toString();
+        }
+        return new HealthSnapshot.ProbeResult("database", true, valid, detail, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    HealthSnapshot.ProbeResult probeAntiFraud() {
+        long startNanos = System.nanoTime();
+        boolean reachable = antiFraudClient.ping();
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (!reachable) {
+            return new HealthSnapshot.ProbeResult("antiFraud", false, false, "unreachable", durationMillis);
+        }
+        RouteLatency latency = routeLatencyMonitor.getLatency(AntiFraudClient.CHECK_ORDER_ROUTE);
+        if (latency == null) {
+            return new HealthSnapshot.ProbeResult("antiFraud", false, true, "reachable", durationMillis);
+        }
+        RouteLatency.WindowLatency lastMinute = latency.getWindow(LatencyWindow.ONE_MINUTE);
+        return new HealthSnapshot.ProbeResult("antiFraud", false, !lastMinute.isSloBreached(),
+                "reachable, checkOrder p99: " + lastMinute.getP99Millis() + "ms, slo: " + latency.getSloP99Millis() + "ms", durationMillis);
+    }
+
+    HikariDataSource getHikariDataSource() {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class);
+            }
+        } catch (SQLException e) {
+            // not a Hikari pool
+        }
+        return null;
+    }
+
+    void probeSafely() {
+        try {
+            probe();
+        } catch (RuntimeException e) {
+            // the health turns down when stale
+            logger.warn("Failure to probe the health", e);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (prober != null) {
+            return;
+        }
+        prober = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "health-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleWithFixedDelay(this::probeSafely, 0, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (prober == null) {
+            return;
+        }
+        prober.shutdownNow();
+        prober = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return prober != null;
+    }
+
+    @ManagedAttribute
+    public String getStatus() {
+        return getHealth().getStatus().name();
+    }
+
+    @ManagedOperation(description = "Result of the last probes")
+    public String getSummary() {
+        return getHealth().toString();
+    }
+}
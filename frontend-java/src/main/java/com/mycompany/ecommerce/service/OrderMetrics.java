@@ -0,0 +1,45 @@
+package com.mycompany.ecommerce.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Business metrics of the orders, recorded when an order is paid, whether its fraud check is synchronous or deferred.
+ */
+@Component
+public class OrderMetrics {
+
+    public void recordPaidOrder(double orderPrice, String shippingCountryCode) {
+        DistributionSummary.builder("order")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.75, 0.95)
+                .register(Metrics.globalRegistry)
+                .record(orderPrice);
+
+        Metrics.counter("order_value_counter").increment(orderPrice);
+        Metrics.counter("order_count_counter").increment();
+
+        DistributionSummary.builder("order_per_country")
+                .tags("shipping_country", shippingCountryCode)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.75, 0.95)
+                .register(Metrics.globalRegistry)
+                .record(orderPrice);
+    }
+
+    /**
+     * Time spent by an order in a status before moving to the next status
+     */
+    public void recordTimeInStatus(String status, String nextStatus, Duration duration) {
+        Timer.builder("order_time_in_status")
+                .tags("status", status, "next_status", nextStatus)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(Metrics.globalRegistry)
+                .record(duration);
+    }
+}
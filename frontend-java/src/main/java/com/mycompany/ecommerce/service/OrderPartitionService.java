@@ -0,0 +1,30 @@
+package com.mycompany.ecommerce.service;
+
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Maintenance of the monthly partitions of the {@code orders} table, see {@code db/frontend-orders-partitioned-schema.sql}:
+ * the partitions of the coming months are created ahead and the partitions older than the hot months are moved to the
+ * {@link com.mycompany.ecommerce.archive.OrderArchive}.
+ */
+public interface OrderPartitionService {
+
+    /**
+     * Creates the missing partitions of the current month and of the coming months
+     */
+    void createPartitions();
+
+    /**
+     * Archives and drops the partitions older than the hot months, with their order lines. The partitions holding
+     * {@code PENDING} orders are kept until the orders are decided.
+     *
+     * @return the number of archived partitions
+     */
+    int archiveColdPartitions();
+
+    /**
+     * @return the months that have a partition, in ascending order
+     */
+    List<YearMonth> getPartitions();
+}
@@ -0,0 +1,361 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.archive.OrderArchive;
+import com.mycompany.ecommerce.archive.OrderSegment;
+import com.mycompany.ecommerce.model.OrderStatus;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code orders} table is range partitioned by month on {@code date_created}, partitions are named
+ * {@code orders_<yyyy>_<mm>}.
+ * <p>
+ * Every {@code orders.partitioning.maintenanceIntervalMinutes}, on a background thread:
+ * <ul>
+ *     <li>the partitions of the current month and of the {@code orders.partitioning.premadeMonths} next months are
+ *     created, the orders never land in the {@code orders_default} partition,</li>
+ *     <li>the partitions older than the {@code orders.partitioning.hotMonths} most recent months are written to an
+ *     {@link OrderSegment} file with their order lines, then the lines are deleted and the partition is detached and
+ *     dropped in a single transaction. A crash in between leaves a segment and a partition of the same month, the next
+ *     run rewrites the segment.</li>
+ * </ul>
+ * The hot tier, the orders partitions and {@code order_product}, should fit in the Postgres shared buffers: its size
+ * is measured on each run and a warning is logged when it exceeds {@code orders.partitioning.maxSharedBuffersPercent}.
+ * <p>
+ * When several instances share the database, a Postgres advisory lock elects the instance that runs the maintenance.
+ */
+@ManagedResource
+@Service
+@ConditionalOnProperty("orders.partitioning.enabled")
+public class OrderPartitionServiceImpl implements OrderPartitionService, SmartLifecycle {
+
+    /**
+     * Creates the partitions before the services that write orders start
+     */
+    static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 200;
+
+    static final long ADVISORY_LOCK_KEY = 0x6F72646572735F70L; // "orders_p"
+
+    static final Pattern PARTITION_NAME = Pattern.compile("orders_(\\d{4})_(\\d{2})");
+
+    static final String LIST_PARTITIONS_SQL = "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+            "where i.inhparent = 'orders'::regclass";
+    static final String HOT_BYTES_SQL = "select coalesce(sum(pg_total_relation_size(i.inhrelid)), 0) + pg_total_relation_size('order_product') " +
+            "from pg_inherits i where i.inhparent = 'orders'::regclass";
+    static final String SHARED_BUFFERS_BYTES_SQL = "select pg_size_bytes(current_setting('shared_buffers'))";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final DataSource dataSource;
+    final OrderArchive orderArchive;
+    final int hotMonths;
+    final int premadeMonths;
+    final long maintenanceIntervalMinutes;
+    final int maxSharedBuffersPercent;
+    final Clock clock;
+
+    final LongAdder archivedOrdersCounter = new LongAdder();
+    volatile long hotBytes;
+    volatile long sharedBuffersBytes;
+    volatile List<YearMonth> partitions = Collections.emptyList();
+
+    ScheduledExecutorService maintainer;
+
+    public OrderPartitionServiceImpl(DataSource dataSource, OrderArchive orderArchive,
+                                     @Value("${orders.partitioning.hotMonths:3}") int hotMonths,
+                                     @Value("${orders.partitioning.premadeMonths:2}") int premadeMonths,
+                                     @Value("${orders.partitioning.maintenanceIntervalMinutes:60}") long maintenanceIntervalMinutes,
+                                     @Value("${orders.partitioning.maxSharedBuffersPercent:50}") int maxSharedBuffersPercent) {
+        this(dataSource, orderArchive, hotMonths, premadeMonths, maintenanceIntervalMinutes, maxSharedBuffersPercent, Clock.systemDefaultZone());
+    }
+
+    OrderPartitionServiceImpl(DataSource dataSource, OrderArchive orderArchive, int hotMonths, int premadeMonths,
+                              long maintenanceIntervalMinutes, int maxSharedBuffersPercent, Clock clock) {
+        if (hotMonths < 1) {
+            throw new IllegalArgumentException("orders.partitioning.hotMonths must be at least 1, got " + hotMonths);
+        }
+        this.dataSource = dataSource;
+        this.orderArchive = orderArchive;
+        this.hotMonths = hotMonths;
+        this.premadeMonths = premadeMonths;
+        this.maintenanceIntervalMinutes = maintenanceIntervalMinutes;
+        this.maxSharedBuffersPercent = maxSharedBuffersPercent;
+        this.clock = clock;
+
+        FunctionCounter.builder("orders_archived", archivedOrdersCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("orders_hot_bytes", this, s -> s.hotBytes).register(Metrics.globalRegistry);
+        Gauge.builder("orders_hot_partitions", this, s -> s.partitions.size()).register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public synchronized void createPartitions() {
+        YearMonth currentMonth = YearMonth.now(clock);
+        try (Connection cnn = dataSource.getConnection();
+             Statement stmt = cnn.createStatement()) {
+            for (int i = 0; i <= premadeMonths; i++) {
+                YearMonth month = currentMonth.plusMonths(i);
+                // DDL can't be parameterized, the name and the bounds are derived from a YearMonth
+                stmt.execute("create table if not exists " + partitionName(month) + " partition of orders " +
+                        "for values from ('" + month.atDay(1) + "') to ('" + month.plusMonths(1).atDay(1) + "')");
+            }
+            partitions = listPartitions(cnn);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failure to create the partitions of the orders table", e);
+        }
+    }
+
+    @Override
+    @ManagedOperation
+    public synchronized int archiveColdPartitions() {
+        YearMonth oldestHotMonth = YearMonth.now(clock).minusMonths(hotMonths - 1);
+        int archived = 0;
+        try (Connection cnn = dataSource.getConnection()) {
+            for (YearMonth month : listPartitions(cnn)) {
+                if (month.isBefore(oldestHotMonth) && archivePartition(cnn, month)) {
+                    archived++;
+                }
+            }
+            partitions = listPartitions(cnn);
+        } catch (SQLException | IOException e) {
+            logger.warn("Failure to archive the cold partitions of the orders table, will retry: {}", e.toString());
+        }
+        return archived;
+    }
+
+    boolean archivePartition(Connection cnn, YearMonth month) throws SQLException, IOException {
+        String partition = partitionName(month);
+        try (PreparedStatement stmt = cnn.prepareStatement("select count(*) from " + partition + " where status = ?")) {
+            stmt.setString(1, OrderStatus.PENDING.name());
+            try (ResultSet rst = stmt.executeQuery()) {
+                rst.next();
+                if (rst.getLong(1) > 0) {
+                    logger.info("Partition {} still holds {} pending orders, not archived", partition, rst.getLong(1));
+                    return false;
+                }
+            }
+        }
+
+        OrderSegment segment = readPartition(cnn, month);
+        orderArchive.store(segment);
+
+        cnn.setAutoCommit(false);
+        try (Statement stmt = cnn.createStatement()) {
+            stmt.execute("delete from order_product where order_id in (select id from " + partition + ")");
+            stmt.execute("alter table orders detach partition " + partition);
+            stmt.execute("drop table " + partition);
+            cnn.commit();
+        } catch (SQLException e) {
+            cnn.rollback();
+            throw e;
+        } finally {
+            cnn.setAutoCommit(true);
+        }
+        archivedOrdersCounter.add(segment.size());
+        return true;
+    }
+
+    /**
+     * Streams the orders and the lines of the partition side by side, both sorted by order id, with server side
+     * cursors: the partition is never held in memory as rows.
+     */
+    OrderSegment readPartition(Connection cnn, YearMonth month) throws SQLException {
+        String partition = partitionName(month);
+        OrderSegment.Builder segment = new OrderSegment.Builder(month);
+        cnn.setAutoCommit(false);
+        try (PreparedStatement ordersStmt = cnn.prepareStatement("select id, date_created, status, status_changed_at, customer_id, " +
+                "discount_in_cents, tax_in_cents, total_price_in_cents, shipping_country, customer_ip_address " +
+                "from " + partition + " order by id");
+             PreparedStatement linesStmt = cnn.prepareStatement("select op.order_id, op.product_id, op.quantity " +
+                     "from order_product op join " + partition + " o on o.id = op.order_id order by op.order_id, op.product_id")) {
+            ordersStmt.setFetchSize(10_000);
+            linesStmt.setFetchSize(10_000);
+            try (ResultSet orders = ordersStmt.executeQuery();
+                 ResultSet lines = linesStmt.executeQuery()) {
+                boolean hasLine = lines.next();
+                while (orders.next()) {
+                    long id = orders.getLong(1);
+                    Timestamp statusChangedAt = orders.getTimestamp(4);
+                    segment.addOrder(id, orders.getDate(2).toLocalDate(), orders.getString(3),
+                            statusChangedAt == null ? null : statusChangedAt.toInstant(), orders.getString(5),
+                            (Long) orders.getObject(6), (Long) orders.getObject(7), (Long) orders.getObject(8),
+                            orders.getString(9), orders.getString(10));
+                    while (hasLine && lines.getLong(1) <= id) {
+                        if (lines.getLong(1) == id) {
+                            segment.addLine(lines.getLong(2), lines.getInt(3));
+                        }
+                        hasLine = lines.next();
+                    }
+                }
+            }
+            cnn.commit();
+        } finally {
+            cnn.setAutoCommit(true);
+        }
+        return segment.build();
+    }
+
+    /**
+     * Runs the maintenance unless another instance is running it
+     */
+    void maintain() {
+        try (Connection lockCnn = dataSource.getConnection()) {
+            if (!tryAdvisoryLock(lockCnn, "pg_try_advisory_lock")) {
+                logger.debug("Orders partitions maintained by another instance");
+                return;
+            }
+            try {
+                createPartitions();
+                archiveColdPartitions();
+                measureHotTier(lockCnn);
+            } finally {
+                tryAdvisoryLock(lockCnn, "pg_advisory_unlock");
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Failure to maintain the partitions of the orders table, will retry: {}", e.toString());
+        }
+    }
+
+    boolean tryAdvisoryLock(Connection cnn, String function) throws SQLException {
+        try (PreparedStatement stmt = cnn.prepareStatement("select " + function + "(?)")) {
+            stmt.setLong(1, ADVISORY_LOCK_KEY);
+            try (ResultSet rst = stmt.executeQuery()) {
+                return rst.next() && rst.getBoolean(1);
+            }
+        }
+    }
+
+    void measureHotTier(Connection cnn) throws SQLException {
+        try (Statement stmt = cnn.createStatement()) {
+            try (ResultSet rst = stmt.executeQuery(HOT_BYTES_SQL)) {
+                rst.next();
+                hotBytes = rst.getLong(1);
+            }
+            try (ResultSet rst = stmt.executeQuery(SHARED_BUFFERS_BYTES_SQL)) {
+                rst.next();
+                sharedBuffersBytes = rst.getLong(1);
+            }
+        }
+        if (hotBytes > sharedBuffersBytes * maxSharedBuffersPercent / 100) {
+            logger.warn("The hot orders ({} MB, {} months) exceed {}% of the shared buffers ({} MB), " +
+                            "reduce orders.partitioning.hotMonths or increase shared_buffers",
+                    hotBytes >> 20, hotMonths, maxSharedBuffersPercent, sharedBuffersBytes >> 20);
+        }
+    }
+
+    List<YearMonth> listPartitions(Connection cnn) throws SQLException {
+        List<YearMonth> months = new ArrayList<>();
+        try (Statement stmt = cnn.createStatement();
+             ResultSet rst = stmt.executeQuery(LIST_PARTITIONS_SQL)) {
+            while (rst.next()) {
+                Matcher matcher = PARTITION_NAME.matcher(rst.getString(1));
+                if (matcher.matches()) {
+                    months.add(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+                }
+            }
+        }
+        Collections.sort(months);
+        return months;
+    }
+
+    static String partitionName(YearMonth month) {
+        return String.format("orders_%04d_%02d", month.getYear(), month.getMonthValue());
+    }
+
+    @Override
+    public List<YearMonth> getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (maintainer != null) {
+            return;
+        }
+        try {
+            createPartitions();
+        } catch (IllegalStateException e) {
+            // the orders land in orders_default until the next maintenance creates the partition
+            logger.error("Failure to create the partitions of the orders table at startup", e);
+        }
+        maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orders-partition-maintainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintainer.scheduleWithFixedDelay(this::maintain, 0, maintenanceIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (maintainer == null) {
+            return;
+        }
+        maintainer.shutdownNow();
+        maintainer = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return maintainer != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @ManagedAttribute
+    public String getHotPartitions() {
+        return partitions.toString();
+    }
+
+    @ManagedAttribute
+    public int getHotMonths() {
+        return hotMonths;
+    }
+
+    @ManagedAttribute
+    public long getHotBytes() {
+        return hotBytes;
+    }
+
+    @ManagedAttribute
+    public long getSharedBuffersBytes() {
+        return sharedBuffersBytes;
+    }
+
+    @ManagedAttribute
+    public long getArchivedOrderCount() {
+        return archivedOrdersCounter.sum();
+    }
+}
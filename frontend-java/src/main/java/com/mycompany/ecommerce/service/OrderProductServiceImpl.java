@@ -2,6 +2,7 @@ package com.mycompany.ecommerce.service;
 
 import com.mycompany.ecommerce.model.OrderProduct;
 import com.mycompany.ecommerce.repository.OrderProductRepository;
+import com.mycompany.ecommerce.sharding.OrderShards;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -10,13 +11,19 @@ import org.springframework.transaction.annotation.Transactional;
 public class OrderProductServiceImpl implements OrderProductService {
 
     private OrderProductRepository orderProductRepository;
+    private OrderShards orderShards;
 
-    public OrderProductServiceImpl(OrderProductRepository orderProductRepository) {
+    public OrderProductServiceImpl(OrderProductRepository orderProductRepository, OrderShards orderShards) {
         this.orderProductRepository = orderProductRepository;
+        this.orderShards = orderShards;
     }
 
+    /**
+     * Stored on the shard of the order, which is the shard of its customer
+     */
     @Override
     public OrderProduct create(OrderProduct orderProduct) {
-        return this.orderProductRepository.save(orderProduct);
+        int shard = orderShards.shardOfCustomer(orderProduct.getPk().getOrder().getCustomerId());
+        return orderShards.callOnShard(shard, () -> this.orderProductRepository.save(orderProduct));
     }
 }
@@ -0,0 +1,281 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.style.ToStringCreator;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Throttles the order attempts per customer and per IP address with token buckets.
+ * <p>
+ * Each bucket is a single {@link AtomicLong}, the theoretical arrival time of the next request (generic cell rate
+ * algorithm): the tokens are refilled lazily by the passing of time, an admission is a compare-and-set without lock and
+ * without allocation once the key is known. The buckets are held in concurrent maps, striped by key hash. A bucket
+ * whose arrival time is in the past is full and is evicted by the sweeper thread every
+ * {@code orders.rateLimit.sweepIntervalSeconds}. When {@code orders.rateLimit.maxKeys} keys are tracked, the new keys
+ * share an overflow bucket per kind of key until the next sweep: a flood of new keys is throttled as a single key
+ * rather than admitted.
+ * <p>
+ * The limits can be changed at runtime over JMX, the current buckets are kept.
+ */
+@ManagedResource
+@Component
+public class OrderRateLimiter implements SmartLifecycle {
+
+    final ConcurrentHashMap<String, AtomicLong> customerBuckets = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<String, AtomicLong> ipBuckets = new ConcurrentHashMap<>();
+    /**
+     * Shared by the new keys while {@code maxKeys} keys are tracked, by kind of key
+     */
+    final ConcurrentHashMap<String, AtomicLong> overflowBuckets = new ConcurrentHashMap<>();
+    final int maxKeys;
+    final long sweepIntervalSeconds;
+
+    volatile boolean enabled;
+    volatile Limit customerLimit;
+    volatile Limit ipLimit;
+
+    LongSupplier nanoClock = System::nanoTime;
+
+    final LongAdder admittedCounter = new LongAdder();
+    final LongAdder customerRejectedCounter = new LongAdder();
+    final LongAdder ipRejectedCounter = new LongAdder();
+    final LongAdder overflowCounter = new LongAdder();
+
+    ScheduledExecutorService sweeper;
+
+    public OrderRateLimiter(@Value("${orders.rateLimit.enabled:true}") boolean enabled,
+                            @Value("${orders.rateLimit.customer.ratePerMinute:30}") int customerRatePerMinute,
+                            @Value("${orders.rateLimit.customer.burst:10}") int customerBurst,
+                            @Value("${orders.rateLimit.ip.ratePerMinute:120}") int ipRatePerMinute,
+                            @Value("${orders.rateLimit.ip.burst:30}") int ipBurst,
+                            @Value("${orders.rateLimit.maxKeys:100000}") int maxKeys,
+                            @Value("${orders.rateLimit.sweepIntervalSeconds:60}") long sweepIntervalSeconds) {
+        this.enabled = enabled;
+        this.customerLimit = new Limit(customerRatePerMinute, customerBurst);
+        this.ipLimit = new Limit(ipRatePerMinute, ipBurst);
+        this.maxKeys = maxKeys;
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+
+        FunctionCounter.builder("orders_rate_limit_admitted", admittedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("orders_rate_limit_rejected", customerRejectedCounter, LongAdder::doubleValue).tag("key", "customer").register(Metrics.globalRegistry);
+        FunctionCounter.builder("orders_rate_limit_rejected", ipRejectedCounter, LongAdder::doubleValue).tag("key", "ip").register(Metrics.globalRegistry);
+        FunctionCounter.builder("orders_rate_limit_overflow", overflowCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("orders_rate_limit_tracked_keys", this, OrderRateLimiter::getTrackedKeyCount).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Takes a token from the bucket of the IP address and from the bucket of the customer
+     *
+     * @throws RateLimitExceededException if one of the buckets is empty, no token is taken
+     */
+    public void acquire(String customerId, String ipAddress) throws RateLimitExceededException {
+        if (!enabled) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        Limit ipLimit = this.ipLimit;
+        AtomicLong ipBucket = bucket(ipBuckets, "ip", ipAddress, now);
+        long ipWaitNanos = tryAcquire(ipBucket, ipLimit, now);
+        if (ipWaitNanos > 0) {
+            ipRejectedCounter.increment();
+            throw new RateLimitExceededException("Too many orders from " + ipAddress, toRetryAfterSeconds(ipWaitNanos));
+        }
+        Limit customerLimit = this.customerLimit;
+        long customerWaitNanos = tryAcquire(bucket(customerBuckets, "customer", customerId, now), customerLimit, now);
+        if (customerWaitNanos > 0) {
+            // give the token of the IP address back
+            if (ipBucket != null) {
+                ipBucket.addAndGet(-ipLimit.emissionIntervalNanos);
+            }
+            customerRejectedCounter.increment();
+            throw new RateLimitExceededException("Too many orders for customer " + customerId, toRetryAfterSeconds(customerWaitNanos));
+        }
+        admittedCounter.increment();
+    }
+
+    /**
+     * @return {@code null} if there is no key, the overflow bucket of the kind of key if the key is new and
+     * {@code maxKeys} keys are tracked
+     */
+    AtomicLong bucket(ConcurrentHashMap<String, AtomicLong> buckets, String kind, String key, long now) {
+        if (key == null) {
+            return null;
+        }
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (customerBuckets.size() + ipBuckets.size() >= maxKeys) {
+            overflowCounter.increment();
+            return overflowBuckets.computeIfAbsent(kind, k -> new AtomicLong(now));
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    /**
+     * @return {@code 0} if a token was taken, otherwise the nanoseconds to wait for the next token
+     */
+    static long tryAcquire(AtomicLong bucket, Limit limit, long now) {
+        if (bucket == null) {
+            return 0;
+        }
+        while (true) {
+            long arrivalTime = bucket.get();
+            // the arrival time lags behind the clock when the bucket is full
+            long nextArrivalTime = (arrivalTime - now < 0 ? now : arrivalTime) + limit.emissionIntervalNanos;
+            long waitNanos = nextArrivalTime - now - limit.burstNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (bucket.compareAndSet(arrivalTime, nextArrivalTime)) {
+                return 0;
+            }
+        }
+    }
+
+    static long toRetryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Evicts the full buckets, tracking them again later starts from a full bucket as well
+     */
+    @ManagedOperation
+    public void evictIdleKeys() {
+        long now = nanoClock.getAsLong();
+        customerBuckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        ipBuckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        overflowBuckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-rate-limiter-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::evictIdleKeys, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (sweeper == null) {
+            return;
+        }
+        sweeper.shutdownNow();
+        sweeper = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return sweeper != null;
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedAttribute
+    public int getCustomerRatePerMinute() {
+        return customerLimit.ratePerMinute;
+    }
+
+    @ManagedAttribute
+    public void setCustomerRatePerMinute(int ratePerMinute) {
+        this.customerLimit = new Limit(ratePerMinute, customerLimit.burst);
+    }
+
+    @ManagedAttribute
+    public int getCustomerBurst() {
+        return customerLimit.burst;
+    }
+
+    @ManagedAttribute
+    public void setCustomerBurst(int burst) {
+        this.customerLimit = new Limit(customerLimit.ratePerMinute, burst);
+    }
+
+    @ManagedAttribute
+    public int getIpRatePerMinute() {
+        return ipLimit.ratePerMinute;
+    }
+
+    @ManagedAttribute
+    public void setIpRatePerMinute(int ratePerMinute) {
+        this.ipLimit = new Limit(ratePerMinute, ipLimit.burst);
+    }
+
+    @ManagedAttribute
+    public int getIpBurst() {
+        return ipLimit.burst;
+    }
+
+    @ManagedAttribute
+    public void setIpBurst(int burst) {
+        this.ipLimit = new Limit(ipLimit.ratePerMinute, burst);
+    }
+
+    @ManagedAttribute
+    public int getTrackedKeyCount() {
+        return customerBuckets.size() + ipBuckets.size();
+    }
+
+    @ManagedAttribute
+    public long getRejectedCount() {
+        return customerRejectedCounter.sum() + ipRejectedCounter.sum();
+    }
+
+    /**
+     * {@code ratePerMinute} tokens are refilled per minute, a bucket holds at most {@code burst} tokens
+     */
+    static class Limit {
+        final int ratePerMinute;
+        final int burst;
+        final long emissionIntervalNanos;
+        final long burstNanos;
+
+        Limit(int ratePerMinute, int burst) {
+            if (ratePerMinute < 1 || burst < 1) {
+                throw new IllegalArgumentException("Rate per minute and burst must be positive, got " + ratePerMinute + " and " + burst);
+            }
+            this.ratePerMinute = ratePerMinute;
+            this.burst = burst;
+            this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / ratePerMinute;
+            this.burstNanos = emissionIntervalNanos * burst;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringCreator(this)
+                    .append("ratePerMinute", ratePerMinute)
+                    .append("burst", burst)
+                    .toString();
+        }
+    }
+}
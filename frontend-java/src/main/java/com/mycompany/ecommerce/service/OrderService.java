@@ -1,10 +1,16 @@
 package com.mycompany.ecommerce.service;
 
+import com.mycompany.ecommerce.dto.CustomerOrdersPage;
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
 import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderStatus;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.List;
 
 @Validated
 public interface OrderService {
@@ -14,4 +20,28 @@ public interface OrderService {
     Order create(@NotNull(message = "The order cannot be null.") @Valid Order order);
 
     void update(@NotNull(message = "The order cannot be null.") @Valid Order order);
+
+    /**
+     * @throws ResourceNotFoundException if the order does not exist
+     */
+    @NotNull Order getOrder(long id);
+
+    /**
+     * Moves the order from the expected status to the new status, unless it has already left the expected status.
+     *
+     * @return {@code false} if the order was no longer in the expected status
+     * @throws IllegalArgumentException if the transition is not allowed, see {@link OrderStatus#canTransitionTo(OrderStatus)}
+     */
+    boolean updateStatus(long id, @NotNull OrderStatus expectedStatus, @NotNull OrderStatus status);
+
+    @NotNull List<Long> getOrderIdsByStatus(@NotNull OrderStatus status);
+
+    /**
+     * Order history of a customer, most recent first
+     *
+     * @param cursor {@link CustomerOrdersPage#getNextCursor()} of the previous page, {@code null} for the first page
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    @NotNull
+    CustomerOrdersPage getCustomerOrders(@NotNull String customerId, String cursor, @Min(1) @Max(100) int limit);
 }
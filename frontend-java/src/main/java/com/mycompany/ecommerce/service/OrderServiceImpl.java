@@ -1,36 +1,221 @@
 package com.mycompany.ecommerce.service;
 
+import com.mycompany.ecommerce.archive.OrderArchive;
+import com.mycompany.ecommerce.dto.CustomerOrdersPage;
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
 import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderProduct;
+import com.mycompany.ecommerce.model.OrderStatus;
 import com.mycompany.ecommerce.repository.OrderRepository;
+import com.mycompany.ecommerce.sharding.OrderShards;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
+/**
+ * The orders of a customer are stored on the shard of the customer, see {@link OrderShards}. The transactions are
+ * routed on their first statement: the shard is set within the transactional methods, the lookups on several shards
+ * run on the other shards in their own transactions.
+ * <p>
+ * The catalog is only on the home shard: the products of the orders read from the shards are loaded on the home shard
+ * in their own transaction, the transaction of the order may be bound to another shard.
+ */
 @Service
 @Transactional
 public class OrderServiceImpl implements OrderService {
 
+    static final Comparator<Order> MOST_RECENT_FIRST = Comparator
+            .comparing(Order::getDateCreated, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Order::getId, Comparator.reverseOrder());
+
     private OrderRepository orderRepository;
+    private OrderArchive orderArchive;
+    private OrderShards orderShards;
+    private ProductService productService;
+    private TransactionTemplate homeShardTransaction;
 
-    public OrderServiceImpl(OrderRepository orderRepository) {
+    public OrderServiceImpl(OrderRepository orderRepository, OrderArchive orderArchive, OrderShards orderShards, ProductService productService,
+                            PlatformTransactionManager transactionManager) {
         this.orderRepository = orderRepository;
+        this.orderArchive = orderArchive;
+        this.orderShards = orderShards;
+        this.productService = productService;
+        this.homeShardTransaction = new TransactionTemplate(transactionManager);
+        this.homeShardTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.homeShardTransaction.setReadOnly(true);
     }
 
+    /**
+     * Scatter-gather: the orders of each shard, most recent first, are merged
+     */
     @Override
+    @Transactional(readOnly = true)
     public Iterable<Order> getAllOrders() {
-        return this.orderRepository.findAll();
+        List<List<Order>> ordersByShard = orderShards.scatter(shard -> orderRepository.findAllWithOrderProductsOrderByDateCreatedDesc());
+        return attachProducts(OrderShards.merge(ordersByShard, MOST_RECENT_FIRST));
     }
 
     @Override
     public Order create(Order order) {
         order.setDateCreated(LocalDate.now());
+        order.setStatusChangedAt(Instant.now());
 
-        return this.orderRepository.save(order);
+        return orderShards.callOnShard(orderShards.shardOfCustomer(order.getCustomerId()), () -> this.orderRepository.save(order));
     }
 
     @Override
     public void update(Order order) {
-        this.orderRepository.save(order);
+        orderShards.callOnShard(orderShards.shardOfCustomer(order.getCustomerId()), () -> this.orderRepository.save(order));
+    }
+
+    /**
+     * Not read only so that it runs on the primary: the order is read back right after it is created, by the deferred
+     * fraud check and by the clients polling the status of an accepted order, a lagging replica would not find it.
+     * <p>
+     * The order is looked up on the shard where it was created, then on the other shards if its customer has moved,
+     * and finally in the {@link OrderArchive} for the orders of the archived months.
+     */
+    @Override
+    public Order getOrder(long id) {
+        int shard = orderShards.shardOfOrder(id);
+        Optional<Order> order = orderShards.callOnShard(shard, () -> this.orderRepository.findWithOrderProductsById(id));
+        if (!order.isPresent() && orderShards.getShardCount() > 1) {
+            order = orderShards.scatter(s -> s == shard ? Optional.<Order>empty() : this.orderRepository.findWithOrderProductsById(id))
+                    .stream()
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .findFirst();
+        }
+        if (order.isPresent()) {
+            attachProducts(Collections.singletonList(order.get()));
+        } else {
+            order = this.orderArchive.findOrder(id);
+        }
+        return order.orElseThrow(() -> new ResourceNotFoundException("Order '" + id + "' not found"));
+    }
+
+    /**
+     * The pending orders are not moved between shards, they are on the shard where they were created. The other
+     * shards are only tried for the orders created before the shards were introduced.
+     */
+    @Override
+    public boolean updateStatus(long id, OrderStatus expectedStatus, OrderStatus status) {
+        if (!expectedStatus.canTransitionTo(status)) {
+            throw new IllegalArgumentException("Invalid order status transition " + expectedStatus + " -> " + status);
+        }
+        Instant statusChangedAt = Instant.now();
+        int shard = orderShards.shardOfOrder(id);
+        if (orderShards.callOnShard(shard, () -> this.orderRepository.updateStatus(id, expectedStatus.name(), status.name(), statusChangedAt)) == 1) {
+            return true;
+        }
+        return orderShards.getShardCount() > 1 && orderShards
+                .scatter(s -> s == shard ? 0 : this.orderRepository.updateStatus(id, expectedStatus.name(), status.name(), statusChangedAt))
+                .contains(1);
+    }
+
+    /**
+     * Not read only so that it runs on the primary, see {@link #getOrder(long)}. Gathered from all the shards.
+     */
+    @Override
+    public List<Long> getOrderIdsByStatus(OrderStatus status) {
+        return OrderShards.merge(orderShards.scatter(shard -> this.orderRepository.findOrderIdsByStatus(status.name())), Comparator.naturalOrder());
+    }
+
+    /**
+     * The page is first resolved on the {@code (customer_id, date_created, id)} index, then the orders of the page are
+     * loaded by primary key. One more order than the limit is read to know if there is a next page.
+     * <p>
+     * The archived orders are older than the orders of the database: when the database runs out of orders, the page is
+     * completed with the {@link OrderArchive}, with the same keyset.
+     * <p>
+     * The orders of a customer are all on the shard of the customer.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public CustomerOrdersPage getCustomerOrders(String customerId, String cursor, int limit) {
+        LocalDate beforeDateCreated = null;
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null) {
+            int separatorIdx = cursor.indexOf('_');
+            try {
+                beforeDateCreated = LocalDate.parse(cursor.substring(0, Math.max(separatorIdx, 0)));
+                beforeId = Long.parseLong(cursor.substring(separatorIdx + 1));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor '" + cursor + "'", e);
+            }
+        }
+        LocalDate cursorDateCreated = beforeDateCreated;
+        long cursorId = beforeId;
+        List<Order> orders = attachProducts(orderShards.callOnShard(orderShards.shardOfCustomer(customerId),
+                () -> findCustomerOrders(customerId, cursorDateCreated, cursorId, limit + 1)));
+        if (orders.size() <= limit) {
+            if (!orders.isEmpty()) {
+                Order last = orders.get(orders.size() - 1);
+                beforeDateCreated = last.getDateCreated();
+                beforeId = last.getId();
+            }
+            orders.addAll(this.orderArchive.findCustomerOrders(customerId, beforeDateCreated, beforeId, limit + 1 - orders.size()));
+        }
+
+        boolean hasNextPage = orders.size() > limit;
+        if (hasNextPage) {
+            orders = orders.subList(0, limit);
+        }
+        String nextCursor = null;
+        if (hasNextPage) {
+            Order last = orders.get(orders.size() - 1);
+            nextCursor = last.getDateCreated() + "_" + last.getId();
+        }
+        return new CustomerOrdersPage(orders, nextCursor);
+    }
+
+    List<Order> findCustomerOrders(String customerId, LocalDate beforeDateCreated, long beforeId, int limit) {
+        List<Long> ids = beforeDateCreated == null
+                ? this.orderRepository.findOrderIdsByCustomerId(customerId, limit)
+                : this.orderRepository.findOrderIdsByCustomerIdBefore(customerId, beforeDateCreated, beforeId, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Order> ordersById = new HashMap<>();
+        for (Order order : this.orderRepository.findAllWithOrderProductsByIdIn(ids)) {
+            ordersById.put(order.getId(), order);
+        }
+        List<Order> orders = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            orders.add(ordersById.get(id));
+        }
+        return orders;
+    }
+
+    /**
+     * The products of the orders read from the shards are loaded on the home shard, in a new transaction: the lookups
+     * that miss the product cache must not join the transaction of the order, bound to the shard of the order that
+     * has no {@code product} table.
+     */
+    List<Order> attachProducts(List<Order> orders) {
+        if (orderShards.getShardCount() > 1 && !orders.isEmpty()) {
+            orderShards.callOnShard(OrderShards.HOME_SHARD, () -> homeShardTransaction.execute(status -> {
+                for (Order order : orders) {
+                    for (OrderProduct orderProduct : order.getOrderProducts()) {
+                        orderProduct.getPk().setProduct(productService.getProduct(orderProduct.getPk().getProduct().getId()));
+                    }
+                }
+                return null;
+            }));
+        }
+        return orders;
     }
 }
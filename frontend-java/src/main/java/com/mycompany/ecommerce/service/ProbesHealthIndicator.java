@@ -0,0 +1,31 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.dto.HealthSnapshot;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code probes} health indicator, part of the readiness group: the cached result of the {@link HealthProbeService},
+ * a degraded service is still ready.
+ */
+@Component
+public class ProbesHealthIndicator implements HealthIndicator {
+
+    final HealthProbeService healthProbeService;
+
+    public ProbesHealthIndicator(HealthProbeService healthProbeService) {
+        this.healthProbeService = healthProbeService;
+    }
+
+    @Override
+    public Health health() {
+        HealthSnapshot health = healthProbeService.getHealth();
+        Health.Builder builder = health.getStatus() == HealthSnapshot.Status.DOWN ? Health.down() : Health.up();
+        builder.withDetail("status", health.getStatus());
+        for (HealthSnapshot.ProbeResult probe : health.getProbes()) {
+            builder.withDetail(probe.getName(), (probe.isUp() ? "UP: " : "DOWN: ") + probe.getDetail());
+        }
+        return builder.build();
+    }
+}
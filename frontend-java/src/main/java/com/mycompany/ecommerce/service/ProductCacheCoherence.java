@@ -0,0 +1,292 @@
+package com.mycompany.ecommerce.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the product caches of the frontend instances coherent with Postgresql {@code LISTEN / NOTIFY}.
+ * <p>
+ * The saves of products publish the ids of the changed products on the {@value #CHANNEL} channel, in the transaction
+ * of the save: the notification is delivered on commit and never for a rolled back save. Each instance listens on a
+ * dedicated connection, outside of the pool, and reloads the changed products a few milliseconds after the commit.
+ * <p>
+ * Notifications sent while an instance is disconnected are lost: the instance reloads the whole catalog when it
+ * reconnects. A payload is {@code <instance id> <product ids>} or {@code <instance id> *} to reload the whole catalog,
+ * an instance ignores its own notifications. The whole catalog is reloaded in keyset pages of detached products, see
+ * {@link ProductService#refreshCatalog()}, and the notifications received together trigger a single reload.
+ */
+@ManagedResource
+@Component
+public class ProductCacheCoherence implements SmartLifecycle {
+
+    static final String CHANNEL = "product_changes";
+    static final String NOTIFY_SQL = "select pg_notify('" + CHANNEL + "', ?)";
+    static final String ALL_PRODUCTS = "*";
+    /**
+     * Keeps the payload well below the 8000 bytes limit of Postgresql, larger changes reload the whole catalog
+     */
+    static final int MAX_PRODUCT_IDS_PER_NOTIFICATION = 400;
+    static final int POLL_TIMEOUT_MILLIS = 10_000;
+    static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final String instanceId = UUID.randomUUID().toString();
+    final DataSource dataSource;
+    final DataSourceProperties dataSourceProperties;
+    final ObjectProvider<ProductService> productService;
+    final boolean enabled;
+    final long reconnectDelayMillis;
+
+    final LongAdder publishedCounter = new LongAdder();
+    final LongAdder receivedCounter = new LongAdder();
+    final LongAdder reloadedProductsCounter = new LongAdder();
+    final LongAdder catalogReloadsCounter = new LongAdder();
+    final LongAdder listenerFailuresCounter = new LongAdder();
+
+    volatile boolean running;
+    volatile boolean listening;
+    volatile Connection listenerConnection;
+    Thread listenerThread;
+
+    /**
+     * @param productService resolved on the first notification, the product service publishes through this component
+     */
+    public ProductCacheCoherence(DataSource dataSource, DataSourceProperties dataSourceProperties, ObjectProvider<ProductService> productService,
+                                 @Value("${products.cacheCoherence.enabled:true}") boolean enabled,
+                                 @Value("${products.cacheCoherence.reconnectDelayMillis:1000}") long reconnectDelayMillis) {
+        this.dataSource = dataSource;
+        this.dataSourceProperties = dataSourceProperties;
+        this.productService = productService;
+        this.enabled = enabled;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+
+        FunctionCounter.builder("product_cache_notifications_published", publishedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("product_cache_notifications_received", receivedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("product_cache_reloaded_products", reloadedProductsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("product_cache_catalog_reloads", catalogReloadsCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("product_cache_listener_failures", listenerFailuresCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("product_cache_listener_connected", this, coherence -> coherence.listening ? 1 : 0).register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Notifies the other instances that the given products changed, on commit of the current transaction if any
+     */
+    public void publishChanges(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        publish(payload(instanceId, productIds));
+    }
+
+    /**
+     * Makes all the other instances reload the whole catalog, after a bulk change
+     */
+    @ManagedOperation
+    public void publishCatalogChange() {
+        publish(instanceId + " " + ALL_PRODUCTS);
+    }
+
+    void publish(String payload) {
+        if (!enabled) {
+            return;
+        }
+        Connection cnn = DataSourceUtils.getConnection(dataSource);
+        try (PreparedStatement stmt = cnn.prepareStatement(NOTIFY_SQL)) {
+            stmt.setString(1, payload);
+            stmt.execute();
+            publishedCounter.increment();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failure to notify the product changes", e);
+        } finally {
+            DataSourceUtils.releaseConnection(cnn, dataSource);
+        }
+    }
+
+    static String payload(String instanceId, Collection<Long> productIds) {
+        if (productIds.size() > MAX_PRODUCT_IDS_PER_NOTIFICATION) {
+            return instanceId + " " + ALL_PRODUCTS;
+        }
+        StringBuilder payload = new StringBuilder(instanceId.length() + 1 + productIds.size() * 8).append(instanceId).append(' ');
+        boolean first = true;
+        for (Long productId : productIds) {
+            if (!first) {
+                payload.append(',');
+            }
+            payload.append(productId);
+            first = false;
+        }
+        return payload.toString();
+    }
+
+    /**
+     * @return {@code false} if the whole catalog must be reloaded, the products could not be reloaded
+     */
+    boolean onNotification(String payload) {
+        receivedCounter.increment();
+        int separatorIdx = payload.indexOf(' ');
+        if (separatorIdx == -1 || payload.substring(0, separatorIdx).equals(instanceId)) {
+            return true;
+        }
+        String changes = payload.substring(separatorIdx + 1);
+        if (changes.equals(ALL_PRODUCTS)) {
+            return false;
+        }
+        List<Long> productIds = new ArrayList<>();
+        try {
+            for (String productId : changes.split(",")) {
+                productIds.add(Long.parseLong(productId));
+            }
+            productService.getObject().reloadProducts(productIds);
+            reloadedProductsCounter.add(productIds.size());
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Failure to reload the products {}, reloading the catalog: {}", changes, e.toString());
+            return false;
+        }
+    }
+
+    void reloadCatalog(String reason) {
+        logger.info("Reload the product catalog: {}", reason);
+        productService.getObject().refreshCatalog();
+        catalogReloadsCounter.increment();
+    }
+
+    void listenLoop() {
+        // the catalog is loaded once the application is ready, after the first LISTEN
+        boolean missedNotifications = false;
+        while (running) {
+            try (Connection cnn = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                listenerConnection = cnn;
+                try (Statement stmt = cnn.createStatement()) {
+                    stmt.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = cnn.unwrap(PGConnection.class);
+                listening = true;
+                if (missedNotifications) {
+                    reloadCatalog("listener reconnected");
+                    missedNotifications = false;
+                }
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications == null || notifications.length == 0) {
+                        if (!cnn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                            throw new SQLException("Listener connection lost");
+                        }
+                        continue;
+                    }
+                    boolean reload = false;
+                    for (PGNotification notification : notifications) {
+                        reload |= !onNotification(notification.getParameter());
+                    }
+                    if (reload) {
+                        reloadCatalog("catalog changed");
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                listening = false;
+                if (!running) {
+                    break;
+                }
+                missedNotifications = true;
+                listenerFailuresCounter.increment();
+                logger.warn("Failure of the product changes listener, reconnect in {}ms: {}", reconnectDelayMillis, e.toString());
+                try {
+                    Thread.sleep(reconnectDelayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } finally {
+                listenerConnection = null;
+            }
+        }
+        listening = false;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running || !enabled) {
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listenLoop, "product-cache-coherence");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        listenerThread.interrupt();
+        // unblocks the wait for notifications
+        Connection cnn = listenerConnection;
+        if (cnn != null) {
+            try {
+                cnn.close();
+            } catch (SQLException e) {
+                logger.debug("Failure to close the listener connection", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @ManagedAttribute
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @ManagedAttribute
+    public boolean isListening() {
+        return listening;
+    }
+
+    @ManagedAttribute
+    public long getReloadedProductCount() {
+        return reloadedProductsCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getCatalogReloadCount() {
+        return catalogReloadsCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getListenerFailureCount() {
+        return listenerFailuresCounter.sum();
+    }
+}
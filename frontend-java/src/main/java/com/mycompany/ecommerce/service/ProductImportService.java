@@ -0,0 +1,42 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.dto.ProductImportResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bulk import of products streamed from a CSV or NDJSON file.
+ */
+public interface ProductImportService {
+
+    /**
+     * Streams the given products into the database with constant memory, the products of the catalog cache are
+     * refreshed once at the end of the import.
+     * <p>
+     * CSV files must start with a header line naming the columns {@code name}, {@code price} and optionally
+     * {@code pictureUrl}. NDJSON files contain one JSON product per line: {@code {"name":"TV Set","price":300.0}}.
+     * Invalid lines are counted and skipped.
+     */
+    ProductImportResult importProducts(InputStream in, Format format) throws IOException;
+
+    enum Format {
+        CSV, NDJSON;
+
+        /**
+         * @return the format of the given media type or file name, {@code null} if unknown
+         */
+        public static Format of(String mediaTypeOrFileName) {
+            if (mediaTypeOrFileName == null) {
+                return null;
+            }
+            String value = mediaTypeOrFileName.toLowerCase();
+            if (value.contains("csv")) {
+                return CSV;
+            } else if (value.contains("ndjson") || value.contains("jsonl") || value.contains("json")) {
+                return NDJSON;
+            }
+            return null;
+        }
+    }
+}
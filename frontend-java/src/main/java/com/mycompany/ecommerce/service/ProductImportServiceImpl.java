@@ -0,0 +1,376 @@
+package com.mycompany.ecommerce.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mycompany.ecommerce.dto.ProductImportResult;
+import com.mycompany.ecommerce.model.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the products in a single Postgresql {@code COPY ... FROM STDIN} or, on other databases, in JDBC batches.
+ * Memory usage is constant: one line of the input file and one write buffer. The in-memory indexes of the catalog
+ * are then rebuilt in pages, see {@link ProductService#refreshCatalog()}.
+ */
+@Service
+public class ProductImportServiceImpl implements ProductImportService {
+
+    static final String COPY_SQL = "COPY product (name, price, picture_url) FROM STDIN WITH (FORMAT csv)";
+    static final String INSERT_SQL = "insert into product (name, price, picture_url) values (?, ?, ?)";
+
+    static final int COPY_BUFFER_SIZE_IN_BYTES = 256 * 1024;
+    static final int MAX_LOGGED_REJECTIONS = 10;
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final DataSource dataSource;
+    final ProductService productService;
+    final ProductCacheCoherence productCacheCoherence;
+    final ObjectReader productReader;
+    final Counter importedProductsCounter;
+    final Counter rejectedProductsCounter;
+
+    int batchSize = 10_000;
+    long progressInterval = 1_000_000;
+
+    public ProductImportServiceImpl(DataSource dataSource, ProductService productService, ProductCacheCoherence productCacheCoherence,
+                                    ObjectMapper objectMapper) {
+        this.dataSource = dataSource;
+        this.productService = productService;
+        this.productCacheCoherence = productCacheCoherence;
+        this.productReader = objectMapper.readerFor(Product.class);
+        this.importedProductsCounter = Metrics.counter("product_import", "product_import_result", "imported");
+        this.rejectedProductsCounter = Metrics.counter("product_import", "product_import_result", "rejected");
+    }
+
+    @Override
+    public ProductImportResult importProducts(InputStream in, Format format) throws IOException {
+        long startNanos = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        ImportProgress progress = new ImportProgress(startNanos);
+        try (Connection cnn = dataSource.getConnection()) {
+            ProductSink sink = cnn.isWrapperFor(PGConnection.class) ? new CopySink(cnn) : new BatchSink(cnn);
+            try {
+                if (format == Format.CSV) {
+                    readCsv(reader, sink, progress);
+                } else {
+                    readNdjson(reader, sink, progress);
+                }
+                sink.finish();
+            } catch (IOException | SQLException | RuntimeException e) {
+                sink.abort();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failure to import products after " + progress.imported + " products", e);
+        } finally {
+            // even if the import failed, batches may have been committed
+            productService.refreshCatalog();
+            productCacheCoherence.publishCatalogChange();
+        }
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        ProductImportResult result = new ProductImportResult(progress.imported, progress.rejected, durationMillis);
+        logger.info("Products import completed: {}", result);
+        return result;
+    }
+
+    void readCsv(BufferedReader reader, ProductSink sink, ImportProgress progress) throws IOException, SQLException {
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+        List<String> fields = new ArrayList<>();
+        parseCsvLine(header, fields);
+        int nameIdx = -1, priceIdx = -1, pictureUrlIdx = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            String column = fields.get(i).trim().toLowerCase(Locale.ROOT);
+            if (column.equals("name")) {
+                nameIdx = i;
+            } else if (column.equals("price")) {
+                priceIdx = i;
+            } else if (column.equals("pictureurl") || column.equals("picture_url")) {
+                pictureUrlIdx = i;
+            }
+        }
+        if (nameIdx == -1 || priceIdx == -1) {
+            throw new IllegalArgumentException("Invalid CSV header '" + header + "', expected the columns name, price and optionally pictureUrl");
+        }
+
+        String line;
+        long lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            parseCsvLine(line, fields);
+            String name = nameIdx < fields.size() ? fields.get(nameIdx) : null;
+            String price = priceIdx < fields.size() ? fields.get(priceIdx) : null;
+            String pictureUrl = pictureUrlIdx != -1 && pictureUrlIdx < fields.size() ? fields.get(pictureUrlIdx) : null;
+            double priceValue;
+            try {
+                priceValue = price == null ? Double.NaN : Double.parseDouble(price);
+            } catch (NumberFormatException e) {
+                priceValue = Double.NaN;
+            }
+            accept(sink, progress, lineNumber, line, name, priceValue, pictureUrl);
+        }
+    }
+
+    void readNdjson(BufferedReader reader, ProductSink sink, ImportProgress progress) throws IOException, SQLException {
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Product product;
+            try {
+                product = productReader.readValue(line);
+            } catch (IOException e) {
+                reject(progress, lineNumber, line);
+                continue;
+            }
+            double price = product.getPrice() == null ? Double.NaN : product.getPrice();
+            accept(sink, progress, lineNumber, line, product.getName(), price, product.getPictureUrl());
+        }
+    }
+
+    private void accept(ProductSink sink, ImportProgress progress, long lineNumber, String line,
+                        String name, double price, String pictureUrl) throws IOException, SQLException {
+        if (name == null || name.isEmpty() || Double.isNaN(price) || Double.isInfinite(price) || price < 0) {
+            reject(progress, lineNumber, line);
+            return;
+        }
+        sink.write(name, price, pictureUrl == null || pictureUrl.isEmpty() ? null : pictureUrl);
+        progress.imported++;
+        importedProductsCounter.increment();
+        if (progress.imported % progressInterval == 0) {
+            long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - progress.startNanos));
+            logger.info("Products import: {} products imported, {} rejected, {} products/s",
+                    progress.imported, progress.rejected, progress.imported * 1000 / elapsedMillis);
+        }
+    }
+
+    private void reject(ImportProgress progress, long lineNumber, String line) {
+        progress.rejected++;
+        rejectedProductsCounter.increment();
+        if (progress.rejected <= MAX_LOGGED_REJECTIONS) {
+            logger.warn("Products import: reject invalid line {}: {}", lineNumber, line);
+        }
+    }
+
+    /**
+     * Minimal RFC 4180 parsing of a single line: comma separated, fields optionally enclosed in double quotes,
+     * double quotes escaped by doubling them. Quoted line breaks are not supported.
+     */
+    static void parseCsvLine(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    static class ImportProgress {
+        final long startNanos;
+        long imported;
+        long rejected;
+
+        ImportProgress(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    interface ProductSink {
+        void write(String name, double price, String pictureUrl) throws IOException, SQLException;
+
+        void finish() throws SQLException;
+
+        void abort();
+    }
+
+    /**
+     * Encodes the products as CSV in a reused buffer that is flushed to a single {@code COPY} when full.
+     */
+    static class CopySink implements ProductSink {
+        final CopyIn copyIn;
+        final StringBuilder line = new StringBuilder(256);
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        final ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE_IN_BYTES);
+
+        CopySink(Connection cnn) throws SQLException {
+            this.copyIn = cnn.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+        }
+
+        @Override
+        public void write(String name, double price, String pictureUrl) throws SQLException {
+            line.setLength(0);
+            // plain decimal notation, never 1.0E7
+            appendCsvField(line, name).append(',').append(BigDecimal.valueOf(price).toPlainString()).append(',');
+            if (pictureUrl != null) {
+                appendCsvField(line, pictureUrl);
+            }
+            line.append('\n');
+
+            CharBuffer chars = CharBuffer.wrap(line);
+            while (true) {
+                CoderResult coderResult = encoder.encode(chars, buffer, true);
+                if (coderResult.isOverflow()) {
+                    flush();
+                } else {
+                    break;
+                }
+            }
+            encoder.reset();
+        }
+
+        void flush() throws SQLException {
+            copyIn.writeToCopy(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        static StringBuilder appendCsvField(StringBuilder sb, String value) {
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    sb.append('"');
+                }
+                sb.append(c);
+            }
+            return sb.append('"');
+        }
+
+        @Override
+        public void finish() throws SQLException {
+            flush();
+            copyIn.endCopy();
+        }
+
+        @Override
+        public void abort() {
+            try {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            } catch (SQLException e) {
+                // ignore, the connection is released anyway
+            }
+        }
+    }
+
+    /**
+     * Fallback for databases other than Postgresql: JDBC batches committed every {@code batchSize} products.
+     */
+    class BatchSink implements ProductSink {
+        final Connection cnn;
+        final PreparedStatement stmt;
+        int pending;
+
+        BatchSink(Connection cnn) throws SQLException {
+            this.cnn = cnn;
+            cnn.setAutoCommit(false);
+            this.stmt = cnn.prepareStatement(INSERT_SQL);
+        }
+
+        @Override
+        public void write(String name, double price, String pictureUrl) throws SQLException {
+            stmt.setString(1, name);
+            stmt.setDouble(2, price);
+            if (pictureUrl == null) {
+                stmt.setNull(3, Types.VARCHAR);
+            } else {
+                stmt.setString(3, pictureUrl);
+            }
+            stmt.addBatch();
+            if (++pending == batchSize) {
+                executeBatch();
+            }
+        }
+
+        void executeBatch() throws SQLException {
+            stmt.executeBatch();
+            cnn.commit();
+            pending = 0;
+        }
+
+        @Override
+        public void finish() throws SQLException {
+            if (pending > 0) {
+                executeBatch();
+            }
+            stmt.close();
+            cnn.setAutoCommit(true);
+        }
+
+        @Override
+        public void abort() {
+            try {
+                cnn.rollback();
+                stmt.close();
+                cnn.setAutoCommit(true);
+            } catch (SQLException e) {
+                // ignore, the connection is released anyway
+            }
+        }
+    }
+
+    @Value("${products.import.batchSize:10000}")
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Value("${products.import.progressInterval:1000000}")
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+}
@@ -0,0 +1,191 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Product;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Columnar index of the products sorted by price.
+ * <p>
+ * The prices are held in a sorted {@code double[]} with a parallel {@code long[]} of ids and {@code Product[]}: a
+ * price range is resolved by two binary searches and a page is a slice of the range, without scanning nor boxing.
+ * Products without price are sorted last.
+ * <p>
+ * Readers get a consistent immutable {@link Snapshot}, updates are copy-on-write and serialized.
+ */
+@Component
+public class ProductPriceIndex {
+
+    static final Comparator<Product> PRICE_ORDER = Comparator
+            .comparingDouble(ProductPriceIndex::priceOf)
+            .thenComparingLong(Product::getId);
+
+    volatile Snapshot snapshot = new Snapshot(new double[0], new long[0], new Product[0]);
+
+    /**
+     * Replaces the content of the index by the given products.
+     */
+    public synchronized void rebuild(Iterable<Product> products) {
+        List<Product> sortedProducts = new ArrayList<>();
+        for (Product product : products) {
+            if (product.getId() != null) {
+                sortedProducts.add(product);
+            }
+        }
+        Product[] sorted = sortedProducts.toArray(new Product[0]);
+        Arrays.sort(sorted, PRICE_ORDER);
+        this.snapshot = Snapshot.of(sorted, sorted.length);
+    }
+
+    /**
+     * Indexes new products or re-indexes updated products, merging them with the current snapshot in a single copy.
+     */
+    public synchronized void index(Collection<Product> products) {
+        Set<Long> updatedIds = new HashSet<>();
+        List<Product> updatedProducts = new ArrayList<>(products.size());
+        for (Product product : products) {
+            if (product.getId() != null && updatedIds.add(product.getId())) {
+                updatedProducts.add(product);
+            }
+        }
+        if (updatedProducts.isEmpty()) {
+            return;
+        }
+        Product[] updated = updatedProducts.toArray(new Product[0]);
+        Arrays.sort(updated, PRICE_ORDER);
+
+        Snapshot current = snapshot;
+        Product[] merged = new Product[current.size() + updated.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.size() || j < updated.length) {
+            if (i < current.size() && updatedIds.contains(current.ids[i])) {
+                i++; // previous version of an updated product
+            } else if (j == updated.length || (i < current.size() && PRICE_ORDER.compare(current.products[i], updated[j]) <= 0)) {
+                merged[size++] = current.products[i++];
+            } else {
+                merged[size++] = updated[j++];
+            }
+        }
+        this.snapshot = Snapshot.of(merged, size);
+    }
+
+    /**
+     * Removes deleted products, in a single copy.
+     */
+    public synchronized void remove(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        Set<Long> removedIds = new HashSet<>(productIds);
+        Snapshot current = snapshot;
+        Product[] remaining = new Product[current.size()];
+        int size = 0;
+        for (int i = 0; i < current.size(); i++) {
+            if (!removedIds.contains(current.ids[i])) {
+                remaining[size++] = current.products[i];
+            }
+        }
+        if (size < current.size()) {
+            this.snapshot = Snapshot.of(remaining, size);
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    static double priceOf(Product product) {
+        // NaN is sorted after all the prices by Double.compare
+        return product.getPrice() == null ? Double.NaN : product.getPrice();
+    }
+
+    /**
+     * Immutable, sorted by price then id.
+     */
+    public static class Snapshot {
+        final double[] prices;
+        final long[] ids;
+        final Product[] products;
+
+        Snapshot(double[] prices, long[] ids, Product[] products) {
+            this.prices = prices;
+            this.ids = ids;
+            this.products = products;
+        }
+
+        static Snapshot of(Product[] sorted, int size) {
+            double[] prices = new double[size];
+            long[] ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                prices[i] = priceOf(sorted[i]);
+                ids[i] = sorted[i].getId();
+            }
+            return new Snapshot(prices, ids, sorted.length == size ? sorted : Arrays.copyOf(sorted, size));
+        }
+
+        /**
+         * @param minPrice inclusive, {@code null} for no lower bound
+         * @param maxPrice inclusive, {@code null} for no upper bound, products without price are only returned
+         *                 when there is no upper bound
+         * @return the products of the price range in ascending price order
+         */
+        public List<Product> findByPriceRange(Double minPrice, Double maxPrice, int offset, int limit) {
+            int from = minPrice == null ? 0 : lowerBound(minPrice);
+            int to = maxPrice == null ? prices.length : upperBound(maxPrice);
+            long pageFrom = (long) from + offset;
+            if (pageFrom >= to || limit <= 0) {
+                return Collections.emptyList();
+            }
+            int pageTo = (int) Math.min(to, pageFrom + limit);
+            return Collections.unmodifiableList(Arrays.asList(Arrays.copyOfRange(products, (int) pageFrom, pageTo)));
+        }
+
+        /**
+         * @return index of the first price greater than or equal to the given price
+         */
+        int lowerBound(double price) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (Double.compare(prices[mid], price) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return index of the first price strictly greater than the given price
+         */
+        int upperBound(double price) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (Double.compare(prices[mid], price) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        public int size() {
+            return prices.length;
+        }
+    }
+}
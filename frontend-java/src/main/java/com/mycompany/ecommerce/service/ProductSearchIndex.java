@@ -0,0 +1,482 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Product;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of the product names.
+ * <p>
+ * Names are tokenized in lower case on non letter or digit characters. Each term has an {@code int} id and a posting
+ * list: a sorted primitive {@code int[]} of document ordinals. The term dictionary is a sorted {@code String[]} so
+ * that the terms starting with a prefix are a contiguous range, found by binary search in {@code O(log(terms))}, for
+ * autocomplete. Prices are held in
+ * a {@code double[]} indexed by document ordinal for the price range filters.
+ * <p>
+ * The index is updated incrementally by {@link ProductService#save(Product)} and rebuilt off-lock by
+ * {@link ProductService#refreshCatalog()}.
+ */
+@Component
+public class ProductSearchIndex {
+
+    final ReadWriteLock lock = new ReentrantReadWriteLock();
+    Index index = new Index(16);
+
+    /**
+     * Indexes a new product or re-indexes an updated product.
+     */
+    public void index(Product product) {
+        if (product.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index.index(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes deleted products, their ordinals are reclaimed by the next {@link #rebuild(Iterable)}.
+     */
+    public void remove(Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long productId : productIds) {
+                index.remove(productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the content of the index by the given products, the new index is built without blocking the searches.
+     */
+    public void rebuild(Iterable<Product> products) {
+        Index newIndex = new Index(1024);
+        newIndex.bulkLoading = true;
+        for (Product product : products) {
+            if (product.getId() != null) {
+                newIndex.index(product);
+            }
+        }
+        newIndex.sortTermDictionary();
+        lock.writeLock().lock();
+        try {
+            this.index = newIndex;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * All the terms of the query must match a term of the product name, the last term matches as a prefix unless the
+     * query ends with a white space.
+     *
+     * @param minPrice inclusive, {@code null} for no lower bound
+     * @param maxPrice inclusive, {@code null} for no upper bound
+     */
+    public List<Product> search(String query, Double minPrice, Double maxPrice, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        boolean lastTokenIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+        double min = minPrice == null ? Double.NEGATIVE_INFINITY : minPrice;
+        double max = maxPrice == null ? Double.POSITIVE_INFINITY : maxPrice;
+
+        lock.readLock().lock();
+        try {
+            return index.search(tokens, lastTokenIsPrefix, min, max, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the indexed terms starting with the given prefix, in lexicographic order
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String normalizedPrefix = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (normalizedPrefix.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            return index.suggest(normalizedPrefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.ordinalById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>(4);
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start == -1) {
+                start = i;
+            } else if (!tokenChar && start != -1) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    static String prefixUpperBound(String prefix) {
+        return prefix + Character.MAX_VALUE;
+    }
+
+    /**
+     * Not thread safe, guarded by the lock of the enclosing {@link ProductSearchIndex}.
+     */
+    static class Index {
+        // documents, indexed by ordinal
+        Product[] products;
+        double[] prices;
+        int[][] termIdsByDoc;
+        int docCount;
+        final Map<Long, Integer> ordinalById = new HashMap<>();
+
+        // terms, indexed by term id
+        final Map<String, Integer> termIdByTerm = new HashMap<>();
+        final List<String> terms = new ArrayList<>();
+        int[][] postings = new int[16][];
+        int[] postingSizes = new int[16];
+
+        // term dictionary in lexicographic order, the terms starting with a prefix are a contiguous range
+        String[] sortedTerms = new String[16];
+        int[] sortedTermIds = new int[16];
+        // during a rebuild, the dictionary is sorted once at the end rather than on each new term
+        boolean bulkLoading;
+
+        Index(int initialCapacity) {
+            products = new Product[initialCapacity];
+            prices = new double[initialCapacity];
+            termIdsByDoc = new int[initialCapacity][];
+        }
+
+        void index(Product product) {
+            Integer existingOrdinal = ordinalById.get(product.getId());
+            int ordinal;
+            if (existingOrdinal == null) {
+                ordinal = docCount++;
+                if (ordinal == products.length) {
+                    int newCapacity = products.length * 2;
+                    products = Arrays.copyOf(products, newCapacity);
+                    prices = Arrays.copyOf(prices, newCapacity);
+                    termIdsByDoc = Arrays.copyOf(termIdsByDoc, newCapacity);
+                }
+                ordinalById.put(product.getId(), ordinal);
+            } else {
+                ordinal = existingOrdinal;
+                for (int termId : termIdsByDoc[ordinal]) {
+                    removePosting(termId, ordinal);
+                }
+            }
+            products[ordinal] = product;
+            prices[ordinal] = product.getPrice() == null ? Double.NaN : product.getPrice();
+
+            List<String> tokens = tokenize(product.getName());
+            int[] termIds = new int[tokens.size()];
+            int termCount = 0;
+            for (String token : tokens) {
+                int termId = termId(token);
+                if (addPosting(termId, ordinal)) {
+                    termIds[termCount++] = termId;
+                }
+            }
+            termIdsByDoc[ordinal] = termCount == termIds.length ? termIds : Arrays.copyOf(termIds, termCount);
+        }
+
+        void remove(Long productId) {
+            Integer ordinal = ordinalById.remove(productId);
+            if (ordinal == null) {
+                return;
+            }
+            for (int termId : termIdsByDoc[ordinal]) {
+                removePosting(termId, ordinal);
+            }
+            products[ordinal] = null;
+            prices[ordinal] = Double.NaN;
+            termIdsByDoc[ordinal] = new int[0];
+        }
+
+        int termId(String term) {
+            Integer termId = termIdByTerm.get(term);
+            if (termId == null) {
+                termId = terms.size();
+                terms.add(term);
+                termIdByTerm.put(term, termId);
+                if (termId == postings.length) {
+                    postings = Arrays.copyOf(postings, termId * 2);
+                    postingSizes = Arrays.copyOf(postingSizes, termId * 2);
+                }
+                postings[termId] = new int[2];
+                if (termId == sortedTerms.length) {
+                    sortedTerms = Arrays.copyOf(sortedTerms, termId * 2);
+                    sortedTermIds = Arrays.copyOf(sortedTermIds, termId * 2);
+                }
+                int insertionPoint = bulkLoading ? termId : lowerBound(term);
+                System.arraycopy(sortedTerms, insertionPoint, sortedTerms, insertionPoint + 1, termId - insertionPoint);
+                System.arraycopy(sortedTermIds, insertionPoint, sortedTermIds, insertionPoint + 1, termId - insertionPoint);
+                sortedTerms[insertionPoint] = term;
+                sortedTermIds[insertionPoint] = termId;
+            }
+            return termId;
+        }
+
+        /**
+         * Sorts the term dictionary at the end of a bulk load.
+         */
+        void sortTermDictionary() {
+            Integer[] order = new Integer[terms.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (left, right) -> terms.get(left).compareTo(terms.get(right)));
+            for (int i = 0; i < order.length; i++) {
+                sortedTerms[i] = terms.get(order[i]);
+                sortedTermIds[i] = order[i];
+            }
+            bulkLoading = false;
+        }
+
+        /**
+         * @return the position of the first term of the dictionary greater than or equal to the given key
+         */
+        int lowerBound(String key) {
+            int low = 0;
+            int high = terms.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedTerms[mid].compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return {@code false} if the document was already in the posting list
+         */
+        boolean addPosting(int termId, int ordinal) {
+            int[] posting = postings[termId];
+            int size = postingSizes[termId];
+            int idx = size == 0 || posting[size - 1] < ordinal ? -(size + 1) : Arrays.binarySearch(posting, 0, size, ordinal);
+            if (idx >= 0) {
+                return false;
+            }
+            int insertionPoint = -(idx + 1);
+            if (size == posting.length) {
+                posting = Arrays.copyOf(posting, size * 2);
+                postings[termId] = posting;
+            }
+            System.arraycopy(posting, insertionPoint, posting, insertionPoint + 1, size - insertionPoint);
+            posting[insertionPoint] = ordinal;
+            postingSizes[termId] = size + 1;
+            return true;
+        }
+
+        void removePosting(int termId, int ordinal) {
+            int[] posting = postings[termId];
+            int size = postingSizes[termId];
+            int idx = Arrays.binarySearch(posting, 0, size, ordinal);
+            if (idx >= 0) {
+                System.arraycopy(posting, idx + 1, posting, idx, size - idx - 1);
+                postingSizes[termId] = size - 1;
+            }
+        }
+
+        List<Product> search(List<String> tokens, boolean lastTokenIsPrefix, double minPrice, double maxPrice, int limit) {
+            int exactTokenCount = lastTokenIsPrefix ? tokens.size() - 1 : tokens.size();
+            String prefix = lastTokenIsPrefix ? tokens.get(tokens.size() - 1) : null;
+
+            int[] termIds = null;
+            if (exactTokenCount > 0) {
+                termIds = new int[exactTokenCount];
+                for (int i = 0; i < exactTokenCount; i++) {
+                    Integer termId = termIdByTerm.get(tokens.get(i));
+                    if (termId == null) {
+                        return Collections.emptyList();
+                    }
+                    termIds[i] = termId;
+                }
+                sortByPostingSize(termIds);
+            }
+
+            List<Product> results = new ArrayList<>(Math.min(limit, 64));
+            if (termIds != null && prefix != null && prefixPostingsAreSmaller(prefix, postingSizes[termIds[0]])) {
+                // selective prefix, e.g. "lamp 12": drive by the postings of the prefix range and probe the exact terms
+                int[] cursors = new int[termIds.length];
+                int previousOrdinal = -1;
+                for (int t = lowerBound(prefix), to = lowerBound(prefixUpperBound(prefix)); t < to; t++) {
+                    int termId = sortedTermIds[t];
+                    int[] posting = postings[termId];
+                    int size = postingSizes[termId];
+                    for (int i = 0; i < size && results.size() < limit; i++) {
+                        int ordinal = posting[i];
+                        if (ordinal < previousOrdinal) {
+                            // ordinals are only increasing within a posting list
+                            Arrays.fill(cursors, 0);
+                        }
+                        previousOrdinal = ordinal;
+                        if (matchesPrice(ordinal, minPrice, maxPrice) && containsAll(termIds, 0, cursors, ordinal)
+                                && !results.contains(products[ordinal])) {
+                            results.add(products[ordinal]);
+                        }
+                    }
+                    if (results.size() == limit) {
+                        break;
+                    }
+                }
+            } else if (termIds != null) {
+                // document at a time intersection driven by the smallest posting list, stops at the limit
+                int[] smallest = postings[termIds[0]];
+                int smallestSize = postingSizes[termIds[0]];
+                int[] cursors = new int[termIds.length];
+                for (int i = 0; i < smallestSize && results.size() < limit; i++) {
+                    int ordinal = smallest[i];
+                    if (matchesPrice(ordinal, minPrice, maxPrice)
+                            && containsAll(termIds, 1, cursors, ordinal)
+                            && (prefix == null || hasTermWithPrefix(ordinal, prefix))) {
+                        results.add(products[ordinal]);
+                    }
+                }
+            } else {
+                // single prefix term: union of the postings of the terms of the prefix range
+                for (int t = lowerBound(prefix), to = lowerBound(prefixUpperBound(prefix)); t < to; t++) {
+                    int termId = sortedTermIds[t];
+                    int[] posting = postings[termId];
+                    int size = postingSizes[termId];
+                    for (int i = 0; i < size && results.size() < limit; i++) {
+                        int ordinal = posting[i];
+                        // a product matches several terms of the range when its name has several terms with the prefix
+                        if (matchesPrice(ordinal, minPrice, maxPrice) && !results.contains(products[ordinal])) {
+                            results.add(products[ordinal]);
+                        }
+                    }
+                    if (results.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        }
+
+        List<String> suggest(String prefix, int limit) {
+            List<String> suggestions = new ArrayList<>(limit);
+            for (int t = lowerBound(prefix), to = lowerBound(prefixUpperBound(prefix)); t < to; t++) {
+                if (postingSizes[sortedTermIds[t]] > 0) {
+                    suggestions.add(sortedTerms[t]);
+                    if (suggestions.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return suggestions;
+        }
+
+        boolean matchesPrice(int ordinal, double minPrice, double maxPrice) {
+            double price = prices[ordinal];
+            return price >= minPrice && price <= maxPrice;
+        }
+
+        boolean hasTermWithPrefix(int ordinal, String prefix) {
+            for (int termId : termIdsByDoc[ordinal]) {
+                if (terms.get(termId).startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void sortByPostingSize(int[] termIds) {
+            // insertion sort, queries have a handful of terms
+            for (int i = 1; i < termIds.length; i++) {
+                int termId = termIds[i];
+                int j = i - 1;
+                while (j >= 0 && postingSizes[termIds[j]] > postingSizes[termId]) {
+                    termIds[j + 1] = termIds[j];
+                    j--;
+                }
+                termIds[j + 1] = termId;
+            }
+        }
+
+        /**
+         * @return {@code true} if the postings of the terms starting with the prefix hold less entries than the given
+         * threshold, counting stops at the threshold
+         */
+        boolean prefixPostingsAreSmaller(String prefix, int threshold) {
+            long total = 0;
+            for (int t = lowerBound(prefix), to = lowerBound(prefixUpperBound(prefix)); t < to; t++) {
+                total += postingSizes[sortedTermIds[t]];
+                if (total >= threshold) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param cursors per posting list, position from which to search, advanced as the ordinals increase
+         * @return {@code true} if the posting lists of the terms from {@code fromIndex} all contain the given ordinal
+         */
+        boolean containsAll(int[] termIds, int fromIndex, int[] cursors, int ordinal) {
+            for (int i = fromIndex; i < termIds.length; i++) {
+                int idx = gallop(postings[termIds[i]], cursors[i], postingSizes[termIds[i]], ordinal);
+                if (idx >= 0) {
+                    cursors[i] = idx + 1;
+                } else {
+                    cursors[i] = -(idx + 1);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Exponential search followed by a binary search, {@code O(log(distance))} from the cursor.
+         *
+         * @return same contract as {@link Arrays#binarySearch(int[], int, int, int)}
+         */
+        static int gallop(int[] posting, int from, int to, int key) {
+            int bound = 1;
+            while (from + bound < to && posting[from + bound - 1] < key) {
+                bound <<= 1;
+            }
+            return Arrays.binarySearch(posting, from + (bound >> 1), Math.min(from + bound, to), key);
+        }
+    }
+}
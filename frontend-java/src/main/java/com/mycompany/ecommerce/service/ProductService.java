@@ -4,8 +4,11 @@ import com.mycompany.ecommerce.exception.ResourceNotFoundException;
 import com.mycompany.ecommerce.model.Product;
 import org.springframework.validation.annotation.Validated;
 
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import java.util.Collection;
+import java.util.List;
 
 @Validated
 public interface ProductService {
@@ -19,4 +22,44 @@ public interface ProductService {
     Product getProduct(@Min(value = 1L, message = "Invalid product ID.") long id) throws ResourceNotFoundException;
 
     Product save(Product product);
+
+    /**
+     * Saves the given products in a single transaction
+     */
+    Iterable<Product> saveAll(Iterable<Product> products);
+
+    /**
+     * Products of the price range in ascending price order, served from the in-memory price index
+     *
+     * @param minPrice inclusive, {@code null} for no lower bound
+     * @param maxPrice inclusive, {@code null} for no upper bound
+     */
+    @NotNull
+    List<Product> getProductsByPrice(Double minPrice, Double maxPrice, @Min(0) int offset, @Min(1) @Max(1000) int limit);
+
+    /**
+     * Full text search on the product names, the last term of the query matches as a prefix
+     *
+     * @param minPrice inclusive, {@code null} for no lower bound
+     * @param maxPrice inclusive, {@code null} for no upper bound
+     */
+    @NotNull
+    List<Product> searchProducts(@NotNull String query, Double minPrice, Double maxPrice, @Min(1) @Max(100) int limit);
+
+    /**
+     * Autocomplete of the terms of the product names
+     */
+    @NotNull
+    List<String> suggestProductTerms(@NotNull String prefix, @Min(1) @Max(100) int limit);
+
+    /**
+     * Refreshes the in-memory views of the catalog after a bulk change made outside of this service
+     */
+    void refreshCatalog();
+
+    /**
+     * Refreshes the in-memory views of the given products after they were changed by another instance, see
+     * {@link ProductCacheCoherence}
+     */
+    void reloadProducts(@NotNull Collection<Long> productIds);
 }
@@ -1,41 +1,90 @@
 package com.mycompany.ecommerce.service;
 
+import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.mycompany.ecommerce.exception.ResourceNotFoundException;
 import com.mycompany.ecommerce.model.Product;
 import com.mycompany.ecommerce.repository.ProductRepository;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
+/**
+ * The product cache and the in-memory indexes are updated once the saves are committed, a rolled back save leaves them
+ * untouched. The other instances are notified on commit, see {@link ProductCacheCoherence}.
+ */
 @Service
 @Transactional
 public class ProductServiceImpl implements ProductService {
 
+    static final String CATALOG_PAGE_SQL = "select id, name, price, picture_url from product where id > ? order by id limit ?";
+    static final int CATALOG_PAGE_SIZE = 10_000;
+
+    private DataSource dataSource;
     private ProductRepository productRepository;
+    private ProductSearchIndex productSearchIndex;
+    private ProductPriceIndex productPriceIndex;
+    private ProductCacheCoherence productCacheCoherence;
     Cache<Long, Product> productCache;
+    /**
+     * Index updates applied while {@link #refreshCatalog()} loads the catalog, replayed on the rebuilt indexes.
+     * {@code null} when no refresh is in progress, guarded by {@link #indexUpdatesLock}.
+     */
+    List<Runnable> indexUpdatesDuringRefresh;
+    final Object indexUpdatesLock = new Object();
 
-    public ProductServiceImpl(ProductRepository productRepository) {
+    public ProductServiceImpl(DataSource dataSource, ProductRepository productRepository, ProductSearchIndex productSearchIndex,
+                              ProductPriceIndex productPriceIndex, ProductCacheCoherence productCacheCoherence) {
+        this.dataSource = dataSource;
         this.productRepository = productRepository;
+        this.productSearchIndex = productSearchIndex;
+        this.productPriceIndex = productPriceIndex;
+        this.productCacheCoherence = productCacheCoherence;
         this.productCache = CacheBuilder.newBuilder().maximumSize(2).recordStats().build();
         GuavaCacheMetrics.monitor(Metrics.globalRegistry, this.productCache, "productCache");
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Iterable<Product> getAllProducts() {
         return productRepository.findAll();
     }
 
+    /**
+     * Not read only so that it runs on the primary: a product read on a lagging replica right after {@link #save(Product)}
+     * invalidated it would put the stale product back in the cache.
+     */
     @Override
     public Product getProduct(long id) throws ResourceNotFoundException {
         try {
             return productCache.get(id, () -> productRepository
                     .findById(id)
                     .orElseThrow(() -> new ResourceNotFoundException("Product '" + id + "' not found")));
+        } catch (UncheckedExecutionException e) {
+            // e.g. the ResourceNotFoundException of the loader, 404 rather than 500
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
         }
@@ -43,6 +92,169 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Product save(Product product) {
-        return productRepository.save(product);
+        Product savedProduct = productRepository.save(product);
+        onCommit(Collections.singletonList(savedProduct));
+        return savedProduct;
+    }
+
+    @Override
+    public Iterable<Product> saveAll(Iterable<Product> products) {
+        List<Product> savedProducts = new ArrayList<>();
+        for (Product savedProduct : productRepository.saveAll(products)) {
+            savedProducts.add(savedProduct);
+        }
+        onCommit(savedProducts);
+        return savedProducts;
+    }
+
+    /**
+     * The other instances are notified just before the commit, the notification is delivered by Postgresql on commit.
+     * The cache and the indexes are updated after the commit: invalidated before, the cache could be filled again
+     * with the previous version of a product by a concurrent read. Applied at once outside of a transaction.
+     */
+    void onCommit(List<Product> savedProducts) {
+        List<Long> savedProductIds = new ArrayList<>(savedProducts.size());
+        for (Product savedProduct : savedProducts) {
+            savedProductIds.add(savedProduct.getId());
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            productCacheCoherence.publishChanges(savedProductIds);
+            applyIndexUpdate(savedProductIds, () -> indexProducts(savedProducts));
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                productCacheCoherence.publishChanges(savedProductIds);
+            }
+
+            @Override
+            public void afterCommit() {
+                applyIndexUpdate(savedProductIds, () -> indexProducts(savedProducts));
+            }
+        });
+    }
+
+    void indexProducts(List<Product> products) {
+        for (Product product : products) {
+            productSearchIndex.index(product);
+        }
+        productPriceIndex.index(products);
+    }
+
+    /**
+     * Invalidates the cached products and updates the indexes, the update is recorded to be replayed if a refresh of
+     * the catalog is in progress: the refresh may have read the products before the change.
+     */
+    void applyIndexUpdate(Collection<Long> productIds, Runnable indexUpdate) {
+        synchronized (indexUpdatesLock) {
+            productCache.invalidateAll(productIds);
+            indexUpdate.run();
+            if (indexUpdatesDuringRefresh != null) {
+                indexUpdatesDuringRefresh.add(indexUpdate);
+            }
+        }
+    }
+
+    /**
+     * In-memory, don't open a database transaction
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<Product> getProductsByPrice(Double minPrice, Double maxPrice, int offset, int limit) {
+        return productPriceIndex.getSnapshot().findByPriceRange(minPrice, maxPrice, offset, limit);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<Product> searchProducts(String query, Double minPrice, Double maxPrice, int limit) {
+        return productSearchIndex.search(query, minPrice, maxPrice, limit);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<String> suggestProductTerms(String prefix, int limit) {
+        return productSearchIndex.suggest(prefix, limit);
+    }
+
+    /**
+     * The catalog is read with plain JDBC in keyset pages of {@value #CATALOG_PAGE_SIZE} detached products, outside of
+     * any persistence context: the products are only held by the indexes, not also by a Hibernate session with their
+     * dirty checking snapshots. Not in a transaction so that it runs on the primary.
+     * <p>
+     * The saves and reloads committed while the catalog is read are replayed on the rebuilt indexes, the index updates
+     * wait for the end of the rebuild. The refreshes are serialized.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public synchronized void refreshCatalog() {
+        synchronized (indexUpdatesLock) {
+            indexUpdatesDuringRefresh = new ArrayList<>();
+        }
+        try {
+            List<Product> products = loadCatalog();
+            synchronized (indexUpdatesLock) {
+                productCache.invalidateAll();
+                productSearchIndex.rebuild(products);
+                productPriceIndex.rebuild(products);
+                for (Runnable indexUpdate : indexUpdatesDuringRefresh) {
+                    indexUpdate.run();
+                }
+            }
+        } finally {
+            synchronized (indexUpdatesLock) {
+                indexUpdatesDuringRefresh = null;
+            }
+        }
+    }
+
+    List<Product> loadCatalog() {
+        List<Product> products = new ArrayList<>();
+        try (Connection cnn = dataSource.getConnection();
+             PreparedStatement stmt = cnn.prepareStatement(CATALOG_PAGE_SQL)) {
+            long lastId = Long.MIN_VALUE;
+            int pageSize;
+            do {
+                stmt.setLong(1, lastId);
+                stmt.setInt(2, CATALOG_PAGE_SIZE);
+                pageSize = 0;
+                try (ResultSet rst = stmt.executeQuery()) {
+                    while (rst.next()) {
+                        double price = rst.getDouble(3);
+                        Product product = new Product(rst.getLong(1), rst.getString(2), rst.wasNull() ? null : price, rst.getString(4));
+                        products.add(product);
+                        lastId = product.getId();
+                        pageSize++;
+                    }
+                }
+            } while (pageSize == CATALOG_PAGE_SIZE);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failure to load the product catalog after " + products.size() + " products", e);
+        }
+        return products;
+    }
+
+    /**
+     * Not read only so that it runs on the primary, a lagging replica may not have the changes yet. The products that
+     * are no longer in the database are removed from the indexes.
+     */
+    @Override
+    public void reloadProducts(Collection<Long> productIds) {
+        Set<Long> deletedProductIds = new HashSet<>(productIds);
+        List<Product> reloadedProducts = new ArrayList<>(productIds.size());
+        for (Product product : productRepository.findAllById(productIds)) {
+            reloadedProducts.add(product);
+            deletedProductIds.remove(product.getId());
+        }
+        applyIndexUpdate(productIds, () -> {
+            indexProducts(reloadedProducts);
+            productSearchIndex.remove(deletedProductIds);
+            productPriceIndex.remove(deletedProductIds);
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        refreshCatalog();
     }
 }
@@ -0,0 +1,41 @@
+package com.mycompany.ecommerce.service;
+
+/**
+ * Stock of the products, shared by the frontend instances through the {@code product_stock} table. Each instance
+ * reserves and releases from blocks of stock leased from the table, without database access until its lease runs out.
+ * <p>
+ * Products without stock are not tracked: their reservations always succeed.
+ */
+public interface StockReservationService {
+
+    long UNTRACKED = -1;
+
+    /**
+     * Reserves all the lines or none: if a product is out of stock, the lines already reserved are released.
+     *
+     * @param productIds ids of the products, in the same order as {@code quantities}
+     * @return {@code false} if a product is out of stock
+     * @throws IllegalArgumentException if a quantity is not positive, no line is reserved
+     */
+    boolean reserve(long[] productIds, int[] quantities);
+
+    /**
+     * Releases lines previously {@link #reserve(long[], int[]) reserved}, for example when the order is rejected.
+     *
+     * @throws IllegalArgumentException if a quantity is not positive, no line is released
+     */
+    void release(long[] productIds, int[] quantities);
+
+    /**
+     * Adds stock to a product, removes stock if {@code delta} is negative. A product becomes tracked on its first
+     * restock.
+     *
+     * @return the new available quantity, as {@link #getAvailableQuantity(long)}
+     */
+    long restock(long productId, long delta);
+
+    /**
+     * @return the quantity available to this instance or {@link #UNTRACKED}
+     */
+    long getAvailableQuantity(long productId);
+}
@@ -0,0 +1,453 @@
+package com.mycompany.ecommerce.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The frontend instances share the stock through the {@code product_stock} table, whose quantity is the stock not
+ * leased by any instance. Each instance reserves from its own lease, one atomic counter per product: orders for
+ * different products never contend and orders for the same hot product only contend on a compare-and-set, never on a
+ * lock nor on the database.
+ * <p>
+ * When the lease of a product runs out, a block of {@code stock.leaseBlockSize} units, or the rest of the stock if it
+ * covers the order, is leased with a conditional update that never takes more than the table holds: together, the
+ * instances never reserve more than the stock. Every {@code stock.reconciliationIntervalMillis}, a reconciler thread
+ * gives the unused leases back to the table in a single JDBC batch, so that the stock held by an instance is available
+ * to the others after at most one interval, and tracks the products restocked by the other instances. The leases of an
+ * instance that crashes are lost until the product is restocked: the stock is undersold, never oversold.
+ */
+@ManagedResource
+@Service
+public class StockReservationServiceImpl implements StockReservationService, SmartLifecycle {
+
+    /**
+     * Started before, and stopped after, the services that reserve or release stock on their own threads
+     */
+    static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 100;
+
+    static final String SELECT_PRODUCT_IDS_SQL = "select product_id from product_stock";
+    static final String SELECT_QUANTITY_SQL = "select quantity from product_stock where product_id = ?";
+    /**
+     * Leases up to the block, only if the table holds at least the quantity of the order. The row is locked so that
+     * concurrent leases of the same product are serialized.
+     */
+    static final String LEASE_SQL = "update product_stock s set quantity = s.quantity - l.leased " +
+            "from (select product_id, least(quantity, ?) as leased from product_stock " +
+            "where product_id = ? and quantity >= ? for update) l " +
+            "where s.product_id = l.product_id returning l.leased";
+    static final String RETURN_SQL = "update product_stock set quantity = quantity + ? where product_id = ?";
+    static final String RESTOCK_SQL = "insert into product_stock (product_id, quantity) values (?, ?) " +
+            "on conflict (product_id) do update set quantity = product_stock.quantity + excluded.quantity returning quantity";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final DataSource dataSource;
+    final long reconciliationIntervalMillis;
+    final int leaseBlockSize;
+
+    final ConcurrentHashMap<Long, Stock> stocks = new ConcurrentHashMap<>();
+    final Queue<Stock> leasedStocks = new ConcurrentLinkedQueue<>();
+
+    final LongAdder reservedCounter = new LongAdder();
+    final LongAdder outOfStockCounter = new LongAdder();
+    final LongAdder releasedCounter = new LongAdder();
+    final LongAdder leasesCounter = new LongAdder();
+    final LongAdder returnedLeasesCounter = new LongAdder();
+    final LongAdder reconciliationFailuresCounter = new LongAdder();
+
+    volatile boolean running;
+    Thread reconcilerThread;
+
+    public StockReservationServiceImpl(DataSource dataSource,
+                                       @Value("${stock.reconciliationIntervalMillis:1000}") long reconciliationIntervalMillis,
+                                       @Value("${stock.leaseBlockSize:20}") int leaseBlockSize) {
+        if (leaseBlockSize <= 0) {
+            throw new IllegalArgumentException("stock.leaseBlockSize must be positive, got " + leaseBlockSize);
+        }
+        this.dataSource = dataSource;
+        this.reconciliationIntervalMillis = reconciliationIntervalMillis;
+        this.leaseBlockSize = leaseBlockSize;
+
+        FunctionCounter.builder("stock_reserved", reservedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("stock_out_of_stock", outOfStockCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("stock_released", releasedCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("stock_leases", leasesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("stock_returned_leases", returnedLeasesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("stock_reconciliation_failures", reconciliationFailuresCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        Gauge.builder("stock_leased_products", leasedStocks, Queue::size).register(Metrics.globalRegistry);
+    }
+
+    @Override
+    public boolean reserve(long[] productIds, int[] quantities) {
+        checkQuantities(quantities, productIds.length);
+        for (int i = 0; i < productIds.length; i++) {
+            Stock stock = stocks.get(productIds[i]);
+            boolean reserved;
+            try {
+                reserved = stock == null || reserveLine(stock, quantities[i]);
+            } catch (RuntimeException e) {
+                releaseLines(productIds, quantities, i);
+                throw e;
+            }
+            if (!reserved) {
+                outOfStockCounter.increment();
+                releaseLines(productIds, quantities, i);
+                return false;
+            }
+        }
+        reservedCounter.increment();
+        return true;
+    }
+
+    /**
+     * Reserves from the lease of this instance, leases more stock when it runs out
+     */
+    boolean reserveLine(Stock stock, int quantity) {
+        if (stock.tryReserve(quantity)) {
+            return true;
+        }
+        // one lease at a time per product, the threads waiting for it reserve from it
+        synchronized (stock) {
+            while (!stock.tryReserve(quantity)) {
+                long leased;
+                try {
+                    leased = lease(stock.productId, quantity, Math.max(quantity, leaseBlockSize));
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Failure to lease the stock of product " + stock.productId, e);
+                }
+                if (leased == 0) {
+                    return false;
+                }
+                leasesCounter.increment();
+                stock.add(leased);
+                markLeased(stock);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void release(long[] productIds, int[] quantities) {
+        checkQuantities(quantities, productIds.length);
+        releaseLines(productIds, quantities, productIds.length);
+        releasedCounter.increment();
+    }
+
+    /**
+     * Checked before changing any line, a negative reservation would add stock
+     */
+    static void checkQuantities(int[] quantities, int lineCount) {
+        for (int i = 0; i < lineCount; i++) {
+            if (quantities[i] <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive, got " + quantities[i] + " at line " + i);
+            }
+        }
+    }
+
+    /**
+     * The released quantities go back to the lease of this instance, and to the table with the next reconciliation
+     */
+    void releaseLines(long[] productIds, int[] quantities, int lineCount) {
+        for (int i = 0; i < lineCount; i++) {
+            Stock stock = stocks.get(productIds[i]);
+            if (stock != null) {
+                stock.add(quantities[i]);
+                markLeased(stock);
+            }
+        }
+    }
+
+    /**
+     * Written to the table right away, the other instances lease the new stock without waiting for a reconciliation.
+     * The quantity of the table becomes negative if more stock is removed than is not leased, no instance can lease
+     * the product until its leases are given back.
+     */
+    @Override
+    @ManagedOperation
+    public long restock(long productId, long delta) {
+        Stock stock = stocks.computeIfAbsent(productId, Stock::new);
+        try {
+            return addToTable(productId, delta) + stock.leased.get();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failure to restock product " + productId, e);
+        }
+    }
+
+    /**
+     * @return the stock not leased plus the lease of this instance, the leases of the other instances are not
+     * available to this instance
+     */
+    @Override
+    @ManagedOperation
+    public long getAvailableQuantity(long productId) {
+        Stock stock = stocks.get(productId);
+        if (stock == null) {
+            return UNTRACKED;
+        }
+        try {
+            return Math.max(0, selectQuantity(productId)) + stock.leased.get();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failure to read the stock of product " + productId, e);
+        }
+    }
+
+    void markLeased(Stock stock) {
+        if (stock.queued.compareAndSet(false, true)) {
+            leasedStocks.offer(stock);
+        }
+    }
+
+    /**
+     * @return the leased quantity, at least {@code minQuantity} and at most {@code blockQuantity}, {@code 0} if the
+     * table holds less than {@code minQuantity}
+     */
+    long lease(long productId, long minQuantity, long blockQuantity) throws SQLException {
+        try (Connection cnn = dataSource.getConnection();
+             PreparedStatement stmt = cnn.prepareStatement(LEASE_SQL)) {
+            stmt.setLong(1, blockQuantity);
+            stmt.setLong(2, productId);
+            stmt.setLong(3, minQuantity);
+            try (ResultSet rst = stmt.executeQuery()) {
+                return rst.next() ? rst.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Gives the leases back in a single transaction
+     */
+    void returnLeases(List<Stock> batch, List<Long> quantities) throws SQLException {
+        try (Connection cnn = dataSource.getConnection()) {
+            cnn.setAutoCommit(false);
+            try (PreparedStatement stmt = cnn.prepareStatement(RETURN_SQL)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    stmt.setLong(1, quantities.get(i));
+                    stmt.setLong(2, batch.get(i).productId);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                cnn.commit();
+            } catch (SQLException e) {
+                cnn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the new quantity of the table
+     */
+    long addToTable(long productId, long delta) throws SQLException {
+        try (Connection cnn = dataSource.getConnection();
+             PreparedStatement stmt = cnn.prepareStatement(RESTOCK_SQL)) {
+            stmt.setLong(1, productId);
+            stmt.setLong(2, delta);
+            try (ResultSet rst = stmt.executeQuery()) {
+                rst.next();
+                return rst.getLong(1);
+            }
+        }
+    }
+
+    long selectQuantity(long productId) throws SQLException {
+        try (Connection cnn = dataSource.getConnection();
+             PreparedStatement stmt = cnn.prepareStatement(SELECT_QUANTITY_SQL)) {
+            stmt.setLong(1, productId);
+            try (ResultSet rst = stmt.executeQuery()) {
+                return rst.next() ? rst.getLong(1) : 0;
+            }
+        }
+    }
+
+    List<Long> selectProductIds() throws SQLException {
+        List<Long> productIds = new ArrayList<>();
+        try (Connection cnn = dataSource.getConnection();
+             PreparedStatement stmt = cnn.prepareStatement(SELECT_PRODUCT_IDS_SQL);
+             ResultSet rst = stmt.executeQuery()) {
+            while (rst.next()) {
+                productIds.add(rst.getLong(1));
+            }
+        }
+        return productIds;
+    }
+
+    /**
+     * Tracks the products restocked by any instance, a product is never untracked
+     */
+    void loadProducts() throws SQLException {
+        for (Long productId : selectProductIds()) {
+            stocks.computeIfAbsent(productId, Stock::new);
+        }
+    }
+
+    void reconcileLoop() {
+        while (running) {
+            try {
+                Thread.sleep(reconciliationIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            reconcile();
+            try {
+                loadProducts();
+            } catch (SQLException | RuntimeException e) {
+                logger.warn("Failure to load the stocked products, will retry: {}", e.toString());
+            }
+        }
+    }
+
+    /**
+     * Gives the unused leases back to the table, they are added back to the leases of this instance if the write
+     * fails.
+     */
+    synchronized void reconcile() {
+        List<Stock> batch = new ArrayList<>();
+        List<Long> quantities = new ArrayList<>();
+        Stock stock;
+        while ((stock = leasedStocks.poll()) != null) {
+            // clear the flag before taking the lease so that a concurrent lease or release queues the stock again
+            stock.queued.set(false);
+            long quantity = stock.leased.getAndSet(0);
+            if (quantity != 0) {
+                batch.add(stock);
+                quantities.add(quantity);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            returnLeases(batch, quantities);
+            returnedLeasesCounter.add(batch.size());
+        } catch (SQLException | RuntimeException e) {
+            reconciliationFailuresCounter.increment();
+            logger.warn("Failure to return the stock leases of {} products, will retry: {}", batch.size(), e.toString());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).add(quantities.get(i));
+                markLeased(batch.get(i));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        try {
+            loadProducts();
+        } catch (SQLException e) {
+            // starting without the tracked products would oversell them
+            throw new IllegalStateException("Failure to load the stocked products", e);
+        }
+        logger.info("Tracking the stock of {} products", stocks.size());
+        running = true;
+        reconcilerThread = new Thread(this::reconcileLoop, "stock-reconciler");
+        reconcilerThread.setDaemon(true);
+        reconcilerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            reconcilerThread.interrupt();
+        }
+        // the leases go back to the other instances before the datasource is closed
+        reconcile();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @ManagedAttribute
+    public int getTrackedProductCount() {
+        return stocks.size();
+    }
+
+    @ManagedAttribute
+    public int getLeasedProductCount() {
+        return leasedStocks.size();
+    }
+
+    @ManagedAttribute
+    public long getOutOfStockCount() {
+        return outOfStockCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getLeaseCount() {
+        return leasesCounter.sum();
+    }
+
+    @ManagedAttribute
+    public long getReconciliationFailureCount() {
+        return reconciliationFailuresCounter.sum();
+    }
+
+    static class Stock {
+        final long productId;
+        /**
+         * Leased by this instance and not reserved
+         */
+        final AtomicLong leased = new AtomicLong();
+        final AtomicBoolean queued = new AtomicBoolean();
+
+        Stock(long productId) {
+            this.productId = productId;
+        }
+
+        boolean tryReserve(int quantity) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive, got " + quantity);
+            }
+            while (true) {
+                long current = leased.get();
+                if (current < quantity) {
+                    return false;
+                }
+                if (leased.compareAndSet(current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+
+        long add(long quantity) {
+            return leased.addAndGet(quantity);
+        }
+    }
+}
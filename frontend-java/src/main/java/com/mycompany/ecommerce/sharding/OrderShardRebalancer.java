@@ -0,0 +1,192 @@
+package com.mycompany.ecommerce.sharding;
+
+import com.mycompany.ecommerce.model.OrderStatus;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Moves the orders of customers between shards, through JMX:
+ * <ul>
+ *     <li>{@link #moveCustomer(String, int)} moves a customer and pins it to the target shard, for example to isolate
+ *     a large customer,</li>
+ *     <li>{@link #rebalance()}, after adding shards to {@code sharding.urls}, moves the customers whose orders are not
+ *     on the shard given by the hash of their id.</li>
+ * </ul>
+ * A move copies the orders and their lines to the target shard, records the new shard if needed, then deletes the
+ * orders from the source shard. The copy is idempotent: a failed move can be run again. The customer can't place an
+ * order on this instance during the move, the customers with {@code PENDING} orders are not moved.
+ */
+@ManagedResource
+@Component
+public class OrderShardRebalancer {
+
+    static final String SELECT_ORDERS_SQL = "select * from orders where customer_id = ?";
+    static final String SELECT_ORDER_PRODUCTS_SQL = "select op.* from order_product op join orders o on o.id = op.order_id where o.customer_id = ?";
+    static final String DELETE_ORDER_PRODUCTS_SQL = "delete from order_product where order_id in (select id from orders where customer_id = ?)";
+    static final String DELETE_ORDERS_SQL = "delete from orders where customer_id = ?";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final OrderShards orderShards;
+
+    final LongAdder movedCustomersCounter = new LongAdder();
+    final LongAdder movedOrdersCounter = new LongAdder();
+
+    public OrderShardRebalancer(OrderShards orderShards) {
+        this.orderShards = orderShards;
+        FunctionCounter.builder("order_shards_moved_customers", movedCustomersCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("order_shards_moved_orders", movedOrdersCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+    }
+
+    @ManagedOperation(description = "Moves the orders of the customer to the shard and pins the customer to it")
+    public String moveCustomer(String customerId, int targetShard) throws SQLException {
+        int sourceShard = orderShards.shardOfCustomer(customerId);
+        orderShards.getShardDataSource(targetShard);
+        if (sourceShard == targetShard) {
+            return "Customer " + customerId + " is already on shard " + targetShard;
+        }
+        int orders = move(customerId, sourceShard, targetShard, true);
+        return orders == -1
+                ? "Customer " + customerId + " has pending orders, not moved"
+                : "Moved " + orders + " orders of customer " + customerId + " from shard " + sourceShard + " to shard " + targetShard;
+    }
+
+    @ManagedOperation(description = "Moves the customers that are not on their shard, run after adding shards")
+    public String rebalance() throws SQLException {
+        int customers = 0;
+        int orders = 0;
+        int skipped = 0;
+        for (int shard = 0; shard < orderShards.getShardCount(); shard++) {
+            for (String customerId : misplacedCustomers(shard)) {
+                int moved = move(customerId, shard, orderShards.shardOfCustomer(customerId), false);
+                if (moved == -1) {
+                    skipped++;
+                } else {
+                    customers++;
+                    orders += moved;
+                }
+            }
+        }
+        return "Moved " + orders + " orders of " + customers + " customers, " + skipped + " customers with pending orders skipped";
+    }
+
+    List<String> misplacedCustomers(int shard) throws SQLException {
+        List<String> customerIds = new ArrayList<>();
+        try (Connection cnn = orderShards.getShardDataSource(shard).getConnection();
+             PreparedStatement stmt = cnn.prepareStatement("select distinct customer_id from orders where customer_id is not null");
+             ResultSet rst = stmt.executeQuery()) {
+            while (rst.next()) {
+                String customerId = rst.getString(1);
+                if (orderShards.shardOfCustomer(customerId) != shard) {
+                    customerIds.add(customerId);
+                }
+            }
+        }
+        return customerIds;
+    }
+
+    /**
+     * @return the number of moved orders, {@code -1} if the customer has pending orders
+     */
+    int move(String customerId, int sourceShard, int targetShard, boolean pin) throws SQLException {
+        Lock lock = orderShards.customerLock(customerId, true);
+        lock.lock();
+        try (Connection source = orderShards.getShardDataSource(sourceShard).getConnection();
+             Connection target = orderShards.getShardDataSource(targetShard).getConnection()) {
+            if (hasPendingOrders(source, customerId)) {
+                logger.info("Customer {} has pending orders, not moved from shard {} to shard {}", customerId, sourceShard, targetShard);
+                return -1;
+            }
+            target.setAutoCommit(false);
+            int orders;
+            try {
+                orders = copyRows(source, target, SELECT_ORDERS_SQL, "orders", customerId);
+                copyRows(source, target, SELECT_ORDER_PRODUCTS_SQL, "order_product", customerId);
+                target.commit();
+            } catch (SQLException e) {
+                target.rollback();
+                throw e;
+            }
+            if (pin) {
+                orderShards.pin(customerId, targetShard);
+            }
+            source.setAutoCommit(false);
+            try (PreparedStatement deleteOrderProducts = source.prepareStatement(DELETE_ORDER_PRODUCTS_SQL);
+                 PreparedStatement deleteOrders = source.prepareStatement(DELETE_ORDERS_SQL)) {
+                deleteOrderProducts.setString(1, customerId);
+                deleteOrderProducts.executeUpdate();
+                deleteOrders.setString(1, customerId);
+                deleteOrders.executeUpdate();
+                source.commit();
+            } catch (SQLException e) {
+                source.rollback();
+                throw e;
+            }
+            movedCustomersCounter.increment();
+            movedOrdersCounter.add(orders);
+            logger.info("Moved {} orders of customer {} from shard {} to shard {}", orders, customerId, sourceShard, targetShard);
+            return orders;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean hasPendingOrders(Connection cnn, String customerId) throws SQLException {
+        try (PreparedStatement stmt = cnn.prepareStatement("select 1 from orders where customer_id = ? and status = ? limit 1")) {
+            stmt.setString(1, customerId);
+            stmt.setString(2, OrderStatus.PENDING.name());
+            try (ResultSet rst = stmt.executeQuery()) {
+                return rst.next();
+            }
+        }
+    }
+
+    /**
+     * Copies the rows column by column, whatever the columns, the rows already copied are skipped
+     *
+     * @return the number of rows read from the source
+     */
+    int copyRows(Connection source, Connection target, String selectSql, String table, String customerId) throws SQLException {
+        int count = 0;
+        try (PreparedStatement select = source.prepareStatement(selectSql)) {
+            select.setString(1, customerId);
+            try (ResultSet rst = select.executeQuery()) {
+                ResultSetMetaData metaData = rst.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                StringBuilder columns = new StringBuilder();
+                StringBuilder parameters = new StringBuilder();
+                for (int column = 1; column <= columnCount; column++) {
+                    columns.append(column == 1 ? "" : ", ").append(metaData.getColumnName(column));
+                    parameters.append(column == 1 ? "?" : ", ?");
+                }
+                try (PreparedStatement insert = target.prepareStatement("insert into " + table + " (" + columns + ") " +
+                        "values (" + parameters + ") on conflict do nothing")) {
+                    while (rst.next()) {
+                        for (int column = 1; column <= columnCount; column++) {
+                            insert.setObject(column, rst.getObject(column));
+                        }
+                        insert.addBatch();
+                        count++;
+                    }
+                    insert.executeBatch();
+                }
+            }
+        }
+        return count;
+    }
+}
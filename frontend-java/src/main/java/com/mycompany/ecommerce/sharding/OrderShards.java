@@ -0,0 +1,343 @@
+package com.mycompany.ecommerce.sharding;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Orders are sharded by customer: all the orders of a customer, and their lines, are stored in the same shard.
+ * <p>
+ * The home shard {@code 0} is {@code spring.datasource}, it also holds the catalog, the stock and the directory of the
+ * customers pinned to a shard (table {@code customer_shard}). The shards {@code 1..n} are the databases of
+ * {@code sharding.urls}. Without {@code sharding.urls}, there is a single shard and nothing is routed.
+ * <p>
+ * A customer is on the shard of the directory or else on the shard given by a jump consistent hash of its id: adding a
+ * shard only moves {@code 1/n} of the customers, see {@link OrderShardRebalancer}.
+ * <p>
+ * The order ids are generated by the {@code orders.id} sequence of each shard, aligned at startup to increment by
+ * {@link #MAX_SHARDS} from the index of the shard: ids are globally unique, the shard where an order was created is
+ * {@code id % MAX_SHARDS} and they remain exact in JavaScript.
+ */
+@ManagedResource
+@Component
+public class OrderShards implements SmartLifecycle {
+
+    public static final int HOME_SHARD = 0;
+    public static final int MAX_SHARDS = 64;
+
+    /**
+     * Prepares the shards before the services that read or write orders start
+     */
+    static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 300;
+
+    static final String SHARD_SCHEMA = "db/frontend-order-shard-schema.sql";
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final DataSource dataSource;
+    final int shardCount;
+    final Map<String, Integer> pinnedCustomers = new ConcurrentHashMap<>();
+    final Striped<ReadWriteLock> customerLocks = Striped.readWriteLock(256);
+
+    volatile ExecutorService scatterExecutor;
+
+    public OrderShards(DataSource dataSource, @Value("${sharding.urls:}") String[] shardUrls) {
+        this.dataSource = dataSource;
+        this.shardCount = 1 + shardUrls.length;
+        if (shardCount > MAX_SHARDS) {
+            throw new IllegalArgumentException("At most " + (MAX_SHARDS - 1) + " sharding.urls, got " + shardUrls.length);
+        }
+    }
+
+    @ManagedAttribute
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardOfCustomer(String customerId) {
+        if (shardCount == 1 || customerId == null) {
+            return HOME_SHARD;
+        }
+        Integer pinnedShard = pinnedCustomers.get(customerId);
+        return pinnedShard == null ? hashShard(customerId, shardCount) : pinnedShard;
+    }
+
+    static int hashShard(String customerId, int shardCount) {
+        return Hashing.consistentHash(Hashing.murmur3_128().hashString(customerId, StandardCharsets.UTF_8), shardCount);
+    }
+
+    /**
+     * @return the shard where the order was created, the order may have moved since with its customer
+     */
+    public int shardOfOrder(long orderId) {
+        int shard = (int) Math.floorMod(orderId, (long) MAX_SHARDS);
+        return shard < shardCount ? shard : HOME_SHARD;
+    }
+
+    /**
+     * Runs the JPA calls of the task on the shard
+     */
+    public <T> T callOnShard(int shard, Supplier<T> task) {
+        Integer previous = ShardContext.set(shard);
+        try {
+            return task.get();
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    /**
+     * Runs the task on each shard in parallel, each in its own transactions: the returned entities are detached.
+     *
+     * @return the result of each shard, indexed by shard
+     */
+    public <T> List<T> scatter(IntFunction<T> task) {
+        ExecutorService executor = this.scatterExecutor;
+        if (shardCount == 1 || executor == null) {
+            List<T> results = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                int s = shard;
+                results.add(callOnShard(s, () -> task.apply(s)));
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int s = shard;
+            futures.add(executor.submit(() -> callOnShard(s, () -> task.apply(s))));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while gathering the shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * K-way merge of lists sorted by the same comparator, {@code O(n log k)}
+     */
+    public static <T> List<T> merge(List<List<T>> sortedLists, Comparator<? super T> comparator) {
+        int size = 0;
+        PriorityQueue<Cursor<T>> cursors = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                (c1, c2) -> comparator.compare(c1.current(), c2.current()));
+        for (List<T> sortedList : sortedLists) {
+            size += sortedList.size();
+            if (!sortedList.isEmpty()) {
+                cursors.add(new Cursor<>(sortedList));
+            }
+        }
+        List<T> merged = new ArrayList<>(size);
+        Cursor<T> cursor;
+        while ((cursor = cursors.poll()) != null) {
+            merged.add(cursor.current());
+            if (cursor.next()) {
+                cursors.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The writes of the orders of a customer hold the shared lock, a move of the customer to another shard holds the
+     * exclusive lock. Only guards the moves started on this instance.
+     */
+    public Lock customerLock(String customerId, boolean exclusive) {
+        ReadWriteLock lock = customerLocks.get(customerId == null ? "" : customerId);
+        return exclusive ? lock.writeLock() : lock.readLock();
+    }
+
+    /**
+     * Records the shard of a customer in the directory
+     */
+    void pin(String customerId, int shard) throws SQLException {
+        try (Connection cnn = getShardDataSource(HOME_SHARD).getConnection();
+             PreparedStatement stmt = cnn.prepareStatement("insert into customer_shard (customer_id, shard) values (?, ?) " +
+                     "on conflict (customer_id) do update set shard = excluded.shard")) {
+            stmt.setString(1, customerId);
+            stmt.setInt(2, shard);
+            stmt.executeUpdate();
+        }
+        pinnedCustomers.put(customerId, shard);
+    }
+
+    @ManagedAttribute
+    public int getPinnedCustomerCount() {
+        return pinnedCustomers.size();
+    }
+
+    @ManagedOperation
+    public int getShardOfCustomer(String customerId) {
+        return shardOfCustomer(customerId);
+    }
+
+    /**
+     * The data source of the shard itself, not routed, for the JDBC maintenance
+     */
+    public DataSource getShardDataSource(int shard) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shard + ", there are " + shardCount + " shards");
+        }
+        if (shardCount == 1) {
+            return dataSource;
+        }
+        try {
+            return (DataSource) dataSource.unwrap(ShardRoutingDataSource.class).getResolvedDataSources().get(shard);
+        } catch (SQLException e) {
+            throw new IllegalStateException("sharding.urls is set but the data source is not sharded", e);
+        }
+    }
+
+    void prepareShards() throws SQLException {
+        for (int shard = 0; shard < shardCount; shard++) {
+            DataSource shardDataSource = getShardDataSource(shard);
+            if (shard != HOME_SHARD) {
+                // the schema of the home shard is managed as usual (Hibernate or db/frontend-schema.sql)
+                new ResourceDatabasePopulator(new ClassPathResource(SHARD_SCHEMA)).execute(shardDataSource);
+            }
+            alignIdSequence(shardDataSource, shard);
+        }
+        try (Connection cnn = getShardDataSource(HOME_SHARD).getConnection();
+             Statement stmt = cnn.createStatement()) {
+            stmt.execute("create table if not exists customer_shard (customer_id varchar(255) primary key, shard integer not null)");
+            try (ResultSet rst = stmt.executeQuery("select customer_id, shard from customer_shard")) {
+                while (rst.next()) {
+                    pinnedCustomers.put(rst.getString(1), rst.getInt(2));
+                }
+            }
+        }
+        logger.info("{} order shards ready, {} customers pinned", shardCount, pinnedCustomers.size());
+    }
+
+    /**
+     * Makes the {@code orders.id} sequence of the shard generate {@code shard + k * MAX_SHARDS} after the existing ids
+     */
+    void alignIdSequence(DataSource shardDataSource, int shard) throws SQLException {
+        try (Connection cnn = shardDataSource.getConnection();
+             Statement stmt = cnn.createStatement()) {
+            String sequence;
+            try (ResultSet rst = stmt.executeQuery("select pg_get_serial_sequence('orders', 'id')")) {
+                sequence = rst.next() ? rst.getString(1) : null;
+            }
+            if (sequence == null) {
+                throw new IllegalStateException("orders.id of shard " + shard + " is not generated by a sequence");
+            }
+            long increment;
+            long lastValue;
+            try (ResultSet rst = stmt.executeQuery("select s.seqincrement, l.last_value from pg_sequence s, " + sequence + " l " +
+                    "where s.seqrelid = '" + sequence + "'::regclass")) {
+                rst.next();
+                increment = rst.getLong(1);
+                lastValue = rst.getLong(2);
+            }
+            if (increment == MAX_SHARDS && Math.floorMod(lastValue, (long) MAX_SHARDS) == shard) {
+                return;
+            }
+            long maxId;
+            try (ResultSet rst = stmt.executeQuery("select coalesce(max(id), 0) from orders")) {
+                rst.next();
+                maxId = rst.getLong(1);
+            }
+            long nextId = (Math.max(maxId, lastValue) / MAX_SHARDS + 1) * MAX_SHARDS + shard;
+            stmt.execute("alter sequence " + sequence + " increment by " + MAX_SHARDS);
+            stmt.execute("select setval('" + sequence + "', " + nextId + ", false)");
+            logger.info("Order ids of shard {} start at {}", shard, nextId);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (shardCount == 1 || scatterExecutor != null) {
+            return;
+        }
+        try {
+            prepareShards();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failure to prepare the order shards", e);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        scatterExecutor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "order-shards-scatter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (scatterExecutor == null) {
+            return;
+        }
+        scatterExecutor.shutdownNow();
+        scatterExecutor = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scatterExecutor != null;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    static class Cursor<T> {
+        final List<T> list;
+        int idx;
+
+        Cursor(List<T> list) {
+            this.list = list;
+        }
+
+        T current() {
+            return list.get(idx);
+        }
+
+        boolean next() {
+            return ++idx < list.size();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.mycompany.ecommerce.sharding;
+
+/**
+ * Shard of the database calls of the current thread, read by the {@link ShardRoutingDataSource}.
+ */
+public final class ShardContext {
+
+    static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return the current shard, {@link OrderShards#HOME_SHARD} if none is set
+     */
+    public static int current() {
+        Integer shard = CURRENT_SHARD.get();
+        return shard == null ? OrderShards.HOME_SHARD : shard;
+    }
+
+    /**
+     * @return the previous shard, to {@link #restore(Integer)} once done
+     */
+    static Integer set(int shard) {
+        Integer previous = CURRENT_SHARD.get();
+        CURRENT_SHARD.set(shard);
+        return previous;
+    }
+
+    static void restore(Integer previous) {
+        if (previous == null) {
+            CURRENT_SHARD.remove();
+        } else {
+            CURRENT_SHARD.set(previous);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.mycompany.ecommerce.web;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of the JSON responses of {@code compression.json.minSizeInBytes} or more, for the clients that
+ * accept it.
+ * <p>
+ * The first {@code minSizeInBytes} of the response are buffered: a smaller response is sent as is with its exact
+ * {@code Content-Length}, a larger one is compressed on the fly. Both carry {@code Vary: Accept-Encoding}. The other
+ * responses, whose content type is not JSON, go through untouched, with the {@code Content-Length} set by the
+ * handler: the static assets written by Tomcat with {@code sendfile} have no body in the response. The compression
+ * ratio and the time spent compressing, excluding the writes to the client, are exported as metrics.
+ * <p>
+ * The responses written with non blocking IO, through a {@link WriteListener}, are not compressed.
+ */
+@ManagedResource
+@Component
+public class JsonCompressionFilter extends OncePerRequestFilter {
+
+    final boolean enabled;
+    final int minSizeInBytes;
+    final int level;
+
+    final LongAdder compressedResponsesCounter = new LongAdder();
+    final LongAdder inputBytesCounter = new LongAdder();
+    final LongAdder outputBytesCounter = new LongAdder();
+    final LongAdder compressionNanosCounter = new LongAdder();
+
+    public JsonCompressionFilter(@Value("${compression.json.enabled:true}") boolean enabled,
+                                 @Value("${compression.json.minSizeInBytes:2048}") int minSizeInBytes,
+                                 @Value("${compression.json.level:6}") int level) {
+        this.enabled = enabled;
+        this.minSizeInBytes = minSizeInBytes;
+        this.level = level;
+
+        FunctionCounter.builder("http_json_compressed_responses", compressedResponsesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("http_json_compression_input_bytes", inputBytesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("http_json_compression_output_bytes", outputBytesCounter, LongAdder::doubleValue).register(Metrics.globalRegistry);
+        FunctionCounter.builder("http_json_compression_seconds", compressionNanosCounter, nanos -> nanos.doubleValue() / TimeUnit.SECONDS.toNanos(1)).register(Metrics.globalRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        // the async dispatch writes to the response wrapped by the initial dispatch
+        CompressingResponse compressingResponse = WebUtils.getNativeResponse(response, CompressingResponse.class);
+        if (compressingResponse == null) {
+            if (!enabled || !acceptsGzip(request)) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            compressingResponse = new CompressingResponse(response);
+        }
+        filterChain.doFilter(request, compressingResponse);
+        if (!request.isAsyncStarted()) {
+            compressingResponse.finish();
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    static boolean isJson(String contentType) {
+        return contentType != null && (contentType.startsWith("application/json") || contentType.contains("+json"));
+    }
+
+    @ManagedAttribute
+    public long getCompressedResponseCount() {
+        return compressedResponsesCounter.sum();
+    }
+
+    /**
+     * @return compressed size / uncompressed size
+     */
+    @ManagedAttribute
+    public double getCompressionRatio() {
+        long inputBytes = inputBytesCounter.sum();
+        return inputBytes == 0 ? 1 : (double) outputBytesCounter.sum() / inputBytes;
+    }
+
+    @ManagedAttribute
+    public long getCompressionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(compressionNanosCounter.sum());
+    }
+
+    enum Mode {BUFFERING, IDENTITY, GZIP}
+
+    class CompressingResponse extends HttpServletResponseWrapper {
+        final byte[] buffer = new byte[minSizeInBytes];
+        int bufferedCount;
+        Mode mode = Mode.BUFFERING;
+        /**
+         * Declared by the handler of a large JSON response, -1 if none
+         */
+        long declaredContentLength = -1;
+        ByteArrayOutputStream compressedBytes;
+        GZIPOutputStream gzip;
+        ServletOutputStream outputStream;
+        PrintWriter writer;
+
+        CompressingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new CompressingOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        /**
+         * A response that is not JSON or that is declared smaller than the threshold is sent as is
+         */
+        @Override
+        public void setContentLengthLong(long len) {
+            if (mode == Mode.BUFFERING) {
+                if (!isCompressible()) {
+                    mode = Mode.IDENTITY;
+                } else if (len < minSizeInBytes) {
+                    mode = Mode.IDENTITY;
+                    addVaryHeader();
+                } else {
+                    declaredContentLength = len;
+                    return;
+                }
+            }
+            if (mode == Mode.IDENTITY) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(Long.parseLong(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            flush();
+            if (mode != Mode.BUFFERING) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            bufferedCount = 0;
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            bufferedCount = 0;
+            declaredContentLength = -1;
+            mode = Mode.BUFFERING;
+        }
+
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            if (mode == Mode.BUFFERING && !isCompressible()) {
+                // e.g. server-sent events, sent as they are written
+                mode = Mode.IDENTITY;
+                writeBuffered();
+            }
+            if (mode == Mode.BUFFERING) {
+                if (bufferedCount + length <= buffer.length) {
+                    System.arraycopy(bytes, offset, buffer, bufferedCount, length);
+                    bufferedCount += length;
+                    return;
+                }
+                startCompression();
+                writeBuffered();
+            }
+            if (mode == Mode.GZIP) {
+                compress(bytes, offset, length);
+            } else {
+                getResponse().getOutputStream().write(bytes, offset, length);
+            }
+        }
+
+        boolean isCompressible() {
+            return isJson(getContentType())
+                    && !containsHeader(HttpHeaders.CONTENT_ENCODING)
+                    && getStatus() != HttpServletResponse.SC_NO_CONTENT
+                    && getStatus() != HttpServletResponse.SC_NOT_MODIFIED;
+        }
+
+        void startCompression() throws IOException {
+            mode = Mode.GZIP;
+            super.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            addVaryHeader();
+            compressedBytes = new ByteArrayOutputStream(minSizeInBytes);
+            gzip = new GZIPOutputStream(compressedBytes, minSizeInBytes) {
+                {
+                    def.setLevel(level);
+                }
+            };
+            compressedResponsesCounter.increment();
+        }
+
+        void addVaryHeader() {
+            super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        void writeBuffered() throws IOException {
+            if (bufferedCount > 0) {
+                int count = bufferedCount;
+                bufferedCount = 0;
+                if (mode == Mode.GZIP) {
+                    compress(buffer, 0, count);
+                } else {
+                    getResponse().getOutputStream().write(buffer, 0, count);
+                }
+            }
+        }
+
+        /**
+         * Only the compression is timed, the compressed bytes are then written to the client
+         */
+        void compress(byte[] bytes, int offset, int length) throws IOException {
+            long startNanos = System.nanoTime();
+            gzip.write(bytes, offset, length);
+            compressionNanosCounter.add(System.nanoTime() - startNanos);
+            inputBytesCounter.add(length);
+            drainCompressedBytes();
+        }
+
+        void drainCompressedBytes() throws IOException {
+            if (compressedBytes.size() > 0) {
+                outputBytesCounter.add(compressedBytes.size());
+                compressedBytes.writeTo(getResponse().getOutputStream());
+                compressedBytes.reset();
+            }
+        }
+
+        /**
+         * Ignored while a JSON response is buffered, the message converters flush once they have written the body
+         */
+        void flush() throws IOException {
+            if (mode == Mode.BUFFERING && !isCompressible()) {
+                mode = Mode.IDENTITY;
+                writeBuffered();
+            }
+            if (mode == Mode.GZIP) {
+                drainCompressedBytes();
+            }
+            if (mode != Mode.BUFFERING) {
+                getResponse().getOutputStream().flush();
+            }
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (mode == Mode.BUFFERING) {
+                mode = Mode.IDENTITY;
+                if (!isCommitted() && isCompressible()) {
+                    addVaryHeader();
+                    // no body written through the response if the container sends it, e.g. with sendfile
+                    super.setContentLengthLong(bufferedCount == 0 && declaredContentLength >= 0 ? declaredContentLength : bufferedCount);
+                }
+                writeBuffered();
+            } else if (mode == Mode.GZIP) {
+                long startNanos = System.nanoTime();
+                gzip.finish();
+                compressionNanosCounter.add(System.nanoTime() - startNanos);
+                drainCompressedBytes();
+                mode = Mode.IDENTITY;
+            }
+        }
+
+        class CompressingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(int b) throws IOException {
+                CompressingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                CompressingResponse.this.write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                CompressingResponse.this.flush();
+            }
+
+            /**
+             * Always ready while the bytes are buffered in memory
+             */
+            @Override
+            public boolean isReady() {
+                if (mode == Mode.BUFFERING) {
+                    return true;
+                }
+                try {
+                    return getResponse().getOutputStream().isReady();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            /**
+             * A response written with non blocking IO is sent as is: the listener writes to the response of the
+             * container once it is ready, the filter would have to buffer the bytes it cannot write.
+             *
+             * @throws IllegalStateException if the compression already started, the compressed and the uncompressed
+             *                               bytes cannot be mixed
+             */
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    if (mode == Mode.BUFFERING) {
+                        mode = Mode.IDENTITY;
+                        // written before the listener is set, still blocking
+                        writeBuffered();
+                    } else if (mode == Mode.GZIP) {
+                        throw new IllegalStateException("Non blocking writes after the compression of the response started");
+                    }
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
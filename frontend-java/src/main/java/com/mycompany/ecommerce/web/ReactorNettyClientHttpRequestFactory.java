@@ -0,0 +1,164 @@
+package com.mycompany.ecommerce.web;
+
+import io.netty.buffer.Unpooled;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@code RestTemplate} requests sent with the Reactor Netty HTTP client, the body of the request is buffered and the
+ * calling thread blocks until the response is fully read.
+ * <p>
+ * With {@link HttpProtocol#H2C} (HTTP/2 over cleartext, with prior knowledge), the concurrent requests are multiplexed
+ * as streams over at most {@code maxConnections} connections, up to the {@code SETTINGS_MAX_CONCURRENT_STREAMS} of the
+ * server per connection, rather than one connection per in-flight request with HTTP/1.1.
+ * <p>
+ * A response that is not fully read after {@code readTimeout} fails with a {@link SocketTimeoutException}, as with
+ * the default {@code HttpURLConnection} based factory.
+ */
+public class ReactorNettyClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+    final ConnectionProvider connectionProvider;
+    final HttpClient httpClient;
+    final Duration readTimeout;
+
+    public ReactorNettyClientHttpRequestFactory(String name, HttpProtocol protocol, int maxConnections, Duration readTimeout) {
+        // the requests wait for a connection or a stream until the read timeout rather than failing when more than
+        // 2 * maxConnections are pending
+        this.connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.httpClient = HttpClient.create(connectionProvider).protocol(protocol);
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new ReactorNettyClientHttpRequest(uri, httpMethod);
+    }
+
+    @Override
+    public void destroy() {
+        connectionProvider.disposeLater().block(readTimeout);
+    }
+
+    class ReactorNettyClientHttpRequest extends AbstractClientHttpRequest {
+        final URI uri;
+        final HttpMethod method;
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+
+        ReactorNettyClientHttpRequest(URI uri, HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public String getMethodValue() {
+            return method.name();
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            byte[] bytes = body.toByteArray();
+            HttpClient.RequestSender sender = httpClient
+                    .headers(nettyHeaders -> {
+                        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                            nettyHeaders.add(header.getKey(), header.getValue());
+                        }
+                    })
+                    .request(io.netty.handler.codec.http.HttpMethod.valueOf(method.name()))
+                    .uri(uri);
+            HttpClient.ResponseReceiver<?> receiver = bytes.length == 0 ? sender : sender.send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(bytes)));
+            try {
+                return receiver
+                        .responseSingle((response, content) -> content.asByteArray()
+                                .defaultIfEmpty(new byte[0])
+                                .map(responseBody -> new ReactorNettyClientHttpResponse(response, responseBody)))
+                        .timeout(readTimeout)
+                        .block();
+            } catch (RuntimeException e) {
+                Throwable cause = Exceptions.unwrap(e);
+                if (cause instanceof TimeoutException) {
+                    throw new SocketTimeoutException("No response after " + readTimeout.toMillis() + "ms from " + uri);
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("Failure of the request to " + uri, cause);
+            }
+        }
+    }
+
+    static class ReactorNettyClientHttpResponse extends AbstractClientHttpResponse {
+        final int statusCode;
+        final String statusText;
+        final HttpHeaders headers = new HttpHeaders();
+        final byte[] body;
+
+        ReactorNettyClientHttpResponse(HttpClientResponse response, byte[] body) {
+            this.statusCode = response.status().code();
+            this.statusText = response.status().reasonPhrase();
+            for (Map.Entry<String, String> header : response.responseHeaders()) {
+                headers.add(header.getKey(), header.getValue());
+            }
+            this.body = body;
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public String getStatusText() {
+            return statusText;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
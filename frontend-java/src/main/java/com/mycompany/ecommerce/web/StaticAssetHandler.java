@@ -0,0 +1,95 @@
+package com.mycompany.ecommerce.web;
+
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the compiled Angular assets.
+ * <p>
+ * The brotli ({@code .br}) or gzip ({@code .gz}) variant precompressed at build time is served according to the
+ * {@code Accept-Encoding} request header, brotli first. The assets whose name is fingerprinted by the Angular build
+ * ({@code main.<hash>.js}) never change and are cached forever, the other assets ({@code index.html}...) are
+ * revalidated.
+ * <p>
+ * The assets of {@code sendfileMinSizeInBytes} or more that are files on disk are written by Tomcat with
+ * {@code sendfile}, without being copied through the JVM. Smaller assets are cheaper to copy.
+ */
+public class StaticAssetHandler extends ResourceHttpRequestHandler {
+
+    static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    static final Pattern FINGERPRINTED_FILENAME = Pattern.compile(".+\\.[0-9a-f]{16,}\\.[a-z0-9]+");
+    static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    static final String REVALIDATE_CACHE_CONTROL = "no-cache";
+
+    final long sendfileMinSizeInBytes;
+
+    public StaticAssetHandler(Resource location, long sendfileMinSizeInBytes) {
+        this.sendfileMinSizeInBytes = sendfileMinSizeInBytes;
+        setLocations(Collections.singletonList(location));
+        setResourceResolvers(Arrays.asList(new EncodedResourceResolver(), new PathResourceResolver()));
+    }
+
+    @Override
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))
+                || !"GET".equals(request.getMethod())
+                || request.getHeader(HttpHeaders.RANGE) != null) {
+            super.handleRequest(request, response);
+            return;
+        }
+        Resource resource = getResource(request);
+        if (resource == null || !resource.isFile() || resource.contentLength() < sendfileMinSizeInBytes) {
+            super.handleRequest(request, response);
+            return;
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(resource.lastModified())) {
+            return;
+        }
+        setHeaders(response, resource, getMediaType(request, resource));
+        File file = resource.getFile();
+        response.setContentLengthLong(file.length());
+        request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getCanonicalPath());
+        request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+        request.setAttribute(SENDFILE_END_ATTRIBUTE, file.length());
+        Metrics.counter("static_assets_sendfile").increment();
+    }
+
+    @Override
+    protected void setHeaders(HttpServletResponse response, Resource resource, MediaType mediaType) throws IOException {
+        super.setHeaders(response, resource, mediaType);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, isFingerprinted(resource.getFilename()) ? IMMUTABLE_CACHE_CONTROL : REVALIDATE_CACHE_CONTROL);
+        String encoding = null;
+        if (resource instanceof HttpResource) {
+            encoding = ((HttpResource) resource).getResponseHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        }
+        if (encoding == null) {
+            // the variant served depends on the Accept-Encoding header
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        Metrics.counter("static_assets_served", "encoding", encoding == null ? "identity" : encoding).increment();
+    }
+
+    static boolean isFingerprinted(String filename) {
+        return filename != null && FINGERPRINTED_FILENAME.matcher(filename).matches();
+    }
+}
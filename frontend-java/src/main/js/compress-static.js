@@ -0,0 +1,51 @@
+// Precompressed variants of the compiled assets, served by `StaticAssetHandler` according to the Accept-Encoding header
+// usage: node compress-static.js [directory], defaults to the Spring Boot static resources
+const fs = require('fs');
+const path = require('path');
+const zlib = require('zlib');
+
+const directory = process.argv[2] || path.join(__dirname, '..', 'resources', 'static');
+const compressibleExtensions = ['.html', '.js', '.css', '.svg', '.json', '.txt', '.map', '.ico'];
+// below a TCP packet, compression saves nothing
+const minSizeInBytes = 1024;
+
+let originalBytes = 0;
+let gzipBytes = 0;
+let brotliBytes = 0;
+
+function compress(file) {
+  const content = fs.readFileSync(file);
+  const gzip = zlib.gzipSync(content, {level: zlib.constants.Z_BEST_COMPRESSION});
+  const brotli = zlib.brotliCompressSync(content, {
+    params: {
+      [zlib.constants.BROTLI_PARAM_QUALITY]: zlib.constants.BROTLI_MAX_QUALITY,
+      [zlib.constants.BROTLI_PARAM_SIZE_HINT]: content.length
+    }
+  });
+  // a variant that is not smaller is not written, the original is served
+  if (gzip.length < content.length) {
+    fs.writeFileSync(file + '.gz', gzip);
+    fs.utimesSync(file + '.gz', fs.statSync(file).atime, fs.statSync(file).mtime);
+    gzipBytes += gzip.length;
+  }
+  if (brotli.length < content.length) {
+    fs.writeFileSync(file + '.br', brotli);
+    fs.utimesSync(file + '.br', fs.statSync(file).atime, fs.statSync(file).mtime);
+    brotliBytes += brotli.length;
+  }
+  originalBytes += content.length;
+}
+
+function walk(dir) {
+  for (const entry of fs.readdirSync(dir, {withFileTypes: true})) {
+    const file = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      walk(file);
+    } else if (compressibleExtensions.includes(path.extname(file)) && fs.statSync(file).size >= minSizeInBytes) {
+      compress(file);
+    }
+  }
+}
+
+walk(directory);
+console.log(`Compressed ${originalBytes} bytes of assets in ${directory}: gzip ${gzipBytes} bytes, brotli ${brotliBytes} bytes`);
@@ -0,0 +1,23 @@
+-- Schema of the order shards 1..n, applied at startup by `OrderShards`. The home shard 0 has the full schema, see
+-- `db/frontend-schema.sql`. Keep in sync with the `orders` and `order_product` entities.
+-- The products are only in the home shard: no foreign key from order_product to product.
+CREATE TABLE IF NOT EXISTS orders (
+    id           BIGSERIAL PRIMARY KEY,
+    date_created DATE,
+    status       VARCHAR(255)
+);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS discount_in_cents BIGINT;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS tax_in_cents BIGINT;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS total_price_in_cents BIGINT;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS customer_id VARCHAR(255);
+CREATE INDEX IF NOT EXISTS orders_customer_id_date_created_id_idx ON orders (customer_id, date_created, id);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS status_changed_at TIMESTAMP;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS shipping_country VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS customer_ip_address VARCHAR(255);
+CREATE INDEX IF NOT EXISTS orders_pending_idx ON orders (id) WHERE status = 'PENDING';
+CREATE TABLE IF NOT EXISTS order_product (
+    order_id   BIGINT NOT NULL REFERENCES orders (id),
+    product_id BIGINT NOT NULL,
+    quantity   INTEGER NOT NULL,
+    PRIMARY KEY (order_id, product_id)
+);
@@ -0,0 +1,21 @@
+-- Monthly range partitioning of the orders on `date_created`, applied by the `partitioned-orders` profile before
+-- `db/frontend-schema.sql` which adds the other columns and the indexes to the partitioned table.
+-- The partitions `orders_<yyyy>_<mm>` are created ahead and archived by `OrderPartitionServiceImpl`.
+-- To migrate an existing non partitioned `orders` table, see `db/migrate-orders-to-partitioned.sql`.
+CREATE TABLE IF NOT EXISTS orders (
+    id           BIGSERIAL,
+    date_created DATE NOT NULL,
+    status       VARCHAR(255),
+    -- the primary key of a partitioned table includes the partition key
+    PRIMARY KEY (id, date_created)
+) PARTITION BY RANGE (date_created);
+-- safety net for the orders of a month whose partition does not exist yet
+CREATE TABLE IF NOT EXISTS orders_default PARTITION OF orders DEFAULT;
+-- no foreign key to the partitioned orders (it would have to include date_created), the lines of the archived orders
+-- are deleted with their partition
+CREATE TABLE IF NOT EXISTS order_product (
+    order_id   BIGINT NOT NULL,
+    product_id BIGINT NOT NULL,
+    quantity   INTEGER NOT NULL,
+    PRIMARY KEY (order_id, product_id)
+);
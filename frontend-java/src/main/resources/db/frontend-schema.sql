@@ -0,0 +1,33 @@
+-- Schema of the frontend entities, applied by the `fast-startup` profile instead of the Hibernate schema diffing
+-- (`spring.jpa.hibernate.ddl-auto=update`). Keep in sync with the JPA entities of `com.mycompany.ecommerce.model`.
+CREATE TABLE IF NOT EXISTS product (
+    id          BIGSERIAL PRIMARY KEY,
+    name        VARCHAR(255) NOT NULL,
+    price       FLOAT8,
+    picture_url VARCHAR(255)
+);
+CREATE TABLE IF NOT EXISTS orders (
+    id           BIGSERIAL PRIMARY KEY,
+    date_created DATE,
+    status       VARCHAR(255)
+);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS discount_in_cents BIGINT;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS tax_in_cents BIGINT;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS total_price_in_cents BIGINT;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS customer_id VARCHAR(255);
+CREATE INDEX IF NOT EXISTS orders_customer_id_date_created_id_idx ON orders (customer_id, date_created, id);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS status_changed_at TIMESTAMP;
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS shipping_country VARCHAR(255);
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS customer_ip_address VARCHAR(255);
+-- recovery of the deferred fraud checks on startup, only indexes the few pending orders
+CREATE INDEX IF NOT EXISTS orders_pending_idx ON orders (id) WHERE status = 'PENDING';
+CREATE TABLE IF NOT EXISTS order_product (
+    order_id   BIGINT NOT NULL REFERENCES orders (id),
+    product_id BIGINT NOT NULL REFERENCES product (id),
+    quantity   INTEGER NOT NULL,
+    PRIMARY KEY (order_id, product_id)
+);
+CREATE TABLE IF NOT EXISTS product_stock (
+    product_id BIGINT PRIMARY KEY,
+    quantity   BIGINT NOT NULL
+);
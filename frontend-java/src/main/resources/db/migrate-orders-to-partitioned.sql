@@ -0,0 +1,44 @@
+-- One-off migration of a non partitioned `orders` table, created by `spring.jpa.hibernate.ddl-auto=update` or by
+-- `db/frontend-schema.sql`, to the monthly partitions of `db/frontend-orders-partitioned-schema.sql`.
+-- Run with the application stopped:
+--   psql -h localhost -U test -d test -f frontend-java/src/main/resources/db/migrate-orders-to-partitioned.sql
+-- then start the application with the `partitioned-orders` profile.
+\set ON_ERROR_STOP on
+BEGIN;
+
+-- the foreign keys of order_product reference the old table
+DO $$
+DECLARE
+    fk RECORD;
+BEGIN
+    FOR fk IN SELECT conname FROM pg_constraint WHERE conrelid = 'order_product'::regclass AND confrelid = 'orders'::regclass LOOP
+        EXECUTE format('ALTER TABLE order_product DROP CONSTRAINT %I', fk.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE orders RENAME TO orders_unpartitioned;
+ALTER INDEX IF EXISTS orders_customer_id_date_created_id_idx RENAME TO orders_unpartitioned_customer_id_date_created_id_idx;
+ALTER INDEX IF EXISTS orders_pending_idx RENAME TO orders_unpartitioned_pending_idx;
+
+CREATE TABLE orders (LIKE orders_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (date_created);
+ALTER TABLE orders ALTER COLUMN date_created SET NOT NULL;
+ALTER TABLE orders ADD PRIMARY KEY (id, date_created);
+CREATE TABLE orders_default PARTITION OF orders DEFAULT;
+
+-- one partition per month of the existing orders
+DO $$
+DECLARE
+    month DATE;
+BEGIN
+    FOR month IN SELECT DISTINCT date_trunc('month', date_created)::DATE FROM orders_unpartitioned WHERE date_created IS NOT NULL LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF orders FOR VALUES FROM (%L) TO (%L)',
+                       'orders_' || to_char(month, 'YYYY_MM'), month, (month + INTERVAL '1 month')::DATE);
+    END LOOP;
+END $$;
+
+INSERT INTO orders SELECT * FROM orders_unpartitioned WHERE date_created IS NOT NULL;
+-- the sequence of the BIGSERIAL keeps numbering after the existing orders
+ALTER SEQUENCE orders_id_seq OWNED BY orders.id;
+DROP TABLE orders_unpartitioned;
+
+COMMIT;
@@ -0,0 +1,125 @@
+package com.mycompany.ecommerce.apm;
+
+import co.elastic.apm.api.Span;
+import com.mycompany.common.apm.SpanLabels;
+import com.mycompany.common.pricing.PricingEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the labels of the create order path, on top of its pricing, with one {@code setLabel} per label as
+ * {@code OrderController} used to do and with {@link SpanLabels}:
+ * <ul>
+ *     <li>{@code disabled}: no agent, the span ignores everything</li>
+ *     <li>{@code unsampled}: the transaction is not sampled, the span ignores the labels</li>
+ *     <li>{@code sampled}: the span keeps the labels in a map</li>
+ * </ul>
+ * The span is a dynamic proxy so the benchmark compiles against any version of the agent API, the cost of the agent
+ * itself is not measured: {@code noInstrumentation} is the reference to cap the overhead of the labels.
+ * <p>
+ * Run with {@code mvn test-compile} then
+ * {@code java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) com.mycompany.ecommerce.apm.CreateOrderInstrumentationBenchmark},
+ * the allocation rates are reported by the {@code gc} profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateOrderInstrumentationBenchmark {
+
+    @Param({"disabled", "unsampled", "sampled"})
+    String agent;
+
+    PricingEngine pricingEngine = new PricingEngine("FR:2000,GB:2000", 0, 10, 500);
+    long[] unitPricesInCents = {30000, 20000, 10000, 500, 300};
+    int[] quantities = {1, 2, 1, 12, 24};
+    PricingEngine.OrderPricing orderPricing = new PricingEngine.OrderPricing();
+    String customerId = "customer-42";
+    String shippingCountryCode = "FR";
+
+    Span span;
+
+    @Setup
+    public void setup() {
+        boolean enabled = !"disabled".equals(agent);
+        boolean sampled = "sampled".equals(agent);
+        Map<String, Object> labels = new HashMap<>();
+        span = (Span) Proxy.newProxyInstance(Span.class.getClassLoader(), new Class<?>[]{Span.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isSampled":
+                    return sampled;
+                case "setLabel":
+                case "addLabel":
+                    if (enabled && sampled) {
+                        labels.put((String) args[0], args[1]);
+                    }
+                    return proxy;
+                default:
+                    return method.getReturnType().isInstance(proxy) ? proxy : null;
+            }
+        });
+    }
+
+    double price() {
+        return pricingEngine.price(unitPricesInCents, quantities, quantities.length, shippingCountryCode, orderPricing).getTotalInCents() / 100.0;
+    }
+
+    @Benchmark
+    public double noInstrumentation() {
+        return price();
+    }
+
+    @Benchmark
+    public double setLabelPerLabel() {
+        double orderPrice = price();
+        span.setLabel("customerId", customerId);
+        span.setLabel("orderPrice", orderPrice);
+        span.setLabel("orderPriceRange", getPriceRange(orderPrice));
+        span.setLabel("shippingCountry", shippingCountryCode);
+        return orderPrice;
+    }
+
+    @Benchmark
+    public double spanLabels() {
+        SpanLabels labels = SpanLabels.of(span);
+        double orderPrice = price();
+        labels.label("customerId", customerId)
+                .label("orderPrice", orderPrice)
+                .label("shippingCountry", shippingCountryCode);
+        if (labels.isSampled()) {
+            labels.label("orderPriceRange", getPriceRange(orderPrice));
+        }
+        labels.flush();
+        return orderPrice;
+    }
+
+    static String getPriceRange(double price) {
+        return price < 10 ? "small" : price < 100 ? "medium" : "large";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CreateOrderInstrumentationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
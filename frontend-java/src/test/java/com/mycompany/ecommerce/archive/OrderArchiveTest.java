@@ -0,0 +1,141 @@
+package com.mycompany.ecommerce.archive;
+
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrderArchiveTest {
+
+    static final YearMonth JANUARY = YearMonth.of(2026, 1);
+    static final YearMonth FEBRUARY = YearMonth.of(2026, 2);
+
+    @TempDir
+    Path directory;
+
+    ProductRepository productRepository = mock(ProductRepository.class);
+
+    @BeforeEach
+    public void products() {
+        when(productRepository.findAllById(any())).thenReturn(Arrays.asList(
+                new Product(1L, "TV Set", 300.0, null),
+                new Product(2L, "Game Console", 200.0, null)));
+    }
+
+    static OrderSegment january() {
+        return new OrderSegment.Builder(JANUARY)
+                .addOrder(10, LocalDate.of(2026, 1, 3), "PAID", Instant.parse("2026-01-03T10:15:30.123Z"), "alice", 0L, 1000L, 51000L, "FR", "10.0.0.1")
+                .addLine(1, 1)
+                .addLine(2, 1)
+                .addOrder(11, LocalDate.of(2026, 1, 3), "REJECTED", null, "bob", null, null, null, null, null)
+                .addOrder(15, LocalDate.of(2026, 1, 28), "PAID", null, "alice", 0L, 0L, 20000L, "FR", "10.0.0.1")
+                .addLine(2, 1)
+                .build();
+    }
+
+    static OrderSegment february() {
+        return new OrderSegment.Builder(FEBRUARY)
+                .addOrder(20, LocalDate.of(2026, 2, 1), "PAID", null, "alice", 0L, 0L, 30000L, "GB", null)
+                .addLine(1, 1)
+                .build();
+    }
+
+    @Test
+    public void segment_round_trip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        january().writeTo(out);
+
+        OrderSegment segment = OrderSegment.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(segment.getMonth()).isEqualTo(JANUARY);
+        assertThat(segment.size()).isEqualTo(3);
+        int idx = segment.indexOf(10);
+        assertThat(segment.getDateCreated(idx)).isEqualTo(LocalDate.of(2026, 1, 3));
+        assertThat(segment.getStatusChangedAt(idx)).isEqualTo(Instant.parse("2026-01-03T10:15:30.123Z"));
+        assertThat(segment.getTotalPriceInCents(idx)).isEqualTo(51000L);
+        assertThat(segment.getCustomerIpAddress(idx)).isEqualTo("10.0.0.1");
+        assertThat(segment.getEndLine(idx) - segment.getFirstLine(idx)).isEqualTo(2);
+
+        idx = segment.indexOf(11);
+        assertThat(segment.getStatus(idx)).isEqualTo("REJECTED");
+        assertThat(segment.getStatusChangedAt(idx)).isNull();
+        assertThat(segment.getDiscountInCents(idx)).isNull();
+        assertThat(segment.getShippingCountry(idx)).isNull();
+        assertThat(segment.getEndLine(idx) - segment.getFirstLine(idx)).isZero();
+
+        assertThat(segment.indexOf(12)).isEqualTo(-1);
+    }
+
+    @Test
+    public void orders_are_found_after_a_restart() throws IOException {
+        OrderArchive orderArchive = new OrderArchive(directory.toString(), 4, 5000, productRepository);
+        orderArchive.store(january());
+        orderArchive.store(february());
+
+        OrderArchive restartedArchive = new OrderArchive(directory.toString(), 4, 5000, productRepository);
+
+        assertThat(restartedArchive.getSegmentCount()).isEqualTo(2);
+        assertThat(restartedArchive.isArchived(JANUARY)).isTrue();
+        Optional<Order> order = restartedArchive.findOrder(10);
+        assertThat(order).isPresent();
+        assertThat(order.get().getCustomerId()).isEqualTo("alice");
+        assertThat(order.get().getNumberOfProducts()).isEqualTo(2);
+        assertThat(order.get().getTotalOrderPrice()).isEqualTo(510.0);
+        assertThat(restartedArchive.findOrder(12)).isEmpty();
+        assertThat(restartedArchive.findOrder(99)).isEmpty();
+    }
+
+    @Test
+    public void orders_archived_by_another_instance_are_found_after_a_rescan() throws IOException {
+        OrderArchive archivingInstance = new OrderArchive(directory.toString(), 4, 5000, productRepository);
+        OrderArchive otherInstance = new OrderArchive(directory.toString(), 4, 0, productRepository);
+        OrderArchive throttledInstance = new OrderArchive(directory.toString(), 4, 60_000, productRepository);
+        archivingInstance.store(january());
+        archivingInstance.store(february());
+
+        assertThat(otherInstance.findOrder(10)).isPresent();
+        assertThat(otherInstance.getSegmentCount()).isEqualTo(2);
+        assertThat(otherInstance.findCustomerOrders("alice", null, Long.MAX_VALUE, 5)).extracting(Order::getId).containsExactly(20L, 15L, 10L);
+        assertThat(throttledInstance.findOrder(10)).isEmpty();
+
+        Files.delete(otherInstance.segmentFile(FEBRUARY));
+        assertThat(otherInstance.findOrder(99)).isEmpty();
+        assertThat(otherInstance.getSegmentCount()).isEqualTo(1);
+        assertThat(otherInstance.findCustomerOrders("alice", null, Long.MAX_VALUE, 5)).extracting(Order::getId).containsExactly(15L, 10L);
+    }
+
+    @Test
+    public void customer_orders_are_paged_across_segments() throws IOException {
+        OrderArchive orderArchive = new OrderArchive(directory.toString(), 1, 5000, productRepository);
+        orderArchive.store(january());
+        orderArchive.store(february());
+
+        List<Order> firstPage = orderArchive.findCustomerOrders("alice", null, Long.MAX_VALUE, 2);
+        assertThat(firstPage).extracting(Order::getId).containsExactly(20L, 15L);
+
+        Order last = firstPage.get(1);
+        List<Order> secondPage = orderArchive.findCustomerOrders("alice", last.getDateCreated(), last.getId(), 2);
+        assertThat(secondPage).extracting(Order::getId).containsExactly(10L);
+
+        assertThat(orderArchive.findCustomerOrders("carol", null, Long.MAX_VALUE, 2)).isEmpty();
+    }
+}
@@ -0,0 +1,65 @@
+package com.mycompany.ecommerce.controller;
+
+import com.mycompany.common.pricing.PricingEngine;
+import com.mycompany.ecommerce.dto.OrderProductDto;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.AntiFraudClient;
+import com.mycompany.ecommerce.service.DeferredFraudCheckService;
+import com.mycompany.ecommerce.service.OrderMetrics;
+import com.mycompany.ecommerce.service.OrderProductService;
+import com.mycompany.ecommerce.service.OrderRateLimiter;
+import com.mycompany.ecommerce.service.OrderService;
+import com.mycompany.ecommerce.service.ProductService;
+import com.mycompany.ecommerce.service.StockReservationService;
+import com.mycompany.ecommerce.sharding.OrderShards;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class OrderControllerTest {
+
+    ProductService productService = mock(ProductService.class);
+    StockReservationService stockReservationService = mock(StockReservationService.class);
+    PricingEngine pricingEngine = mock(PricingEngine.class);
+
+    OrderController orderController = new OrderController(productService, mock(OrderService.class), mock(OrderProductService.class),
+            stockReservationService, pricingEngine, mock(AntiFraudClient.class), mock(DeferredFraudCheckService.class),
+            new OrderMetrics(), mock(OrderShards.class), mock(OrderRateLimiter.class));
+
+    @Test
+    public void givenNegativeQuantity_whenPlaceOrder_thenBadRequestBeforePricingAndReserving() {
+        assertBadRequest(Arrays.asList(orderProduct(1L, 2), orderProduct(2L, -3)));
+    }
+
+    @Test
+    public void givenZeroOrMissingQuantity_whenPlaceOrder_thenBadRequest() {
+        assertBadRequest(Arrays.asList(orderProduct(1L, 0)));
+        assertBadRequest(Arrays.asList(orderProduct(1L, null)));
+    }
+
+    void assertBadRequest(List<OrderProductDto> orderProducts) {
+        assertThatThrownBy(() -> orderController.placeOrder(orderProducts, new MockHttpServletRequest()))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST));
+        verifyNoInteractions(productService, pricingEngine);
+        verify(stockReservationService, never()).reserve(any(), any());
+    }
+
+    static OrderProductDto orderProduct(long productId, Integer quantity) {
+        OrderProductDto orderProduct = new OrderProductDto();
+        orderProduct.setProduct(new Product(productId, "Product " + productId, 10.0, null));
+        orderProduct.setQuantity(quantity);
+        return orderProduct;
+    }
+}
@@ -0,0 +1,104 @@
+package com.mycompany.ecommerce.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReadReplicaRoutingDataSourceTest {
+
+    DataSource primary = mock(DataSource.class);
+    DataSource replica = mock(DataSource.class);
+    ResultSet lagResultSet = mock(ResultSet.class);
+
+    ReplicaLagMonitor replicaLagMonitor;
+    ReadReplicaRoutingDataSource routingDataSource;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(replica.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(lagResultSet);
+        when(lagResultSet.next()).thenReturn(true);
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-0", replica);
+        replicaLagMonitor = new ReplicaLagMonitor(replicas, 1000, 1000);
+        routingDataSource = new ReadReplicaRoutingDataSource(primary, replicas, replicaLagMonitor);
+        routingDataSource.afterPropertiesSet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    void replicaLag(boolean inRecovery, long lagMillis) throws SQLException {
+        when(lagResultSet.getBoolean(1)).thenReturn(inRecovery);
+        when(lagResultSet.getLong(2)).thenReturn(lagMillis);
+        replicaLagMonitor.checkAll();
+    }
+
+    @Test
+    public void writes_go_to_the_primary() throws SQLException {
+        replicaLag(true, 0);
+
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo(ReadReplicaRoutingDataSource.PRIMARY);
+    }
+
+    @Test
+    public void read_only_transactions_go_to_the_replica() throws SQLException {
+        replicaLag(true, 200);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo("replica-0");
+        assertThat(replicaLagMonitor.getLagMillis("replica-0")).isEqualTo(200);
+    }
+
+    @Test
+    public void standalone_server_has_no_lag() throws SQLException {
+        replicaLag(false, 5000);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo("replica-0");
+        assertThat(replicaLagMonitor.getLagMillis("replica-0")).isZero();
+    }
+
+    @Test
+    public void lagging_replica_falls_back_to_the_primary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        replicaLag(true, 5000);
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo(ReadReplicaRoutingDataSource.PRIMARY);
+
+        replicaLag(true, 10);
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo("replica-0");
+        assertThat(routingDataSource.fallbackCounter.sum()).isEqualTo(1);
+        assertThat(routingDataSource.replicaCounter.sum()).isEqualTo(1);
+    }
+
+    @Test
+    public void unchecked_or_unreachable_replica_falls_back_to_the_primary() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo(ReadReplicaRoutingDataSource.PRIMARY);
+
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+        replicaLagMonitor.checkAll();
+        assertThat(routingDataSource.determineCurrentLookupKey()).isEqualTo(ReadReplicaRoutingDataSource.PRIMARY);
+        assertThat(replicaLagMonitor.getLagMillis("replica-0")).isEqualTo(ReplicaLagMonitor.UNKNOWN_LAG);
+    }
+}
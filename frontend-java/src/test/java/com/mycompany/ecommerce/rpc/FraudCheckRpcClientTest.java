@@ -0,0 +1,138 @@
+package com.mycompany.ecommerce.rpc;
+
+import com.mycompany.common.rpc.FraudCheckMessages;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FraudCheckRpcClientTest {
+
+    EventLoopGroup serverGroup = new NioEventLoopGroup(1);
+    List<String> receivedCountries = new CopyOnWriteArrayList<>();
+    List<Integer> receivedAddressLengths = new CopyOnWriteArrayList<>();
+    FraudCheckRpcClient client;
+
+    @AfterEach
+    public void stop() {
+        if (client != null) {
+            client.close();
+        }
+        serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void pipelined_responses_are_matched_by_request_id() throws Exception {
+        int port = startServer();
+        client = startClient(port, 1000);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            // the large order is answered last, after the small one sent after it
+            Future<Byte> largeOrder = executorService.submit(() -> client.checkOrder(100_000, "FR", FraudCheckMessages.ipAddressBytes("10.0.0.1")));
+            Thread.sleep(50);
+            Future<Byte> smallOrder = executorService.submit(() -> client.checkOrder(500, "US", FraudCheckMessages.ipAddressBytes("::1")));
+            assertThat(smallOrder.get()).isEqualTo(FraudCheckMessages.ACCEPTED);
+            assertThat(largeOrder.isDone()).isFalse();
+            assertThat(largeOrder.get()).isEqualTo(FraudCheckMessages.REJECTED);
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertThat(receivedCountries).containsExactly("FR", "US");
+        assertThat(receivedAddressLengths).containsExactly(4, 16);
+        assertThat(client.getPendingRequestCount()).isZero();
+    }
+
+    @Test
+    public void late_response_times_out() throws Exception {
+        int port = startServer();
+        client = startClient(port, 100);
+
+        assertThatThrownBy(() -> client.checkOrder(100_000, "FR", FraudCheckMessages.ipAddressBytes("10.0.0.1")))
+                .isInstanceOf(SocketTimeoutException.class);
+        assertThat(client.getPendingRequestCount()).isZero();
+    }
+
+    @Test
+    public void fails_fast_without_connection() {
+        client = new FraudCheckRpcClient("localhost", 1, 2, 1000, 60_000);
+        client.start();
+
+        assertThatThrownBy(() -> client.checkOrder(500, "US", FraudCheckMessages.ipAddressBytes("10.0.0.1")))
+                .isInstanceOf(ConnectException.class);
+    }
+
+    FraudCheckRpcClient startClient(int port, long timeoutMillis) throws InterruptedException {
+        FraudCheckRpcClient client = new FraudCheckRpcClient("localhost", port, 1, timeoutMillis, 100);
+        client.start();
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.getOpenConnectionCount() == 0 && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(10);
+        }
+        assertThat(client.getOpenConnectionCount()).isEqualTo(1);
+        return client;
+    }
+
+    /**
+     * Accepts the orders under 1000 dollars at once, rejects the others after 300ms
+     */
+    int startServer() {
+        Channel serverChannel = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        channel.pipeline().addLast(
+                                new LengthFieldBasedFrameDecoder(FraudCheckMessages.MAX_FRAME_LENGTH, 0, 4, 0, 4),
+                                new SimpleChannelInboundHandler<ByteBuf>() {
+                                    @Override
+                                    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+                                        assertThat(frame.readByte()).isEqualTo(FraudCheckMessages.CHECK_ORDER_REQUEST);
+                                        long requestId = frame.readLong();
+                                        long orderPriceInCents = frame.readLong();
+                                        receivedCountries.add("" + (char) frame.readByte() + (char) frame.readByte());
+                                        receivedAddressLengths.add((int) frame.readByte());
+                                        boolean accepted = orderPriceInCents < 100_000;
+                                        ByteBuf response = ctx.alloc().buffer(14)
+                                                .writeInt(10)
+                                                .writeByte(FraudCheckMessages.CHECK_ORDER_RESPONSE)
+                                                .writeLong(requestId)
+                                                .writeByte(accepted ? FraudCheckMessages.ACCEPTED : FraudCheckMessages.REJECTED);
+                                        if (accepted) {
+                                            ctx.writeAndFlush(response);
+                                        } else {
+                                            ctx.executor().schedule(() -> ctx.writeAndFlush(response), 300, TimeUnit.MILLISECONDS);
+                                        }
+                                    }
+                                });
+                    }
+                })
+                .bind("localhost", 0)
+                .syncUninterruptibly()
+                .channel();
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+}
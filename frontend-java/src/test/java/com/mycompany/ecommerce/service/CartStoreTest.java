@@ -0,0 +1,78 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.dto.CartDto;
+import com.mycompany.ecommerce.exception.CartLimitExceededException;
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class CartStoreTest {
+
+    CartStore cartStore = new CartStore(2, 3, 100, 30, 60);
+
+    @Test
+    public void givenProducts_whenSetQuantity_thenLinesArePackedAndUnpacked() {
+        String cartId = cartStore.create().getId();
+        cartStore.setQuantity(cartId, 1L, 2);
+        cartStore.setQuantity(cartId, CartStore.MAX_PRODUCT_ID, 100);
+        cartStore.setQuantity(cartId, 1L, 5);
+
+        assertThat(cartStore.get(cartId).getLines())
+                .extracting(CartDto.CartLineDto::getProductId, CartDto.CartLineDto::getQuantity)
+                .containsExactly(tuple(1L, 5), tuple(CartStore.MAX_PRODUCT_ID, 100));
+
+        cartStore.setQuantity(cartId, 1L, 0);
+        assertThat(cartStore.get(cartId).getLines()).extracting(CartDto.CartLineDto::getProductId).containsExactly(CartStore.MAX_PRODUCT_ID);
+    }
+
+    @Test
+    public void givenFullCart_whenAddProduct_thenLimitExceeded() {
+        String cartId = cartStore.create().getId();
+        cartStore.setQuantity(cartId, 1L, 1);
+        cartStore.setQuantity(cartId, 2L, 1);
+        cartStore.setQuantity(cartId, 3L, 1);
+
+        assertThatThrownBy(() -> cartStore.setQuantity(cartId, 4L, 1)).isInstanceOf(CartLimitExceededException.class);
+        assertThat(cartStore.setQuantity(cartId, 3L, 7).getLines()).hasSize(3);
+    }
+
+    @Test
+    public void givenMaxCarts_whenCreate_thenLeastRecentlyUsedCartIsEvicted() {
+        String first = cartStore.create().getId();
+        String second = cartStore.create().getId();
+        cartStore.get(first);
+        cartStore.create();
+
+        assertThat(cartStore.get(first).getId()).isEqualTo(first);
+        assertThatThrownBy(() -> cartStore.get(second)).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    public void givenCheckedOutCart_whenCheckoutAgain_thenNotFoundUntilRestored() {
+        String cartId = cartStore.create().getId();
+        cartStore.setQuantity(cartId, 1L, 2);
+
+        CartDto cart = cartStore.checkout(cartId);
+        assertThatThrownBy(() -> cartStore.checkout(cartId)).isInstanceOf(ResourceNotFoundException.class);
+
+        cartStore.restore(cart);
+        assertThat(cartStore.checkout(cartId).getLines()).hasSize(1);
+    }
+
+    @Test
+    public void givenCartBeingCheckedOut_whenSetQuantity_thenRejectedRatherThanLost() {
+        String cartId = cartStore.create().getId();
+        cartStore.setQuantity(cartId, 1L, 2);
+        // got by a concurrent update before the checkout
+        CartStore.Cart cart = cartStore.getCart(cartId);
+
+        CartDto checkedOut = cartStore.checkout(cartId);
+        assertThatThrownBy(() -> cart.setQuantity(2L, 1, 50)).isInstanceOf(ResourceNotFoundException.class);
+
+        assertThat(checkedOut.getLines()).hasSize(1);
+        assertThat(cart.toDto().getLines()).hasSize(1);
+    }
+}
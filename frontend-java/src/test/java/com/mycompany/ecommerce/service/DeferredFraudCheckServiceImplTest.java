@@ -0,0 +1,87 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.exception.AntiFraudException;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderStatus;
+import com.mycompany.ecommerce.repository.OrderProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeferredFraudCheckServiceImplTest {
+
+    OrderService orderService = mock(OrderService.class);
+    OrderProductRepository orderProductRepository = mock(OrderProductRepository.class);
+    AntiFraudClient antiFraudClient = mock(AntiFraudClient.class);
+    StockReservationService stockReservationService = mock(StockReservationService.class);
+
+    DeferredFraudCheckServiceImpl deferredFraudCheckService = new DeferredFraudCheckServiceImpl(
+            orderService, orderProductRepository, antiFraudClient, stockReservationService, new OrderMetrics(), 1, 2, 1000);
+
+    List<OrderStatus> notifiedStatuses = new ArrayList<>();
+
+    @BeforeEach
+    public void pendingOrder() {
+        Order order = new Order();
+        order.setId(1L);
+        order.setStatus(OrderStatus.PENDING.name());
+        order.setStatusChangedAt(Instant.now());
+        order.setTotalPriceInCents(1250L);
+        order.setShippingCountry("FR");
+        order.setCustomerIpAddress("127.0.0.1");
+        when(orderService.getOrder(1L)).thenReturn(order);
+        when(orderService.updateStatus(any(Long.class), any(), any())).thenReturn(true);
+        when(orderProductRepository.findProductIdsAndQuantitiesByOrderId(1L))
+                .thenReturn(Collections.singletonList(new Object[]{7L, 3}));
+        deferredFraudCheckService.addStatusListener(1L, notifiedStatuses::add);
+    }
+
+    @Test
+    public void givenAcceptedOrder_whenCheck_thenPaid() {
+        when(antiFraudClient.checkOrder(12.5, "127.0.0.1", "FR")).thenReturn(true);
+
+        deferredFraudCheckService.check(1L, 1);
+
+        verify(orderService).updateStatus(1L, OrderStatus.PENDING, OrderStatus.PAID);
+        verify(stockReservationService, never()).release(any(), any());
+        assertThat(notifiedStatuses).containsExactly(OrderStatus.PAID);
+    }
+
+    @Test
+    public void givenRejectedOrder_whenCheck_thenRejectedAndStockReleased() {
+        when(antiFraudClient.checkOrder(12.5, "127.0.0.1", "FR")).thenReturn(false);
+
+        deferredFraudCheckService.check(1L, 1);
+
+        verify(orderService).updateStatus(1L, OrderStatus.PENDING, OrderStatus.REJECTED);
+        verify(stockReservationService).release(new long[]{7L}, new int[]{3});
+        assertThat(notifiedStatuses).containsExactly(OrderStatus.REJECTED);
+    }
+
+    @Test
+    public void givenAntiFraudFailure_whenCheck_thenRetriedThenRejected() {
+        when(antiFraudClient.checkOrder(anyDouble(), anyString(), anyString())).thenThrow(new AntiFraudException("status-503"));
+
+        deferredFraudCheckService.check(1L, 1);
+        verify(orderService, never()).updateStatus(any(Long.class), any(), any());
+        assertThat(deferredFraudCheckService.getRetryCount()).isEqualTo(1);
+        assertThat(notifiedStatuses).isEmpty();
+
+        deferredFraudCheckService.check(1L, 2);
+        verify(orderService).updateStatus(1L, OrderStatus.PENDING, OrderStatus.REJECTED);
+        assertThat(notifiedStatuses).containsExactly(OrderStatus.REJECTED);
+    }
+}
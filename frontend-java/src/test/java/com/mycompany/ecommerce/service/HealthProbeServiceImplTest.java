@@ -0,0 +1,73 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.common.apm.LatencyWindow;
+import com.mycompany.common.apm.RouteLatency;
+import com.mycompany.common.apm.RouteLatencyMonitor;
+import com.mycompany.ecommerce.dto.HealthSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HealthProbeServiceImplTest {
+
+    DataSource dataSource = mock(DataSource.class);
+    Connection connection = mock(Connection.class);
+    AntiFraudClient antiFraudClient = mock(AntiFraudClient.class);
+    RouteLatencyMonitor routeLatencyMonitor = mock(RouteLatencyMonitor.class);
+
+    HealthProbeServiceImpl healthProbeService = new HealthProbeServiceImpl(dataSource, antiFraudClient, routeLatencyMonitor, 5000, 30000, 1, 100);
+
+    @BeforeEach
+    public void healthyDependencies() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        when(antiFraudClient.ping()).thenReturn(true);
+    }
+
+    @Test
+    public void health_is_cached() throws SQLException {
+        assertThat(healthProbeService.probe().getStatus()).isEqualTo(HealthSnapshot.Status.UP);
+        for (int i = 0; i < 100; i++) {
+            assertThat(healthProbeService.getHealth().getStatus()).isEqualTo(HealthSnapshot.Status.UP);
+        }
+        verify(dataSource, times(1)).getConnection();
+    }
+
+    @Test
+    public void database_failure_is_down() throws SQLException {
+        when(dataSource.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        assertThat(healthProbeService.probe().getStatus()).isEqualTo(HealthSnapshot.Status.DOWN);
+    }
+
+    @Test
+    public void slow_anti_fraud_is_degraded() {
+        RouteLatency latency = mock(RouteLatency.class);
+        RouteLatency.WindowLatency lastMinute = mock(RouteLatency.WindowLatency.class);
+        when(routeLatencyMonitor.getLatency(AntiFraudClient.CHECK_ORDER_ROUTE)).thenReturn(latency);
+        when(latency.getWindow(LatencyWindow.ONE_MINUTE)).thenReturn(lastMinute);
+        when(lastMinute.isSloBreached()).thenReturn(true);
+
+        HealthSnapshot health = healthProbeService.probe();
+        assertThat(health.getStatus()).isEqualTo(HealthSnapshot.Status.DEGRADED);
+        assertThat(health.getProbes()).filteredOn(probe -> !probe.isUp()).extracting(HealthSnapshot.ProbeResult::getName).containsExactly("antiFraud");
+    }
+
+    @Test
+    public void stale_health_is_down() {
+        healthProbeService.probe();
+        healthProbeService.health = new HealthSnapshot(healthProbeService.health.getProbes(), System.currentTimeMillis() - 60_000);
+
+        assertThat(healthProbeService.getHealth().getStatus()).isEqualTo(HealthSnapshot.Status.DOWN);
+    }
+}
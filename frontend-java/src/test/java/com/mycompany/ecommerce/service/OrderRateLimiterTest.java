@@ -0,0 +1,102 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.exception.RateLimitExceededException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OrderRateLimiterTest {
+
+    long nowNanos = TimeUnit.HOURS.toNanos(1);
+    OrderRateLimiter orderRateLimiter;
+
+    @BeforeEach
+    public void setUp() {
+        // customer: 1 token per second, 3 tokens; ip: 1 token per 2 seconds, 5 tokens
+        orderRateLimiter = new OrderRateLimiter(true, 60, 3, 30, 5, 4, 60);
+        orderRateLimiter.nanoClock = () -> nowNanos;
+    }
+
+    @Test
+    public void burst_then_refill() {
+        for (int i = 0; i < 3; i++) {
+            orderRateLimiter.acquire("customer-1", "10.0.0.1");
+        }
+        assertThatThrownBy(() -> orderRateLimiter.acquire("customer-1", "10.0.0.1"))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasFieldOrPropertyWithValue("retryAfterSeconds", 1L);
+
+        nowNanos += TimeUnit.SECONDS.toNanos(1);
+        orderRateLimiter.acquire("customer-1", "10.0.0.1");
+        assertThatThrownBy(() -> orderRateLimiter.acquire("customer-1", "10.0.0.1")).isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    public void rejection_of_the_customer_gives_back_the_token_of_the_ip() {
+        for (int i = 0; i < 3; i++) {
+            orderRateLimiter.acquire("customer-1", "10.0.0.1");
+        }
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(() -> orderRateLimiter.acquire("customer-1", "10.0.0.1")).isInstanceOf(RateLimitExceededException.class);
+        }
+        orderRateLimiter.acquire("customer-2", "10.0.0.1");
+        orderRateLimiter.acquire("customer-2", "10.0.0.1");
+        assertThatThrownBy(() -> orderRateLimiter.acquire("customer-3", "10.0.0.1"))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("10.0.0.1");
+    }
+
+    @Test
+    public void limits_change_at_runtime() {
+        orderRateLimiter.setCustomerBurst(1);
+        orderRateLimiter.acquire("customer-1", "10.0.0.1");
+        assertThatThrownBy(() -> orderRateLimiter.acquire("customer-1", "10.0.0.1")).isInstanceOf(RateLimitExceededException.class);
+
+        orderRateLimiter.setEnabled(false);
+        orderRateLimiter.acquire("customer-1", "10.0.0.1");
+    }
+
+    @Test
+    public void full_buckets_are_evicted() {
+        orderRateLimiter.acquire("customer-1", "10.0.0.1");
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isEqualTo(2);
+
+        nowNanos += TimeUnit.SECONDS.toNanos(1);
+        orderRateLimiter.evictIdleKeys();
+        // the bucket of the ip is refilled in 2 seconds
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isEqualTo(1);
+
+        nowNanos += TimeUnit.SECONDS.toNanos(1);
+        orderRateLimiter.evictIdleKeys();
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isZero();
+    }
+
+    @Test
+    public void new_keys_share_an_overflow_bucket_once_max_keys_are_tracked() {
+        orderRateLimiter.acquire("customer-1", "10.0.0.1");
+        orderRateLimiter.acquire("customer-2", "10.0.0.2");
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isEqualTo(4);
+
+        // a flood of new customers from new addresses is throttled as a single customer and a single address
+        for (int i = 0; i < 3; i++) {
+            orderRateLimiter.acquire("new-customer-" + i, "10.0.1." + i);
+        }
+        assertThatThrownBy(() -> orderRateLimiter.acquire("new-customer-3", "10.0.1.3")).isInstanceOf(RateLimitExceededException.class);
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isEqualTo(4);
+        assertThat(orderRateLimiter.overflowCounter.sum()).isEqualTo(8);
+
+        // the tracked keys keep their own buckets
+        orderRateLimiter.acquire("customer-1", "10.0.0.1");
+
+        nowNanos += TimeUnit.SECONDS.toNanos(10);
+        orderRateLimiter.evictIdleKeys();
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isZero();
+        assertThat(orderRateLimiter.overflowBuckets).isEmpty();
+        orderRateLimiter.acquire("new-customer-3", "10.0.1.3");
+        assertThat(orderRateLimiter.getTrackedKeyCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,210 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.archive.OrderArchive;
+import com.mycompany.ecommerce.dto.CustomerOrdersPage;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderProduct;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.repository.OrderRepository;
+import com.mycompany.ecommerce.sharding.OrderShards;
+import com.mycompany.ecommerce.sharding.ShardContext;
+import com.mycompany.ecommerce.sharding.ShardRoutingDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Three shards behind the routing data source of the application, each shard records the statements run on its
+ * connections. The repositories and the product service run their statements on the connection of the current
+ * transaction, as JPA does, so a statement sent to the wrong shard shows up on the wrong shard.
+ */
+public class OrderServiceImplTest {
+
+    static final String MOVED_CUSTOMER = "customer-moved";
+    static final int MOVED_CUSTOMER_SHARD = 2;
+
+    List<String> statements = new CopyOnWriteArrayList<>();
+    OrderRepository orderRepository = mock(OrderRepository.class);
+    ProductService productService = mock(ProductService.class);
+    DataSource dataSource;
+    OrderShards orderShards;
+    DataSourceTransactionManager transactionManager;
+    OrderServiceImpl orderService;
+
+    @BeforeEach
+    public void shards() throws SQLException {
+        List<DataSource> shards = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            shards.add(shardDataSource(shard));
+        }
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(shards);
+        routingDataSource.afterPropertiesSet();
+        dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        orderShards = new OrderShards(dataSource, new String[]{"jdbc:postgresql://shard-1/test", "jdbc:postgresql://shard-2/test"});
+        orderShards.start();
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        orderService = new OrderServiceImpl(orderRepository, mock(OrderArchive.class), orderShards, productService, transactionManager);
+
+        // product cache miss: the product is read from the database
+        when(productService.getProduct(anyLong())).thenAnswer(invocation -> {
+            execute("select product");
+            return new Product(invocation.getArgument(0), "TV Set", 300.00, "http://placehold.it/200x100");
+        });
+    }
+
+    @AfterEach
+    public void stop() {
+        orderShards.stop();
+    }
+
+    @Test
+    public void givenMovedCustomer_whenGetOrder_thenFoundOnItsShardAndProductsLoadedOnTheHomeShard() {
+        // created on shard 1, then moved with its customer
+        long orderId = OrderShards.MAX_SHARDS * 10 + 1;
+        when(orderRepository.findWithOrderProductsById(orderId)).thenAnswer(invocation -> {
+            execute("select orders");
+            return ShardContext.current() == MOVED_CUSTOMER_SHARD ? Optional.of(order(orderId)) : Optional.empty();
+        });
+
+        Order order = inTransaction(false, () -> orderService.getOrder(orderId));
+
+        assertThat(order.getOrderProducts().get(0).getProduct().getName()).isEqualTo("TV Set");
+        assertThat(statements).contains("1: select orders", "2: select orders");
+        assertThat(productStatements()).containsExactly("0: select product");
+    }
+
+    @Test
+    public void givenCustomerOnAnotherShard_whenGetCustomerOrders_thenProductsLoadedOnTheHomeShard() {
+        long orderId = OrderShards.MAX_SHARDS * 10 + MOVED_CUSTOMER_SHARD;
+        when(orderRepository.findOrderIdsByCustomerId(eq(MOVED_CUSTOMER), anyInt())).thenAnswer(invocation -> {
+            execute("select order ids");
+            return Collections.singletonList(orderId);
+        });
+        when(orderRepository.findAllWithOrderProductsByIdIn(anyCollection())).thenAnswer(invocation -> {
+            execute("select orders");
+            return Collections.singletonList(order(orderId));
+        });
+
+        CustomerOrdersPage page = inTransaction(true, () -> orderService.getCustomerOrders(MOVED_CUSTOMER, null, 10));
+
+        assertThat(page.getOrders()).extracting(Order::getId).containsExactly(orderId);
+        assertThat(page.getOrders().get(0).getOrderProducts().get(0).getProduct().getName()).isEqualTo("TV Set");
+        assertThat(statements).contains("2: select order ids", "2: select orders");
+        assertThat(productStatements()).containsExactly("0: select product");
+    }
+
+    @Test
+    public void givenOrdersOnEachShard_whenGetAllOrders_thenMergedAndProductsLoadedOnTheHomeShard() {
+        when(orderRepository.findAllWithOrderProductsOrderByDateCreatedDesc()).thenAnswer(invocation -> {
+            execute("select orders");
+            int shard = ShardContext.current();
+            Order order = order(OrderShards.MAX_SHARDS * 10 + shard);
+            order.setDateCreated(LocalDate.of(2026, 1, 10 + shard));
+            return Collections.singletonList(order);
+        });
+
+        List<Order> orders = new ArrayList<>();
+        inTransaction(true, () -> orderService.getAllOrders()).forEach(orders::add);
+
+        assertThat(orders).extracting(Order::getId).containsExactly(
+                (long) OrderShards.MAX_SHARDS * 10 + 2, (long) OrderShards.MAX_SHARDS * 10 + 1, (long) OrderShards.MAX_SHARDS * 10);
+        assertThat(statements).contains("0: select orders", "1: select orders", "2: select orders");
+        assertThat(productStatements()).containsExactly("0: select product", "0: select product", "0: select product");
+    }
+
+    /**
+     * As the class level {@code @Transactional} of the service
+     */
+    <T> T inTransaction(boolean readOnly, Supplier<T> task) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> task.get());
+    }
+
+    List<String> productStatements() {
+        return statements.stream().filter(statement -> statement.endsWith("product")).collect(Collectors.toList());
+    }
+
+    /**
+     * Runs the statement on the connection of the current transaction, if any
+     */
+    void execute(String sql) throws SQLException {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            connection.prepareStatement(sql);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    static Order order(long id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setCustomerId(MOVED_CUSTOMER);
+        // lazy reference to the product, as read from a shard
+        Product product = new Product();
+        product.setId(1L);
+        order.getOrderProducts().add(new OrderProduct(order, product, 2));
+        return order;
+    }
+
+    /**
+     * Answers the queries of {@link OrderShards#start()}: the order id sequences are aligned and the moved customer is
+     * pinned to its shard
+     */
+    DataSource shardDataSource(int shard) throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+            statements.add(shard + ": " + invocation.getArgument(0));
+            return mock(PreparedStatement.class);
+        });
+        when(connection.createStatement()).thenAnswer(invocation -> {
+            Statement statement = mock(Statement.class);
+            when(statement.executeQuery(anyString())).thenAnswer(query -> {
+                ResultSet resultSet = mock(ResultSet.class);
+                when(resultSet.next()).thenReturn(true, false);
+                if (query.<String>getArgument(0).contains("customer_shard")) {
+                    when(resultSet.getString(1)).thenReturn(MOVED_CUSTOMER);
+                    when(resultSet.getInt(2)).thenReturn(MOVED_CUSTOMER_SHARD);
+                } else {
+                    when(resultSet.getString(1)).thenReturn("orders_id_seq");
+                    when(resultSet.getLong(1)).thenReturn((long) OrderShards.MAX_SHARDS);
+                    when(resultSet.getLong(2)).thenReturn((long) shard);
+                }
+                return resultSet;
+            });
+            return statement;
+        });
+        DataSource shardDataSource = mock(DataSource.class);
+        when(shardDataSource.getConnection()).thenReturn(connection);
+        return shardDataSource;
+    }
+}
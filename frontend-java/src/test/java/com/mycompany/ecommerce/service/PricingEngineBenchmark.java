@@ -0,0 +1,86 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.common.pricing.PricingEngine;
+import com.mycompany.ecommerce.dto.OrderProductDto;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderProduct;
+import com.mycompany.ecommerce.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the order pricing on boxed {@code Double} (the {@code mapToDouble} stream over the DTOs of
+ * {@code OrderController.create} and {@link Order#getTotalOrderPrice()}) with the {@link PricingEngine}.
+ * <p>
+ * Run with {@code mvn test-compile} then
+ * {@code java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) com.mycompany.ecommerce.service.PricingEngineBenchmark},
+ * the allocation rates are reported by the {@code gc} profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PricingEngineBenchmark {
+
+    List<OrderProductDto> orderProductDtos = new ArrayList<>();
+    Order order = new Order();
+
+    PricingEngine pricingEngine = new PricingEngine("FR:2000,GB:2000", 0, 10, 500);
+    long[] unitPricesInCents;
+    int[] quantities;
+    PricingEngine.OrderPricing orderPricing = new PricingEngine.OrderPricing();
+
+    @Setup
+    public void setup() {
+        double[] prices = {300.00, 200.00, 100.00, 5.00, 3.00};
+        int[] lineQuantities = {1, 2, 1, 12, 24};
+        unitPricesInCents = new long[prices.length];
+        quantities = new int[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            Product product = new Product((long) i + 1, "Product " + i, prices[i], null);
+            OrderProductDto dto = new OrderProductDto();
+            dto.setProduct(product);
+            dto.setQuantity(lineQuantities[i]);
+            orderProductDtos.add(dto);
+            order.getOrderProducts().add(new OrderProduct(order, product, lineQuantities[i]));
+
+            unitPricesInCents[i] = PricingEngine.toCents(prices[i]);
+            quantities[i] = lineQuantities[i];
+        }
+    }
+
+    @Benchmark
+    public double boxedDoubles() {
+        double orderPrice = orderProductDtos.stream().mapToDouble(po -> po.getQuantity() * po.getProduct().getPrice()).sum();
+        return orderPrice + order.getTotalOrderPrice();
+    }
+
+    @Benchmark
+    public long pricingEngine() {
+        return pricingEngine.price(unitPricesInCents, quantities, quantities.length, "FR", orderPricing).getTotalInCents();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PricingEngineBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,72 @@
+package com.mycompany.ecommerce.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProductCacheCoherenceTest {
+
+    ProductService productService = mock(ProductService.class);
+    ProductCacheCoherence productCacheCoherence;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ObjectProvider<ProductService> productServiceProvider = mock(ObjectProvider.class);
+        when(productServiceProvider.getObject()).thenReturn(productService);
+        productCacheCoherence = new ProductCacheCoherence(mock(DataSource.class), new DataSourceProperties(), productServiceProvider, true, 1000);
+    }
+
+    @Test
+    public void payload_lists_the_product_ids() {
+        assertThat(ProductCacheCoherence.payload("instance-1", Arrays.asList(1L, 22L, 333L))).isEqualTo("instance-1 1,22,333");
+    }
+
+    @Test
+    public void payload_of_a_large_change_reloads_the_catalog() {
+        List<Long> productIds = new ArrayList<>();
+        for (long id = 1; id <= ProductCacheCoherence.MAX_PRODUCT_IDS_PER_NOTIFICATION + 1; id++) {
+            productIds.add(id);
+        }
+        assertThat(ProductCacheCoherence.payload("instance-1", productIds)).isEqualTo("instance-1 *");
+    }
+
+    @Test
+    public void changed_products_of_another_instance_are_reloaded() {
+        assertThat(productCacheCoherence.onNotification("instance-2 1,22,333")).isTrue();
+
+        verify(productService).reloadProducts(Arrays.asList(1L, 22L, 333L));
+        assertThat(productCacheCoherence.getReloadedProductCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void own_changes_are_ignored() {
+        assertThat(productCacheCoherence.onNotification(productCacheCoherence.getInstanceId() + " 1,22,333")).isTrue();
+        assertThat(productCacheCoherence.onNotification(productCacheCoherence.getInstanceId() + " *")).isTrue();
+
+        verify(productService, never()).reloadProducts(any());
+    }
+
+    @Test
+    public void catalog_is_reloaded_on_bulk_change_or_reload_failure() {
+        assertThat(productCacheCoherence.onNotification("instance-2 *")).isFalse();
+        assertThat(productCacheCoherence.onNotification("instance-2 1,not-an-id")).isFalse();
+
+        doThrow(new IllegalStateException("database down")).when(productService).reloadProducts(any());
+        assertThat(productCacheCoherence.onNotification("instance-2 1")).isFalse();
+    }
+}
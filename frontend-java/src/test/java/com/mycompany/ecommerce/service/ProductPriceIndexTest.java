@@ -0,0 +1,68 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.mycompany.ecommerce.service.ProductSearchIndexTest.names;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductPriceIndexTest {
+
+    ProductPriceIndex productPriceIndex;
+
+    @BeforeEach
+    public void before() {
+        productPriceIndex = new ProductPriceIndex();
+        productPriceIndex.rebuild(Arrays.asList(
+                new Product(1L, "TV Set", 300.00, "http://placehold.it/200x100"),
+                new Product(2L, "Game Console", 200.00, "http://placehold.it/200x100"),
+                new Product(3L, "Sofa", 100.00, "http://placehold.it/200x100"),
+                new Product(4L, "Icecream", 5.00, "http://placehold.it/200x100"),
+                new Product(5L, "Beer", 3.00, "http://placehold.it/200x100"),
+                new Product(6L, "Phone", 500.00, "http://placehold.it/200x100"),
+                new Product(7L, "Watch", 30.00, "http://placehold.it/200x100"),
+                new Product(8L, "USB Cable", 4.00, "http://placehold.it/200x100"),
+                new Product(9L, "Gift Card", null, "http://placehold.it/200x100")));
+    }
+
+    @Test
+    public void givenPriceRange_whenFind_thenBoundsAreInclusiveAndSortedByPrice() {
+        assertThat(names(productPriceIndex.getSnapshot().findByPriceRange(4.0, 200.0, 0, 10)))
+                .containsExactly("USB Cable", "Icecream", "Watch", "Sofa", "Game Console");
+        assertThat(names(productPriceIndex.getSnapshot().findByPriceRange(null, 3.5, 0, 10))).containsExactly("Beer");
+        assertThat(names(productPriceIndex.getSnapshot().findByPriceRange(600.0, null, 0, 10))).containsExactly("Gift Card");
+    }
+
+    @Test
+    public void givenOffsetAndLimit_whenFind_thenPageIsSliced() {
+        assertThat(names(productPriceIndex.getSnapshot().findByPriceRange(null, null, 2, 3))).containsExactly("Icecream", "Watch", "Sofa");
+        assertThat(productPriceIndex.getSnapshot().findByPriceRange(null, null, 9, 3)).isEmpty();
+    }
+
+    @Test
+    public void givenUpdatedProduct_whenIndex_thenPreviousSnapshotIsUnchanged() {
+        ProductPriceIndex.Snapshot previousSnapshot = productPriceIndex.getSnapshot();
+
+        productPriceIndex.index(Arrays.asList(
+                new Product(3L, "Sofa", 1.00, "http://placehold.it/200x100"),
+                new Product(10L, "Lamp", 50.00, "http://placehold.it/200x100")));
+        productPriceIndex.index(Collections.emptyList());
+
+        assertThat(names(productPriceIndex.getSnapshot().findByPriceRange(null, 50.0, 0, 10)))
+                .containsExactly("Sofa", "Beer", "USB Cable", "Icecream", "Watch", "Lamp");
+        assertThat(productPriceIndex.getSnapshot().size()).isEqualTo(10);
+        assertThat(previousSnapshot.size()).isEqualTo(9);
+    }
+
+    @Test
+    public void givenDeletedProducts_whenRemove_thenNoLongerFound() {
+        productPriceIndex.remove(Arrays.asList(3L, 9L, 42L));
+
+        assertThat(names(productPriceIndex.getSnapshot().findByPriceRange(100.0, null, 0, 10))).containsExactly("Game Console", "TV Set", "Phone");
+        assertThat(productPriceIndex.getSnapshot().size()).isEqualTo(7);
+    }
+}
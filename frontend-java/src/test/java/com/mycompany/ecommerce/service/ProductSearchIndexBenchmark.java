@@ -0,0 +1,117 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution (p50, p99... reported by the {@code SampleTime} mode) of the {@link ProductSearchIndex}
+ * queries over a generated catalog of {@code productCount} products, whose names are 3 to 5 words drawn from a
+ * vocabulary of 2000 words with a skewed distribution.
+ * <p>
+ * Run with {@code mvn test-compile} then
+ * {@code java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) com.mycompany.ecommerce.service.ProductSearchIndexBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ProductSearchIndexBenchmark {
+
+    static final int VOCABULARY_SIZE = 2000;
+
+    @Param("1000000")
+    int productCount;
+
+    ProductSearchIndex productSearchIndex = new ProductSearchIndex();
+    String[] vocabulary = new String[VOCABULARY_SIZE];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+        List<Product> products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            int wordCount = 3 + random.nextInt(3);
+            StringBuilder name = new StringBuilder();
+            for (int w = 0; w < wordCount; w++) {
+                name.append(w == 0 ? "" : " ").append(skewedWord(random));
+            }
+            products.add(new Product((long) i + 1, name.toString(), (double) (1 + random.nextInt(100_000)) / 100, null));
+        }
+        productSearchIndex.rebuild(products);
+    }
+
+    /**
+     * Frequent and rare words alike: the square of a uniform value favors the first words of the vocabulary
+     */
+    String skewedWord(Random random) {
+        double uniform = random.nextDouble();
+        return vocabulary[(int) (uniform * uniform * VOCABULARY_SIZE)];
+    }
+
+    static String randomWord(Random random) {
+        char[] word = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(word);
+    }
+
+    @Benchmark
+    public List<Product> frequentTerm() {
+        return productSearchIndex.search(vocabulary[0] + " ", null, null, 20);
+    }
+
+    @Benchmark
+    public List<Product> twoFrequentTerms() {
+        return productSearchIndex.search(vocabulary[0] + " " + vocabulary[1] + " ", null, null, 20);
+    }
+
+    @Benchmark
+    public List<Product> frequentAndRareTerms() {
+        return productSearchIndex.search(vocabulary[0] + " " + vocabulary[VOCABULARY_SIZE - 1] + " ", null, null, 20);
+    }
+
+    @Benchmark
+    public List<Product> shortPrefix() {
+        return productSearchIndex.search(vocabulary[0] + " " + vocabulary[1].charAt(0), null, null, 20);
+    }
+
+    @Benchmark
+    public List<Product> frequentTermInNarrowPriceRange() {
+        return productSearchIndex.search(vocabulary[0] + " ", 100.0, 101.0, 20);
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        return productSearchIndex.suggest(vocabulary[2].substring(0, 2), 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProductSearchIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
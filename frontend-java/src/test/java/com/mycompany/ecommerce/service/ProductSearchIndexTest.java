@@ -0,0 +1,82 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductSearchIndexTest {
+
+    ProductSearchIndex productSearchIndex;
+
+    @BeforeEach
+    public void before() {
+        productSearchIndex = new ProductSearchIndex();
+        productSearchIndex.rebuild(Arrays.asList(
+                new Product(1L, "TV Set", 300.00, "http://placehold.it/200x100"),
+                new Product(2L, "Game Console", 200.00, "http://placehold.it/200x100"),
+                new Product(3L, "Sofa", 100.00, "http://placehold.it/200x100"),
+                new Product(4L, "Icecream", 5.00, "http://placehold.it/200x100"),
+                new Product(5L, "Beer", 3.00, "http://placehold.it/200x100"),
+                new Product(6L, "Phone", 500.00, "http://placehold.it/200x100"),
+                new Product(7L, "Watch", 30.00, "http://placehold.it/200x100"),
+                new Product(8L, "USB Cable", 4.00, "http://placehold.it/200x100"),
+                new Product(9L, "Smart TV Set", 900.00, "http://placehold.it/200x100")));
+    }
+
+    @Test
+    public void givenExactTerms_whenSearch_thenAllTermsMustMatch() {
+        assertThat(names(productSearchIndex.search("tv set ", null, null, 10))).containsExactly("TV Set", "Smart TV Set");
+        assertThat(names(productSearchIndex.search("smart tv ", null, null, 10))).containsExactly("Smart TV Set");
+        assertThat(productSearchIndex.search("tv console ", null, null, 10)).isEmpty();
+    }
+
+    @Test
+    public void givenPrefix_whenSearch_thenLastTermMatchesAsPrefix() {
+        assertThat(names(productSearchIndex.search("s", null, null, 10))).containsExactlyInAnyOrder("TV Set", "Smart TV Set", "Sofa");
+        assertThat(names(productSearchIndex.search("tv se", null, null, 10))).containsExactly("TV Set", "Smart TV Set");
+        assertThat(names(productSearchIndex.search("s", null, null, 2))).hasSize(2);
+    }
+
+    @Test
+    public void givenPriceRange_whenSearch_thenProductsOutOfRangeAreFiltered() {
+        assertThat(names(productSearchIndex.search("tv", 100.0, 500.0, 10))).containsExactly("TV Set");
+        assertThat(names(productSearchIndex.search("s", null, 150.0, 10))).containsExactly("Sofa");
+    }
+
+    @Test
+    public void givenUpdatedProduct_whenIndex_thenOldTermsNoLongerMatch() {
+        productSearchIndex.index(new Product(3L, "Leather Couch", 150.00, "http://placehold.it/200x100"));
+        productSearchIndex.index(new Product(10L, "Couch Potato", 1.00, "http://placehold.it/200x100"));
+
+        assertThat(productSearchIndex.search("sofa", null, null, 10)).isEmpty();
+        assertThat(names(productSearchIndex.search("couch", null, null, 10))).containsExactly("Leather Couch", "Couch Potato");
+        assertThat(productSearchIndex.size()).isEqualTo(10);
+    }
+
+    @Test
+    public void givenDeletedProducts_whenRemove_thenNoLongerFound() {
+        productSearchIndex.remove(Arrays.asList(1L, 3L, 42L));
+
+        assertThat(names(productSearchIndex.search("tv set ", null, null, 10))).containsExactly("Smart TV Set");
+        assertThat(productSearchIndex.search("sof", null, null, 10)).isEmpty();
+        assertThat(productSearchIndex.suggest("so", 10)).isEmpty();
+        assertThat(productSearchIndex.size()).isEqualTo(7);
+    }
+
+    @Test
+    public void givenPrefix_whenSuggest_thenTermsAreSortedLexicographically() {
+        assertThat(productSearchIndex.suggest("S", 10)).containsExactly("set", "smart", "sofa");
+        assertThat(productSearchIndex.suggest("s", 2)).containsExactly("set", "smart");
+        assertThat(productSearchIndex.suggest("x", 10)).isEmpty();
+    }
+
+    static List<String> names(List<Product> products) {
+        return products.stream().map(Product::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,140 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static com.mycompany.ecommerce.service.ProductSearchIndexTest.names;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class ProductServiceImplTest {
+
+    ProductRepository productRepository = mock(ProductRepository.class);
+    ProductSearchIndex productSearchIndex = new ProductSearchIndex();
+    ProductPriceIndex productPriceIndex = new ProductPriceIndex();
+
+    ProductCacheCoherence productCacheCoherence = mock(ProductCacheCoherence.class);
+
+    ProductServiceImpl productService = new ProductServiceImpl(mock(DataSource.class), productRepository, productSearchIndex,
+            productPriceIndex, productCacheCoherence);
+
+    @BeforeEach
+    public void catalog() {
+        List<Product> products = Arrays.asList(
+                new Product(1L, "TV Set", 300.00, "http://placehold.it/200x100"),
+                new Product(2L, "Game Console", 200.00, "http://placehold.it/200x100"),
+                new Product(3L, "Sofa", 100.00, "http://placehold.it/200x100"));
+        productSearchIndex.rebuild(products);
+        productPriceIndex.rebuild(products);
+    }
+
+    @Test
+    public void givenUnknownProduct_whenGetProduct_thenNotFound() {
+        when(productRepository.findById(4L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> productService.getProduct(4L)).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    public void givenProductsChangedByAnotherInstance_whenReload_thenDeletedProductsAreRemoved() {
+        List<Long> changedProductIds = Arrays.asList(1L, 2L);
+        when(productRepository.findAllById(changedProductIds))
+                .thenReturn(Collections.singletonList(new Product(1L, "OLED TV Set", 900.00, "http://placehold.it/200x100")));
+
+        productService.reloadProducts(changedProductIds);
+
+        assertThat(names(productService.searchProducts("tv", null, null, 10))).containsExactly("OLED TV Set");
+        assertThat(productService.searchProducts("console", null, null, 10)).isEmpty();
+        assertThat(names(productService.getProductsByPrice(null, null, 0, 10))).containsExactly("Sofa", "OLED TV Set");
+    }
+
+    @Test
+    public void givenSaveInTransaction_whenRolledBack_thenIndexesAreUnchanged() {
+        Product sofa = new Product(3L, "Leather Sofa", 1000.00, "http://placehold.it/200x100");
+        when(productRepository.save(sofa)).thenReturn(sofa);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            productService.save(sofa);
+            assertThat(names(productService.searchProducts("leather", null, null, 10))).isEmpty();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(names(productService.searchProducts("leather", null, null, 10))).isEmpty();
+        assertThat(names(productService.getProductsByPrice(900.0, null, 0, 10))).isEmpty();
+        verifyNoInteractions(productCacheCoherence);
+    }
+
+    @Test
+    public void givenSaveInTransaction_whenCommitted_thenIndexedAfterCommit() {
+        Product sofa = new Product(3L, "Leather Sofa", 1000.00, "http://placehold.it/200x100");
+        when(productRepository.save(sofa)).thenReturn(sofa);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            productService.save(sofa);
+            assertThat(names(productService.searchProducts("leather", null, null, 10))).isEmpty();
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.beforeCommit(false);
+            }
+            verify(productCacheCoherence).publishChanges(Collections.singletonList(3L));
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(names(productService.searchProducts("leather", null, null, 10))).containsExactly("Leather Sofa");
+        assertThat(names(productService.getProductsByPrice(900.0, null, 0, 10))).containsExactly("Leather Sofa");
+    }
+
+    @Test
+    public void givenChangesDuringRefresh_whenCatalogRebuilt_thenChangesAreReplayed() {
+        Product oledTvSet = new Product(1L, "OLED TV Set", 900.00, "http://placehold.it/200x100");
+        Product lamp = new Product(4L, "Lamp", 50.00, "http://placehold.it/200x100");
+        when(productRepository.findAllById(any())).thenReturn(Collections.singletonList(oledTvSet));
+        when(productRepository.save(lamp)).thenReturn(lamp);
+        ProductServiceImpl refreshingProductService = new ProductServiceImpl(mock(DataSource.class), productRepository, productSearchIndex,
+                productPriceIndex, productCacheCoherence) {
+            @Override
+            List<Product> loadCatalog() {
+                // read before the changes below
+                List<Product> catalog = Arrays.asList(
+                        new Product(1L, "TV Set", 300.00, "http://placehold.it/200x100"),
+                        new Product(2L, "Game Console", 200.00, "http://placehold.it/200x100"),
+                        new Product(3L, "Sofa", 100.00, "http://placehold.it/200x100"));
+                reloadProducts(Arrays.asList(1L, 2L));
+                save(lamp);
+                return catalog;
+            }
+        };
+
+        refreshingProductService.refreshCatalog();
+
+        assertThat(names(refreshingProductService.searchProducts("tv", null, null, 10))).containsExactly("OLED TV Set");
+        assertThat(refreshingProductService.searchProducts("console", null, null, 10)).isEmpty();
+        assertThat(names(refreshingProductService.getProductsByPrice(null, null, 0, 10))).containsExactly("Lamp", "Sofa", "OLED TV Set");
+        assertThat(refreshingProductService.indexUpdatesDuringRefresh).isNull();
+    }
+}
@@ -0,0 +1,167 @@
+package com.mycompany.ecommerce.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The instances share an in-memory {@code product_stock} table with the semantics of the SQL statements
+ */
+public class StockReservationServiceImplTest {
+
+    Map<Long, Long> table = new ConcurrentHashMap<>();
+    StockReservationServiceImpl stockReservationService = instance(20);
+
+    @Test
+    public void givenOneLineOutOfStock_whenReserve_thenNoLineIsReserved() {
+        stockReservationService.restock(1L, 10);
+        stockReservationService.restock(2L, 1);
+
+        assertThat(stockReservationService.reserve(new long[]{1L, 3L, 2L}, new int[]{4, 100, 2})).isFalse();
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isEqualTo(10);
+        assertThat(stockReservationService.getAvailableQuantity(2L)).isEqualTo(1);
+
+        assertThat(stockReservationService.reserve(new long[]{1L, 3L, 2L}, new int[]{4, 100, 1})).isTrue();
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isEqualTo(6);
+        assertThat(stockReservationService.getAvailableQuantity(2L)).isZero();
+        assertThat(stockReservationService.getAvailableQuantity(3L)).isEqualTo(StockReservationService.UNTRACKED);
+
+        stockReservationService.release(new long[]{1L, 3L, 2L}, new int[]{4, 100, 1});
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isEqualTo(10);
+        assertThat(stockReservationService.getAvailableQuantity(2L)).isEqualTo(1);
+    }
+
+    @Test
+    public void givenNonPositiveQuantity_whenReserveOrRelease_thenRefusedAndStockUnchanged() {
+        stockReservationService.restock(1L, 10);
+
+        assertThatThrownBy(() -> stockReservationService.reserve(new long[]{1L, 2L}, new int[]{4, -5}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> stockReservationService.reserve(new long[]{1L}, new int[]{0}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> stockReservationService.release(new long[]{1L}, new int[]{-5}))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isEqualTo(10);
+    }
+
+    @Test
+    public void givenConcurrentOrders_whenReserve_thenNeverOversell() throws InterruptedException {
+        stockReservationService.restock(1L, 1000);
+
+        assertThat(reserveConcurrently(stockReservationService, stockReservationService)).isEqualTo(1000);
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isZero();
+        assertThat(table.get(1L)).isZero();
+        assertThat(stockReservationService.getLeaseCount()).isEqualTo(1000 / 20);
+    }
+
+    @Test
+    public void givenTwoInstances_whenReserveConcurrently_thenNeverOversellTogether() throws Exception {
+        StockReservationServiceImpl otherInstance = instance(7);
+        stockReservationService.restock(1L, 1000);
+        otherInstance.loadProducts();
+
+        assertThat(reserveConcurrently(stockReservationService, otherInstance)).isEqualTo(1000);
+        assertThat(table.get(1L)).isZero();
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isZero();
+        assertThat(otherInstance.getAvailableQuantity(1L)).isZero();
+    }
+
+    @Test
+    public void givenStockLeasedByAnotherInstance_whenReconciled_thenAvailableToThisInstance() throws Exception {
+        StockReservationServiceImpl otherInstance = instance(20);
+        stockReservationService.restock(1L, 30);
+        otherInstance.loadProducts();
+
+        assertThat(otherInstance.reserve(new long[]{1L}, new int[]{1})).isTrue();
+        assertThat(table.get(1L)).isEqualTo(10);
+        assertThat(stockReservationService.reserve(new long[]{1L}, new int[]{15})).isFalse();
+
+        otherInstance.reconcile();
+        assertThat(table.get(1L)).isEqualTo(29);
+        assertThat(stockReservationService.reserve(new long[]{1L}, new int[]{15})).isTrue();
+        assertThat(stockReservationService.getAvailableQuantity(1L)).isEqualTo(14);
+    }
+
+    @Test
+    public void givenLeaseFailure_whenReserve_thenNoLineIsReserved() {
+        StockReservationServiceImpl failingInstance = new StockReservationServiceImpl(null, 1000, 20) {
+            @Override
+            long lease(long productId, long minQuantity, long blockQuantity) {
+                throw new IllegalStateException("database down");
+            }
+        };
+        failingInstance.stocks.computeIfAbsent(1L, StockReservationServiceImpl.Stock::new).add(5);
+        failingInstance.stocks.computeIfAbsent(2L, StockReservationServiceImpl.Stock::new);
+
+        assertThatThrownBy(() -> failingInstance.reserve(new long[]{1L, 2L}, new int[]{4, 1}))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(failingInstance.stocks.get(1L).leased.get()).isEqualTo(5);
+    }
+
+    /**
+     * 8 threads, split between the instances, order 1000 units each
+     */
+    static int reserveConcurrently(StockReservationServiceImpl instance, StockReservationServiceImpl otherInstance) throws InterruptedException {
+        AtomicInteger reserved = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            StockReservationServiceImpl service = i % 2 == 0 ? instance : otherInstance;
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (service.reserve(new long[]{1L}, new int[]{1})) {
+                        reserved.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return reserved.get();
+    }
+
+    StockReservationServiceImpl instance(int leaseBlockSize) {
+        return new StockReservationServiceImpl(null, 1000, leaseBlockSize) {
+            @Override
+            long lease(long productId, long minQuantity, long blockQuantity) {
+                long[] leased = new long[1];
+                table.computeIfPresent(productId, (id, quantity) -> {
+                    leased[0] = quantity >= minQuantity ? Math.min(quantity, blockQuantity) : 0;
+                    return quantity - leased[0];
+                });
+                return leased[0];
+            }
+
+            @Override
+            void returnLeases(List<Stock> batch, List<Long> quantities) {
+                for (int i = 0; i < batch.size(); i++) {
+                    table.merge(batch.get(i).productId, quantities.get(i), Long::sum);
+                }
+            }
+
+            @Override
+            long addToTable(long productId, long delta) {
+                return table.merge(productId, delta, Long::sum);
+            }
+
+            @Override
+            long selectQuantity(long productId) {
+                return table.getOrDefault(productId, 0L);
+            }
+
+            @Override
+            List<Long> selectProductIds() {
+                return new ArrayList<>(table.keySet());
+            }
+        };
+    }
+}
@@ -0,0 +1,72 @@
+package com.mycompany.ecommerce.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class OrderShardsTest {
+
+    @Test
+    public void customers_are_spread_across_the_shards() {
+        int[] customersByShard = new int[4];
+        for (int i = 0; i < 10_000; i++) {
+            customersByShard[OrderShards.hashShard("customer-" + i, 4)]++;
+        }
+        for (int customerCount : customersByShard) {
+            assertThat(customerCount).isBetween(2_000, 3_000);
+        }
+    }
+
+    @Test
+    public void adding_a_shard_only_moves_the_customers_to_the_new_shard() {
+        int movedCustomers = 0;
+        for (int i = 0; i < 10_000; i++) {
+            int shard = OrderShards.hashShard("customer-" + i, 4);
+            int newShard = OrderShards.hashShard("customer-" + i, 5);
+            if (shard != newShard) {
+                assertThat(newShard).isEqualTo(4);
+                movedCustomers++;
+            }
+        }
+        assertThat(movedCustomers).isBetween(1_500, 2_500);
+    }
+
+    @Test
+    public void single_shard_is_the_home_shard() {
+        OrderShards orderShards = new OrderShards(mock(DataSource.class), new String[0]);
+
+        assertThat(orderShards.shardOfCustomer("customer-1")).isEqualTo(OrderShards.HOME_SHARD);
+        assertThat(orderShards.shardOfOrder(129)).isEqualTo(OrderShards.HOME_SHARD);
+        assertThat(orderShards.scatter(shard -> ShardContext.current())).containsExactly(OrderShards.HOME_SHARD);
+    }
+
+    @Test
+    public void order_ids_encode_the_shard() {
+        OrderShards orderShards = new OrderShards(mock(DataSource.class), new String[]{"jdbc:postgresql://shard-1/test", "jdbc:postgresql://shard-2/test"});
+
+        assertThat(orderShards.shardOfOrder(OrderShards.MAX_SHARDS * 10 + 2)).isEqualTo(2);
+        assertThat(orderShards.shardOfOrder(OrderShards.MAX_SHARDS * 10 + 1)).isEqualTo(1);
+        // created before the shards were introduced
+        assertThat(orderShards.shardOfOrder(OrderShards.MAX_SHARDS * 10 + 5)).isEqualTo(OrderShards.HOME_SHARD);
+        assertThat(orderShards.scatter(shard -> ShardContext.current())).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    public void merge_keeps_the_order_of_the_shards() {
+        List<List<Integer>> sortedLists = new ArrayList<>();
+        sortedLists.add(Arrays.asList(9, 5, 1));
+        sortedLists.add(Collections.emptyList());
+        sortedLists.add(Arrays.asList(8, 7, 2));
+        sortedLists.add(Collections.singletonList(6));
+
+        assertThat(OrderShards.merge(sortedLists, Comparator.reverseOrder())).containsExactly(9, 8, 7, 6, 5, 2, 1);
+    }
+}
@@ -0,0 +1,197 @@
+package com.mycompany.ecommerce.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.StreamUtils;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+public class JsonCompressionFilterTest {
+
+    JsonCompressionFilter filter = new JsonCompressionFilter(true, 100, 6);
+
+    @Test
+    public void large_json_is_compressed() throws Exception {
+        String json = json(50);
+        MockHttpServletResponse response = filter(json, "application/json", "gzip, deflate, br");
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(response.getContentLength()).isZero();
+        byte[] compressed = response.getContentAsByteArray();
+        assertThat(compressed.length).isLessThan(json.length());
+        assertThat(new String(StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))), StandardCharsets.UTF_8)).isEqualTo(json);
+        assertThat(filter.getCompressedResponseCount()).isEqualTo(1);
+        assertThat(filter.getCompressionRatio()).isLessThan(1);
+    }
+
+    @Test
+    public void small_json_is_sent_as_is() throws Exception {
+        String json = json(1);
+        MockHttpServletResponse response = filter(json, "application/json", "gzip");
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getHeader(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(response.getContentLength()).isEqualTo(json.length());
+        assertThat(response.getContentAsString()).isEqualTo(json);
+    }
+
+    @Test
+    public void other_content_types_are_sent_as_is() throws Exception {
+        String text = json(50);
+        MockHttpServletResponse response = filter(text, "text/event-stream", "gzip");
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(text);
+    }
+
+    @Test
+    public void clients_without_gzip_get_the_json_as_is() throws Exception {
+        String json = json(50);
+        MockHttpServletResponse response = filter(json, "application/json", null);
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(json);
+    }
+
+    @Test
+    public void non_blocking_json_is_sent_as_is() throws Exception {
+        String json = json(50);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        NonBlockingResponse containerResponse = new NonBlockingResponse(response);
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.setContentType("application/json");
+                ServletOutputStream outputStream = resp.getOutputStream();
+                outputStream.setWriteListener(new WriteListener() {
+                    @Override
+                    public void onWritePossible() throws IOException {
+                        if (outputStream.isReady()) {
+                            outputStream.write(json.getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+                });
+            }
+        };
+        filter.doFilter(request, containerResponse, new MockFilterChain(servlet));
+
+        assertThat(containerResponse.writeListener).isNotNull();
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo(json);
+        assertThat(filter.getCompressedResponseCount()).isZero();
+    }
+
+    @Test
+    public void non_blocking_writes_after_the_compression_started_are_refused() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        NonBlockingResponse containerResponse = new NonBlockingResponse(new MockHttpServletResponse());
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.setContentType("application/json");
+                resp.getOutputStream().write(json(50).getBytes(StandardCharsets.UTF_8));
+                resp.getOutputStream().setWriteListener(mock(WriteListener.class));
+            }
+        };
+
+        assertThatThrownBy(() -> filter.doFilter(request, containerResponse, new MockFilterChain(servlet)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(containerResponse.writeListener).isNull();
+    }
+
+    MockHttpServletResponse filter(String body, String contentType, String acceptEncoding) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.setContentType(contentType);
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                // written in chunks, as the message converters do
+                for (int offset = 0; offset < bytes.length; offset += 30) {
+                    resp.getOutputStream().write(bytes, offset, Math.min(30, bytes.length - offset));
+                }
+                resp.getOutputStream().flush();
+            }
+        };
+        filter.doFilter(request, response, new MockFilterChain(servlet));
+        return response;
+    }
+
+    /**
+     * As Tomcat, ready as soon as the write listener is set
+     */
+    static class NonBlockingResponse extends HttpServletResponseWrapper {
+        WriteListener writeListener;
+
+        NonBlockingResponse(MockHttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            ServletOutputStream outputStream = super.getOutputStream();
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    outputStream.write(b);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    outputStream.write(bytes, offset, length);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return writeListener != null;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                    writeListener = listener;
+                    try {
+                        listener.onWritePossible();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+    }
+
+    static String json(int productCount) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < productCount; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"TV Set\",\"price\":300.0}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,90 @@
+package com.mycompany.ecommerce.web;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReactorNettyClientHttpRequestFactoryTest {
+
+    DisposableServer server;
+    Set<InetSocketAddress> clientAddresses = ConcurrentHashMap.newKeySet();
+    ReactorNettyClientHttpRequestFactory requestFactory;
+    RestTemplate restTemplate;
+
+    @BeforeEach
+    public void startServer() {
+        server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.H2C)
+                .route(routes -> routes
+                        .get("/fraud/checkOrder", (request, response) -> {
+                            clientAddresses.add(request.remoteAddress());
+                            return response.sendString(Mono.just("OK").delayElement(Duration.ofMillis(200)));
+                        })
+                        .get("/slow", (request, response) -> response.sendString(Mono.just("OK").delayElement(Duration.ofSeconds(3)))))
+                .bindNow();
+        requestFactory = new ReactorNettyClientHttpRequestFactory("test", HttpProtocol.H2C, 1, Duration.ofSeconds(1));
+        restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @AfterEach
+    public void stopServer() {
+        requestFactory.destroy();
+        server.disposeNow();
+    }
+
+    @Test
+    public void concurrent_requests_are_multiplexed_over_http2() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        long startNanos = System.nanoTime();
+        try {
+            List<Future<ResponseEntity<String>>> responses = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                responses.add(executorService.submit(() -> restTemplate.getForEntity(url("/fraud/checkOrder?orderPrice={price}"), String.class, 12.5)));
+            }
+            for (Future<ResponseEntity<String>> response : responses) {
+                assertThat(response.get().getStatusCode()).isEqualTo(HttpStatus.OK);
+                assertThat(response.get().getBody()).isEqualTo("OK");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        // 8 concurrent streams of 200ms on a single connection, HTTP/1.1 would take 8 * 200ms
+        assertThat(clientAddresses).hasSize(1);
+        assertThat(Duration.ofNanos(System.nanoTime() - startNanos)).isLessThan(Duration.ofMillis(1000));
+    }
+
+    @Test
+    public void slow_response_times_out() {
+        assertThatThrownBy(() -> restTemplate.getForEntity(url("/slow"), String.class))
+                .isInstanceOf(ResourceAccessException.class)
+                .hasCauseInstanceOf(SocketTimeoutException.class);
+    }
+
+    String url(String path) {
+        return "http://localhost:" + server.port() + path;
+    }
+}
@@ -0,0 +1,83 @@
+package com.mycompany.ecommerce.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StaticAssetHandlerTest {
+
+    static final String SCRIPT_NAME = "main.0123456789abcdef.js";
+
+    @TempDir
+    Path directory;
+    StaticAssetHandler handler;
+
+    @BeforeEach
+    public void handler() throws Exception {
+        handler = new StaticAssetHandler(new FileSystemResource(directory.toString() + "/"), 100);
+        handler.setServletContext(new MockServletContext());
+        handler.afterPropertiesSet();
+    }
+
+    @Test
+    public void sendfile_asset_keeps_its_content_length_through_the_compression_filter() throws Exception {
+        byte[] script = JsonCompressionFilterTest.json(50).getBytes(StandardCharsets.UTF_8);
+        Files.write(directory.resolve(SCRIPT_NAME), script);
+        JsonCompressionFilter filter = new JsonCompressionFilter(true, 100, 6);
+        MockHttpServletRequest request = request(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        HttpServlet servlet = new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+                handler.handleRequest(req, resp);
+            }
+        };
+        filter.doFilter(request, response, new MockFilterChain(servlet));
+
+        assertThat(request.getAttribute(StaticAssetHandler.SENDFILE_FILENAME_ATTRIBUTE)).isNotNull();
+        assertThat(response.getContentLength()).isEqualTo(script.length);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getHeader(HttpHeaders.CACHE_CONTROL)).isEqualTo(StaticAssetHandler.IMMUTABLE_CACHE_CONTROL);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(filter.getCompressedResponseCount()).isZero();
+    }
+
+    @Test
+    public void without_sendfile_the_asset_is_copied() throws Exception {
+        byte[] script = JsonCompressionFilterTest.json(50).getBytes(StandardCharsets.UTF_8);
+        Files.write(directory.resolve(SCRIPT_NAME), script);
+        MockHttpServletRequest request = request(false);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        handler.handleRequest(request, response);
+
+        assertThat(request.getAttribute(StaticAssetHandler.SENDFILE_FILENAME_ATTRIBUTE)).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(script);
+    }
+
+    static MockHttpServletRequest request(boolean sendfileSupported) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/" + SCRIPT_NAME);
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+        request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, SCRIPT_NAME);
+        request.setAttribute(StaticAssetHandler.SENDFILE_SUPPORTED_ATTRIBUTE, sendfileSupported);
+        return request;
+    }
+}
@@ -0,0 +1,76 @@
+package com.mycompany.ecommerce;
+
+import com.mycompany.common.pricing.PricingEngine;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.ProductService;
+import io.netty.channel.ChannelOption;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Reactive deployment of the frontend API: same endpoints, same JSON and same database as the blocking frontend, served
+ * by WebFlux on Netty with R2DBC repositories and a non blocking anti-fraud client.
+ */
+@SpringBootApplication
+// components of the `common` module, outside of the scanned packages
+@Import(PricingEngine.class)
+public class EcommerceReactiveApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(EcommerceReactiveApplication.class, args);
+    }
+
+    /**
+     * No Hibernate schema update with R2DBC, apply the schema shared with the blocking frontend.
+     */
+    @Bean
+    ConnectionFactoryInitializer schemaInitializer(ConnectionFactory connectionFactory) {
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(connectionFactory);
+        initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("db/frontend-schema.sql")));
+        return initializer;
+    }
+
+    @Bean
+    CommandLineRunner runner(ProductService productService) {
+        return args -> productService.saveAllIfEmpty(Arrays.asList(
+                new Product(null, "TV Set", 300.00, "http://placehold.it/200x100"),
+                new Product(null, "Game Console", 200.00, "http://placehold.it/200x100"),
+                new Product(null, "Sofa", 100.00, "http://placehold.it/200x100"),
+                new Product(null, "Icecream", 5.00, "http://placehold.it/200x100"),
+                new Product(null, "Beer", 3.00, "http://placehold.it/200x100"),
+                new Product(null, "Phone", 500.00, "http://placehold.it/200x100"),
+                new Product(null, "Watch", 30.00, "http://placehold.it/200x100"),
+                new Product(null, "USB Cable", 4.00, "http://placehold.it/200x100")))
+                .blockLast();
+    }
+
+    /**
+     * Same read timeout as the {@code RestTemplate} of the blocking frontend.
+     */
+    @Bean
+    public WebClient antiFraudWebClient(WebClient.Builder builder, @Value("${antiFraudService.baseUrl}") String antiFraudServiceBaseUrl) {
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 1200)
+                .responseTimeout(Duration.of(1200, ChronoUnit.MILLIS));
+        return builder
+                .baseUrl(antiFraudServiceBaseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -0,0 +1,205 @@
+package com.mycompany.ecommerce.controller;
+
+import co.elastic.apm.api.ElasticApm;
+import com.mycompany.common.orders.OrderRequests;
+import com.mycompany.common.pricing.PricingEngine;
+import com.mycompany.ecommerce.dto.OrderProductDto;
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderProduct;
+import com.mycompany.ecommerce.model.OrderStatus;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.service.OrderService;
+import com.mycompany.ecommerce.service.ProductService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Non blocking port of the order endpoints of the blocking frontend: same requests, same responses, same metrics.
+ */
+@RestController
+@RequestMapping("/api/orders")
+public class OrderController {
+
+    final static Random RANDOM = new Random();
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    ProductService productService;
+    OrderService orderService;
+    PricingEngine pricingEngine;
+    WebClient antiFraudWebClient;
+
+    public OrderController(ProductService productService, OrderService orderService, PricingEngine pricingEngine,
+                           WebClient antiFraudWebClient) {
+        this.productService = productService;
+        this.orderService = orderService;
+        this.pricingEngine = pricingEngine;
+        this.antiFraudWebClient = antiFraudWebClient;
+    }
+
+    @GetMapping
+    public Flux<Order> list() {
+        return this.orderService.getAllOrders();
+    }
+
+    /**
+     * @throws ResponseStatusException {@code 400 Bad Request} if a quantity is missing or not positive, before any
+     *                                 product lookup
+     */
+    @PostMapping
+    public Mono<ResponseEntity<Order>> create(@RequestBody OrderForm form, ServerHttpRequest request) {
+        ElasticApm.currentSpan().setName("createOrder");
+        List<OrderProductDto> formDtos = form.getProductOrders();
+        OrderRequests.validateQuantities(formDtos, OrderProductDto::getQuantity);
+        // price with the catalog price rather than with the price sent by the client
+        return Flux.fromIterable(formDtos)
+                .concatMap(formDto -> productService.getProduct(formDto.getProduct().getId()))
+                .collectList()
+                .flatMap(products -> placeOrder(formDtos, products, request));
+    }
+
+    Mono<ResponseEntity<Order>> placeOrder(List<OrderProductDto> formDtos, List<Product> products, ServerHttpRequest request) {
+        int lineCount = formDtos.size();
+        int[] quantities = new int[lineCount];
+        long[] unitPricesInCents = new long[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            quantities[i] = formDtos.get(i).getQuantity();
+            unitPricesInCents[i] = PricingEngine.toCents(products.get(i).getPrice());
+        }
+        String remoteAddress = request.getRemoteAddress() == null ? null : request.getRemoteAddress().getAddress().getHostAddress();
+        String shippingCountryCode = getCountryCode(remoteAddress);
+        PricingEngine.OrderPricing pricing = pricingEngine.price(unitPricesInCents, quantities, lineCount, shippingCountryCode, new PricingEngine.OrderPricing());
+
+        String customerId = OrderRequests.customerId(request.getHeaders().getFirst(OrderRequests.CUSTOMER_ID_HEADER));
+        ElasticApm.currentSpan().setLabel("customerId", customerId);
+
+        double orderPrice = pricing.getTotalInCents() / 100.0;
+        ElasticApm.currentSpan().setLabel("orderPrice", orderPrice);
+        ElasticApm.currentSpan().setLabel("orderPriceRange", getPriceRange(orderPrice));
+        ElasticApm.currentSpan().setLabel("shippingCountry", shippingCountryCode);
+
+        return antiFraudWebClient
+                .get()
+                .uri("/fraud/checkOrder?orderPrice={q}&customerIpAddress={q}&shippingCountry={q}",
+                        orderPrice, remoteAddress, shippingCountryCode)
+                .retrieve()
+                .toEntity(String.class)
+                .flatMap(antiFraudResult -> {
+                    if (antiFraudResult.getStatusCode() != HttpStatus.OK) {
+                        return Mono.just(antiFraudFailure(formDtos, orderPrice, "status-" + antiFraudResult.getStatusCode()));
+                    }
+                    if (!"OK".equals(antiFraudResult.getBody())) {
+                        return Mono.just(antiFraudFailure(formDtos, orderPrice, "response-" + antiFraudResult.getBody()));
+                    }
+                    Order order = new Order();
+                    order.setStatus(OrderStatus.PAID.name());
+                    order.setCustomerId(customerId);
+                    order.setDiscountInCents(pricing.getDiscountInCents());
+                    order.setTaxInCents(pricing.getTaxInCents());
+                    order.setTotalPriceInCents(pricing.getTotalInCents());
+                    for (int i = 0; i < lineCount; i++) {
+                        order.getOrderProducts().add(new OrderProduct(null, products.get(i), quantities[i]));
+                    }
+                    return orderService
+                            .create(order)
+                            .map(savedOrder -> created(formDtos, savedOrder, orderPrice, shippingCountryCode, request));
+                })
+                .onErrorResume(WebClientException.class, e -> {
+                    String exceptionShortDescription = e.getClass().getName();
+                    ElasticApm.currentSpan().setLabel("antiFraud.exception", exceptionShortDescription);
+                    ElasticApm.currentSpan().captureException(e);
+                    if (e.getCause() != null) { // capture ReadTimeoutException...
+                        ElasticApm.currentSpan().setLabel("antiFraud.exception.cause", e.getCause().getClass().getName());
+                        exceptionShortDescription += " / " + e.getCause().getClass().getName();
+                    }
+                    logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", formDtos, orderPrice, exceptionShortDescription);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    ResponseEntity<Order> antiFraudFailure(List<OrderProductDto> formDtos, double orderPrice, String exceptionShortDescription) {
+        ElasticApm.currentSpan().setLabel("antiFraud.exception", exceptionShortDescription);
+        logger.info("Failure createOrder({}): orderPrice: {}, fraud.exception:{}", formDtos, orderPrice, exceptionShortDescription);
+        return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    ResponseEntity<Order> created(List<OrderProductDto> formDtos, Order order, double orderPrice, String shippingCountryCode,
+                                  ServerHttpRequest request) {
+        DistributionSummary.builder("order")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.75, 0.95)
+                .register(Metrics.globalRegistry)
+                .record(orderPrice);
+
+        Metrics.counter("order_value_counter").increment(orderPrice);
+        Metrics.counter("order_count_counter").increment();
+
+        DistributionSummary.builder("order_per_country")
+                .tags("shipping_country", shippingCountryCode)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.75, 0.95)
+                .register(Metrics.globalRegistry)
+                .record(orderPrice);
+
+        logger.info("SUCCESS createOrder({}): price: {}, id:{}", formDtos, orderPrice, order.getId());
+
+        String uri = UriComponentsBuilder
+                .fromUri(request.getURI())
+                .replacePath("/orders/{id}")
+                .replaceQuery(null)
+                .buildAndExpand(order.getId())
+                .toString();
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Location", uri);
+
+        return new ResponseEntity<>(order, headers, HttpStatus.CREATED);
+    }
+
+    public String getCountryCode(String ip) {
+        String[] countries = {"US", "FR", "GB",};
+        return countries[RANDOM.nextInt(countries.length)];
+    }
+
+    public String getPriceRange(double price) {
+        if (price < 10) {
+            return "small";
+        } else if (price < 100) {
+            return "medium";
+        } else {
+            return "large";
+        }
+    }
+
+    public static class OrderForm {
+
+        private List<OrderProductDto> productOrders;
+
+        public List<OrderProductDto> getProductOrders() {
+            return productOrders;
+        }
+
+        public void setProductOrders(List<OrderProductDto> productOrders) {
+            this.productOrders = productOrders;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.mycompany.ecommerce.dto;
+
+import com.mycompany.ecommerce.model.Product;
+import org.springframework.core.style.ToStringCreator;
+
+public class OrderProductDto {
+
+    private Product product;
+    private Integer quantity;
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringCreator(this).append("product", this.product).append("quantity", this.quantity).toString();
+    }
+}
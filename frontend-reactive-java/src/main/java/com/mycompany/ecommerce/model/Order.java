@@ -0,0 +1,114 @@
+package com.mycompany.ecommerce.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Same table and same JSON as the JPA {@code Order} of the blocking frontend.
+ */
+@Table("orders")
+public class Order {
+
+    @Id
+    private Long id;
+
+    @JsonFormat(pattern = "dd/MM/yyyy") private LocalDate dateCreated;
+
+    private String status;
+
+    private String customerId;
+
+    private Long discountInCents;
+
+    private Long taxInCents;
+
+    private Long totalPriceInCents;
+
+    @Transient
+    private List<OrderProduct> orderProducts = new ArrayList<>();
+
+    public Double getTotalOrderPrice() {
+        if (totalPriceInCents != null) {
+            return totalPriceInCents / 100.0;
+        }
+        double sum = 0D;
+        for (OrderProduct op : getOrderProducts()) {
+            sum += op.getTotalPrice();
+        }
+        return sum;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public LocalDate getDateCreated() {
+        return dateCreated;
+    }
+
+    public void setDateCreated(LocalDate dateCreated) {
+        this.dateCreated = dateCreated;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(String customerId) {
+        this.customerId = customerId;
+    }
+
+    public Long getDiscountInCents() {
+        return discountInCents;
+    }
+
+    public void setDiscountInCents(Long discountInCents) {
+        this.discountInCents = discountInCents;
+    }
+
+    public Long getTaxInCents() {
+        return taxInCents;
+    }
+
+    public void setTaxInCents(Long taxInCents) {
+        this.taxInCents = taxInCents;
+    }
+
+    public Long getTotalPriceInCents() {
+        return totalPriceInCents;
+    }
+
+    public void setTotalPriceInCents(Long totalPriceInCents) {
+        this.totalPriceInCents = totalPriceInCents;
+    }
+
+    public List<OrderProduct> getOrderProducts() {
+        return orderProducts;
+    }
+
+    public void setOrderProducts(List<OrderProduct> orderProducts) {
+        this.orderProducts = orderProducts;
+    }
+
+    public int getNumberOfProducts() {
+        return this.orderProducts.size();
+    }
+}
@@ -0,0 +1,54 @@
+package com.mycompany.ecommerce.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Row of the {@code order_product} table. Spring Data R2DBC does not map composite primary keys: the rows are read
+ * and written with the {@code DatabaseClient} of the {@code OrderService}.
+ */
+public class OrderProduct {
+
+    @JsonIgnore
+    private Long orderId;
+
+    private Product product;
+
+    private Integer quantity;
+
+    public OrderProduct() {
+    }
+
+    public OrderProduct(Long orderId, Product product, Integer quantity) {
+        this.orderId = orderId;
+        this.product = product;
+        this.quantity = quantity;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Double getTotalPrice() {
+        return getProduct().getPrice() * getQuantity();
+    }
+}
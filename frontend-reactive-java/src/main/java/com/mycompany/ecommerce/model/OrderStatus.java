@@ -0,0 +1,15 @@
+package com.mycompany.ecommerce.model;
+
+/**
+ * Orders checked synchronously are created {@link #PAID}. Orders placed with a deferred fraud check are created
+ * {@link #PENDING} and move once to {@link #PAID} or {@link #REJECTED}.
+ */
+public enum OrderStatus {
+    PENDING,
+    PAID,
+    REJECTED;
+
+    public boolean canTransitionTo(OrderStatus status) {
+        return this == PENDING && (status == PAID || status == REJECTED);
+    }
+}
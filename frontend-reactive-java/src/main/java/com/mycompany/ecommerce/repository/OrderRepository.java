@@ -0,0 +1,7 @@
+package com.mycompany.ecommerce.repository;
+
+import com.mycompany.ecommerce.model.Order;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+public interface OrderRepository extends ReactiveCrudRepository<Order, Long> {
+}
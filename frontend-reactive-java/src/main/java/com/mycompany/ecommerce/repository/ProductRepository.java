@@ -0,0 +1,7 @@
+package com.mycompany.ecommerce.repository;
+
+import com.mycompany.ecommerce.model.Product;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+
+public interface ProductRepository extends ReactiveCrudRepository<Product, Long> {
+}
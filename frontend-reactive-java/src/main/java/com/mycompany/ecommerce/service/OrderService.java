@@ -0,0 +1,18 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Order;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface OrderService {
+
+    /**
+     * The orders with their products
+     */
+    Flux<Order> getAllOrders();
+
+    /**
+     * Inserts the order and its {@link Order#getOrderProducts() products} in a single transaction
+     */
+    Mono<Order> create(Order order);
+}
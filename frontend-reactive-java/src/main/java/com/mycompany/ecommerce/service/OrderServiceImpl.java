@@ -0,0 +1,77 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.model.Order;
+import com.mycompany.ecommerce.model.OrderProduct;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.repository.OrderRepository;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class OrderServiceImpl implements OrderService {
+
+    static final String SELECT_ORDER_PRODUCTS_SQL = "select op.order_id, op.quantity, p.id, p.name, p.price, p.picture_url " +
+            "from order_product op join product p on p.id = op.product_id";
+    static final String INSERT_ORDER_PRODUCT_SQL = "insert into order_product (order_id, product_id, quantity) " +
+            "values (:orderId, :productId, :quantity)";
+
+    private OrderRepository orderRepository;
+    private DatabaseClient databaseClient;
+
+    public OrderServiceImpl(OrderRepository orderRepository, DatabaseClient databaseClient) {
+        this.orderRepository = orderRepository;
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Two queries whatever the number of orders: the orders, then all the order products joined with their product.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Flux<Order> getAllOrders() {
+        Mono<Map<Long, Collection<OrderProduct>>> orderProductsByOrderId = databaseClient
+                .sql(SELECT_ORDER_PRODUCTS_SQL)
+                .map((row, metadata) -> new OrderProduct(
+                        row.get("order_id", Long.class),
+                        new Product(row.get("id", Long.class), row.get("name", String.class),
+                                row.get("price", Double.class), row.get("picture_url", String.class)),
+                        row.get("quantity", Integer.class)))
+                .all()
+                .collectMultimap(OrderProduct::getOrderId);
+        return orderProductsByOrderId.flatMapMany(orderProducts -> orderRepository
+                .findAll()
+                .doOnNext(order -> order.getOrderProducts().addAll(
+                        orderProducts.getOrDefault(order.getId(), Collections.emptyList()))));
+    }
+
+    @Override
+    @Transactional
+    public Mono<Order> create(Order order) {
+        order.setDateCreated(LocalDate.now());
+        List<OrderProduct> orderProducts = order.getOrderProducts();
+        return orderRepository
+                .save(order)
+                .flatMap(savedOrder -> Flux
+                        .fromIterable(orderProducts)
+                        .concatMap(orderProduct -> {
+                            orderProduct.setOrderId(savedOrder.getId());
+                            return databaseClient
+                                    .sql(INSERT_ORDER_PRODUCT_SQL)
+                                    .bind("orderId", savedOrder.getId())
+                                    .bind("productId", orderProduct.getProduct().getId())
+                                    .bind("quantity", orderProduct.getQuantity())
+                                    .fetch()
+                                    .rowsUpdated();
+                        })
+                        .then(Mono.just(savedOrder)));
+    }
+}
@@ -0,0 +1,21 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
+import com.mycompany.ecommerce.model.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ProductService {
+
+    Flux<Product> getAllProducts();
+
+    /**
+     * @return a {@link ResourceNotFoundException} error if the product does not exist
+     */
+    Mono<Product> getProduct(long id);
+
+    /**
+     * Saves the given products if the catalog is empty
+     */
+    Flux<Product> saveAllIfEmpty(Iterable<Product> products);
+}
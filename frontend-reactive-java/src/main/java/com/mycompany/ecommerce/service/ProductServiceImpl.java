@@ -0,0 +1,37 @@
+package com.mycompany.ecommerce.service;
+
+import com.mycompany.ecommerce.exception.ResourceNotFoundException;
+import com.mycompany.ecommerce.model.Product;
+import com.mycompany.ecommerce.repository.ProductRepository;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+public class ProductServiceImpl implements ProductService {
+
+    private ProductRepository productRepository;
+
+    public ProductServiceImpl(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @Override
+    public Flux<Product> getAllProducts() {
+        return productRepository.findAll();
+    }
+
+    @Override
+    public Mono<Product> getProduct(long id) {
+        return productRepository
+                .findById(id)
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Product '" + id + "' not found")));
+    }
+
+    @Override
+    public Flux<Product> saveAllIfEmpty(Iterable<Product> products) {
+        return productRepository
+                .count()
+                .flatMapMany(count -> count == 0 ? productRepository.saveAll(products) : Flux.empty());
+    }
+}
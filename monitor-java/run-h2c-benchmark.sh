@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+set -x
+
+##########################################################################################
+# PARENT DIRECTORY
+# code copied from Tomcat's `catalina.sh`
+##########################################################################################
+# resolve links - $0 may be a softlink
+PRG="$0"
+
+while [ -h "$PRG" ]; do
+  ls=`ls -ld "$PRG"`
+  link=`expr "$ls" : '.*-> \(.*\)$'`
+  if expr "$link" : '/.*' > /dev/null; then
+    PRG="$link"
+  else
+    PRG=`dirname "$PRG"`/"$link"
+  fi
+done
+
+# Get standard environment variables
+PRGDIR=`dirname "$PRG"`
+
+
+##########################################################################################
+# LOAD BENCHMARK: HTTP/1.1 vs HTTP/2 cleartext (h2c) on all the hops
+# load generator -> frontend (`-Dprotocol`) and frontend -> anti-fraud service
+# (`antiFraudService.protocol`), postgresql must be running
+# both runs use the same JVM options and the same CPUs
+# reports throughput, latency, open connections, threads and memory of both services
+# the order rate limiter is disabled, all the users place their orders from 127.0.0.1
+##########################################################################################
+FRONTEND_CPUS=${FRONTEND_CPUS:-0-1}
+ANTI_FRAUD_CPUS=${ANTI_FRAUD_CPUS:-2-3}
+INJECTOR_CPUS=${INJECTOR_CPUS:-4-5}
+USERS=${USERS:-200}
+CONNECTIONS=${CONNECTIONS:-4}
+ANTI_FRAUD_CONNECTIONS=${ANTI_FRAUD_CONNECTIONS:-2}
+JAVA_OPTS=${JAVA_OPTS:-"-Xms512m -Xmx512m -XX:+UseG1GC"}
+FRONTEND_JAR=$PRGDIR/../frontend-java/target/frontend-1.0-SNAPSHOT.jar
+ANTI_FRAUD_JAR=$PRGDIR/../anti-fraud-java/target/anti-fraud-1.0-SNAPSHOT.jar
+
+$PRGDIR/../mvnw -f $PRGDIR/../pom.xml -DskipTests -Dskip.npm -Dskip.installnodenpm package
+# the h2c client of the load generator is not in target/classes
+$PRGDIR/../mvnw -f $PRGDIR/pom.xml -q dependency:build-classpath -Dmdep.outputFile=$PRGDIR/target/classpath.txt
+CLASSPATH=$PRGDIR/target/classes:`cat $PRGDIR/target/classpath.txt`
+
+taskset -c $ANTI_FRAUD_CPUS java $JAVA_OPTS -Dserver.port=8081 -jar $ANTI_FRAUD_JAR > $PRGDIR/target/anti-fraud-h2c-benchmark.log 2>&1 &
+ANTI_FRAUD_PID=$!
+
+for PROTOCOL in http1 h2c
+do
+  if [ "$PROTOCOL" = "h2c" ]; then ANTI_FRAUD_PROTOCOL=H2C; else ANTI_FRAUD_PROTOCOL=HTTP11; fi
+
+  taskset -c $INJECTOR_CPUS java -Dusers=$USERS -Dprotocol=$PROTOCOL -Dconnections=$CONNECTIONS \
+       -Dmetrics.urls=http://localhost:8080,http://localhost:8081 \
+       -cp $CLASSPATH com.mycompany.ecommerce.LoadBenchmark \
+       taskset -c $FRONTEND_CPUS java $JAVA_OPTS \
+            -DantiFraudService.protocol=$ANTI_FRAUD_PROTOCOL -DantiFraudService.maxConnections=$ANTI_FRAUD_CONNECTIONS \
+            -Dorders.rateLimit.enabled=false -jar $FRONTEND_JAR
+done
+
+kill $ANTI_FRAUD_PID
+wait $ANTI_FRAUD_PID
@@ -0,0 +1,46 @@
+#!/usr/bin/env bash
+set -x
+
+##########################################################################################
+# PARENT DIRECTORY
+# code copied from Tomcat's `catalina.sh`
+##########################################################################################
+# resolve links - $0 may be a softlink
+PRG="$0"
+
+while [ -h "$PRG" ]; do
+  ls=`ls -ld "$PRG"`
+  link=`expr "$ls" : '.*-> \(.*\)$'`
+  if expr "$link" : '/.*' > /dev/null; then
+    PRG="$link"
+  else
+    PRG=`dirname "$PRG"`/"$link"
+  fi
+done
+
+# Get standard environment variables
+PRGDIR=`dirname "$PRG"`
+
+
+##########################################################################################
+# LOAD BENCHMARK: blocking frontend (MVC + JPA) vs reactive frontend (WebFlux + R2DBC)
+# the anti-fraud service and postgresql must be running
+# both frontends run with the same JVM options on the same CPUs (FRONTEND_CPUS), the
+# load generator runs on the other CPUs (INJECTOR_CPUS)
+# the order rate limiter of the blocking frontend is disabled, all the users place their
+# orders from 127.0.0.1, and the reactive frontend has none
+##########################################################################################
+FRONTEND_CPUS=${FRONTEND_CPUS:-0-1}
+INJECTOR_CPUS=${INJECTOR_CPUS:-2-3}
+JAVA_OPTS=${JAVA_OPTS:-"-Xms512m -Xmx512m -XX:+UseG1GC -XX:ActiveProcessorCount=2"}
+
+$PRGDIR/../mvnw -DskipTests package
+$PRGDIR/../mvnw -f $PRGDIR/../common-java/pom.xml -DskipTests install
+$PRGDIR/../mvnw -f $PRGDIR/../frontend-java/pom.xml -DskipTests package
+$PRGDIR/../mvnw -f $PRGDIR/../frontend-reactive-java/pom.xml -DskipTests package
+
+taskset -c $INJECTOR_CPUS java -cp $PRGDIR/target/classes com.mycompany.ecommerce.LoadBenchmark \
+     taskset -c $FRONTEND_CPUS java $JAVA_OPTS -Dorders.rateLimit.enabled=false -jar $PRGDIR/../frontend-java/target/frontend-1.0-SNAPSHOT.jar
+
+taskset -c $INJECTOR_CPUS java -cp $PRGDIR/target/classes com.mycompany.ecommerce.LoadBenchmark \
+     taskset -c $FRONTEND_CPUS java $JAVA_OPTS -jar $PRGDIR/../frontend-reactive-java/target/frontend-reactive-1.0-SNAPSHOT.jar
@@ -0,0 +1,47 @@
+#!/usr/bin/env bash
+set -x
+
+export ELASTIC_AGENT_VERSION=1.23.0
+
+##########################################################################################
+# PARENT DIRECTORY
+# code copied from Tomcat's `catalina.sh`
+##########################################################################################
+# resolve links - $0 may be a softlink
+PRG="$0"
+
+while [ -h "$PRG" ]; do
+  ls=`ls -ld "$PRG"`
+  link=`expr "$ls" : '.*-> \(.*\)$'`
+  if expr "$link" : '/.*' > /dev/null; then
+    PRG="$link"
+  else
+    PRG=`dirname "$PRG"`/"$link"
+  fi
+done
+
+# Get standard environment variables
+PRGDIR=`dirname "$PRG"`
+
+
+##########################################################################################
+# TIME TO FIRST ORDER: default build vs startup optimized build of the frontend
+# the anti-fraud service must be running, requires a JDK 13+
+##########################################################################################
+FRONTEND_DIR=$PRGDIR/../frontend-java
+
+$PRGDIR/../mvnw -DskipTests package
+
+$PRGDIR/../mvnw -f $PRGDIR/../common-java/pom.xml -DskipTests install
+$PRGDIR/../mvnw -f $FRONTEND_DIR/pom.xml -DskipTests clean package
+cp $FRONTEND_DIR/target/frontend-1.0-SNAPSHOT.jar $PRGDIR/target/frontend-default.jar
+
+$PRGDIR/../mvnw -f $FRONTEND_DIR/pom.xml -DskipTests -Pfast-startup package
+
+java -cp target/classes com.mycompany.ecommerce.TimeToFirstOrder \
+     java -jar $PRGDIR/target/frontend-default.jar
+
+java -cp target/classes com.mycompany.ecommerce.TimeToFirstOrder \
+     java -XX:SharedArchiveFile=$FRONTEND_DIR/target/app-cds.jsa \
+          -Dspring.profiles.active=fast-startup \
+          -cp "$FRONTEND_DIR/target/classes:$FRONTEND_DIR/target/dependency/*" com.mycompany.ecommerce.EcommerceApplication
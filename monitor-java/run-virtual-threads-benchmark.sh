@@ -0,0 +1,61 @@
+#!/usr/bin/env bash
+set -x
+
+##########################################################################################
+# PARENT DIRECTORY
+# code copied from Tomcat's `catalina.sh`
+##########################################################################################
+# resolve links - $0 may be a softlink
+PRG="$0"
+
+while [ -h "$PRG" ]; do
+  ls=`ls -ld "$PRG"`
+  link=`expr "$ls" : '.*-> \(.*\)$'`
+  if expr "$link" : '/.*' > /dev/null; then
+    PRG="$link"
+  else
+    PRG=`dirname "$PRG"`/"$link"
+  fi
+done
+
+# Get standard environment variables
+PRGDIR=`dirname "$PRG"`
+
+
+##########################################################################################
+# LOAD BENCHMARK: platform threads vs virtual threads (`virtual-threads` Spring profile)
+# the frontend and the anti-fraud service run in the same mode, postgresql must be running
+# requires a JDK 21+, both modes run with the same JVM options and the same CPUs
+# reports throughput, latency, platform threads and memory of both services, and the
+# carrier thread pinnings of the virtual threads mode
+# the order rate limiter is disabled, all the users place their orders from 127.0.0.1
+##########################################################################################
+FRONTEND_CPUS=${FRONTEND_CPUS:-0-1}
+ANTI_FRAUD_CPUS=${ANTI_FRAUD_CPUS:-2-3}
+INJECTOR_CPUS=${INJECTOR_CPUS:-4-5}
+USERS=${USERS:-1000}
+JAVA_OPTS=${JAVA_OPTS:-"-Xms512m -Xmx512m -XX:+UseG1GC -Dnet.bytebuddy.experimental=true"}
+FRONTEND_JAR=$PRGDIR/../frontend-java/target/frontend-1.0-SNAPSHOT.jar
+ANTI_FRAUD_JAR=$PRGDIR/../anti-fraud-java/target/anti-fraud-1.0-SNAPSHOT.jar
+
+$PRGDIR/../mvnw -f $PRGDIR/../pom.xml -DskipTests -Dskip.npm -Dskip.installnodenpm package
+
+for PROFILE in default virtual-threads
+do
+  taskset -c $ANTI_FRAUD_CPUS java $JAVA_OPTS -Dspring.profiles.active=$PROFILE \
+       -XX:StartFlightRecording:filename=$PRGDIR/target/anti-fraud-$PROFILE.jfr,jdk.VirtualThreadPinned#threshold=1ms \
+       -Dserver.port=8081 -jar $ANTI_FRAUD_JAR > $PRGDIR/target/anti-fraud-$PROFILE.log 2>&1 &
+  ANTI_FRAUD_PID=$!
+
+  taskset -c $INJECTOR_CPUS java -Dusers=$USERS -Dmetrics.urls=http://localhost:8080,http://localhost:8081 \
+       -cp $PRGDIR/target/classes com.mycompany.ecommerce.LoadBenchmark \
+       taskset -c $FRONTEND_CPUS java $JAVA_OPTS -Dspring.profiles.active=$PROFILE \
+            -XX:StartFlightRecording:filename=$PRGDIR/target/frontend-$PROFILE.jfr,jdk.VirtualThreadPinned#threshold=1ms \
+            -Dorders.rateLimit.enabled=false -jar $FRONTEND_JAR
+
+  kill $ANTI_FRAUD_PID
+  wait $ANTI_FRAUD_PID
+done
+
+java -cp $PRGDIR/target/classes com.mycompany.ecommerce.PinnedThreadsReport $PRGDIR/target/frontend-virtual-threads.jfr
+java -cp $PRGDIR/target/classes com.mycompany.ecommerce.PinnedThreadsReport $PRGDIR/target/anti-fraud-virtual-threads.jfr
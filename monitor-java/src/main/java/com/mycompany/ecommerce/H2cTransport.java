@@ -0,0 +1,59 @@
+package com.mycompany.ecommerce;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * HTTP/2 cleartext (prior knowledge) transport of the {@link LoadBenchmark}: the requests of all the virtual users are
+ * multiplexed as streams over at most {@code connections} connections, each connection carries up to
+ * {@code SETTINGS_MAX_CONCURRENT_STREAMS} concurrent requests (100 by default with Tomcat).
+ * <p>
+ * Requires the dependencies of the monitor on the classpath, see {@code run-h2c-benchmark.sh}.
+ */
+class H2cTransport implements LoadBenchmark.Transport {
+
+    static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    final ConnectionProvider connectionProvider;
+    final HttpClient httpClient;
+    final HttpClient jsonHttpClient;
+
+    H2cTransport(int connections) {
+        this.connectionProvider = ConnectionProvider.builder("load-benchmark")
+                .maxConnections(connections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.httpClient = HttpClient.create(connectionProvider)
+                .protocol(HttpProtocol.H2C)
+                .headers(headers -> headers.add(HttpHeaderNames.ACCEPT, "application/json"));
+        this.jsonHttpClient = httpClient.headers(headers -> headers.add(HttpHeaderNames.CONTENT_TYPE, "application/json"));
+    }
+
+    @Override
+    public int request(String method, String url, String jsonPayload) {
+        try {
+            HttpClient.ResponseReceiver<?> receiver = jsonPayload == null
+                    ? httpClient.request(HttpMethod.valueOf(method)).uri(url)
+                    : jsonHttpClient.request(HttpMethod.valueOf(method)).uri(url).send(ByteBufFlux.fromString(Mono.just(jsonPayload)));
+            // read the body so that the stream completes
+            Integer statusCode = receiver
+                    .responseSingle((response, body) -> body.asByteArray().thenReturn(response.status().code()))
+                    .block(TIMEOUT);
+            return statusCode == null ? -1 : statusCode;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        connectionProvider.disposeLater().block(TIMEOUT);
+    }
+}
@@ -0,0 +1,329 @@
+package com.mycompany.ecommerce;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares deployments of the frontend under the same closed loop load: each virtual user browses a product
+ * ({@code GET /api/products/{id}}) then places an order ({@code POST /api/orders}), without think time.
+ * <p>
+ * Usage: {@code LoadBenchmark <command to launch the frontend...>}, the frontend is launched, warmed up, measured
+ * and stopped. System properties:
+ * <ul>
+ *     <li>{@code frontend.url}: defaults to {@code http://localhost:8080}</li>
+ *     <li>{@code users}: number of concurrent virtual users, defaults to {@code 200}</li>
+ *     <li>{@code warmupSeconds}: defaults to {@code 30}</li>
+ *     <li>{@code durationSeconds}: defaults to {@code 60}</li>
+ *     <li>{@code timeoutSeconds}: max duration of the startup of the frontend, defaults to {@code 180}</li>
+ *     <li>{@code metrics.urls}: comma separated base URLs of the Spring Boot services whose JVM metrics (platform
+ *     threads, memory) and open connections are reported after the run, defaults to the frontend URL</li>
+ *     <li>{@code protocol}: {@code http1} (default), one keep alive connection per virtual user, or {@code h2c},
+ *     HTTP/2 cleartext multiplexed over {@code connections} connections, see {@link H2cTransport}</li>
+ *     <li>{@code connections}: max number of HTTP/2 connections, defaults to {@code 4}</li>
+ * </ul>
+ * The anti-fraud service must be running. The output of the frontend is written in {@code target/load-benchmark.log}.
+ * Compare runs on the same hardware, with the same JVM options and the same CPUs, see {@code run-load-benchmark.sh}.
+ */
+public class LoadBenchmark {
+
+    final static String CREATE_ORDER_JSON_PAYLOAD = "{\"productOrders\":[" +
+            "{\"product\":{\"id\":%d,\"name\":\"\",\"price\":0,\"pictureUrl\":\"\"}," +
+            "\"quantity\":1}" +
+            "]}";
+
+    final static int PRODUCT_COUNT = 8;
+
+    final static Pattern METRIC_VALUE_PATTERN = Pattern.compile("\"value\":([-0-9.Ee+]+)");
+
+    final String url;
+    final int users;
+    final Transport transport;
+
+    public LoadBenchmark(String url, int users, Transport transport) {
+        this.url = url;
+        this.users = users;
+        this.transport = transport;
+    }
+
+    /**
+     * Runs the load for the given duration
+     */
+    public Result run(long durationSeconds) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(users);
+        try {
+            long endNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+            List<Future<Result>> futures = new ArrayList<>(users);
+            for (int user = 0; user < users; user++) {
+                long seed = user;
+                futures.add(executorService.submit(() -> virtualUser(new Random(seed), endNanos)));
+            }
+            Result result = new Result();
+            for (Future<Result> future : futures) {
+                try {
+                    result.merge(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            result.durationSeconds = durationSeconds;
+            return result;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    Result virtualUser(Random random, long endNanos) {
+        Result result = new Result();
+        while (System.nanoTime() < endNanos) {
+            long productId = 1 + random.nextInt(PRODUCT_COUNT);
+
+            long startNanos = System.nanoTime();
+            int statusCode = request("GET", "/api/products/" + productId, null);
+            result.getProduct.record(System.nanoTime() - startNanos, statusCode == HttpURLConnection.HTTP_OK);
+
+            startNanos = System.nanoTime();
+            statusCode = request("POST", "/api/orders", String.format(CREATE_ORDER_JSON_PAYLOAD, productId));
+            result.createOrder.record(System.nanoTime() - startNanos, statusCode == HttpURLConnection.HTTP_CREATED);
+        }
+        return result;
+    }
+
+    /**
+     * @return the HTTP status code or {@code -1} if the request failed
+     */
+    int request(String method, String path, String jsonPayload) {
+        return transport.request(method, url + path, jsonPayload);
+    }
+
+    /**
+     * JVM metrics of a Spring Boot service, from its actuator. Virtual threads are not counted in the JVM threads. The
+     * open connections are those of Tomcat, accepted from any client, with {@code server.tomcat.mbeanregistry.enabled}.
+     */
+    String jvmMetrics(String baseUrl) {
+        return String.format("%s: open connections %.0f, live threads %.0f, peak threads %.0f, heap used %.0fMB, committed memory %.0fMB",
+                baseUrl,
+                metric(baseUrl, "tomcat.connections.current"),
+                metric(baseUrl, "jvm.threads.live"),
+                metric(baseUrl, "jvm.threads.peak"),
+                metric(baseUrl, "jvm.memory.used?tag=area:heap") / 1024 / 1024,
+                metric(baseUrl, "jvm.memory.committed") / 1024 / 1024);
+    }
+
+    /**
+     * @return the value of the metric, {@code NaN} if not available
+     */
+    double metric(String baseUrl, String metric) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/actuator/metrics/" + metric).openConnection();
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout(10_000);
+            connection.addRequestProperty("Accept", "application/json");
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return Double.NaN;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int length;
+                while ((length = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, length);
+                }
+            }
+            Matcher matcher = METRIC_VALUE_PATTERN.matcher(body.toString(StandardCharsets.UTF_8.name()));
+            return matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+        } catch (IOException | NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    void awaitStartup(Process process, long timeoutSeconds, File logFile) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (System.nanoTime() < deadlineNanos) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Frontend exited with status " + process.exitValue() + ", see " + logFile);
+            }
+            if (request("GET", "/api/products/1", null) == HttpURLConnection.HTTP_OK) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Frontend not started after " + timeoutSeconds + "s, see " + logFile);
+    }
+
+    /**
+     * Sends a request and reads the whole response
+     */
+    interface Transport extends Closeable {
+
+        /**
+         * @return the HTTP status code or {@code -1} if the request failed
+         */
+        int request(String method, String url, String jsonPayload);
+
+        @Override
+        default void close() {
+        }
+    }
+
+    /**
+     * HTTP/1.1, each virtual user keeps its own connection alive: one connection per in-flight request
+     */
+    static class HttpUrlConnectionTransport implements Transport {
+
+        @Override
+        public int request(String method, String url, String jsonPayload) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                connection.setConnectTimeout(1000);
+                connection.setReadTimeout(10_000);
+                connection.setRequestMethod(method);
+                connection.addRequestProperty("Accept", "application/json");
+                if (jsonPayload != null) {
+                    connection.addRequestProperty("Content-type", "application/json");
+                    connection.setDoOutput(true);
+                    try (OutputStream os = connection.getOutputStream()) {
+                        os.write(jsonPayload.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                int statusCode = connection.getResponseCode();
+                // read the body so that the keep alive connection is reused
+                try (InputStream in = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    if (in != null) {
+                        byte[] buffer = new byte[8192];
+                        while (in.read(buffer) != -1) {
+                        }
+                    }
+                }
+                return statusCode;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Latencies of the successful requests of an endpoint
+     */
+    static class Latencies {
+        long[] nanos = new long[1024];
+        int count;
+        long errorCount;
+
+        void record(long durationNanos, boolean success) {
+            if (!success) {
+                errorCount++;
+                return;
+            }
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = durationNanos;
+        }
+
+        void merge(Latencies other) {
+            nanos = Arrays.copyOf(nanos, Math.max(nanos.length, count + other.count));
+            System.arraycopy(other.nanos, 0, nanos, count, other.count);
+            count += other.count;
+            errorCount += other.errorCount;
+        }
+
+        long percentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            int idx = (int) Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+            return TimeUnit.NANOSECONDS.toMicros(nanos[Math.max(0, idx)]);
+        }
+
+        String describe(String name, long durationSeconds) {
+            Arrays.sort(nanos, 0, count);
+            return String.format("%-14s %10.1f req/s, %d errors, p50 %dus, p99 %dus, max %dus",
+                    name, (double) count / durationSeconds, errorCount,
+                    percentileMicros(50), percentileMicros(99), percentileMicros(100));
+        }
+    }
+
+    static class Result {
+        final Latencies getProduct = new Latencies();
+        final Latencies createOrder = new Latencies();
+        long durationSeconds;
+
+        void merge(Result other) {
+            getProduct.merge(other.getProduct);
+            createOrder.merge(other.createOrder);
+        }
+
+        @Override
+        public String toString() {
+            return getProduct.describe("getProduct", durationSeconds) + "\n" +
+                    createOrder.describe("createOrder", durationSeconds);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: LoadBenchmark <command to launch the frontend...>");
+            System.exit(1);
+        }
+        String url = System.getProperty("frontend.url", "http://localhost:8080");
+        int users = Integer.getInteger("users", 200);
+        long warmupSeconds = Long.getLong("warmupSeconds", 30);
+        long durationSeconds = Long.getLong("durationSeconds", 60);
+        long timeoutSeconds = Long.getLong("timeoutSeconds", 180);
+        String protocol = System.getProperty("protocol", "http1");
+        int connections = Integer.getInteger("connections", 4);
+
+        Transport transport;
+        if ("h2c".equals(protocol)) {
+            transport = new H2cTransport(connections);
+        } else if ("http1".equals(protocol)) {
+            // let the virtual users keep their connections alive
+            System.setProperty("http.maxConnections", String.valueOf(users));
+            transport = new HttpUrlConnectionTransport();
+        } else {
+            throw new IllegalArgumentException("Unsupported protocol '" + protocol + "', expected http1 or h2c");
+        }
+
+        LoadBenchmark loadBenchmark = new LoadBenchmark(url, users, transport);
+        File logFile = new File("target/load-benchmark.log");
+        logFile.getParentFile().mkdirs();
+        Process process = new ProcessBuilder(args)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        try {
+            loadBenchmark.awaitStartup(process, timeoutSeconds, logFile);
+            loadBenchmark.run(warmupSeconds);
+            Result result = loadBenchmark.run(durationSeconds);
+            System.out.println(users + " users, " + durationSeconds + "s, " + protocol + ", " + String.join(" ", args));
+            System.out.println(result);
+            for (String metricsUrl : System.getProperty("metrics.urls", url).split(",")) {
+                System.out.println(loadBenchmark.jvmMetrics(metricsUrl.trim()));
+            }
+        } finally {
+            transport.close();
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mycompany.ecommerce;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the code paths that pin the carrier thread of a virtual thread (typically blocking I/O in a
+ * {@code synchronized} block) from the {@code jdk.VirtualThreadPinned} events of a JFR recording.
+ * <p>
+ * Usage: {@code PinnedThreadsReport <recording.jfr> [<application package>]}, the pinning stack traces are grouped by
+ * their top frames and sorted by total pinned time. The application package, {@code com.mycompany} by default, is
+ * used to show the application frame that led to the pinning.
+ * <p>
+ * Record with {@code -XX:StartFlightRecording:filename=recording.jfr,jdk.VirtualThreadPinned#threshold=1ms} on a
+ * JDK 21+, see {@code run-virtual-threads-benchmark.sh}.
+ */
+public class PinnedThreadsReport {
+
+    final static String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    final static int TOP_FRAMES = 6;
+
+    final String applicationPackage;
+    final Map<String, Pinning> pinningsByStackTrace = new HashMap<>();
+
+    public PinnedThreadsReport(String applicationPackage) {
+        this.applicationPackage = applicationPackage;
+    }
+
+    void add(RecordedEvent event) {
+        String stackTrace = describe(event.getStackTrace());
+        Pinning pinning = pinningsByStackTrace.computeIfAbsent(stackTrace, Pinning::new);
+        pinning.count++;
+        long durationNanos = event.getDuration().toNanos();
+        pinning.totalNanos += durationNanos;
+        pinning.maxNanos = Math.max(pinning.maxNanos, durationNanos);
+    }
+
+    /**
+     * The top frames, where the thread was pinned, and the first application frame, what the application was doing
+     */
+    String describe(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "    <no stack trace>";
+        }
+        StringBuilder sb = new StringBuilder();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < frames.size(); i++) {
+            String frame = describe(frames.get(i));
+            if (i < TOP_FRAMES) {
+                sb.append("    at ").append(frame).append('\n');
+            } else if (frame.startsWith(applicationPackage)) {
+                sb.append("    ...\n    at ").append(frame).append('\n');
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    List<Pinning> getPinnings() {
+        List<Pinning> pinnings = new ArrayList<>(pinningsByStackTrace.values());
+        pinnings.sort((p1, p2) -> Long.compare(p2.totalNanos, p1.totalNanos));
+        return pinnings;
+    }
+
+    static class Pinning {
+        final String stackTrace;
+        long count;
+        long totalNanos;
+        long maxNanos;
+
+        Pinning(String stackTrace) {
+            this.stackTrace = stackTrace;
+        }
+
+        @Override
+        public String toString() {
+            return count + " pinnings, total " + TimeUnit.NANOSECONDS.toMillis(totalNanos) + "ms, " +
+                    "max " + TimeUnit.NANOSECONDS.toMillis(maxNanos) + "ms\n" + stackTrace;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PinnedThreadsReport <recording.jfr> [<application package>]");
+            System.exit(1);
+        }
+        PinnedThreadsReport report = new PinnedThreadsReport(args.length > 1 ? args[1] : "com.mycompany");
+        try (RecordingFile recordingFile = new RecordingFile(Paths.get(args[0]))) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                if (PINNED_EVENT.equals(event.getEventType().getName())) {
+                    report.add(event);
+                }
+            }
+        }
+        List<Pinning> pinnings = report.getPinnings();
+        if (pinnings.isEmpty()) {
+            System.out.println("No " + PINNED_EVENT + " event in " + args[0]);
+        }
+        for (Pinning pinning : pinnings) {
+            System.out.println(pinning);
+        }
+    }
+}
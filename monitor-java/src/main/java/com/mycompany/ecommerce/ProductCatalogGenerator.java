@@ -0,0 +1,54 @@
+package com.mycompany.ecommerce;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates a CSV product catalog to benchmark the bulk import of the frontend.
+ * <p>
+ * Usage: {@code ProductCatalogGenerator <file name: products.csv or products.csv.gz> <number of products>}
+ * then {@code curl -X POST -H "Content-Type: text/csv" --data-binary @products.csv http://localhost:8080/api/products/import}
+ */
+public class ProductCatalogGenerator {
+
+    final static String[] ADJECTIVES = {"Red", "Blue", "Smart", "Wireless", "Organic", "Vintage", "Portable", "Premium", "Compact", "Deluxe"};
+    final static String[] NOUNS = {"TV Set", "Game Console", "Sofa", "Icecream", "Beer", "Phone", "Watch", "USB Cable", "Lamp", "Chair", "Headphones", "Camera"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ProductCatalogGenerator <file name: products.csv or products.csv.gz> <number of products>");
+            System.exit(1);
+        }
+        String fileName = args[0];
+        long count = Long.parseLong(args[1]);
+        Random random = new Random(0);
+
+        OutputStream out = new FileOutputStream(fileName);
+        if (fileName.endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 64 * 1024);
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            writer.write("name,price,pictureUrl\n");
+            for (long i = 0; i < count; i++) {
+                writer.write(ADJECTIVES[random.nextInt(ADJECTIVES.length)]);
+                writer.write(' ');
+                writer.write(NOUNS[random.nextInt(NOUNS.length)]);
+                writer.write(' ');
+                writer.write(Long.toString(i));
+                writer.write(',');
+                writer.write(Long.toString(1 + random.nextInt(1000)));
+                writer.write('.');
+                writer.write(StressTestUtils.padStart(Integer.toString(random.nextInt(100)), 2, '0'));
+                writer.write(",http://placehold.it/200x100\n");
+            }
+        }
+        System.out.println("Generated " + count + " products in " + fileName);
+    }
+}
@@ -0,0 +1,128 @@
+package com.mycompany.ecommerce;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cold start of the frontend: the time from the launch of the JVM to the first successful
+ * {@code POST /api/orders}.
+ * <p>
+ * Usage: {@code TimeToFirstOrder <command to launch the frontend...>}, system properties:
+ * <ul>
+ *     <li>{@code frontend.url}: defaults to {@code http://localhost:8080}</li>
+ *     <li>{@code runs}: number of launches of the frontend, defaults to {@code 3}</li>
+ *     <li>{@code timeoutSeconds}: max duration of a launch, defaults to {@code 180}</li>
+ * </ul>
+ * The anti-fraud service must be running. The output of the frontend is written in {@code target/time-to-first-order-*.log}.
+ */
+public class TimeToFirstOrder {
+
+    final static String CREATE_ORDER_JSON_PAYLOAD = "{\"productOrders\":[" +
+            "{\"product\":{\"id\":5,\"name\":\"Beer\",\"price\":3.0,\"pictureUrl\":\"http://placehold.it/200x100\"}," +
+            "\"quantity\":1}" +
+            "]}";
+
+    final static long POLL_INTERVAL_MILLIS = 20;
+
+    final String url;
+    final List<String> command;
+    final long timeoutNanos;
+
+    public TimeToFirstOrder(String url, List<String> command, long timeoutSeconds) {
+        this.url = url;
+        this.command = command;
+        this.timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    }
+
+    /**
+     * @return the time to the first successful order in milliseconds
+     */
+    public long measure(int run) throws IOException, InterruptedException {
+        File logFile = new File("target/time-to-first-order-" + run + ".log");
+        logFile.getParentFile().mkdirs();
+
+        long startNanos = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        try {
+            long firstResponseNanos = 0;
+            while (System.nanoTime() - startNanos < timeoutNanos) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Frontend exited with status " + process.exitValue() + ", see " + logFile);
+                }
+                int statusCode = createOrder();
+                if (statusCode > 0 && firstResponseNanos == 0) {
+                    firstResponseNanos = System.nanoTime();
+                }
+                if (statusCode == HttpURLConnection.HTTP_CREATED) {
+                    long timeToFirstOrderMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                    System.out.println("Run " + run + ": first HTTP response after " +
+                            TimeUnit.NANOSECONDS.toMillis(firstResponseNanos - startNanos) + "ms, " +
+                            "first order after " + timeToFirstOrderMillis + "ms");
+                    return timeToFirstOrderMillis;
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            throw new IllegalStateException("No successful order after " + TimeUnit.NANOSECONDS.toSeconds(timeoutNanos) + "s, see " + logFile);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * @return the HTTP status code or {@code -1} if the frontend is not listening yet
+     */
+    int createOrder() {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url + "/api/orders").openConnection();
+            connection.setConnectTimeout(1000);
+            connection.setRequestMethod("POST");
+            connection.addRequestProperty("Accept", "application/json");
+            connection.addRequestProperty("Content-type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(CREATE_ORDER_JSON_PAYLOAD.getBytes(StandardCharsets.UTF_8));
+            }
+            int statusCode = connection.getResponseCode();
+            connection.disconnect();
+            return statusCode;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: TimeToFirstOrder <command to launch the frontend...>");
+            System.exit(1);
+        }
+        String url = System.getProperty("frontend.url", "http://localhost:8080");
+        int runs = Integer.getInteger("runs", 3);
+        long timeoutSeconds = Long.getLong("timeoutSeconds", 180);
+
+        TimeToFirstOrder timeToFirstOrder = new TimeToFirstOrder(url, Arrays.asList(args), timeoutSeconds);
+        List<Long> durations = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            durations.add(timeToFirstOrder.measure(run));
+        }
+        Collections.sort(durations);
+        System.out.println("Time to first order: min " + durations.get(0) + "ms, " +
+                "median " + durations.get(durations.size() / 2) + "ms, " +
+                "max " + durations.get(durations.size() - 1) + "ms " +
+                "(" + runs + " runs of " + String.join(" ", args) + ")");
+    }
+}